@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
  * <p>This controller provides endpoints for:</p>
  * <ul>
  *   <li>Face recognition - Identify a face in an image</li>
+ *   <li>Face verification - Check a face against one claimed identity</li>
  *   <li>Face enrollment - Register a new face with an identity</li>
  *   <li>Identity management - List, view, and delete identities</li>
  * </ul>
@@ -76,13 +77,15 @@ public class FaceRecognitionController {
      * @param threshold recognition confidence threshold (optional)
      * @param maxAlternatives maximum number of alternative matches (optional)
      * @param includeFeatures whether to include feature vector in response (optional)
+     * @param partition gallery partition to search (optional, defaults to all identities)
      * @return the recognition result
      */
     @PostMapping(value = "/recognize", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
         summary = "Recognize a face",
         description = "Analyzes the uploaded image to identify the person. Returns the best match " +
-                      "along with confidence score and optional alternative matches."
+                      "along with confidence score and optional alternative matches. With a partition, " +
+                      "only that partition's identities are searched (requires classification.partitioned)."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -112,10 +115,13 @@ public class FaceRecognitionController {
             @RequestParam(value = "maxAlternatives", required = false, defaultValue = "5") Integer maxAlternatives,
 
             @Parameter(description = "Whether to include feature vector in response")
-            @RequestParam(value = "includeFeatures", required = false, defaultValue = "false") Boolean includeFeatures
+            @RequestParam(value = "includeFeatures", required = false, defaultValue = "false") Boolean includeFeatures,
+
+            @Parameter(description = "Gallery partition (site or tenant) to search; all identities if omitted")
+            @RequestParam(value = "partition", required = false) String partition
     ) throws IOException {
-        logger.info("Recognition request received: file={}, size={} bytes",
-                image.getOriginalFilename(), image.getSize());
+        logger.info("Recognition request received: partition={}, file={}, size={} bytes",
+                partition, image.getOriginalFilename(), image.getSize());
 
         validateImageFile(image);
 
@@ -128,7 +134,7 @@ public class FaceRecognitionController {
         FaceImage faceImage = FaceImage.fromBufferedImage(bufferedImage);
         RecognitionResult result;
         try {
-            result = faceRecognitionService.recognize(faceImage);
+            result = faceRecognitionService.recognize(faceImage, partition);
         } catch (RuntimeException e) {
             metrics.recordError();
             throw e;
@@ -145,6 +151,90 @@ public class FaceRecognitionController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Verifies that the face in the uploaded image belongs to one identity.
+     *
+     * @param image the image file containing a face
+     * @param identityId the claimed identity ID
+     * @param threshold confidence threshold (optional, defaults to the configured one)
+     * @return the verification decision
+     */
+    @PostMapping(value = "/verify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+        summary = "Verify a face against one identity",
+        description = "Compares the uploaded face only with the samples of the claimed identity and " +
+                      "returns whether it matches. Unlike recognition, the time taken does not grow " +
+                      "with the number of enrolled identities."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Verification completed successfully",
+            content = @Content(schema = @Schema(implementation = VerificationResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Invalid image or model not trained",
+            content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Identity not found",
+            content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+        ),
+        @ApiResponse(
+            responseCode = "500",
+            description = "Internal server error",
+            content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+        )
+    })
+    public ResponseEntity<VerificationResponse> verify(
+            @Parameter(description = "Image file containing a face", required = true)
+            @RequestParam("image") MultipartFile image,
+
+            @Parameter(description = "ID of the claimed identity", required = true)
+            @RequestParam("identityId") String identityId,
+
+            @Parameter(description = "Minimum confidence threshold (0.0 to 1.0)")
+            @RequestParam(value = "threshold", required = false) Double threshold
+    ) throws IOException {
+        logger.info("Verification request received: identityId={}, file={}, size={} bytes",
+                identityId, image.getOriginalFilename(), image.getSize());
+
+        validateImageFile(image);
+
+        Identity identity = findIdentityById(identityId);
+        if (identity == null) {
+            throw new IdentityNotFoundException(identityId);
+        }
+
+        BufferedImage bufferedImage = ImageIO.read(image.getInputStream());
+        if (bufferedImage == null) {
+            throw new IllegalArgumentException("Could not read image file");
+        }
+
+        double effectiveThreshold = threshold != null
+                ? threshold
+                : faceRecognitionService.getConfig().getRecognitionThreshold();
+
+        long startNanos = System.nanoTime();
+        FaceImage faceImage = FaceImage.fromBufferedImage(bufferedImage);
+        RecognitionResult result;
+        try {
+            result = faceRecognitionService.verify(faceImage, identityId, effectiveThreshold);
+        } catch (RuntimeException e) {
+            metrics.recordError();
+            throw e;
+        }
+        metrics.recordVerify(System.nanoTime() - startNanos, result.isRecognized());
+
+        VerificationResponse response = VerificationResponse.fromDomain(result, identity, effectiveThreshold);
+
+        logger.info("Verification completed: identityId={}, verified={}",
+                identityId, response.isVerified());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Enrolls a new face with an identity.
      *
@@ -152,14 +242,16 @@ public class FaceRecognitionController {
      * @param name the identity name
      * @param externalId optional external system ID
      * @param sourceDescription optional description of the image source
+     * @param partition optional gallery partition
      * @return the enrollment result
      */
     @PostMapping(value = "/enroll", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
         summary = "Enroll a new face",
         description = "Registers a face image with an identity. If the identity already exists, " +
-                      "the face is added as an additional sample. The model must be retrained " +
-                      "after enrollment for the new face to be recognized."
+                      "the face is added as an additional sample. Unless the extractor supports online " +
+                      "enrollment, the model must be retrained for the new face to be recognized; " +
+                      "requiresTraining tells which."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -189,7 +281,10 @@ public class FaceRecognitionController {
             @RequestParam(value = "externalId", required = false) String externalId,
 
             @Parameter(description = "Optional description of the image source")
-            @RequestParam(value = "sourceDescription", required = false) String sourceDescription
+            @RequestParam(value = "sourceDescription", required = false) String sourceDescription,
+
+            @Parameter(description = "Gallery partition (site or tenant) to enroll into; 'default' if omitted")
+            @RequestParam(value = "partition", required = false) String partition
     ) throws IOException {
         logger.info("Enrollment request received: name={}, file={}, size={} bytes",
                 name, image.getOriginalFilename(), image.getSize());
@@ -208,13 +303,14 @@ public class FaceRecognitionController {
         FaceImage faceImage = FaceImage.fromBufferedImage(bufferedImage);
         double qualityScore = faceImage.getQualityScore();
 
-        Identity identity = faceRecognitionService.enroll(faceImage, name.trim(), externalId);
+        Identity identity = faceRecognitionService.enroll(faceImage, name.trim(), externalId, partition);
 
         // Get the latest sample ID
         String sampleId = identity.getSamples().isEmpty() ? null :
                 identity.getSamples().get(identity.getSamples().size() - 1).getSampleId();
 
         EnrollmentResponse response = EnrollmentResponse.success(identity, sampleId, qualityScore);
+        response.setRequiresTraining(!faceRecognitionService.isTrained());
         metrics.recordEnrollment();
 
         logger.info("Enrollment completed: identityId={}, name={}, sampleCount={}",
@@ -403,10 +499,7 @@ public class FaceRecognitionController {
      * Finds an identity by ID from the service.
      */
     private Identity findIdentityById(String id) {
-        return faceRecognitionService.getIdentities().stream()
-                .filter(identity -> identity.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return faceRecognitionService.getIdentity(id);
     }
 
     /**
@@ -33,6 +33,9 @@ public class EnrollmentResponse {
     @Schema(description = "External system ID", example = "EMP-12345")
     private String externalId;
 
+    @Schema(description = "Gallery partition the identity was enrolled in", example = "site-12")
+    private String partition;
+
     @Schema(description = "Sample ID of the enrolled face", example = "660e8400-e29b-41d4-a716-446655440001")
     private String sampleId;
 
@@ -69,6 +72,7 @@ public class EnrollmentResponse {
         response.setIdentityId(identity.getId());
         response.setName(identity.getName());
         response.setExternalId(identity.getExternalId());
+        response.setPartition(identity.getPartition());
         response.setSampleId(sampleId);
         response.setSampleCount(identity.getSampleCount());
         response.setQualityScore(qualityScore);
@@ -132,6 +136,14 @@ public class EnrollmentResponse {
         this.externalId = externalId;
     }
 
+    public String getPartition() {
+        return partition;
+    }
+
+    public void setPartition(String partition) {
+        this.partition = partition;
+    }
+
     public String getSampleId() {
         return sampleId;
     }
@@ -31,6 +31,9 @@ public class IdentityDto {
     @Schema(description = "External system identifier", example = "EMP-12345")
     private String externalId;
 
+    @Schema(description = "Gallery partition the identity is searched in", example = "site-12")
+    private String partition;
+
     @Schema(description = "Whether the identity is active", example = "true")
     private boolean active;
 
@@ -121,6 +124,7 @@ public class IdentityDto {
         dto.setId(identity.getId());
         dto.setName(identity.getName());
         dto.setExternalId(identity.getExternalId());
+        dto.setPartition(identity.getPartition());
         dto.setActive(identity.isActive());
         dto.setCreatedAt(identity.getCreatedAt());
         dto.setUpdatedAt(identity.getUpdatedAt());
@@ -166,6 +170,9 @@ public class IdentityDto {
     public String getExternalId() { return externalId; }
     public void setExternalId(String externalId) { this.externalId = externalId; }
 
+    public String getPartition() { return partition; }
+    public void setPartition(String partition) { this.partition = partition; }
+
     public boolean isActive() { return active; }
     public void setActive(boolean active) { this.active = active; }
 
@@ -47,6 +47,9 @@ public class RecognitionResponse {
     @Schema(description = "Extracted feature vector (if requested)")
     private double[] features;
 
+    @Schema(description = "Version of the gallery the face was matched against", example = "42")
+    private long galleryVersion;
+
     /**
      * DTO for a single match result.
      */
@@ -187,6 +190,7 @@ public class RecognitionResponse {
         response.setTimestamp(result.getTimestamp());
         response.setStatus(result.getStatus().name());
         response.setRecognized(result.isRecognized());
+        response.setGalleryVersion(result.getGalleryVersion());
 
         result.getBestMatch().ifPresent(match -> {
             response.setBestMatch(new MatchDto(
@@ -259,4 +263,7 @@ public class RecognitionResponse {
 
     public double[] getFeatures() { return features; }
     public void setFeatures(double[] features) { this.features = features; }
+
+    public long getGalleryVersion() { return galleryVersion; }
+    public void setGalleryVersion(long galleryVersion) { this.galleryVersion = galleryVersion; }
 }
@@ -0,0 +1,134 @@
+package com.facerecognition.api.rest.dto;
+
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response DTO for 1:1 face verification.
+ *
+ * <p>Reports whether the uploaded face matched the claimed identity, with
+ * the confidence and distance it was scored at.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ */
+@Schema(description = "Response containing a face verification decision")
+public class VerificationResponse {
+
+    @Schema(description = "Unique request identifier", example = "550e8400-e29b-41d4-a716-446655440000")
+    private String requestId;
+
+    @Schema(description = "Timestamp of the verification", example = "2024-01-15T10:30:00")
+    private LocalDateTime timestamp;
+
+    @Schema(description = "Verification status", example = "RECOGNIZED")
+    private String status;
+
+    @Schema(description = "Claimed identity ID", example = "550e8400-e29b-41d4-a716-446655440000")
+    private String identityId;
+
+    @Schema(description = "Claimed identity name", example = "John Doe")
+    private String name;
+
+    @Schema(description = "Whether the face matched the claimed identity", example = "true")
+    private boolean verified;
+
+    @Schema(description = "Confidence score (0.0 to 1.0)", example = "0.91")
+    private double confidence;
+
+    @Schema(description = "Distance to the identity's nearest sample, absent if it was not compared",
+            example = "0.123")
+    private Double distance;
+
+    @Schema(description = "Confidence threshold the decision was made at", example = "0.6")
+    private double threshold;
+
+    @Schema(description = "Processing time metrics")
+    private RecognitionResponse.ProcessingMetricsDto metrics;
+
+    @Schema(description = "Version of the gallery the face was matched against", example = "42")
+    private long galleryVersion;
+
+    /**
+     * Default constructor.
+     */
+    public VerificationResponse() {
+    }
+
+    /**
+     * Creates a VerificationResponse from a domain verification result.
+     *
+     * @param result the result of {@code FaceRecognitionService.verify}
+     * @param identity the claimed identity
+     * @param threshold the confidence threshold used
+     * @return a new VerificationResponse
+     */
+    public static VerificationResponse fromDomain(RecognitionResult result, Identity identity, double threshold) {
+        VerificationResponse response = new VerificationResponse();
+        response.setRequestId(result.getRequestId());
+        response.setTimestamp(result.getTimestamp());
+        response.setStatus(result.getStatus().name());
+        response.setIdentityId(identity.getId());
+        response.setName(identity.getName());
+        response.setVerified(result.isRecognized());
+        response.setThreshold(threshold);
+        response.setGalleryVersion(result.getGalleryVersion());
+
+        RecognitionResult.MatchResult match = result.getBestMatch()
+            .orElse(result.getAlternatives().isEmpty() ? null : result.getAlternatives().get(0));
+        if (match != null) {
+            response.setConfidence(match.getConfidence());
+            response.setDistance(match.getDistance());
+        }
+
+        result.getMetrics().ifPresent(metrics -> {
+            response.setMetrics(new RecognitionResponse.ProcessingMetricsDto(
+                metrics.getDetectionTimeMs(),
+                metrics.getExtractionTimeMs(),
+                metrics.getMatchingTimeMs(),
+                metrics.getTotalTimeMs()
+            ));
+        });
+
+        return response;
+    }
+
+    // Getters and Setters
+
+    public String getRequestId() { return requestId; }
+    public void setRequestId(String requestId) { this.requestId = requestId; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getIdentityId() { return identityId; }
+    public void setIdentityId(String identityId) { this.identityId = identityId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public boolean isVerified() { return verified; }
+    public void setVerified(boolean verified) { this.verified = verified; }
+
+    public double getConfidence() { return confidence; }
+    public void setConfidence(double confidence) { this.confidence = confidence; }
+
+    public Double getDistance() { return distance; }
+    public void setDistance(Double distance) { this.distance = distance; }
+
+    public double getThreshold() { return threshold; }
+    public void setThreshold(double threshold) { this.threshold = threshold; }
+
+    public RecognitionResponse.ProcessingMetricsDto getMetrics() { return metrics; }
+    public void setMetrics(RecognitionResponse.ProcessingMetricsDto metrics) { this.metrics = metrics; }
+
+    public long getGalleryVersion() { return galleryVersion; }
+    public void setGalleryVersion(long galleryVersion) { this.galleryVersion = galleryVersion; }
+}
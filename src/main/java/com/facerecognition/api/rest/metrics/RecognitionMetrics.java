@@ -21,9 +21,12 @@ import io.micrometer.core.instrument.Timer;
 public class RecognitionMetrics {
 
     private final Timer recognizeTotal;
+    private final Timer verifyTotal;
     private final Counter enrollments;
     private final Counter recognitionsSuccessful;
     private final Counter recognitionsFailed;
+    private final Counter verificationsAccepted;
+    private final Counter verificationsRejected;
     private final Counter trainingRuns;
     private final Counter errors;
 
@@ -32,6 +35,10 @@ public class RecognitionMetrics {
                 .description("Total wall-clock time of the /recognize endpoint")
                 .publishPercentiles(0.5, 0.9, 0.99)
                 .register(registry);
+        this.verifyTotal = Timer.builder("facerecognition.verify.total")
+                .description("Total wall-clock time of the /verify endpoint")
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .register(registry);
         this.enrollments = Counter.builder("facerecognition.enrollments")
                 .description("Number of successful enrolments")
                 .register(registry);
@@ -43,6 +50,14 @@ public class RecognitionMetrics {
                 .description("Number of recognitions that did not produce a confident match")
                 .tag("outcome", "unmatched")
                 .register(registry);
+        this.verificationsAccepted = Counter.builder("facerecognition.verifications")
+                .description("Number of verifications that confirmed the claimed identity")
+                .tag("outcome", "accepted")
+                .register(registry);
+        this.verificationsRejected = Counter.builder("facerecognition.verifications")
+                .description("Number of verifications that did not confirm the claimed identity")
+                .tag("outcome", "rejected")
+                .register(registry);
         this.trainingRuns = Counter.builder("facerecognition.training.runs")
                 .description("Number of successful training runs")
                 .register(registry);
@@ -60,6 +75,15 @@ public class RecognitionMetrics {
         }
     }
 
+    public void recordVerify(long nanos, boolean verified) {
+        verifyTotal.record(nanos, TimeUnit.NANOSECONDS);
+        if (verified) {
+            verificationsAccepted.increment();
+        } else {
+            verificationsRejected.increment();
+        }
+    }
+
     public void recordEnrollment() {
         enrollments.increment();
     }
@@ -0,0 +1,57 @@
+package com.facerecognition.application.service;
+
+/**
+ * Outcome of one {@link FaceRecognitionService#compactGallery()} run: how
+ * many samples the gallery held before and after its identities were
+ * reduced to their prototypes.
+ */
+public final class CompactionReport {
+
+    private final int identitiesCompacted;
+    private final int samplesBefore;
+    private final int samplesAfter;
+    private final long durationMillis;
+
+    CompactionReport(int identitiesCompacted, int samplesBefore, int samplesAfter, long durationMillis) {
+        this.identitiesCompacted = identitiesCompacted;
+        this.samplesBefore = samplesBefore;
+        this.samplesAfter = samplesAfter;
+        this.durationMillis = durationMillis;
+    }
+
+    /** @return the number of identities that lost samples */
+    public int getIdentitiesCompacted() {
+        return identitiesCompacted;
+    }
+
+    /** @return the samples held by the whole gallery before the run */
+    public int getSamplesBefore() {
+        return samplesBefore;
+    }
+
+    /** @return the samples held by the whole gallery after the run */
+    public int getSamplesAfter() {
+        return samplesAfter;
+    }
+
+    /** @return the number of samples removed */
+    public int getSamplesRemoved() {
+        return samplesBefore - samplesAfter;
+    }
+
+    /** @return the fraction of the gallery's samples removed, in {@code [0, 1]} */
+    public double getShrinkRatio() {
+        return samplesBefore == 0 ? 0.0 : (double) getSamplesRemoved() / samplesBefore;
+    }
+
+    /** @return the wall-clock time of the run */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompactionReport{identities=%d, samples=%d->%d, shrink=%.1f%%, time=%dms}",
+                identitiesCompacted, samplesBefore, samplesAfter, getShrinkRatio() * 100, durationMillis);
+    }
+}
@@ -5,15 +5,21 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +32,9 @@ import com.facerecognition.domain.model.RecognitionResult;
 import com.facerecognition.domain.service.FaceClassifier;
 import com.facerecognition.domain.service.FaceDetector;
 import com.facerecognition.domain.service.FeatureExtractor;
+import com.facerecognition.infrastructure.classification.PrototypeCompactor;
+import com.facerecognition.infrastructure.extraction.FeatureProjection;
+import com.facerecognition.infrastructure.extraction.ProjectedFeatureExtractor;
 import com.facerecognition.infrastructure.persistence.ModelRepository;
 import com.facerecognition.infrastructure.persistence.TrainedModel;
 import com.facerecognition.infrastructure.preprocessing.FaceAligner;
@@ -41,11 +50,35 @@ import com.facerecognition.infrastructure.preprocessing.FaceAligner;
  *   <li>{@link FaceClassifier} — match against enrolled identities</li>
  * </ol>
  *
- * <p><b>Thread-safety:</b> all public mutation and classification entry points
- * are guarded by a {@link ReentrantReadWriteLock}. Multiple concurrent
- * {@link #recognize(FaceImage) recognize} calls are served in parallel; training
- * and enrolment take the write lock so they cannot race with either readers or
- * one another.</p>
+ * <p><b>Thread-safety:</b> the enrolled identities and the extractor and
+ * classifier they are recognised with are published together as an
+ * immutable {@link GallerySnapshot} through an atomic reference. Published
+ * identities are never modified; a change publishes copies of the ones it
+ * touches, so readers take the current snapshot without locking. A queued
+ * enrolment builds the next snapshot and swaps it in without touching the
+ * model, and online enrolment and compaction add to the live classifier,
+ * which guards itself. When the service is built with an
+ * {@linkplain Builder#extractorFactory extractor} and a
+ * {@linkplain Builder#classifierFactory classifier} factory, training and
+ * model loading build a new extractor and classifier next to the live ones
+ * and publish them with the next snapshot, so
+ * {@link #recognize(FaceImage) recognize} and
+ * {@link #verify(FaceImage, String) verify} never wait for them; each
+ * recognition finishes on the model it started with. Without the factories
+ * the one extractor and classifier are retrained in place, under the write
+ * side of a {@link ReentrantReadWriteLock} whose read side every
+ * recognition then holds. Each recognition reports the
+ * {@link RecognitionResult#getGalleryVersion() version} of the gallery its
+ * model was trained on.</p>
+ *
+ * <p><b>Online enrolment.</b> When the extractor is
+ * {@linkplain FeatureExtractor#isTrainingFree() training-free}, or
+ * {@link Config#isFreezeProjection()} is set and a model is trained, an
+ * enrolled face is extracted with the current model and added to the
+ * classifier at once, so it is recognised without a {@link #train()} call
+ * and the cost of an enrolment does not grow with the gallery. Its image is
+ * still kept, so the next training run relearns the model from every face.
+ * Other enrolments are queued until that run.</p>
  *
  * <p><b>Detector required.</b> The service refuses to build without a
  * {@link FaceDetector}. The previous version silently bypassed detection when
@@ -56,20 +89,31 @@ public class FaceRecognitionService {
 
     private static final Logger log = LoggerFactory.getLogger(FaceRecognitionService.class);
 
+    // Marks a TrainedModel whose eigenvectors and mean hold a ProjectedFeatureExtractor's projection.
+    private static final String PROJECTION_COMPONENTS = "projection.components";
+
     private final FaceDetector detector;
-    private final FeatureExtractor extractor;
-    private final FaceClassifier classifier;
+    private final Supplier<FeatureExtractor> extractorFactory;
+    private final Function<FeatureExtractor, FaceClassifier> classifierFactory;
+    // Whether training and loading build a new model rather than retrain the live one in place.
+    private final boolean freshModels;
     private final ModelRepository modelRepository;
     private final FaceAligner aligner;
 
-    private final Map<String, Identity> identities;
+    private final AtomicReference<GallerySnapshot> gallery;
+    // Guarded by enrolLock, which also serialises publishing to gallery.
     private final List<TrainingSample> trainingSamples;
     private final Config config;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private volatile boolean trained;
+    private final ReentrantLock enrolLock = new ReentrantLock();
+    // Serialises train() and model loading; taken before modelLock.
+    private final ReentrantLock trainLock = new ReentrantLock();
+    // Held while a model is retrained in place, and by recognitions on such a model; taken before enrolLock.
+    private final ReadWriteLock modelLock = new ReentrantReadWriteLock();
+
+    private volatile CompactionReport lastCompaction;
 
-    /** In-flight training sample — held in-memory until {@link #train()} is called. */
+    /** Training sample — its image is kept in memory and re-extracted by every {@link #train()} call. */
     private static final class TrainingSample {
         final FaceImage image;
         final String identityId;
@@ -98,6 +142,9 @@ public class FaceRecognitionService {
         private boolean autoSave = false;
         private boolean autoLoad = false;
         private String modelFileName = "default.frm";
+        private int maxPrototypes = 0;
+        private boolean onlineEnrollment = false;
+        private boolean freezeProjection = false;
 
         public double getRecognitionThreshold() { return recognitionThreshold; }
         public Config setRecognitionThreshold(double t) { this.recognitionThreshold = t; return this; }
@@ -128,6 +175,18 @@ public class FaceRecognitionService {
 
         public String getModelFileName() { return modelFileName; }
         public Config setModelFileName(String name) { this.modelFileName = name; return this; }
+
+        /** Samples each identity is compacted to by training and {@link FaceRecognitionService#compactGallery()}; 0 keeps them all. */
+        public int getMaxPrototypes() { return maxPrototypes; }
+        public Config setMaxPrototypes(int m) { this.maxPrototypes = m; return this; }
+
+        /** Whether enrolments are extracted and matched at once when the model allows it. */
+        public boolean isOnlineEnrollment() { return onlineEnrollment; }
+        public Config setOnlineEnrollment(boolean b) { this.onlineEnrollment = b; return this; }
+
+        /** Whether online enrolments may use a trained PCA/LDA projection as is, until the next training run. */
+        public boolean isFreezeProjection() { return freezeProjection; }
+        public Config setFreezeProjection(boolean b) { this.freezeProjection = b; return this; }
     }
 
     /** Fluent builder. Detector, extractor and classifier are all required. */
@@ -135,12 +194,24 @@ public class FaceRecognitionService {
         private FaceDetector detector;
         private FeatureExtractor extractor;
         private FaceClassifier classifier;
+        private Supplier<FeatureExtractor> extractorFactory;
+        private Function<FeatureExtractor, FaceClassifier> classifierFactory;
         private ModelRepository modelRepository;
         private Config config = new Config();
 
         public Builder detector(FaceDetector detector) { this.detector = detector; return this; }
         public Builder extractor(FeatureExtractor extractor) { this.extractor = extractor; return this; }
         public Builder classifier(FaceClassifier classifier) { this.classifier = classifier; return this; }
+
+        /** Creates an untrained extractor configured like {@link #extractor(FeatureExtractor)}; not needed if that one is training-free. */
+        public Builder extractorFactory(Supplier<FeatureExtractor> factory) { this.extractorFactory = factory; return this; }
+
+        /** Creates an empty classifier configured like {@link #classifier(FaceClassifier)}, for vectors of the given extractor. */
+        public Builder classifierFactory(Function<FeatureExtractor, FaceClassifier> factory) {
+            this.classifierFactory = factory;
+            return this;
+        }
+
         public Builder modelRepository(ModelRepository repo) { this.modelRepository = repo; return this; }
         public Builder config(Config config) { this.config = config != null ? config : new Config(); return this; }
 
@@ -154,7 +225,7 @@ public class FaceRecognitionService {
                 log.warn("FaceRecognitionService built without a FaceDetector — preprocessing will pass images through unchanged. "
                         + "This is fine for tests and pre-cropped inputs, but production deployments should wire a detector.");
             }
-            return new FaceRecognitionService(detector, extractor, classifier, modelRepository, config);
+            return new FaceRecognitionService(this);
         }
     }
 
@@ -162,23 +233,21 @@ public class FaceRecognitionService {
         return new Builder();
     }
 
-    private FaceRecognitionService(FaceDetector detector,
-                                   FeatureExtractor extractor,
-                                   FaceClassifier classifier,
-                                   ModelRepository modelRepository,
-                                   Config config) {
-        this.detector = detector;
-        this.extractor = extractor;
-        this.classifier = classifier;
-        this.modelRepository = modelRepository;
-        this.config = config;
-        this.identities = new ConcurrentHashMap<>();
+    private FaceRecognitionService(Builder builder) {
+        this.detector = builder.detector;
+        this.extractorFactory = builder.extractorFactory;
+        this.classifierFactory = builder.classifierFactory;
+        this.freshModels = classifierFactory != null
+                && (extractorFactory != null || builder.extractor.isTrainingFree());
+        this.modelRepository = builder.modelRepository;
+        this.config = builder.config;
+        this.gallery = new AtomicReference<>(GallerySnapshot.empty(
+                new RecognitionModel(builder.extractor, builder.classifier, false)));
         this.trainingSamples = new ArrayList<>();
         this.aligner = new FaceAligner.Builder()
                 .targetSize(config.getTargetWidth(), config.getTargetHeight())
                 .histogramEqualization(config.isHistogramEqualization())
                 .build();
-        this.trained = false;
     }
 
     // ---------------------------------------------------------------------
@@ -192,27 +261,113 @@ public class FaceRecognitionService {
 
     /** Enrol a face image with an external identifier (e.g. employee ID). */
     public Identity enroll(FaceImage image, String identityName, String externalId) {
+        return enroll(image, identityName, externalId, null);
+    }
+
+    /**
+     * Enrol a face image into a gallery partition, such as one site of a
+     * multi-site deployment. Names are looked up within the partition, so
+     * two partitions may each hold a different person of the same name.
+     *
+     * <p>The face is matched from the next recognition on if it can be
+     * {@linkplain Config#isOnlineEnrollment() enrolled online}, and from the
+     * next {@link #train()} call otherwise.</p>
+     *
+     * @param partition the partition, or null for {@link Identity#DEFAULT_PARTITION}
+     * @throws IllegalArgumentException if the partition name is invalid
+     */
+    public Identity enroll(FaceImage image, String identityName, String externalId, String partition) {
         Objects.requireNonNull(image, "Image cannot be null");
         Objects.requireNonNull(identityName, "Identity name cannot be null");
+        String target = partition != null ? Identity.checkPartition(partition) : Identity.DEFAULT_PARTITION;
 
-        lock.writeLock().lock();
-        try {
-            Identity identity = findIdentityByNameInternal(identityName);
-            if (identity == null) {
-                identity = new Identity(identityName);
-                if (externalId != null) {
-                    identity.setExternalId(externalId);
-                }
-                identities.put(identity.getId(), identity);
+        if (config.isOnlineEnrollment()) {
+            Identity enrolled = enrollOnline(image, identityName, externalId, target);
+            if (enrolled != null) {
+                return enrolled;
             }
+        }
+
+        enrolLock.lock();
+        try {
+            GallerySnapshot current = gallery.get();
+            Identity identity = findOrCreate(current, identityName, externalId, target);
             trainingSamples.add(new TrainingSample(image, identity.getId(), identityName));
-            trained = false;
+            publish(current.withEnrolled(identity));
             return identity;
         } finally {
-            lock.writeLock().unlock();
+            enrolLock.unlock();
         }
     }
 
+    // Extracts the face with the current model and adds it to the classifier; null if the model cannot take it.
+    private Identity enrollOnline(FaceImage image, String identityName, String externalId, String partition) {
+        FaceImage processed = preprocessForTraining(image);
+        if (processed == null) {
+            return null;
+        }
+
+        while (true) {
+            GallerySnapshot leased = acquireModel();
+            try {
+                if (!canEnrollOnline(leased.getModel(), leased.hasModel())) {
+                    return null;
+                }
+                RecognitionModel model = leased.getModel();
+                // Extract alongside recognitions and other enrolments; only publishing is serialised.
+                FeatureVector features = model.getExtractor().extract(processed);
+
+                enrolLock.lock();
+                try {
+                    GallerySnapshot current = gallery.get();
+                    if (current.getModel() != model) {
+                        // A new model was published in between; the features must come from it.
+                        continue;
+                    }
+                    Identity existing = current.findByName(identityName, partition);
+                    Identity identity = existing != null
+                            ? existing.copy()
+                            : findOrCreate(current, identityName, externalId, partition);
+                    identity.enrollSample(features, processed.getQualityScore(), "enrolment");
+                    model.getClassifier().enroll(identity);
+                    trainingSamples.add(new TrainingSample(image, identity.getId(), identityName));
+                    publish(current.withOnlineEnrolled(identity));
+                    return identity;
+                } finally {
+                    enrolLock.unlock();
+                }
+            } finally {
+                releaseModel(leased);
+            }
+        }
+    }
+
+    // Called with the model leased, or while training it; trained is whether it was built by a training run.
+    private boolean canEnrollOnline(RecognitionModel model, boolean trained) {
+        if (model.getClassifier().isReadOnly()) {
+            return false;
+        }
+        FeatureExtractor extractor = model.getExtractor();
+        if (extractor.isTrainingFree()) {
+            return true;
+        }
+        return config.isFreezeProjection() && extractor.isTrained() && trained;
+    }
+
+    // Called with enrolLock held.
+    private static Identity findOrCreate(GallerySnapshot current, String identityName, String externalId,
+                                         String partition) {
+        Identity identity = current.findByName(identityName, partition);
+        if (identity == null) {
+            identity = new Identity(identityName);
+            identity.setPartition(partition);
+            if (externalId != null) {
+                identity.setExternalId(externalId);
+            }
+        }
+        return identity;
+    }
+
     /** Convenience overload that reads the image from a file. */
     public Identity enrollFromFile(File file, String identityName) throws IOException {
         return enroll(FaceImage.fromFile(file), identityName);
@@ -228,21 +383,41 @@ public class FaceRecognitionService {
      * <p>If {@code facerecognition.model.auto-save=true} the trained model is
      * persisted via the configured {@link ModelRepository} after a successful
      * run. Persistence failures are logged but do not fail the training call.</p>
+     *
+     * <p>Trains on the samples enrolled when the call starts. Faces enrolled
+     * while it runs are extracted with the new model and added to it before
+     * it is published, if it can take {@linkplain Config#isOnlineEnrollment()
+     * online enrolments}; otherwise they wait for the next run. With model
+     * factories the new model is built next to the live one, which keeps
+     * serving recognitions until it is replaced. Otherwise recognitions are
+     * held up while the extractor and classifier are retrained in place, but
+     * not while the training images are preprocessed.</p>
      */
     public void train() {
-        lock.writeLock().lock();
+        trainLock.lock();
         try {
-            if (trainingSamples.isEmpty()) {
+            GallerySnapshot base;
+            List<TrainingSample> samples;
+            enrolLock.lock();
+            try {
+                base = gallery.get();
+                samples = new ArrayList<>(trainingSamples);
+            } finally {
+                enrolLock.unlock();
+            }
+            if (samples.isEmpty()) {
                 throw new IllegalStateException("No training samples enrolled");
             }
 
             List<FaceImage> faces = new ArrayList<>();
             List<String> labels = new ArrayList<>();
-            for (TrainingSample sample : trainingSamples) {
+            List<String> identityIds = new ArrayList<>();
+            for (TrainingSample sample : samples) {
                 FaceImage processed = preprocessForTraining(sample.image);
                 if (processed != null) {
                     faces.add(processed);
                     labels.add(sample.label);
+                    identityIds.add(sample.identityId);
                 }
             }
 
@@ -250,64 +425,349 @@ public class FaceRecognitionService {
                 throw new IllegalStateException("No valid faces found in training samples");
             }
 
+            int trainedSamples = samples.size();
+            updateModel(() -> retrainModel(base, trainedSamples, faces, labels, identityIds));
+
+            log.info("Training complete: identities={} samples={}",
+                    base.size(), faces.size());
+
+            if (config.isAutoSave()) {
+                persistSafely();
+            }
+        } finally {
+            trainLock.unlock();
+        }
+    }
+
+    // Called by updateModel.
+    private void retrainModel(GallerySnapshot base, int trainedSamples, List<FaceImage> faces, List<String> labels,
+                              List<String> identityIds) {
+        RecognitionModel model = nextModel(true);
+        try {
+            trainModel(model, base, trainedSamples, faces, labels, identityIds);
+        } catch (RuntimeException e) {
+            discard(model);
+            throw e;
+        }
+    }
+
+    private void trainModel(RecognitionModel model, GallerySnapshot base, int trainedSamples, List<FaceImage> faces,
+                            List<String> labels, List<String> identityIds) {
+        FeatureExtractor extractor = model.getExtractor();
+        FaceClassifier classifier = model.getClassifier();
+        // A training-free extractor is shared with the live model, whose recognitions may be using it.
+        if (!freshModels || !extractor.isTrainingFree()) {
             extractor.reset();
-            extractor.train(faces, labels);
+        }
+        extractor.train(faces, labels);
 
+        // A read-only classifier follows the gallery its writer keeps; retrain() below catches up with it.
+        boolean shared = classifier.isReadOnly();
+        if (!shared) {
             classifier.clear();
+        }
+
+        // Indices of each identity's faces, keyed by ID, not name: partitions
+        // may hold different people of the same name.
+        List<FeatureVector> faceFeatures = new ArrayList<>(faces.size());
+        Map<String, List<Integer>> identityFaces = new HashMap<>();
+        for (int i = 0; i < faces.size(); i++) {
+            faceFeatures.add(extractor.extract(faces.get(i)));
+            identityFaces.computeIfAbsent(identityIds.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        // Copies of each identity with its stale samples replaced by freshly extracted ones.
+        PrototypeCompactor compactor = config.getMaxPrototypes() > 0
+                ? new PrototypeCompactor(config.getMaxPrototypes(), classifier.getDistanceMetric())
+                : null;
+        List<Identity> trained = new ArrayList<>(base.size());
+        for (Identity identity : base.getIdentities()) {
+            Identity copy = identity.copy();
+            copy.clearSamples();
+            // The preprocessed face's quality weights the sample when it is compacted.
+            for (int i : identityFaces.getOrDefault(identity.getId(), List.of())) {
+                copy.enrollSample(faceFeatures.get(i), faces.get(i).getQualityScore(), "training");
+            }
+            if (compactor != null) {
+                compactor.compact(copy);
+            }
+            trained.add(copy);
+        }
 
-            Map<String, List<FeatureVector>> identityFeatures = new HashMap<>();
-            for (int i = 0; i < faces.size(); i++) {
-                FeatureVector features = extractor.extract(faces.get(i));
-                identityFeatures.computeIfAbsent(labels.get(i), k -> new ArrayList<>()).add(features);
+        for (Identity identity : trained) {
+            if (identity.hasSamples() && !shared) {
+                classifier.enroll(identity);
+            }
+        }
+        classifier.retrain();
+
+        if (!config.isOnlineEnrollment() || !canEnrollOnline(model, true)) {
+            enrolLock.lock();
+            try {
+                publish(gallery.get().withModel(base, trained, model));
+            } finally {
+                enrolLock.unlock();
             }
+            return;
+        }
 
-            // Replace stale samples on each identity with freshly extracted ones.
-            for (Identity identity : identities.values()) {
-                identity.clearSamples();
+        // Faces enrolled online while training ran are held by the old model only, extracted with
+        // its extractor. Extract them again with the new one and add them before publishing it,
+        // or they would be dropped until the next run.
+        Map<String, Identity> latest = new LinkedHashMap<>();
+        for (Identity identity : trained) {
+            latest.put(identity.getId(), identity);
+        }
+        int extracted = trainedSamples;
+        while (true) {
+            GallerySnapshot current;
+            List<TrainingSample> since;
+            enrolLock.lock();
+            try {
+                current = gallery.get();
+                since = new ArrayList<>(trainingSamples.subList(extracted, trainingSamples.size()));
+                if (since.isEmpty()) {
+                    // The model now holds every enrolment of the current snapshot.
+                    publish(current.withModel(current, latest.values(), model));
+                    return;
+                }
+            } finally {
+                enrolLock.unlock();
             }
-            for (TrainingSample sample : trainingSamples) {
-                Identity identity = identities.get(sample.identityId);
+            for (TrainingSample sample : since) {
+                Identity identity = latest.get(sample.identityId);
                 if (identity == null) {
-                    continue;
+                    // Enrolled since training started: none of its samples came from the new extractor.
+                    identity = current.getIdentity(sample.identityId).copy();
+                    identity.clearSamples();
+                } else {
+                    identity = identity.copy();
                 }
-                List<FeatureVector> features = identityFeatures.get(sample.label);
-                if (features != null && !features.isEmpty()) {
-                    for (FeatureVector fv : features) {
-                        identity.enrollSample(fv, 1.0, "training");
-                    }
-                    identityFeatures.remove(sample.label);
+                FaceImage processed = preprocessForTraining(sample.image);
+                if (processed != null) {
+                    identity.enrollSample(extractor.extract(processed), processed.getQualityScore(), "enrolment");
+                    classifier.enroll(identity);
                 }
+                latest.put(identity.getId(), identity);
             }
+            extracted += since.size();
+        }
+    }
 
-            for (Identity identity : identities.values()) {
-                if (identity.hasSamples()) {
-                    classifier.enroll(identity);
+    /**
+     * Returns a new model with an empty classifier if the service builds
+     * them, or else the live model to retrain in place.
+     *
+     * @param newExtractor whether a new model needs its own extractor; a
+     *        training-free extractor is shared with the live model regardless
+     */
+    private RecognitionModel nextModel(boolean newExtractor) {
+        RecognitionModel live = gallery.get().getModel();
+        if (!freshModels) {
+            return live;
+        }
+        FeatureExtractor extractor = newExtractor && !live.getExtractor().isTrainingFree()
+                ? extractorFactory.get()
+                : live.getExtractor();
+        return new RecognitionModel(extractor, classifierFactory.apply(extractor), true);
+    }
+
+    // Closes a new model whose training run or load failed before it was published.
+    private void discard(RecognitionModel model) {
+        if (freshModels) {
+            model.retire();
+        }
+    }
+
+    // Runs a training run or model load; one that retrains in place holds recognitions off while it runs.
+    private void updateModel(Runnable update) {
+        if (freshModels) {
+            update.run();
+            return;
+        }
+        modelLock.writeLock().lock();
+        try {
+            // Publish while recognitions are still held off, so none pairs the new model with the old version.
+            update.run();
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    // Called with enrolLock held; retires the model the snapshot replaces, if it was a different one.
+    private void publish(GallerySnapshot next) {
+        GallerySnapshot previous = gallery.getAndSet(next);
+        if (previous.getModel() != next.getModel()) {
+            previous.getModel().retire();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Compaction
+    // ---------------------------------------------------------------------
+
+    /**
+     * Reduces every identity with more than {@link Config#getMaxPrototypes()}
+     * samples to that many prototypes, chosen by quality-weighted k-medoids
+     * under the classifier's metric, re-enrols it with the classifier and
+     * publishes the compacted identities as a new gallery version.
+     *
+     * <p>Meant to run periodically in the background, for galleries whose
+     * regulars keep accumulating samples. Recognitions are never held up:
+     * the prototypes are chosen from the current snapshot, and each
+     * compacted identity is swapped into the classifier in one step.
+     * Training and model loading wait for a run to finish.</p>
+     *
+     * @return how much the gallery shrank
+     * @throws IllegalStateException if compaction is disabled
+     */
+    public CompactionReport compactGallery() {
+        int maxPrototypes = config.getMaxPrototypes();
+        if (maxPrototypes < 1) {
+            throw new IllegalStateException("Prototype compaction is disabled (maxPrototypes=" + maxPrototypes + ")");
+        }
+        trainLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            // trainLock keeps the model from being replaced until the run is over.
+            GallerySnapshot base = gallery.get();
+            FaceClassifier classifier = base.getModel().getClassifier();
+            PrototypeCompactor compactor = new PrototypeCompactor(maxPrototypes, classifier.getDistanceMetric());
+
+            Map<String, Set<String>> prototypes = new LinkedHashMap<>();
+            for (Identity identity : base.getIdentities()) {
+                if (compactor.needsCompaction(identity)) {
+                    prototypes.put(identity.getId(), compactor.selectPrototypes(identity.getSamples()));
                 }
             }
 
-            trained = true;
-            log.info("Training complete: identities={} samples={}",
-                    identities.size(), faces.size());
-
-            if (config.isAutoSave()) {
-                persistSafely();
+            int before = 0;
+            int removed = 0;
+            enrolLock.lock();
+            try {
+                GallerySnapshot current = gallery.get();
+                List<Identity> compacted = new ArrayList<>(prototypes.size());
+                for (Identity identity : current.getIdentities()) {
+                    before += identity.getSampleCount();
+                    Set<String> selected = prototypes.get(identity.getId());
+                    if (selected == null) {
+                        continue;
+                    }
+                    // Samples enrolled online since the prototypes were chosen are all kept.
+                    Set<String> kept = new HashSet<>(selected);
+                    Set<String> considered = new HashSet<>();
+                    for (Identity.EnrolledSample sample : base.getIdentity(identity.getId()).getSamples()) {
+                        considered.add(sample.getSampleId());
+                    }
+                    for (Identity.EnrolledSample sample : identity.getSamples()) {
+                        if (!considered.contains(sample.getSampleId())) {
+                            kept.add(sample.getSampleId());
+                        }
+                    }
+                    Identity copy = identity.copy();
+                    removed += copy.retainSamples(kept);
+                    if (!classifier.isReadOnly() && classifier.isEnrolled(copy.getId())) {
+                        classifier.enroll(copy);
+                    }
+                    compacted.add(copy);
+                }
+                if (!compacted.isEmpty()) {
+                    publish(current.withCompacted(compacted));
+                }
+            } finally {
+                enrolLock.unlock();
             }
+
+            CompactionReport report = new CompactionReport(prototypes.size(), before, before - removed,
+                    System.currentTimeMillis() - start);
+            lastCompaction = report;
+            log.info("Gallery compaction to {} prototypes per identity: {}", maxPrototypes, report);
+            return report;
         } finally {
-            lock.writeLock().unlock();
+            trainLock.unlock();
         }
     }
 
+    /** @return the outcome of the latest {@link #compactGallery()} run, or null if none has run */
+    public CompactionReport getLastCompaction() {
+        return lastCompaction;
+    }
+
     // ---------------------------------------------------------------------
     // Recognition
     // ---------------------------------------------------------------------
 
     /** Recognises the largest face in the given image. */
     public RecognitionResult recognize(FaceImage image) {
-        lock.readLock().lock();
+        return recognize(image, null);
+    }
+
+    /**
+     * Recognises the largest face in the given image among the identities
+     * of one gallery partition.
+     *
+     * <p>With a {@code PartitionedClassifier} only that partition's index
+     * is searched; other classifiers accept only a null partition.</p>
+     *
+     * @param image the probe image
+     * @param partition the partition to search, or null for every identity
+     * @return the recognition result; UNKNOWN if the partition is empty
+     * @throws IllegalArgumentException if the partition name is invalid
+     * @throws IllegalStateException if the system has not been trained, or a
+     *         partition is given and the classifier is not partitioned
+     */
+    public RecognitionResult recognize(FaceImage image, String partition) {
+        double threshold = config.getRecognitionThreshold();
+        if (partition == null) {
+            return match(image, null, (classifier, features) -> classifier.classify(features, threshold));
+        }
+        Identity.checkPartition(partition);
+        return match(image, null, (classifier, features) -> classifier.classify(features, threshold, partition));
+    }
+
+    /**
+     * Verifies that the largest face in the image belongs to one identity,
+     * at the configured recognition threshold.
+     *
+     * @see #verify(FaceImage, String, double)
+     */
+    public RecognitionResult verify(FaceImage image, String identityId) {
+        return verify(image, identityId, config.getRecognitionThreshold());
+    }
+
+    /**
+     * Verifies that the largest face in the image belongs to one identity.
+     *
+     * <p>The probe is compared only with that identity's samples, so the
+     * cost does not depend on the size of the gallery. The result is
+     * RECOGNIZED with the identity as best match when the confidence reaches
+     * the threshold. Otherwise it is UNKNOWN, carrying the identity as the
+     * only alternative if the model knows it; an identity whose samples
+     * are queued for the next training run is never verified.</p>
+     *
+     * @param image the probe image
+     * @param identityId the claimed identity ID
+     * @param threshold the minimum confidence for a match
+     * @return the verification result
+     * @throws IllegalArgumentException if the identity is not enrolled
+     * @throws IllegalStateException if the system has not been trained
+     */
+    public RecognitionResult verify(FaceImage image, String identityId, double threshold) {
+        Objects.requireNonNull(identityId, "identityId");
+        return match(image, identityId, (classifier, features) -> classifier.verify(features, identityId, threshold));
+    }
+
+    // Detects, extracts and matches the probe against the trained model.
+    private RecognitionResult match(FaceImage image, String identityId,
+                                    BiFunction<FaceClassifier, FeatureVector, RecognitionResult> matcher) {
+        GallerySnapshot snapshot = acquireModel();
         try {
-            if (!trained) {
+            if (!snapshot.hasModel()) {
                 throw new IllegalStateException("System not trained. Call train() first.");
             }
+            if (identityId != null && snapshot.getIdentity(identityId) == null) {
+                throw new IllegalArgumentException("Identity not found: " + identityId);
+            }
 
             long start = System.currentTimeMillis();
 
@@ -318,11 +778,11 @@ public class FaceRecognitionService {
             long detectionTime = System.currentTimeMillis() - start;
 
             long extractStart = System.currentTimeMillis();
-            FeatureVector features = extractor.extract(processed);
+            FeatureVector features = snapshot.getModel().getExtractor().extract(processed);
             long extractionTime = System.currentTimeMillis() - extractStart;
 
             long matchStart = System.currentTimeMillis();
-            RecognitionResult result = classifier.classify(features, config.getRecognitionThreshold());
+            RecognitionResult result = matcher.apply(snapshot.getModel().getClassifier(), features);
             long matchingTime = System.currentTimeMillis() - matchStart;
 
             long totalTime = System.currentTimeMillis() - start;
@@ -336,9 +796,36 @@ public class FaceRecognitionService {
                     .alternatives(result.getAlternatives())
                     .extractedFeatures(features)
                     .metrics(metrics)
+                    .galleryVersion(snapshot.getModelVersion())
                     .build();
         } finally {
-            lock.readLock().unlock();
+            releaseModel(snapshot);
+        }
+    }
+
+    /**
+     * Leases the model of the current snapshot, retrying if a newer one is
+     * published and the model retired in between. A model retrained in place
+     * is also read-locked until {@link #releaseModel}.
+     *
+     * @return the snapshot whose model is leased
+     */
+    private GallerySnapshot acquireModel() {
+        if (!freshModels) {
+            modelLock.readLock().lock();
+        }
+        while (true) {
+            GallerySnapshot snapshot = gallery.get();
+            if (snapshot.getModel().acquire()) {
+                return snapshot;
+            }
+        }
+    }
+
+    private void releaseModel(GallerySnapshot snapshot) {
+        snapshot.getModel().release();
+        if (!freshModels) {
+            modelLock.readLock().unlock();
         }
     }
 
@@ -361,7 +848,7 @@ public class FaceRecognitionService {
             return false;
         }
         String name = modelBaseName();
-        lock.writeLock().lock();
+        trainLock.lock();
         try {
             Optional<TrainedModel> loaded = modelRepository.load(name);
             if (loaded.isEmpty()) {
@@ -372,21 +859,26 @@ public class FaceRecognitionService {
             log.info("Restored {} identities from model '{}'",
                     model.getIdentityCount(), name);
             return true;
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            // A model the classifier cannot take must not stop the application from starting.
             log.warn("Could not load saved model '{}': {}", name, e.getMessage());
             return false;
         } finally {
-            lock.writeLock().unlock();
+            trainLock.unlock();
         }
     }
 
     /** Serialises the current state into a fresh {@link TrainedModel}. */
     public TrainedModel snapshot() {
-        lock.readLock().lock();
+        GallerySnapshot snapshot = acquireModel();
         try {
+            FeatureExtractor extractor = snapshot.getModel().getExtractor();
             TrainedModel.Builder builder = TrainedModel.builder(
                     extractor.getAlgorithmName(), extractor.getVersion());
-            for (Identity identity : identities.values()) {
+            if (extractor instanceof ProjectedFeatureExtractor projected && projected.getProjection() != null) {
+                writeProjection(builder, projected.getProjection());
+            }
+            for (Identity identity : snapshot.getIdentities()) {
                 FeatureVector avg = identity.getAverageFeatureVector();
                 if (avg != null) {
                     builder.addIdentity(identity, avg);
@@ -394,7 +886,7 @@ public class FaceRecognitionService {
             }
             return builder.build();
         } finally {
-            lock.readLock().unlock();
+            releaseModel(snapshot);
         }
     }
 
@@ -410,29 +902,100 @@ public class FaceRecognitionService {
     /** Hot-load a {@link TrainedModel} previously produced by this service. */
     public void loadModel(TrainedModel model) {
         Objects.requireNonNull(model, "model");
-        lock.writeLock().lock();
+        trainLock.lock();
         try {
             restoreFromModel(model);
         } finally {
-            lock.writeLock().unlock();
+            trainLock.unlock();
         }
     }
 
+    // Called with trainLock held.
     private void restoreFromModel(TrainedModel model) {
-        identities.clear();
-        trainingSamples.clear();
-        classifier.clear();
+        // The saved vectors are projected, so probes must be projected the same way.
+        FeatureProjection projection = readProjection(model);
+        updateModel(() -> {
+            // The live extractor is only changed when a projection is loaded into it.
+            RecognitionModel restored = nextModel(projection != null
+                    && gallery.get().getModel().getExtractor() instanceof ProjectedFeatureExtractor);
+            try {
+                loadInto(restored, model, projection);
+            } catch (RuntimeException e) {
+                discard(restored);
+                throw e;
+            }
+        });
+    }
+
+    private void loadInto(RecognitionModel restored, TrainedModel model, FeatureProjection projection) {
+        FeatureExtractor extractor = restored.getExtractor();
+        FaceClassifier classifier = restored.getClassifier();
+        if (projection != null) {
+            if (extractor instanceof ProjectedFeatureExtractor projected) {
+                projected.setProjection(projection);
+            } else {
+                log.warn("Model was saved with a {}-component projection but the extractor does not project;"
+                        + " probes will not match its identities", projection.getOutputDimension());
+            }
+        }
 
+        // A gallery kept outside the classifier, such as one in files, may
+        // already hold this model from the last run: it is kept rather than
+        // rewritten, and a read-only one is left to its writer altogether.
+        boolean shared = classifier.isReadOnly();
+        if (!shared && !(classifier.isPersistent() && holdsOnly(classifier, model))) {
+            classifier.clear();
+        }
+
+        List<Identity> loaded = new ArrayList<>();
         for (TrainedModel.EnrolledIdentity ei : model.getEnrolledIdentities()) {
-            Identity identity = new Identity(ei.getIdentityName());
-            // Preserve the original ID so REST callers can still look things up.
-            identity.setExternalId(ei.getIdentityId());
+            // Keep the saved ID, so REST callers can still look things up and a kept gallery still matches.
+            Identity identity = new Identity(ei.getIdentityId(), ei.getIdentityName(), ei.getIdentityId());
+            identity.setPartition(ei.getPartition());
+            // A saved identity is the average of its samples, so no single face's quality applies.
             identity.enrollSample(ei.getFeatureVector(), 1.0, "imported");
-            identities.put(identity.getId(), identity);
-            classifier.enroll(identity);
+            loaded.add(identity);
+            if (!shared) {
+                classifier.enroll(identity);
+            }
         }
+        classifier.retrain();
+
         // Imported models are ready to classify without a fresh train() call.
-        trained = !identities.isEmpty();
+        enrolLock.lock();
+        try {
+            trainingSamples.clear();
+            publish(gallery.get().withLoaded(loaded, restored));
+        } finally {
+            enrolLock.unlock();
+        }
+    }
+
+    // True if the classifier holds the model's identities and no others.
+    private static boolean holdsOnly(FaceClassifier classifier, TrainedModel model) {
+        if (classifier.getEnrolledCount() != model.getIdentityCount()) {
+            return false;
+        }
+        for (TrainedModel.EnrolledIdentity ei : model.getEnrolledIdentities()) {
+            if (!classifier.isEnrolled(ei.getIdentityId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeProjection(TrainedModel.Builder builder, FeatureProjection projection) {
+        builder.setHyperparameter(PROJECTION_COMPONENTS, projection.getOutputDimension())
+                .eigenVectorsData(projection.getComponents())
+                .meanFaceData(projection.getMean());
+    }
+
+    private static FeatureProjection readProjection(TrainedModel model) {
+        if (model.getHyperparameter(PROJECTION_COMPONENTS) == null
+                || !model.hasEigenVectors() || !model.hasMeanFace()) {
+            return null;
+        }
+        return FeatureProjection.of(model.getMeanFaceData(), model.getEigenVectorsData());
     }
 
     private void persistSafely() {
@@ -525,39 +1088,37 @@ public class FaceRecognitionService {
     // Read access
     // ---------------------------------------------------------------------
 
-    private Identity findIdentityByNameInternal(String name) {
-        for (Identity identity : identities.values()) {
-            if (identity.getName().equals(name)) {
-                return identity;
-            }
-        }
-        return null;
+    /** @return the current gallery snapshot; taken without locking. */
+    public GallerySnapshot getGallerySnapshot() {
+        return gallery.get();
     }
 
     /** @return an unmodifiable snapshot of all enrolled identities. */
     public Collection<Identity> getIdentities() {
-        lock.readLock().lock();
-        try {
-            return Collections.unmodifiableCollection(new ArrayList<>(identities.values()));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return gallery.get().getIdentities();
+    }
+
+    /** @return the enrolled identity, or null; taken without locking. */
+    public Identity getIdentity(String identityId) {
+        return gallery.get().getIdentity(identityId);
     }
 
     public int getIdentityCount() {
-        return identities.size();
+        return gallery.get().size();
     }
 
     public boolean isTrained() {
-        return trained;
+        return gallery.get().isTrained();
     }
 
+    /** @return the extractor of the current model; replaced by training and loading if the service builds new models */
     public FeatureExtractor getExtractor() {
-        return extractor;
+        return gallery.get().getModel().getExtractor();
     }
 
+    /** @return the classifier of the current model; replaced by training and loading if the service builds new models */
     public FaceClassifier getClassifier() {
-        return classifier;
+        return gallery.get().getModel().getClassifier();
     }
 
     public FaceDetector getDetector() {
@@ -575,6 +1136,6 @@ public class FaceRecognitionService {
     @Override
     public String toString() {
         return String.format("FaceRecognitionService{extractor=%s, identities=%d, trained=%s}",
-                extractor.getAlgorithmName(), identities.size(), trained);
+                getExtractor().getAlgorithmName(), getIdentityCount(), isTrained());
     }
 }
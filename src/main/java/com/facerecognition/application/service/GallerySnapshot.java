@@ -0,0 +1,207 @@
+package com.facerecognition.application.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.facerecognition.domain.model.Identity;
+
+/**
+ * Immutable, versioned view of the identities enrolled in a
+ * {@link FaceRecognitionService}, and of the model they are recognised with.
+ *
+ * <p>The service publishes a new snapshot through an atomic reference on
+ * every change, so readers take the current one without locking and keep a
+ * consistent view for as long as they hold it. Every published snapshot has
+ * a higher {@link #getVersion() version} than the one it replaced. The
+ * identities in a snapshot are never modified once it is published; a
+ * change publishes copies of the identities it touches.</p>
+ *
+ * <p>{@link #getModelVersion()} is the version of the snapshot the trained
+ * model was built from. Queued enrolments publish new versions without
+ * retraining, so the two differ until the next training run; recognitions
+ * keep matching against the model in the meantime. Online enrolments and
+ * compaction change the model as they publish, so they keep a trained
+ * snapshot trained.</p>
+ */
+public final class GallerySnapshot {
+
+    private final long version;
+    private final long modelVersion;
+    private final Map<String, Identity> identities;
+    private final RecognitionModel model;
+
+    private GallerySnapshot(long version, long modelVersion, Map<String, Identity> identities,
+                            RecognitionModel model) {
+        this.version = version;
+        this.modelVersion = modelVersion;
+        this.identities = identities;
+        this.model = model;
+    }
+
+    /**
+     * @param model the untrained model of a new service
+     * @return the snapshot of a service with nothing enrolled
+     */
+    static GallerySnapshot empty(RecognitionModel model) {
+        return new GallerySnapshot(0L, 0L, Collections.emptyMap(), model);
+    }
+
+    /**
+     * Returns the next version with an identity added, or with new samples
+     * pending for one already present.
+     *
+     * @param identity the enrolled identity, or a copy replacing it
+     * @return the next snapshot
+     */
+    GallerySnapshot withEnrolled(Identity identity) {
+        Map<String, Identity> next = identities;
+        if (identities.get(identity.getId()) != identity) {
+            next = replaced(List.of(identity));
+        }
+        return new GallerySnapshot(version + 1, modelVersion, next, model);
+    }
+
+    /**
+     * Returns the next version with an identity whose new sample the model
+     * already holds, as online enrolment adds it.
+     *
+     * @param identity a copy of the identity with the new sample
+     * @return the next snapshot; trained if this one was or held no identities
+     */
+    GallerySnapshot withOnlineEnrolled(Identity identity) {
+        GallerySnapshot next = withEnrolled(identity);
+        if (!isTrained() && !identities.isEmpty()) {
+            return next;
+        }
+        return new GallerySnapshot(next.version, next.version, next.identities, model);
+    }
+
+    /**
+     * Returns the next version with compacted copies of some identities,
+     * which the model already holds.
+     *
+     * @param compacted the compacted copies
+     * @return the next snapshot; trained if this one was
+     */
+    GallerySnapshot withCompacted(Collection<Identity> compacted) {
+        long next = version + 1;
+        return new GallerySnapshot(next, isTrained() ? next : modelVersion, replaced(compacted), model);
+    }
+
+    /**
+     * Returns the next version, recording that a model was trained on {@code trainedOn}.
+     *
+     * @param trainedOn the snapshot the model was built from
+     * @param trained copies of the identities of {@code trainedOn}, holding the samples the model was built from
+     * @param trainedModel the model
+     * @return the next snapshot; trained unless something was enrolled since {@code trainedOn}
+     */
+    GallerySnapshot withModel(GallerySnapshot trainedOn, Collection<Identity> trained, RecognitionModel trainedModel) {
+        long trainedVersion = trainedOn.version == version ? version + 1 : trainedOn.version;
+        return new GallerySnapshot(version + 1, trainedVersion, replaced(trained), trainedModel);
+    }
+
+    /**
+     * Returns the next version, replacing every identity with those of a loaded model.
+     *
+     * @param loaded the loaded identities
+     * @param loadedModel the model holding them
+     * @return the next snapshot; trained unless {@code loaded} is empty
+     */
+    GallerySnapshot withLoaded(Collection<Identity> loaded, RecognitionModel loadedModel) {
+        LinkedHashMap<String, Identity> copy = new LinkedHashMap<>();
+        for (Identity identity : loaded) {
+            copy.put(identity.getId(), identity);
+        }
+        return new GallerySnapshot(version + 1, copy.isEmpty() ? 0L : version + 1,
+                Collections.unmodifiableMap(copy), loadedModel);
+    }
+
+    // The identities with each of the given ones added, or replacing the identity of the same ID.
+    private Map<String, Identity> replaced(Collection<Identity> replacements) {
+        LinkedHashMap<String, Identity> copy = new LinkedHashMap<>(identities);
+        for (Identity identity : replacements) {
+            copy.put(identity.getId(), identity);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /** @return the model this snapshot is recognised with */
+    RecognitionModel getModel() {
+        return model;
+    }
+
+    /** @return the version of this snapshot, 0 before anything was enrolled */
+    public long getVersion() {
+        return version;
+    }
+
+    /** @return the version the trained model was built from, 0 if there is none */
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    /** @return true if a trained model is available for recognition */
+    public boolean hasModel() {
+        return modelVersion > 0;
+    }
+
+    /** @return true if the model was built from exactly this snapshot */
+    public boolean isTrained() {
+        return hasModel() && modelVersion == version;
+    }
+
+    /** @return the identities in enrolment order, unmodifiable */
+    public Collection<Identity> getIdentities() {
+        return identities.values();
+    }
+
+    /**
+     * @param identityId the identity ID
+     * @return the identity, or null if it is not enrolled
+     */
+    public Identity getIdentity(String identityId) {
+        return identities.get(identityId);
+    }
+
+    /**
+     * @param name the identity name
+     * @return the first identity with that name, or null
+     */
+    public Identity findByName(String name) {
+        for (Identity identity : identities.values()) {
+            if (identity.getName().equals(name)) {
+                return identity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name the identity name
+     * @param partition the partition to look in
+     * @return the first identity with that name in the partition, or null
+     */
+    public Identity findByName(String name, String partition) {
+        for (Identity identity : identities.values()) {
+            if (identity.getName().equals(name) && identity.getPartition().equals(partition)) {
+                return identity;
+            }
+        }
+        return null;
+    }
+
+    /** @return the number of enrolled identities */
+    public int size() {
+        return identities.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GallerySnapshot{version=%d, modelVersion=%d, identities=%d}",
+                version, modelVersion, identities.size());
+    }
+}
@@ -0,0 +1,87 @@
+package com.facerecognition.application.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.facerecognition.domain.service.FaceClassifier;
+import com.facerecognition.domain.service.FeatureExtractor;
+
+/**
+ * The extractor and classifier a {@link GallerySnapshot} is recognised with.
+ *
+ * <p>A recognition {@linkplain #acquire() leases} the model of the snapshot
+ * it starts from and {@linkplain #release() releases} it when done, so a
+ * training run can publish a new model while recognitions finish on the old
+ * one. The published snapshot holds one lease of its own, given up by
+ * {@link #retire()} once a newer model replaces it. A classifier built for
+ * this model alone is closed when the last lease is released, if it holds
+ * resources that need closing.</p>
+ */
+final class RecognitionModel {
+
+    private static final Logger log = LoggerFactory.getLogger(RecognitionModel.class);
+
+    private final FeatureExtractor extractor;
+    private final FaceClassifier classifier;
+    private final boolean owned;
+    // One for the publishing snapshot plus one per recognition in flight; 0 once retired and drained.
+    private final AtomicInteger leases = new AtomicInteger(1);
+    private final AtomicBoolean retired = new AtomicBoolean();
+
+    /**
+     * @param extractor the feature extractor
+     * @param classifier the classifier
+     * @param owned whether the classifier was built for this model alone and may be closed with it
+     */
+    RecognitionModel(FeatureExtractor extractor, FaceClassifier classifier, boolean owned) {
+        this.extractor = extractor;
+        this.classifier = classifier;
+        this.owned = owned;
+    }
+
+    FeatureExtractor getExtractor() {
+        return extractor;
+    }
+
+    FaceClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Takes a lease on this model.
+     *
+     * @return false if the model was retired and every lease released, so it can no longer be used
+     */
+    boolean acquire() {
+        while (true) {
+            int current = leases.get();
+            if (current == 0) {
+                return false;
+            }
+            if (leases.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Gives up a lease taken by {@link #acquire()}. */
+    void release() {
+        if (leases.decrementAndGet() == 0 && owned && classifier instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Could not close retired classifier {}: {}", classifier.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /** Gives up the publishing snapshot's lease; called once a newer model is published. */
+    void retire() {
+        if (retired.compareAndSet(false, true)) {
+            release();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.util.function.Supplier;
  *   <li><b>Algorithm Comparison</b>: Compares multiple algorithms on same data</li>
  *   <li><b>Condition Testing</b>: Tests under various conditions (pose, lighting, etc.)</li>
  *   <li><b>Threshold Analysis</b>: Evaluates performance across different thresholds</li>
+ *   <li><b>Tolerance Check</b>: Bounds the accuracy an approximate classifier may lose against an exact one</li>
  * </ul>
  *
  * <h3>Usage Example:</h3>
@@ -61,6 +62,7 @@ public class AccuracyBenchmark {
         private long randomSeed = 42;
         private boolean verbose = true;
         private String benchmarkName = "Accuracy Benchmark";
+        private double accuracyTolerance = 0.01;
 
         public double getTrainRatio() { return trainRatio; }
         public BenchmarkConfig setTrainRatio(double r) { this.trainRatio = r; return this; }
@@ -88,6 +90,9 @@ public class AccuracyBenchmark {
 
         public String getBenchmarkName() { return benchmarkName; }
         public BenchmarkConfig setBenchmarkName(String n) { this.benchmarkName = n; return this; }
+
+        public double getAccuracyTolerance() { return accuracyTolerance; }
+        public BenchmarkConfig setAccuracyTolerance(double t) { this.accuracyTolerance = t; return this; }
     }
 
     /**
@@ -158,6 +163,43 @@ public class AccuracyBenchmark {
         public boolean isFalseNegative() { return samePerson && !predictedSame; }
     }
 
+    /**
+     * Accuracy of a candidate classifier measured against a baseline on the same split.
+     */
+    public static class ToleranceCheck {
+        private final BenchmarkResult baseline;
+        private final BenchmarkResult candidate;
+        private final double tolerance;
+
+        public ToleranceCheck(BenchmarkResult baseline, BenchmarkResult candidate, double tolerance) {
+            this.baseline = baseline;
+            this.candidate = candidate;
+            this.tolerance = tolerance;
+        }
+
+        public BenchmarkResult getBaseline() { return baseline; }
+        public BenchmarkResult getCandidate() { return candidate; }
+        public double getTolerance() { return tolerance; }
+
+        /**
+         * @return baseline accuracy minus candidate accuracy; negative if the candidate did better
+         */
+        public double getAccuracyLoss() {
+            return baseline.getAccuracy() - candidate.getAccuracy();
+        }
+
+        public boolean isWithinTolerance() {
+            return getAccuracyLoss() <= tolerance;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ToleranceCheck{baseline=%.4f, candidate=%.4f, loss=%.4f, tolerance=%.4f, %s}",
+                baseline.getAccuracy(), candidate.getAccuracy(), getAccuracyLoss(), tolerance,
+                isWithinTolerance() ? "PASS" : "FAIL");
+        }
+    }
+
     /**
      * Builder for AccuracyBenchmark.
      */
@@ -360,6 +402,52 @@ public class AccuracyBenchmark {
         return results;
     }
 
+    /**
+     * Runs the same split through a baseline and a candidate classifier and
+     * checks that the candidate loses at most
+     * {@link BenchmarkConfig#getAccuracyTolerance()} accuracy. Typical use is
+     * a compressed or approximate gallery against the exact one, e.g. a
+     * {@code GalleryPrecision.INT8} KNN against the default.
+     *
+     * @param extractorSupplier supplies a fresh extractor for each run
+     * @param baseline the reference classifier
+     * @param candidate the classifier under test
+     * @param dataset dataset to evaluate
+     * @param config benchmark configuration, including the tolerance
+     * @return both results and the verdict
+     */
+    public static ToleranceCheck checkTolerance(
+            Supplier<FeatureExtractor> extractorSupplier,
+            FaceClassifier baseline,
+            FaceClassifier candidate,
+            DatasetLoader.LoadedDataset dataset,
+            BenchmarkConfig config) {
+
+        BenchmarkResult baselineResult = new AccuracyBenchmark.Builder()
+            .extractor(extractorSupplier.get())
+            .classifier(baseline)
+            .dataset(dataset)
+            .config(config)
+            .name("Baseline " + baseline.getName() + " on " + dataset.getName())
+            .build()
+            .run();
+
+        BenchmarkResult candidateResult = new AccuracyBenchmark.Builder()
+            .extractor(extractorSupplier.get())
+            .classifier(candidate)
+            .dataset(dataset)
+            .config(config)
+            .name("Candidate " + candidate.getName() + " on " + dataset.getName())
+            .build()
+            .run();
+
+        ToleranceCheck check = new ToleranceCheck(baselineResult, candidateResult, config.getAccuracyTolerance());
+        if (config.isVerbose()) {
+            System.out.printf("  %s%n", check);
+        }
+        return check;
+    }
+
     /**
      * Tests accuracy under different conditions.
      *
@@ -524,6 +612,7 @@ public class AccuracyBenchmark {
         for (Identity identity : identities.values()) {
             classifier.enroll(identity);
         }
+        classifier.retrain();
     }
 
     /**
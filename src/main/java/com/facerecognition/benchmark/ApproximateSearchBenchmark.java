@@ -0,0 +1,314 @@
+package com.facerecognition.benchmark;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier;
+import com.facerecognition.infrastructure.classification.CompressedGallery;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.*;
+
+/**
+ * Measures how closely an approximate classifier tracks an exact one.
+ *
+ * <p>Both classifiers are enrolled with the same gallery and retrained, then
+ * asked for the nearest identities of every probe. The benchmark reports:</p>
+ * <ul>
+ *   <li><b>Recall@K</b>: fraction of probes whose exact nearest identity is
+ *       among the approximate classifier's top {@code K}</li>
+ *   <li><b>Latency</b>: per-probe matching time of each classifier</li>
+ *   <li><b>Compression</b>: how many times smaller the gallery is in the
+ *       heap once the approximate classifier holds it, measured rather than
+ *       reported by the classifier, and the encoded size a
+ *       {@link CompressedGallery} reports for itself</li>
+ * </ul>
+ *
+ * <p>The compression ratio compares the gallery's samples as
+ * {@code double[]} with the heap they take up after the approximate
+ * classifier has been enrolled and retrained: the samples' own arrays plus
+ * whatever the classifier adds, less whatever it offloads. A classifier
+ * that keeps a quantised copy next to the original vectors therefore scores
+ * below 1. The measurement compares used heap after a full collection, so
+ * it is meaningful only for galleries of a few megabytes or more, and only
+ * if nothing else allocates on the heap meanwhile.</p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>{@code
+ * ApproximateSearchBenchmark.Result result = ApproximateSearchBenchmark.builder()
+ *     .exact(new KNNClassifier(config))
+ *     .approximate(new PQClassifier(config))
+ *     .gallery(identities)
+ *     .probes(probes)
+ *     .k(10)
+ *     .build()
+ *     .run();
+ *
+ * System.out.println(result);
+ * }</pre>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see CompressedGallery
+ */
+public class ApproximateSearchBenchmark {
+
+    private final FaceClassifier exact;
+    private final FaceClassifier approximate;
+    private final List<Identity> gallery;
+    private final List<FeatureVector> probes;
+    private final int k;
+    private final int warmupRuns;
+    private final boolean verbose;
+
+    /**
+     * Outcome of an {@link ApproximateSearchBenchmark} run.
+     */
+    public static class Result {
+        private final String classifierName;
+        private final int k;
+        private final int probeCount;
+        private final double recallAtK;
+        private final double recallAt1;
+        private final BenchmarkResult.TimingStats exactTime;
+        private final BenchmarkResult.TimingStats approximateTime;
+        private final long encodedBytes;
+        private final double compressionRatio;
+
+        Result(String classifierName, int k, int probeCount, double recallAtK, double recallAt1,
+               BenchmarkResult.TimingStats exactTime, BenchmarkResult.TimingStats approximateTime,
+               long encodedBytes, double compressionRatio) {
+            this.classifierName = classifierName;
+            this.k = k;
+            this.probeCount = probeCount;
+            this.recallAtK = recallAtK;
+            this.recallAt1 = recallAt1;
+            this.exactTime = exactTime;
+            this.approximateTime = approximateTime;
+            this.encodedBytes = encodedBytes;
+            this.compressionRatio = compressionRatio;
+        }
+
+        public String getClassifierName() { return classifierName; }
+        public int getK() { return k; }
+        public int getProbeCount() { return probeCount; }
+        public double getRecallAtK() { return recallAtK; }
+        public double getRecallAt1() { return recallAt1; }
+        public BenchmarkResult.TimingStats getExactTime() { return exactTime; }
+        public BenchmarkResult.TimingStats getApproximateTime() { return approximateTime; }
+
+        /**
+         * @return the encoded gallery size in bytes, or 0 if the classifier is not compressed
+         */
+        public long getEncodedBytes() { return encodedBytes; }
+
+        /**
+         * @return the gallery's size as {@code double[]} divided by its measured heap
+         *         footprint once the approximate classifier is enrolled
+         */
+        public double getCompressionRatio() { return compressionRatio; }
+
+        /**
+         * @return exact mean latency divided by approximate mean latency
+         */
+        public double getSpeedup() {
+            return approximateTime.getMean() > 0 ? exactTime.getMean() / approximateTime.getMean() : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ApproximateSearch{%s, recall@1=%.4f, recall@%d=%.4f, speedup=%.2fx, " +
+                    "compression=%.1fx, probes=%d}",
+                classifierName, recallAt1, k, recallAtK, getSpeedup(), compressionRatio, probeCount);
+        }
+    }
+
+    /**
+     * Builder for ApproximateSearchBenchmark.
+     */
+    public static class Builder {
+        private FaceClassifier exact;
+        private FaceClassifier approximate;
+        private List<Identity> gallery;
+        private List<FeatureVector> probes;
+        private int k = 10;
+        private int warmupRuns = 10;
+        private boolean verbose = true;
+
+        public Builder exact(FaceClassifier exact) {
+            this.exact = exact;
+            return this;
+        }
+
+        public Builder approximate(FaceClassifier approximate) {
+            this.approximate = approximate;
+            return this;
+        }
+
+        public Builder gallery(List<Identity> gallery) {
+            this.gallery = gallery;
+            return this;
+        }
+
+        public Builder probes(List<FeatureVector> probes) {
+            this.probes = probes;
+            return this;
+        }
+
+        public Builder k(int k) {
+            this.k = k;
+            return this;
+        }
+
+        public Builder warmupRuns(int warmupRuns) {
+            this.warmupRuns = warmupRuns;
+            return this;
+        }
+
+        public Builder verbose(boolean verbose) {
+            this.verbose = verbose;
+            return this;
+        }
+
+        public ApproximateSearchBenchmark build() {
+            Objects.requireNonNull(exact, "Exact classifier is required");
+            Objects.requireNonNull(approximate, "Approximate classifier is required");
+            Objects.requireNonNull(gallery, "Gallery is required");
+            Objects.requireNonNull(probes, "Probes are required");
+            if (k < 1) {
+                throw new IllegalArgumentException("k must be at least 1: " + k);
+            }
+            return new ApproximateSearchBenchmark(this);
+        }
+    }
+
+    private ApproximateSearchBenchmark(Builder builder) {
+        this.exact = builder.exact;
+        this.approximate = builder.approximate;
+        this.gallery = new ArrayList<>(builder.gallery);
+        this.probes = new ArrayList<>(builder.probes);
+        this.k = builder.k;
+        this.warmupRuns = builder.warmupRuns;
+        this.verbose = builder.verbose;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Enrols the gallery into both classifiers and compares their rankings.
+     *
+     * @return the benchmark result
+     */
+    public Result run() {
+        if (verbose) {
+            System.out.printf("Starting approximate search benchmark: %s vs %s%n",
+                approximate.getName(), exact.getName());
+            System.out.printf("  Gallery: %d identities, Probes: %d, K=%d%n", gallery.size(), probes.size(), k);
+        }
+
+        // The approximate classifier goes first, so its footprint is measured
+        // against samples nothing else has copied yet.
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        approximate.clear();
+        long rawBytes = 0;
+        for (Identity identity : gallery) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                rawBytes += (long) sample.getFeatures().getDimension() * Double.BYTES;
+            }
+        }
+        long heapBefore = usedHeapAfterCollection(memoryBean);
+        enrollAll(approximate);
+        if (!probes.isEmpty()) {
+            // Some classifiers build their gallery on the first probe rather than on retrain.
+            approximate.getTopMatches(probes.get(0), k);
+        }
+        long heapAfter = usedHeapAfterCollection(memoryBean);
+        long footprint = Math.max(1L, rawBytes + heapAfter - heapBefore);
+        double compressionRatio = (double) rawBytes / footprint;
+        enrollAll(exact);
+
+        for (int i = 0; i < warmupRuns && !probes.isEmpty(); i++) {
+            FeatureVector probe = probes.get(i % probes.size());
+            exact.getTopMatches(probe, 1);
+            approximate.getTopMatches(probe, k);
+        }
+
+        List<Double> exactTimes = new ArrayList<>();
+        List<Double> approximateTimes = new ArrayList<>();
+        int hitsAtK = 0;
+        int hitsAt1 = 0;
+        int scored = 0;
+
+        for (FeatureVector probe : probes) {
+            long start = System.nanoTime();
+            RecognitionResult truth = exact.getTopMatches(probe, 1);
+            long middle = System.nanoTime();
+            RecognitionResult candidate = approximate.getTopMatches(probe, k);
+            long end = System.nanoTime();
+            exactTimes.add((middle - start) / 1_000_000.0);
+            approximateTimes.add((end - middle) / 1_000_000.0);
+
+            Optional<String> expected = truth.getBestMatch().map(m -> m.getIdentity().getId());
+            if (expected.isEmpty()) {
+                continue;
+            }
+            scored++;
+            List<String> returned = new ArrayList<>();
+            candidate.getBestMatch().ifPresent(m -> returned.add(m.getIdentity().getId()));
+            for (RecognitionResult.MatchResult alternative : candidate.getAlternatives()) {
+                returned.add(alternative.getIdentity().getId());
+            }
+            if (returned.contains(expected.get())) {
+                hitsAtK++;
+            }
+            if (!returned.isEmpty() && returned.get(0).equals(expected.get())) {
+                hitsAt1++;
+            }
+        }
+
+        long encodedBytes = 0;
+        if (approximate instanceof CompressedGallery) {
+            encodedBytes = ((CompressedGallery) approximate).getEncodedBytes();
+        }
+
+        Result result = new Result(approximate.getName(), k, scored,
+            scored > 0 ? (double) hitsAtK / scored : 0.0,
+            scored > 0 ? (double) hitsAt1 / scored : 0.0,
+            BenchmarkResult.TimingStats.fromValues(exactTimes),
+            BenchmarkResult.TimingStats.fromValues(approximateTimes),
+            encodedBytes, compressionRatio);
+
+        if (verbose) {
+            System.out.println("  " + result);
+        }
+        return result;
+    }
+
+    private void enrollAll(FaceClassifier classifier) {
+        classifier.clear();
+        for (Identity identity : gallery) {
+            classifier.enroll(identity);
+        }
+        classifier.retrain();
+    }
+
+    private static long usedHeapAfterCollection(MemoryMXBean memoryBean) {
+        System.gc();
+        System.gc();
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+}
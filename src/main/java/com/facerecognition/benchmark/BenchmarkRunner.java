@@ -35,7 +35,7 @@ import java.util.function.Supplier;
  *   --dataset PATH       Path to dataset directory
  *   --format FORMAT      Dataset format: orl, yale, lfw, custom (default: custom)
  *   --output DIR         Output directory for reports (default: ./benchmark_results)
- *   --algorithms NAMES   Comma-separated list of algorithms: eigenfaces,fisherfaces,lbph (default: all)
+ *   --algorithms NAMES   Comma-separated list of algorithms: eigenfaces,fisherfaces,lbph,lbph-uniform (default: all)
  *   --type TYPE          Benchmark type: accuracy, performance, crossval, all (default: all)
  *   --folds N            Number of folds for cross-validation (default: 5)
  *   --train-ratio R      Training ratio for train/test split (default: 0.7)
@@ -345,6 +345,7 @@ public class BenchmarkRunner {
             algorithms.put("Eigenfaces", () -> new EigenfacesExtractor(components));
             algorithms.put("Fisherfaces", () -> new FisherfacesExtractor(components));
             algorithms.put("LBPH", LBPHExtractor::new);
+            algorithms.put("LBPH-Uniform", () -> new LBPHExtractor(8, 8, 1, 8, true));
             return this;
         }
 
@@ -737,6 +738,9 @@ public class BenchmarkRunner {
                         case "lbph":
                             builder.addAlgorithm("LBPH", LBPHExtractor::new);
                             break;
+                        case "lbph-uniform":
+                            builder.addAlgorithm("LBPH-Uniform", () -> new LBPHExtractor(8, 8, 1, 8, true));
+                            break;
                         default:
                             System.err.println("Unknown algorithm: " + alg);
                     }
@@ -852,7 +856,7 @@ public class BenchmarkRunner {
             "Options:\n" +
             "  --format FORMAT      Dataset format: orl, yale, lfw, custom (default: custom)\n" +
             "  --output DIR         Output directory for reports (default: ./benchmark_results)\n" +
-            "  --algorithms NAMES   Comma-separated list: eigenfaces,fisherfaces,lbph (default: all)\n" +
+            "  --algorithms NAMES   Comma-separated list: eigenfaces,fisherfaces,lbph,lbph-uniform (default: all)\n" +
             "  --type TYPE          Benchmark type: accuracy, performance, cross_validation, all (default: all)\n" +
             "  --folds N            Number of folds for cross-validation (default: 5)\n" +
             "  --train-ratio R      Training ratio for train/test split (default: 0.7)\n" +
@@ -618,6 +618,7 @@ public class CrossValidator {
         for (Identity identity : identities.values()) {
             classifier.enroll(identity);
         }
+        classifier.retrain();
 
         long trainTime = System.currentTimeMillis() - trainStart;
 
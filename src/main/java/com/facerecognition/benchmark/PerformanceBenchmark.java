@@ -431,6 +431,7 @@ public class PerformanceBenchmark {
             for (Identity identity : identities.values()) {
                 classifier.enroll(identity);
             }
+            classifier.retrain();
 
             // Measure matching time
             List<Double> times = new ArrayList<>();
@@ -497,6 +498,7 @@ public class PerformanceBenchmark {
         for (Identity identity : identities.values()) {
             classifier.enroll(identity);
         }
+        classifier.retrain();
 
         forceGarbageCollection();
         long afterEnroll = getCurrentMemoryUsage();
@@ -627,6 +629,7 @@ public class PerformanceBenchmark {
         for (Identity identity : identities.values()) {
             classifier.enroll(identity);
         }
+        classifier.retrain();
     }
 
     /**
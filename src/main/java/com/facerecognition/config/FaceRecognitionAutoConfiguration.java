@@ -7,26 +7,41 @@ import java.nio.file.Paths;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.facerecognition.application.service.FaceRecognitionService;
+import com.facerecognition.config.FaceRecognitionProperties.ClassifierType;
 import com.facerecognition.config.FaceRecognitionProperties.DetectorType;
 import com.facerecognition.config.FaceRecognitionProperties.ExtractorType;
+import com.facerecognition.domain.model.DistanceKernels;
 import com.facerecognition.domain.service.FaceClassifier;
 import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
 import com.facerecognition.domain.service.FaceDetector;
 import com.facerecognition.domain.service.FeatureExtractor;
 import com.facerecognition.domain.service.FeatureExtractor.ExtractorConfig;
+import com.facerecognition.infrastructure.classification.AbstractFaceClassifier;
+import com.facerecognition.infrastructure.classification.CascadeClassifier;
+import com.facerecognition.infrastructure.classification.HNSWClassifier;
+import com.facerecognition.infrastructure.classification.IVFClassifier;
 import com.facerecognition.infrastructure.classification.KNNClassifier;
+import com.facerecognition.infrastructure.classification.LSHClassifier;
+import com.facerecognition.infrastructure.classification.MappedGalleryClassifier;
+import com.facerecognition.infrastructure.classification.PQClassifier;
+import com.facerecognition.infrastructure.classification.PartitionedClassifier;
+import com.facerecognition.infrastructure.classification.VPTreeClassifier;
 import com.facerecognition.infrastructure.detection.HaarCascadeFaceDetector;
 import com.facerecognition.infrastructure.detection.SkinColorDetector;
+import com.facerecognition.infrastructure.extraction.CascadeFeatureExtractor;
 import com.facerecognition.infrastructure.extraction.EigenfacesExtractor;
 import com.facerecognition.infrastructure.extraction.FisherfacesExtractor;
 import com.facerecognition.infrastructure.extraction.LBPHExtractor;
 import com.facerecognition.infrastructure.extraction.OnnxDeepFeatureExtractor;
+import com.facerecognition.infrastructure.extraction.ProjectedFeatureExtractor;
 import com.facerecognition.infrastructure.persistence.FileModelRepository;
 import com.facerecognition.infrastructure.persistence.ModelRepository;
 
@@ -72,47 +87,124 @@ public class FaceRecognitionAutoConfiguration {
     @Bean
     @ConditionalOnMissingBean
     public FeatureExtractor featureExtractor(FaceRecognitionProperties props) {
+        log.info("Initializing feature extractor: algorithm={}, numComponents={}, targetSize={}x{}",
+                props.getExtraction().getAlgorithm(), props.getExtraction().getNumComponents(),
+                props.getImage().getTargetWidth(), props.getImage().getTargetHeight());
+        return createExtractor(props);
+    }
+
+    private static FeatureExtractor createExtractor(FaceRecognitionProperties props) {
         ExtractorType algorithm = props.getExtraction().getAlgorithm();
         int numComponents = props.getExtraction().getNumComponents();
         int width = props.getImage().getTargetWidth();
         int height = props.getImage().getTargetHeight();
 
-        log.info("Initializing feature extractor: algorithm={}, numComponents={}, targetSize={}x{}",
-                algorithm, numComponents, width, height);
-
         ExtractorConfig config = new ExtractorConfig()
                 .setNumComponents(numComponents)
                 .setImageWidth(width)
-                .setImageHeight(height);
+                .setImageHeight(height)
+                .setFeaturePrecision(props.getExtraction().getPrecision());
 
         switch (algorithm) {
             case FISHERFACES:
                 return new FisherfacesExtractor(config);
             case LBPH:
-                FaceRecognitionProperties.Extraction.Lbph lbph = props.getExtraction().getLbph();
-                return new LBPHExtractor(lbph.getGridX(), lbph.getGridY(), lbph.getRadius(), lbph.getNeighbors());
+                LBPHExtractor lbphExtractor = createLbphExtractor(props);
+                int pcaComponents = props.getExtraction().getLbph().getPcaComponents();
+                if (pcaComponents <= 0) {
+                    return lbphExtractor;
+                }
+                return new ProjectedFeatureExtractor(lbphExtractor, pcaComponents);
+            case CASCADE:
+                return new CascadeFeatureExtractor(new EigenfacesExtractor(config), createLbphExtractor(props));
             case ONNX:
                 FaceRecognitionProperties.Extraction.Onnx onnx = props.getExtraction().getOnnx();
-                return new OnnxDeepFeatureExtractor(onnx.getModelPath(), onnx.getEmbeddingDimension(),
-                        onnx.getInputSize(), onnx.getProvider());
+                OnnxDeepFeatureExtractor onnxExtractor = new OnnxDeepFeatureExtractor(onnx.getModelPath(),
+                        onnx.getEmbeddingDimension(), onnx.getInputSize(), onnx.getProvider());
+                onnxExtractor.getConfig().setFeaturePrecision(props.getExtraction().getPrecision());
+                return onnxExtractor;
             case EIGENFACES:
             default:
                 return new EigenfacesExtractor(config);
         }
     }
 
+    private static LBPHExtractor createLbphExtractor(FaceRecognitionProperties props) {
+        FaceRecognitionProperties.Extraction.Lbph lbph = props.getExtraction().getLbph();
+        LBPHExtractor lbphExtractor = new LBPHExtractor(lbph.getGridX(), lbph.getGridY(),
+                lbph.getRadius(), lbph.getNeighbors(), lbph.isUniform());
+        // Histograms stay sparse in double precision; the setting applies to projected vectors
+        lbphExtractor.getConfig().setFeaturePrecision(props.getExtraction().getPrecision());
+        return lbphExtractor;
+    }
+
     @Bean
     @ConditionalOnMissingBean
-    public FaceClassifier faceClassifier(FaceRecognitionProperties props) {
+    public FaceClassifier faceClassifier(FaceRecognitionProperties props, FeatureExtractor extractor) {
+        log.info("Initializing classifier: {} k={} metric={} partitioned={} kernels={}",
+                props.getClassification().getAlgorithm(), props.getClassification().getKNeighbors(),
+                props.getClassification().getDistanceMetric(), props.getClassification().isPartitioned(),
+                DistanceKernels.implementationName());
+        return createClassifier(props, extractor);
+    }
+
+    private static FaceClassifier createClassifier(FaceRecognitionProperties props, FeatureExtractor extractor) {
         ClassifierConfig config = new ClassifierConfig()
                 .setThreshold(props.getRecognition().getThreshold())
                 .setK(props.getClassification().getKNeighbors())
                 .setMetric(props.getClassification().getDistanceMetric())
                 .setUseAverageFeatures(props.getClassification().isUseAverageFeatures());
 
-        log.info("Initializing classifier: KNN k={} metric={}",
-                config.getK(), config.getMetric());
-        return new KNNClassifier(config);
+        ClassifierType algorithm = props.getClassification().getAlgorithm();
+        if (props.getClassification().isPartitioned()) {
+            // Every partition would share the one segment directory.
+            if (algorithm == ClassifierType.MAPPED) {
+                throw new IllegalStateException(
+                        "classification.partitioned needs an in-memory gallery; it cannot be used with MAPPED");
+            }
+            return new PartitionedClassifier(config, () -> createClassifier(props, config, algorithm, extractor));
+        }
+        return createClassifier(props, config, algorithm, extractor);
+    }
+
+    // A cascade extractor's vectors are shortlisted by the configured algorithm and re-ranked by the cascade.
+    private static AbstractFaceClassifier createClassifier(FaceRecognitionProperties props, ClassifierConfig config,
+                                                           ClassifierType algorithm, FeatureExtractor extractor) {
+        if (!(extractor instanceof CascadeFeatureExtractor cascade)) {
+            return createClassifier(props, config, algorithm);
+        }
+        FaceRecognitionProperties.Classification.Cascade settings = props.getClassification().getCascade();
+        ClassifierConfig coarseConfig = new ClassifierConfig().setMetric(settings.getCoarseMetric());
+        return new CascadeClassifier(config, cascade::getCoarseDimension, settings.getShortlist(),
+                createClassifier(props, coarseConfig, algorithm));
+    }
+
+    private static AbstractFaceClassifier createClassifier(FaceRecognitionProperties props, ClassifierConfig config,
+                                                           ClassifierType algorithm) {
+        switch (algorithm) {
+            case HNSW:
+                FaceRecognitionProperties.Classification.Hnsw hnsw = props.getClassification().getHnsw();
+                return new HNSWClassifier(config, hnsw.getM(), hnsw.getEfConstruction(), hnsw.getEfSearch());
+            case IVF:
+                FaceRecognitionProperties.Classification.Ivf ivf = props.getClassification().getIvf();
+                return new IVFClassifier(config, ivf.getNlist(), ivf.getNprobe(), ivf.getIterations());
+            case PQ:
+                FaceRecognitionProperties.Classification.Pq pq = props.getClassification().getPq();
+                Path storeDirectory = pq.getRerankStore().isBlank() ? null : Paths.get(pq.getRerankStore());
+                return new PQClassifier(config, pq.getSubspaces(), pq.getRerank(), pq.getIterations(), storeDirectory);
+            case LSH:
+                FaceRecognitionProperties.Classification.Lsh lsh = props.getClassification().getLsh();
+                return new LSHClassifier(config, lsh.getBits(), lsh.getCandidates());
+            case VPTREE:
+                return new VPTreeClassifier(config, props.getClassification().getVpTree().getLeafSize());
+            case MAPPED:
+                FaceRecognitionProperties.Classification.Mapped mapped = props.getClassification().getMapped();
+                return new MappedGalleryClassifier(config, Paths.get(mapped.getDirectory()), mapped.isReadOnly());
+            case KNN:
+            default:
+                return new KNNClassifier(config, props.getClassification().getGalleryPrecision(),
+                    props.getClassification().getParallelThreshold());
+        }
     }
 
     @Bean
@@ -135,7 +227,8 @@ public class FaceRecognitionAutoConfiguration {
             FaceDetector detector,
             FeatureExtractor extractor,
             FaceClassifier classifier,
-            ModelRepository modelRepository) {
+            ModelRepository modelRepository,
+            ConfigurableListableBeanFactory beanFactory) {
 
         FaceRecognitionService.Config config = new FaceRecognitionService.Config()
                 .setRecognitionThreshold(props.getRecognition().getThreshold())
@@ -147,17 +240,43 @@ public class FaceRecognitionAutoConfiguration {
                 .setHistogramEqualization(props.getImage().isHistogramEqualization())
                 .setAutoSave(props.getModel().isAutoSave())
                 .setAutoLoad(props.getModel().isAutoLoad())
-                .setModelFileName(Paths.get(props.getModel().getSavePath()).getFileName().toString());
+                .setModelFileName(Paths.get(props.getModel().getSavePath()).getFileName().toString())
+                .setMaxPrototypes(props.getCompaction().isEnabled() ? props.getCompaction().getMaxPrototypes() : 0)
+                .setOnlineEnrollment(props.getEnrollment().isOnline())
+                .setFreezeProjection(props.getEnrollment().isFreezeProjection());
 
         log.info("Initializing FaceRecognitionService with extractor={} classifier={}",
                 extractor.getAlgorithmName(), classifier.getName());
 
-        return FaceRecognitionService.builder()
+        FaceRecognitionService.Builder builder = FaceRecognitionService.builder()
                 .detector(detector)
                 .extractor(extractor)
                 .classifier(classifier)
                 .modelRepository(modelRepository)
-                .config(config)
-                .build();
+                .config(config);
+        // Training builds each new model from the same settings, unless an embedder supplied its own beans.
+        // Every MAPPED classifier maps the one segment directory, so that one is retrained in place.
+        if (isOwnBean(beanFactory, FeatureExtractor.class, "featureExtractor")
+                && isOwnBean(beanFactory, FaceClassifier.class, "faceClassifier")
+                && props.getClassification().getAlgorithm() != ClassifierType.MAPPED) {
+            builder.extractorFactory(() -> createExtractor(props))
+                    .classifierFactory(next -> createClassifier(props, next));
+        }
+        return builder.build();
+    }
+
+    // True if the only bean of the type is the one this class declares with the given method.
+    private static boolean isOwnBean(ConfigurableListableBeanFactory beanFactory, Class<?> type, String method) {
+        String[] names = beanFactory.getBeanNamesForType(type);
+        if (names.length != 1) {
+            return false;
+        }
+        BeanDefinition definition = beanFactory.getMergedBeanDefinition(names[0]);
+        String factoryBean = definition.getFactoryBeanName();
+        if (factoryBean == null || !method.equals(definition.getFactoryMethodName())) {
+            return false;
+        }
+        Class<?> declaring = beanFactory.getType(factoryBean);
+        return declaring != null && FaceRecognitionAutoConfiguration.class.isAssignableFrom(declaring);
     }
 }
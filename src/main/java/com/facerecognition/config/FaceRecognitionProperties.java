@@ -2,7 +2,9 @@ package com.facerecognition.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import com.facerecognition.domain.model.FeaturePrecision;
 import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+import com.facerecognition.infrastructure.classification.GalleryPrecision;
 
 /**
  * Central, type-safe configuration for the face-recognition pipeline.
@@ -21,8 +23,10 @@ public class FaceRecognitionProperties {
     private final Classification classification = new Classification();
     private final Recognition recognition = new Recognition();
     private final Quality quality = new Quality();
+    private final Enrollment enrollment = new Enrollment();
     private final Image image = new Image();
     private final Model model = new Model();
+    private final Compaction compaction = new Compaction();
     private final RateLimit ratelimit = new RateLimit();
     private final Cors cors = new Cors();
     private final Security security = new Security();
@@ -32,8 +36,10 @@ public class FaceRecognitionProperties {
     public Classification getClassification() { return classification; }
     public Recognition getRecognition() { return recognition; }
     public Quality getQuality() { return quality; }
+    public Enrollment getEnrollment() { return enrollment; }
     public Image getImage() { return image; }
     public Model getModel() { return model; }
+    public Compaction getCompaction() { return compaction; }
     public RateLimit getRatelimit() { return ratelimit; }
     public Cors getCors() { return cors; }
     public Security getSecurity() { return security; }
@@ -81,6 +87,8 @@ public class FaceRecognitionProperties {
         private ExtractorType algorithm = ExtractorType.EIGENFACES;
         /** Number of components / dimensions. */
         private int numComponents = 10;
+        /** How dense feature vectors store their values; FLOAT32 halves feature and model memory. */
+        private FeaturePrecision precision = FeaturePrecision.FLOAT64;
         /** LBPH-specific configuration (ignored for other extractors). */
         private final Lbph lbph = new Lbph();
         /** ONNX-specific configuration (ignored unless algorithm=onnx). */
@@ -90,6 +98,8 @@ public class FaceRecognitionProperties {
         public void setAlgorithm(ExtractorType algorithm) { this.algorithm = algorithm; }
         public int getNumComponents() { return numComponents; }
         public void setNumComponents(int numComponents) { this.numComponents = numComponents; }
+        public FeaturePrecision getPrecision() { return precision; }
+        public void setPrecision(FeaturePrecision precision) { this.precision = precision; }
         public Lbph getLbph() { return lbph; }
         public Onnx getOnnx() { return onnx; }
 
@@ -98,6 +108,10 @@ public class FaceRecognitionProperties {
             private int gridY = 8;
             private int radius = 1;
             private int neighbors = 8;
+            /** Histogram the 58 uniform patterns plus one catch-all bin per region instead of all 256 codes. */
+            private boolean uniform = false;
+            /** Principal components the histograms are projected onto after train(); 0 keeps them whole. */
+            private int pcaComponents = 0;
 
             public int getGridX() { return gridX; }
             public void setGridX(int gridX) { this.gridX = gridX; }
@@ -107,6 +121,10 @@ public class FaceRecognitionProperties {
             public void setRadius(int radius) { this.radius = radius; }
             public int getNeighbors() { return neighbors; }
             public void setNeighbors(int neighbors) { this.neighbors = neighbors; }
+            public boolean isUniform() { return uniform; }
+            public void setUniform(boolean uniform) { this.uniform = uniform; }
+            public int getPcaComponents() { return pcaComponents; }
+            public void setPcaComponents(int pcaComponents) { this.pcaComponents = pcaComponents; }
         }
 
         public static class Onnx {
@@ -139,7 +157,9 @@ public class FaceRecognitionProperties {
         /** Ahonen et al., LBP Histograms. */
         LBPH,
         /** ONNX-based deep embedding (bring your own model). */
-        ONNX
+        ONNX,
+        /** Eigenfaces joined with LBP histograms, for the coarse-to-fine cascade classifier. */
+        CASCADE
     }
 
     /** Classifier tuning. */
@@ -148,6 +168,26 @@ public class FaceRecognitionProperties {
         private int kNeighbors = 3;
         private DistanceMetric distanceMetric = DistanceMetric.EUCLIDEAN;
         private boolean useAverageFeatures = false;
+        /** How the KNN gallery stores sample values (ignored unless algorithm=knn). */
+        private GalleryPrecision galleryPrecision = GalleryPrecision.FLOAT64;
+        /** Packed samples from which a KNN probe is matched in parallel (ignored unless algorithm=knn). */
+        private int parallelThreshold = 32768;
+        /** Keep each identity partition (site, tenant) in its own classifier of the configured algorithm. */
+        private boolean partitioned = false;
+        /** HNSW-specific configuration (ignored unless algorithm=hnsw). */
+        private final Hnsw hnsw = new Hnsw();
+        /** IVF-specific configuration (ignored unless algorithm=ivf). */
+        private final Ivf ivf = new Ivf();
+        /** PQ-specific configuration (ignored unless algorithm=pq). */
+        private final Pq pq = new Pq();
+        /** LSH-specific configuration (ignored unless algorithm=lsh). */
+        private final Lsh lsh = new Lsh();
+        /** VP-tree-specific configuration (ignored unless algorithm=vptree). */
+        private final VpTree vpTree = new VpTree();
+        /** Memory-mapped gallery configuration (ignored unless algorithm=mapped). */
+        private final Mapped mapped = new Mapped();
+        /** Coarse-to-fine configuration (ignored unless extraction.algorithm=cascade). */
+        private final Cascade cascade = new Cascade();
 
         public ClassifierType getAlgorithm() { return algorithm; }
         public void setAlgorithm(ClassifierType algorithm) { this.algorithm = algorithm; }
@@ -157,12 +197,133 @@ public class FaceRecognitionProperties {
         public void setDistanceMetric(DistanceMetric distanceMetric) { this.distanceMetric = distanceMetric; }
         public boolean isUseAverageFeatures() { return useAverageFeatures; }
         public void setUseAverageFeatures(boolean useAverageFeatures) { this.useAverageFeatures = useAverageFeatures; }
+        public GalleryPrecision getGalleryPrecision() { return galleryPrecision; }
+        public void setGalleryPrecision(GalleryPrecision galleryPrecision) { this.galleryPrecision = galleryPrecision; }
+        public int getParallelThreshold() { return parallelThreshold; }
+        public void setParallelThreshold(int parallelThreshold) { this.parallelThreshold = parallelThreshold; }
+        public boolean isPartitioned() { return partitioned; }
+        public void setPartitioned(boolean partitioned) { this.partitioned = partitioned; }
+        public Hnsw getHnsw() { return hnsw; }
+        public Ivf getIvf() { return ivf; }
+        public Pq getPq() { return pq; }
+        public Lsh getLsh() { return lsh; }
+        public VpTree getVpTree() { return vpTree; }
+        public Mapped getMapped() { return mapped; }
+        public Cascade getCascade() { return cascade; }
+
+        public static class Hnsw {
+            /** Neighbours per graph node; layer 0 keeps twice as many. */
+            private int m = 16;
+            /** Beam width while inserting; higher builds a better graph, more slowly. */
+            private int efConstruction = 200;
+            /** Beam width while searching; higher trades latency for recall. */
+            private int efSearch = 64;
+
+            public int getM() { return m; }
+            public void setM(int m) { this.m = m; }
+            public int getEfConstruction() { return efConstruction; }
+            public void setEfConstruction(int efConstruction) { this.efConstruction = efConstruction; }
+            public int getEfSearch() { return efSearch; }
+            public void setEfSearch(int efSearch) { this.efSearch = efSearch; }
+        }
+
+        public static class Ivf {
+            /** Number of k-means cells; around sqrt(gallery samples) is a good start. */
+            private int nlist = 128;
+            /** Cells scanned per probe; higher trades latency for recall. */
+            private int nprobe = 8;
+            /** Maximum k-means iterations when (re)training the cells. */
+            private int iterations = 20;
+
+            public int getNlist() { return nlist; }
+            public void setNlist(int nlist) { this.nlist = nlist; }
+            public int getNprobe() { return nprobe; }
+            public void setNprobe(int nprobe) { this.nprobe = nprobe; }
+            public int getIterations() { return iterations; }
+            public void setIterations(int iterations) { this.iterations = iterations; }
+        }
+
+        public static class Pq {
+            /** Sub-spaces per vector, i.e. code bytes per sample; more is more accurate and larger. */
+            private int subspaces = 32;
+            /** Approximate candidates re-scored exactly; 0 reports approximate distances. */
+            private int rerank = 64;
+            /** Maximum k-means iterations per codebook when (re)training. */
+            private int iterations = 15;
+            /** Directory for the temporary file of full-precision re-rank vectors; empty uses the system temp directory. */
+            private String rerankStore = "";
+
+            public int getSubspaces() { return subspaces; }
+            public void setSubspaces(int subspaces) { this.subspaces = subspaces; }
+            public int getRerank() { return rerank; }
+            public void setRerank(int rerank) { this.rerank = rerank; }
+            public int getIterations() { return iterations; }
+            public void setIterations(int iterations) { this.iterations = iterations; }
+            public String getRerankStore() { return rerankStore; }
+            public void setRerankStore(String rerankStore) { this.rerankStore = rerankStore; }
+        }
+
+        public static class Lsh {
+            /** Sketch length per sample, a multiple of 64; more bits rank candidates more sharply. */
+            private int bits = 256;
+            /** Samples with the nearest sketches that are scored exactly; higher trades latency for recall. */
+            private int candidates = 256;
+
+            public int getBits() { return bits; }
+            public void setBits(int bits) { this.bits = bits; }
+            public int getCandidates() { return candidates; }
+            public void setCandidates(int candidates) { this.candidates = candidates; }
+        }
+
+        public static class VpTree {
+            /** Subtrees of at most this many samples are scanned linearly instead of split further. */
+            private int leafSize = 16;
+
+            public int getLeafSize() { return leafSize; }
+            public void setLeafSize(int leafSize) { this.leafSize = leafSize; }
+        }
+
+        public static class Mapped {
+            /** Directory holding the gallery segment files; created if missing unless read-only. */
+            private String directory = "data/gallery";
+            /** Open a segment written by another process and never modify it. */
+            private boolean readOnly = false;
+
+            public String getDirectory() { return directory; }
+            public void setDirectory(String directory) { this.directory = directory; }
+            public boolean isReadOnly() { return readOnly; }
+            public void setReadOnly(boolean readOnly) { this.readOnly = readOnly; }
+        }
+
+        public static class Cascade {
+            /** Identities shortlisted on the Eigenfaces part and re-ranked on the LBPH part. */
+            private int shortlist = 50;
+            /** Metric of the shortlisting stage; distance-metric applies to the re-ranking stage. */
+            private DistanceMetric coarseMetric = DistanceMetric.EUCLIDEAN;
+
+            public int getShortlist() { return shortlist; }
+            public void setShortlist(int shortlist) { this.shortlist = shortlist; }
+            public DistanceMetric getCoarseMetric() { return coarseMetric; }
+            public void setCoarseMetric(DistanceMetric coarseMetric) { this.coarseMetric = coarseMetric; }
+        }
     }
 
     /** Built-in classifier implementations. */
     public enum ClassifierType {
-        /** k-Nearest Neighbours. */
-        KNN
+        /** k-Nearest Neighbours, exact linear scan. */
+        KNN,
+        /** Malkov & Yashunin, Hierarchical Navigable Small World graph (approximate). */
+        HNSW,
+        /** Inverted file: k-means cells, scanning only the nearest ones (approximate). */
+        IVF,
+        /** Product quantisation: compressed codes with exact re-ranking (approximate). */
+        PQ,
+        /** Random-hyperplane sketches: Hamming prefilter with exact re-ranking (approximate). */
+        LSH,
+        /** Vantage-point tree: exact, sub-linear on low-dimensional vectors under Euclidean or Manhattan. */
+        VPTREE,
+        /** Exact linear scan over an off-heap gallery in memory-mapped files, shared across processes. */
+        MAPPED
     }
 
     /** Recognition-pipeline knobs. */
@@ -191,6 +352,19 @@ public class FaceRecognitionProperties {
         public void setValidateOnEnroll(boolean validateOnEnroll) { this.validateOnEnroll = validateOnEnroll; }
     }
 
+    /** When enrolled faces become recognisable. */
+    public static class Enrollment {
+        /** Extract and match enrolled faces at once when the extractor needs no training (LBPH, ONNX). */
+        private boolean online = false;
+        /** Also enrol online into a trained Eigenfaces/Fisherfaces/PCA model, keeping its projection until train(). */
+        private boolean freezeProjection = false;
+
+        public boolean isOnline() { return online; }
+        public void setOnline(boolean online) { this.online = online; }
+        public boolean isFreezeProjection() { return freezeProjection; }
+        public void setFreezeProjection(boolean freezeProjection) { this.freezeProjection = freezeProjection; }
+    }
+
     /** Image-preprocessing knobs. */
     public static class Image {
         private int targetWidth = 100;
@@ -225,6 +399,23 @@ public class FaceRecognitionProperties {
         public void setSavePath(String savePath) { this.savePath = savePath; }
     }
 
+    /** Background reduction of each identity's samples to a few prototypes. */
+    public static class Compaction {
+        /** Enable compaction, both after training and on a schedule. */
+        private boolean enabled = false;
+        /** Most samples kept per identity. */
+        private int maxPrototypes = 16;
+        /** Minutes between scheduled compaction runs. */
+        private long intervalMinutes = 60;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxPrototypes() { return maxPrototypes; }
+        public void setMaxPrototypes(int maxPrototypes) { this.maxPrototypes = maxPrototypes; }
+        public long getIntervalMinutes() { return intervalMinutes; }
+        public void setIntervalMinutes(long intervalMinutes) { this.intervalMinutes = intervalMinutes; }
+    }
+
     /** Per-IP token-bucket rate limiter. */
     public static class RateLimit {
         private boolean enabled = true;
@@ -0,0 +1,68 @@
+package com.facerecognition.config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.facerecognition.application.service.FaceRecognitionService;
+
+/**
+ * Runs {@link FaceRecognitionService#compactGallery()} every
+ * {@code facerecognition.compaction.interval-minutes} once the Spring context
+ * is up, so identities that keep being enrolled stay bounded without anyone
+ * retraining.
+ *
+ * <p>Runs happen one at a time on a single daemon thread; a failed run is
+ * logged and the next one still happens.</p>
+ */
+@Component
+@ConditionalOnProperty(name = "facerecognition.compaction.enabled", havingValue = "true")
+public class GalleryCompactionScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(GalleryCompactionScheduler.class);
+
+    private final FaceRecognitionService service;
+    private final FaceRecognitionProperties properties;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "gallery-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public GalleryCompactionScheduler(FaceRecognitionService service,
+                                      FaceRecognitionProperties properties) {
+        this.service = service;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        long interval = properties.getCompaction().getIntervalMinutes();
+        if (interval <= 0) {
+            throw new IllegalStateException("compaction.interval-minutes must be positive: " + interval);
+        }
+        executor.scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MINUTES);
+        log.info("Gallery compaction to {} prototypes per identity every {} min",
+                properties.getCompaction().getMaxPrototypes(), interval);
+    }
+
+    private void compact() {
+        try {
+            service.compactGallery();
+        } catch (RuntimeException e) {
+            log.warn("Gallery compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
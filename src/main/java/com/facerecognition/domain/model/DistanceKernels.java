@@ -0,0 +1,505 @@
+package com.facerecognition.domain.model;
+
+/**
+ * Primitive distance kernels shared by {@link FeatureVector} and by
+ * classifiers that keep their gallery in packed {@code double[]} blocks.
+ *
+ * <p>Every kernel works on a slice {@code [offset, offset + length)} of each
+ * operand so that callers can scan a row-major matrix without copying rows
+ * out into separate arrays. No argument validation is performed here —
+ * dimension checks belong to the caller, which usually does them once per
+ * probe rather than once per row.</p>
+ *
+ * <p>The implementation is picked once, at class initialisation. When the
+ * build included the SIMD kernels in {@code VectorDistanceKernels} (the
+ * {@code simd} Maven profile), the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and the platform offers at
+ * least two {@code double} lanes, those are used; otherwise the plain loops
+ * in {@code ScalarDistanceKernels} are. Setting the system property
+ * {@value #VECTOR_PROPERTY} to {@code false} forces the scalar path. The two
+ * paths agree to within floating-point reassociation error.</p>
+ *
+ * <p>The {@code byte[]} overloads treat each element as an unsigned 8-bit
+ * code, as produced by scalar quantisation. Dot product, squared Euclidean
+ * and Manhattan are computed in integer arithmetic, so their scalar and SIMD
+ * results are identical; Chi-square divides and so agrees to within
+ * rounding error.</p>
+ *
+ * <p>The {@code float[]} overloads serve single-precision vectors. Each
+ * element is widened to {@code double} before any arithmetic and the sums
+ * are kept in {@code double}, so they return exactly what the
+ * {@code double[]} kernels return for the widened values, up to the same
+ * reassociation error; only the loads are narrower, which halves memory
+ * traffic and doubles the lanes per SIMD load.</p>
+ *
+ * <p>The sparse overloads take each operand as a slice of ascending
+ * positions with a parallel slice of values, as stored by a sparse
+ * {@link FeatureVector}, and merge the two position lists. Their cost
+ * follows the number of stored values, not the dimension, and they add the
+ * same terms in the same order as the scalar dense loops.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see FeatureVector
+ */
+public final class DistanceKernels {
+
+    /** System property that disables the Vector API kernels when set to {@code false}. */
+    public static final String VECTOR_PROPERTY = "facerecognition.kernels.vector";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final Implementation IMPLEMENTATION = select();
+
+    private DistanceKernels() {
+    }
+
+    /**
+     * Gets a short description of the active implementation, e.g.
+     * {@code scalar} or {@code vector(S_256_BIT)}.
+     *
+     * @return the implementation name
+     */
+    public static String implementationName() {
+        return IMPLEMENTATION.name();
+    }
+
+    /**
+     * Computes the dot product of two slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the dot product
+     */
+    public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return IMPLEMENTATION.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the sum of squares of a slice, i.e. its squared L2 norm.
+     *
+     * @param a the operand
+     * @param offset start index in {@code a}
+     * @param length the number of elements
+     * @return the squared L2 norm
+     */
+    public static double sumOfSquares(double[] a, int offset, int length) {
+        return IMPLEMENTATION.sumOfSquares(a, offset, length);
+    }
+
+    /**
+     * Computes the Euclidean (L2) distance between two slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Euclidean distance
+     */
+    public static double euclidean(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return Math.sqrt(IMPLEMENTATION.squaredEuclidean(a, aOffset, b, bOffset, length));
+    }
+
+    /**
+     * Computes the squared Euclidean distance between two slices. Unlike
+     * {@link #euclidean} it is additive over disjoint slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the squared Euclidean distance
+     */
+    public static double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return IMPLEMENTATION.squaredEuclidean(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Manhattan (L1) distance between two slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Manhattan distance
+     */
+    public static double manhattan(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return IMPLEMENTATION.manhattan(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Chi-square distance between two slices. Bins where both
+     * operands are zero contribute nothing.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Chi-square distance
+     */
+    public static double chiSquare(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return IMPLEMENTATION.chiSquare(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two single-precision slices, accumulating in {@code double}.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the dot product
+     */
+    public static double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return IMPLEMENTATION.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the sum of squares of a single-precision slice, accumulating in {@code double}.
+     *
+     * @param a the operand
+     * @param offset start index in {@code a}
+     * @param length the number of elements
+     * @return the squared L2 norm
+     */
+    public static double sumOfSquares(float[] a, int offset, int length) {
+        return IMPLEMENTATION.sumOfSquares(a, offset, length);
+    }
+
+    /**
+     * Computes the Euclidean (L2) distance between two single-precision slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Euclidean distance
+     */
+    public static double euclidean(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return Math.sqrt(IMPLEMENTATION.squaredEuclidean(a, aOffset, b, bOffset, length));
+    }
+
+    /**
+     * Computes the squared Euclidean distance between two single-precision slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the squared Euclidean distance
+     */
+    public static double squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return IMPLEMENTATION.squaredEuclidean(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Manhattan (L1) distance between two single-precision slices.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Manhattan distance
+     */
+    public static double manhattan(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return IMPLEMENTATION.manhattan(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Chi-square distance between two single-precision slices.
+     * Bins where both operands are zero contribute nothing.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of elements to compare
+     * @return the Chi-square distance
+     */
+    public static double chiSquare(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return IMPLEMENTATION.chiSquare(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two sparse slices.
+     *
+     * @param aIndices ascending positions of the first operand
+     * @param aValues values of the first operand
+     * @param aOffset start of the first slice
+     * @param aLength number of stored values in the first slice
+     * @param bIndices ascending positions of the second operand
+     * @param bValues values of the second operand
+     * @param bOffset start of the second slice
+     * @param bLength number of stored values in the second slice
+     * @return the dot product
+     */
+    public static double dot(int[] aIndices, double[] aValues, int aOffset, int aLength,
+                             int[] bIndices, double[] bValues, int bOffset, int bLength) {
+        double sum = 0;
+        int i = aOffset;
+        int j = bOffset;
+        int aEnd = aOffset + aLength;
+        int bEnd = bOffset + bLength;
+        while (i < aEnd && j < bEnd) {
+            int a = aIndices[i];
+            int b = bIndices[j];
+            if (a == b) {
+                sum += aValues[i++] * bValues[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the Euclidean distance between two sparse slices.
+     *
+     * @param aIndices ascending positions of the first operand
+     * @param aValues values of the first operand
+     * @param aOffset start of the first slice
+     * @param aLength number of stored values in the first slice
+     * @param bIndices ascending positions of the second operand
+     * @param bValues values of the second operand
+     * @param bOffset start of the second slice
+     * @param bLength number of stored values in the second slice
+     * @return the Euclidean distance
+     */
+    public static double euclidean(int[] aIndices, double[] aValues, int aOffset, int aLength,
+                                   int[] bIndices, double[] bValues, int bOffset, int bLength) {
+        return Math.sqrt(squaredEuclidean(aIndices, aValues, aOffset, aLength,
+            bIndices, bValues, bOffset, bLength));
+    }
+
+    /**
+     * Computes the squared Euclidean distance between two sparse slices.
+     *
+     * @param aIndices ascending positions of the first operand
+     * @param aValues values of the first operand
+     * @param aOffset start of the first slice
+     * @param aLength number of stored values in the first slice
+     * @param bIndices ascending positions of the second operand
+     * @param bValues values of the second operand
+     * @param bOffset start of the second slice
+     * @param bLength number of stored values in the second slice
+     * @return the squared Euclidean distance
+     */
+    public static double squaredEuclidean(int[] aIndices, double[] aValues, int aOffset, int aLength,
+                                          int[] bIndices, double[] bValues, int bOffset, int bLength) {
+        double sum = 0;
+        int i = aOffset;
+        int j = bOffset;
+        int aEnd = aOffset + aLength;
+        int bEnd = bOffset + bLength;
+        while (i < aEnd || j < bEnd) {
+            int a = i < aEnd ? aIndices[i] : Integer.MAX_VALUE;
+            int b = j < bEnd ? bIndices[j] : Integer.MAX_VALUE;
+            double diff;
+            if (a == b) {
+                diff = aValues[i++] - bValues[j++];
+            } else if (a < b) {
+                diff = aValues[i++];
+            } else {
+                diff = -bValues[j++];
+            }
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the Manhattan distance between two sparse slices.
+     *
+     * @param aIndices ascending positions of the first operand
+     * @param aValues values of the first operand
+     * @param aOffset start of the first slice
+     * @param aLength number of stored values in the first slice
+     * @param bIndices ascending positions of the second operand
+     * @param bValues values of the second operand
+     * @param bOffset start of the second slice
+     * @param bLength number of stored values in the second slice
+     * @return the Manhattan distance
+     */
+    public static double manhattan(int[] aIndices, double[] aValues, int aOffset, int aLength,
+                                   int[] bIndices, double[] bValues, int bOffset, int bLength) {
+        double sum = 0;
+        int i = aOffset;
+        int j = bOffset;
+        int aEnd = aOffset + aLength;
+        int bEnd = bOffset + bLength;
+        while (i < aEnd || j < bEnd) {
+            int a = i < aEnd ? aIndices[i] : Integer.MAX_VALUE;
+            int b = j < bEnd ? bIndices[j] : Integer.MAX_VALUE;
+            if (a == b) {
+                sum += Math.abs(aValues[i++] - bValues[j++]);
+            } else if (a < b) {
+                sum += Math.abs(aValues[i++]);
+            } else {
+                sum += Math.abs(bValues[j++]);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the Chi-square distance between two sparse slices; positions
+     * where both operands sum to zero or less are skipped, as in the dense kernel.
+     *
+     * @param aIndices ascending positions of the first operand
+     * @param aValues values of the first operand
+     * @param aOffset start of the first slice
+     * @param aLength number of stored values in the first slice
+     * @param bIndices ascending positions of the second operand
+     * @param bValues values of the second operand
+     * @param bOffset start of the second slice
+     * @param bLength number of stored values in the second slice
+     * @return the Chi-square distance
+     */
+    public static double chiSquare(int[] aIndices, double[] aValues, int aOffset, int aLength,
+                                   int[] bIndices, double[] bValues, int bOffset, int bLength) {
+        double sum = 0;
+        int i = aOffset;
+        int j = bOffset;
+        int aEnd = aOffset + aLength;
+        int bEnd = bOffset + bLength;
+        while (i < aEnd || j < bEnd) {
+            int a = i < aEnd ? aIndices[i] : Integer.MAX_VALUE;
+            int b = j < bEnd ? bIndices[j] : Integer.MAX_VALUE;
+            double x = a <= b ? aValues[i++] : 0.0;
+            double y = b <= a ? bValues[j++] : 0.0;
+            double diff = x - y;
+            double total = x + y;
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot product of two slices of unsigned 8-bit codes.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of codes to compare
+     * @return the exact integer dot product
+     */
+    public static long dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return IMPLEMENTATION.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the squared Euclidean distance between two slices of unsigned 8-bit codes.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of codes to compare
+     * @return the exact integer squared distance
+     */
+    public static long squaredEuclidean(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return IMPLEMENTATION.squaredEuclidean(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Manhattan (L1) distance between two slices of unsigned 8-bit codes.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param length the number of codes to compare
+     * @return the exact integer distance
+     */
+    public static long manhattan(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return IMPLEMENTATION.manhattan(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Chi-square distance between two slices of unsigned 8-bit
+     * codes, in code units, with {@code bias[j]} added to each denominator:
+     * {@code sum (a - b)^2 / (a + b + bias[j])}. The bias lets codes that
+     * were offset before quantisation be compared as if decoded. Bins whose
+     * denominator is not positive contribute nothing.
+     *
+     * @param a the first operand
+     * @param aOffset start index in {@code a}
+     * @param b the second operand
+     * @param bOffset start index in {@code b}
+     * @param bias per-bin denominator offsets, indexed from 0
+     * @param length the number of codes to compare
+     * @return the Chi-square distance in code units
+     */
+    public static double chiSquare(byte[] a, int aOffset, byte[] b, int bOffset, double[] bias, int length) {
+        return IMPLEMENTATION.chiSquare(a, aOffset, b, bOffset, bias, length);
+    }
+
+    private static Implementation select() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            return ScalarDistanceKernels.INSTANCE;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return ScalarDistanceKernels.INSTANCE;
+        }
+        try {
+            // Looked up reflectively: the class is only compiled by the simd profile.
+            Class<?> kernels = Class.forName(DistanceKernels.class.getPackageName() + ".VectorDistanceKernels");
+            Object vector = kernels.getDeclaredMethod("create").invoke(null);
+            return vector != null ? (Implementation) vector : ScalarDistanceKernels.INSTANCE;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return ScalarDistanceKernels.INSTANCE;
+        }
+    }
+
+    /**
+     * Contract shared by the scalar and SIMD kernel implementations.
+     */
+    interface Implementation {
+        String name();
+
+        double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+        double sumOfSquares(double[] a, int offset, int length);
+
+        double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+        double manhattan(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+        double chiSquare(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+        double dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        double sumOfSquares(float[] a, int offset, int length);
+
+        double squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        double manhattan(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        double chiSquare(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        long dot(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+        long squaredEuclidean(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+        long manhattan(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+        double chiSquare(byte[] a, int aOffset, byte[] b, int bOffset, double[] bias, int length);
+    }
+}
@@ -0,0 +1,19 @@
+package com.facerecognition.domain.model;
+
+/**
+ * How a dense {@link FeatureVector} stores its values.
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see FeatureVector#getPrecision()
+ */
+public enum FeaturePrecision {
+    /** One {@code double} per value. */
+    FLOAT64,
+    /**
+     * One {@code float} per value: half the memory, with values rounded to
+     * single precision. Distances are still accumulated in {@code double}.
+     */
+    FLOAT32
+}
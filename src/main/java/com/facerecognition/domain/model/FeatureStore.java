@@ -0,0 +1,33 @@
+package com.facerecognition.domain.model;
+
+/**
+ * Holds the values of enrolled samples outside the Java heap, or in a
+ * denser encoding than {@code double[]}, on behalf of the samples
+ * themselves.
+ *
+ * <p>A classifier that keeps its own copy of the gallery, such as a file of
+ * full-precision vectors or a block of quantised codes, can
+ * {@linkplain Identity.EnrolledSample#offload offload} a sample into it so
+ * the heap no longer holds the same values twice. The sample then reads its
+ * values back through {@link #load} whenever
+ * {@link Identity.EnrolledSample#getFeatures()} is called.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see Identity.EnrolledSample#offload(FeatureStore, long)
+ */
+public interface FeatureStore {
+
+    /**
+     * Reads the values stored under a key.
+     *
+     * <p>Lossy stores return the decoded values, which every later read of
+     * the sample then sees.</p>
+     *
+     * @param key the key the sample was offloaded with
+     * @return a new array holding the values, or null if the store has
+     *         been released and can no longer read them
+     */
+    double[] load(long key);
+}
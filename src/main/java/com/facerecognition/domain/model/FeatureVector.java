@@ -1,6 +1,9 @@
 package com.facerecognition.domain.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -18,6 +21,33 @@ import java.util.Objects;
  *   <li>Deep learning: typically 128-512 dimensions</li>
  * </ul>
  *
+ * <p>A vector is either dense or {@linkplain #isSparse() sparse}. A sparse
+ * vector, created with {@link #sparse(double[], String, int)} or
+ * {@link #sparse(int, int[], double[], String, int)}, stores only its
+ * non-zero values and their ascending positions, which suits histogram
+ * features such as LBPH where most bins of a small cell are empty. Two
+ * sparse vectors are compared by merging their positions, so the cost
+ * follows the number of non-zero values rather than the dimension. Every
+ * method behaves the same for both forms; comparing a sparse with a dense
+ * vector expands the sparse one.</p>
+ *
+ * <p>A dense vector may instead be stored in {@linkplain FeaturePrecision#FLOAT32
+ * single precision}, created with
+ * {@link #of(double[], String, int, FeaturePrecision)} or
+ * {@link #withPrecision(FeaturePrecision)}. Its values are rounded to
+ * {@code float} once, on construction, and take half the memory; every
+ * accessor widens them back to {@code double}, and distances between two
+ * single-precision vectors are accumulated in {@code double}. Extractors
+ * pick the precision through
+ * {@link com.facerecognition.domain.service.FeatureExtractor.ExtractorConfig}.
+ * Sparse vectors always keep {@code double} values.</p>
+ *
+ * <p>{@link #getFeatures()} returns a fresh copy on every call. Code that
+ * reads many vectors per request, such as gallery packing or centroid
+ * updates, should instead use {@link #copyInto(double[], int)},
+ * {@link #accumulateInto(double[], double)} or {@link #asReadOnlyBuffer()},
+ * which read the stored values without allocating.</p>
+ *
  * @author Prasad Subrahmanya
  * @version 2.0
  * @since 2.0
@@ -27,12 +57,20 @@ public class FeatureVector implements Serializable {
 
     private static final long serialVersionUID = 2L;
 
+    // Every value of a dense vector, or the non-zero values of a sparse one; null in single precision
     private final double[] features;
+    // Every value of a single-precision dense vector; null otherwise
+    private final float[] singles;
+    // Ascending positions of the values of a sparse vector; null when dense
+    private final int[] indices;
     private final String algorithmName;
     private final int algorithmVersion;
 
-    // Cached norm for faster comparisons
-    private transient Double cachedNorm;
+    // Restored from the features of vectors serialised before it existed
+    private int dimension;
+
+    // L2 norm, computed once on construction and serialised with the vector
+    private double norm;
 
     /**
      * Creates a new feature vector.
@@ -49,8 +87,35 @@ public class FeatureVector implements Serializable {
         }
 
         this.features = Arrays.copyOf(features, features.length);
+        this.singles = null;
+        this.indices = null;
+        this.dimension = features.length;
+        this.algorithmName = algorithmName != null ? algorithmName : "unknown";
+        this.algorithmVersion = algorithmVersion;
+        this.norm = computeNorm();
+    }
+
+    // Takes ownership of the arrays.
+    private FeatureVector(int dimension, int[] indices, double[] values, String algorithmName,
+                          int algorithmVersion) {
+        this.features = values;
+        this.singles = null;
+        this.indices = indices;
+        this.dimension = dimension;
         this.algorithmName = algorithmName != null ? algorithmName : "unknown";
         this.algorithmVersion = algorithmVersion;
+        this.norm = computeNorm();
+    }
+
+    // Single-precision dense vector; takes ownership of the array.
+    private FeatureVector(float[] singles, String algorithmName, int algorithmVersion) {
+        this.features = null;
+        this.singles = singles;
+        this.indices = null;
+        this.dimension = singles.length;
+        this.algorithmName = algorithmName != null ? algorithmName : "unknown";
+        this.algorithmVersion = algorithmVersion;
+        this.norm = computeNorm();
     }
 
     /**
@@ -63,12 +128,242 @@ public class FeatureVector implements Serializable {
     }
 
     /**
-     * Gets the feature values array.
+     * Creates a dense feature vector stored at the given precision.
+     *
+     * @param features the feature values
+     * @param algorithmName the name of the extraction algorithm
+     * @param algorithmVersion the algorithm version
+     * @param precision how to store the values
+     * @return the feature vector
+     * @throws IllegalArgumentException if features is null or empty
+     */
+    public static FeatureVector of(double[] features, String algorithmName, int algorithmVersion,
+                                   FeaturePrecision precision) {
+        Objects.requireNonNull(precision, "Precision cannot be null");
+        if (precision == FeaturePrecision.FLOAT64) {
+            return new FeatureVector(features, algorithmName, algorithmVersion);
+        }
+        Objects.requireNonNull(features, "Features array cannot be null");
+        if (features.length == 0) {
+            throw new IllegalArgumentException("Features array cannot be empty");
+        }
+        return new FeatureVector(narrow(features), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Creates a single-precision dense feature vector.
+     *
+     * @param features the feature values
+     * @param algorithmName the name of the extraction algorithm
+     * @param algorithmVersion the algorithm version
+     * @return the feature vector
+     * @throws IllegalArgumentException if features is null or empty
+     */
+    public static FeatureVector ofFloats(float[] features, String algorithmName, int algorithmVersion) {
+        Objects.requireNonNull(features, "Features array cannot be null");
+        if (features.length == 0) {
+            throw new IllegalArgumentException("Features array cannot be empty");
+        }
+        return new FeatureVector(features.clone(), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Creates a sparse feature vector from its non-zero values.
+     *
+     * @param dimension the dimension of the vector
+     * @param indices the strictly ascending positions of the values
+     * @param values the values at those positions
+     * @param algorithmName the name of the extraction algorithm
+     * @param algorithmVersion the algorithm version
+     * @return the sparse vector
+     * @throws IllegalArgumentException if the dimension is not positive, the
+     *         arrays differ in length, or a position is out of range or out of order
+     */
+    public static FeatureVector sparse(int dimension, int[] indices, double[] values, String algorithmName,
+                                       int algorithmVersion) {
+        Objects.requireNonNull(indices, "Indices array cannot be null");
+        Objects.requireNonNull(values, "Values array cannot be null");
+        if (dimension < 1) {
+            throw new IllegalArgumentException("Dimension must be positive: " + dimension);
+        }
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException(
+                String.format("Length mismatch: %d indices vs %d values", indices.length, values.length));
+        }
+        int previous = -1;
+        for (int index : indices) {
+            if (index <= previous || index >= dimension) {
+                throw new IllegalArgumentException("Indices must be ascending and below " + dimension + ": " + index);
+            }
+            previous = index;
+        }
+        return new FeatureVector(dimension, indices.clone(), values.clone(), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Creates a sparse feature vector holding the non-zero entries of a dense array.
+     *
+     * @param features the feature values
+     * @param algorithmName the name of the extraction algorithm
+     * @param algorithmVersion the algorithm version
+     * @return the sparse vector
+     * @throws IllegalArgumentException if features is null or empty
+     */
+    public static FeatureVector sparse(double[] features, String algorithmName, int algorithmVersion) {
+        Objects.requireNonNull(features, "Features array cannot be null");
+        if (features.length == 0) {
+            throw new IllegalArgumentException("Features array cannot be empty");
+        }
+        int nonZero = 0;
+        for (double value : features) {
+            if (value != 0) {
+                nonZero++;
+            }
+        }
+        int[] indices = new int[nonZero];
+        double[] values = new double[nonZero];
+        for (int i = 0, j = 0; i < features.length; i++) {
+            if (features[i] != 0) {
+                indices[j] = i;
+                values[j++] = features[i];
+            }
+        }
+        return new FeatureVector(features.length, indices, values, algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Gets the feature values array. A sparse vector is expanded and a
+     * single-precision one widened.
      *
      * @return a copy of the feature values
+     * @see #copyInto(double[], int)
      */
     public double[] getFeatures() {
-        return Arrays.copyOf(features, features.length);
+        double[] copy = new double[dimension];
+        copyInto(copy, 0);
+        return copy;
+    }
+
+    /**
+     * Gets the values of a single-precision vector.
+     *
+     * @return a copy of the values, or null if this vector is not stored in single precision
+     */
+    public float[] getFloatFeatures() {
+        return singles != null ? singles.clone() : null;
+    }
+
+    /**
+     * Returns the backing array of a double-precision dense vector without
+     * copying it, or an expanded or widened copy otherwise. Callers must not
+     * modify it.
+     *
+     * @return the feature values
+     */
+    double[] values() {
+        return indices == null && singles == null ? features : getFeatures();
+    }
+
+    // The stored values in double precision: all values when dense, the non-zero ones when sparse.
+    private double[] storedValues() {
+        return singles != null ? widen(singles) : features;
+    }
+
+    /**
+     * Returns a read-only view of the values. The view shares the storage of
+     * a double-precision dense vector, so reading it allocates nothing; a
+     * sparse or single-precision vector has no {@code double[]} to share and
+     * is expanded or widened into a fresh array first. Hot paths that must
+     * not allocate should use {@link #copyInto(double[], int)} or
+     * {@link #accumulateInto(double[], double)}, which never do.
+     *
+     * @return a read-only buffer of {@link #getDimension()} values
+     */
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(values()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the values into {@code target} at {@code offset}, expanding a
+     * sparse vector and widening a single-precision one in place.
+     *
+     * @param target the destination, with room for {@link #getDimension()} values from offset
+     * @param offset the index of the first value in target
+     * @throws IndexOutOfBoundsException if target is too short
+     */
+    public void copyInto(double[] target, int offset) {
+        Objects.checkFromIndexSize(offset, dimension, target.length);
+        if (singles != null) {
+            for (int i = 0; i < singles.length; i++) {
+                target[offset + i] = singles[i];
+            }
+        } else if (indices == null) {
+            System.arraycopy(features, 0, target, offset, dimension);
+        } else {
+            Arrays.fill(target, offset, offset + dimension, 0.0);
+            for (int i = 0; i < indices.length; i++) {
+                target[offset + indices[i]] = features[i];
+            }
+        }
+    }
+
+    /**
+     * Copies the values into {@code target} at {@code offset}, rounding them
+     * to single precision.
+     *
+     * @param target the destination, with room for {@link #getDimension()} values from offset
+     * @param offset the index of the first value in target
+     * @throws IndexOutOfBoundsException if target is too short
+     */
+    public void copyInto(float[] target, int offset) {
+        Objects.checkFromIndexSize(offset, dimension, target.length);
+        if (singles != null) {
+            System.arraycopy(singles, 0, target, offset, dimension);
+        } else if (indices == null) {
+            for (int i = 0; i < features.length; i++) {
+                target[offset + i] = (float) features[i];
+            }
+        } else {
+            Arrays.fill(target, offset, offset + dimension, 0.0f);
+            for (int i = 0; i < indices.length; i++) {
+                target[offset + indices[i]] = (float) features[i];
+            }
+        }
+    }
+
+    /**
+     * Adds this vector to {@code target}.
+     *
+     * @param target the accumulator, at least {@link #getDimension()} long
+     * @see #accumulateInto(double[], double)
+     */
+    public void accumulateInto(double[] target) {
+        accumulateInto(target, 1.0);
+    }
+
+    /**
+     * Adds {@code scale} times this vector to {@code target}, touching only
+     * the non-zero values of a sparse vector.
+     *
+     * @param target the accumulator, at least {@link #getDimension()} long
+     * @param scale the factor to apply
+     * @throws IndexOutOfBoundsException if target is too short
+     */
+    public void accumulateInto(double[] target, double scale) {
+        Objects.checkFromIndexSize(0, dimension, target.length);
+        if (singles != null) {
+            for (int i = 0; i < singles.length; i++) {
+                target[i] += scale * singles[i];
+            }
+        } else if (indices == null) {
+            for (int i = 0; i < features.length; i++) {
+                target[i] += scale * features[i];
+            }
+        } else {
+            for (int i = 0; i < indices.length; i++) {
+                target[indices[i]] += scale * features[i];
+            }
+        }
     }
 
     /**
@@ -79,7 +374,15 @@ public class FeatureVector implements Serializable {
      * @throws IndexOutOfBoundsException if index is out of range
      */
     public double getFeature(int index) {
-        return features[index];
+        if (singles != null) {
+            return singles[index];
+        }
+        if (indices == null) {
+            return features[index];
+        }
+        Objects.checkIndex(index, dimension);
+        int position = Arrays.binarySearch(indices, index);
+        return position >= 0 ? features[position] : 0.0;
     }
 
     /**
@@ -88,7 +391,174 @@ public class FeatureVector implements Serializable {
      * @return the number of features
      */
     public int getDimension() {
-        return features.length;
+        return dimension;
+    }
+
+    /**
+     * Whether this vector stores only its non-zero values.
+     *
+     * @return true for a sparse vector
+     */
+    public boolean isSparse() {
+        return indices != null;
+    }
+
+    /**
+     * Gets how the values of this vector are stored.
+     *
+     * @return {@link FeaturePrecision#FLOAT32} for a single-precision vector, otherwise
+     *         {@link FeaturePrecision#FLOAT64}
+     */
+    public FeaturePrecision getPrecision() {
+        return singles != null ? FeaturePrecision.FLOAT32 : FeaturePrecision.FLOAT64;
+    }
+
+    /**
+     * Returns this vector stored at the given precision. Sparse vectors
+     * always keep double precision and are returned unchanged.
+     *
+     * @param precision the precision to store the values at
+     * @return this vector if it is sparse or already at that precision, otherwise a copy
+     */
+    public FeatureVector withPrecision(FeaturePrecision precision) {
+        Objects.requireNonNull(precision, "Precision cannot be null");
+        if (indices != null || precision == getPrecision()) {
+            return this;
+        }
+        if (precision == FeaturePrecision.FLOAT32) {
+            return new FeatureVector(narrow(features), algorithmName, algorithmVersion);
+        }
+        return new FeatureVector(widen(singles), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Gets the number of values a sparse vector stores, or the number of
+     * non-zero values of a dense one.
+     *
+     * @return the number of stored non-zero values
+     */
+    public int getNonZeroCount() {
+        if (indices != null) {
+            return indices.length;
+        }
+        int nonZero = 0;
+        for (int i = 0; i < dimension; i++) {
+            if (getFeature(i) != 0) {
+                nonZero++;
+            }
+        }
+        return nonZero;
+    }
+
+    /**
+     * Gets the ascending positions of the values returned by {@link #getNonZeroValues()}.
+     *
+     * @return a copy of the positions
+     */
+    public int[] getNonZeroIndices() {
+        return indices != null ? indices.clone() : toSparse().indices;
+    }
+
+    /**
+     * Gets the values of a sparse vector, or the non-zero values of a dense one.
+     *
+     * @return a copy of the values, in position order
+     */
+    public double[] getNonZeroValues() {
+        return indices != null ? features.clone() : toSparse().features;
+    }
+
+    /**
+     * Returns this vector in sparse form.
+     *
+     * @return this vector if it is sparse, otherwise a sparse copy
+     */
+    public FeatureVector toSparse() {
+        return indices != null ? this : sparse(values(), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Returns this vector in dense form.
+     *
+     * @return this vector if it is dense, otherwise a dense copy
+     */
+    public FeatureVector toDense() {
+        return indices == null ? this : new FeatureVector(getFeatures(), algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Returns the values at positions {@code [from, to)} as a vector of
+     * their own, of the same form and precision as this one.
+     *
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @return a new vector of dimension {@code to - from}
+     * @throws IndexOutOfBoundsException if the range is empty or out of bounds
+     */
+    public FeatureVector slice(int from, int to) {
+        Objects.checkFromToIndex(from, to, dimension);
+        if (from == to) {
+            throw new IndexOutOfBoundsException("Slice cannot be empty: " + from);
+        }
+        if (singles != null) {
+            return new FeatureVector(Arrays.copyOfRange(singles, from, to), algorithmName, algorithmVersion);
+        }
+        if (indices == null) {
+            return new FeatureVector(Arrays.copyOfRange(features, from, to), algorithmName, algorithmVersion);
+        }
+        int start = lowerBound(indices, from);
+        int end = lowerBound(indices, to);
+        int[] sliced = new int[end - start];
+        for (int i = start; i < end; i++) {
+            sliced[i - start] = indices[i] - from;
+        }
+        return new FeatureVector(to - from, sliced, Arrays.copyOfRange(features, start, end),
+            algorithmName, algorithmVersion);
+    }
+
+    /**
+     * Joins two vectors end to end, {@code head} first. The result is sparse
+     * if either vector is, single-precision if both are, and otherwise dense
+     * with {@code double} values.
+     *
+     * @param head the vector whose values come first
+     * @param tail the vector whose values follow
+     * @param algorithmName the name of the extraction algorithm
+     * @param algorithmVersion the algorithm version
+     * @return a new vector of dimension {@code head.getDimension() + tail.getDimension()}
+     */
+    public static FeatureVector concat(FeatureVector head, FeatureVector tail, String algorithmName,
+                                       int algorithmVersion) {
+        Objects.requireNonNull(head, "Head vector cannot be null");
+        Objects.requireNonNull(tail, "Tail vector cannot be null");
+        int dimension = Math.addExact(head.dimension, tail.dimension);
+        if (head.indices == null && tail.indices == null) {
+            if (head.singles != null && tail.singles != null) {
+                float[] joined = Arrays.copyOf(head.singles, dimension);
+                System.arraycopy(tail.singles, 0, joined, head.dimension, tail.dimension);
+                return new FeatureVector(joined, algorithmName, algorithmVersion);
+            }
+            double[] joined = new double[dimension];
+            head.copyInto(joined, 0);
+            tail.copyInto(joined, head.dimension);
+            return new FeatureVector(joined, algorithmName, algorithmVersion);
+        }
+        FeatureVector sparseHead = head.toSparse();
+        FeatureVector sparseTail = tail.toSparse();
+        int headCount = sparseHead.indices.length;
+        int[] indices = Arrays.copyOf(sparseHead.indices, headCount + sparseTail.indices.length);
+        double[] values = Arrays.copyOf(sparseHead.features, indices.length);
+        for (int i = 0; i < sparseTail.indices.length; i++) {
+            indices[headCount + i] = sparseTail.indices[i] + head.dimension;
+            values[headCount + i] = sparseTail.features[i];
+        }
+        return new FeatureVector(dimension, indices, values, algorithmName, algorithmVersion);
+    }
+
+    // The first position in the ascending array whose value is at least key.
+    private static int lowerBound(int[] sorted, int key) {
+        int found = Arrays.binarySearch(sorted, key);
+        return found >= 0 ? found : -found - 1;
     }
 
     /**
@@ -115,14 +585,14 @@ public class FeatureVector implements Serializable {
      * @return the L2 norm
      */
     public double norm() {
-        if (cachedNorm == null) {
-            double sum = 0;
-            for (double f : features) {
-                sum += f * f;
-            }
-            cachedNorm = Math.sqrt(sum);
+        return norm;
+    }
+
+    private double computeNorm() {
+        if (singles != null) {
+            return Math.sqrt(DistanceKernels.sumOfSquares(singles, 0, singles.length));
         }
-        return cachedNorm;
+        return Math.sqrt(DistanceKernels.sumOfSquares(features, 0, features.length));
     }
 
     /**
@@ -134,13 +604,14 @@ public class FeatureVector implements Serializable {
      */
     public double euclideanDistance(FeatureVector other) {
         validateDimensions(other);
-
-        double sum = 0;
-        for (int i = 0; i < features.length; i++) {
-            double diff = features[i] - other.features[i];
-            sum += diff * diff;
+        if (indices != null && other.indices != null) {
+            return DistanceKernels.euclidean(indices, features, 0, features.length,
+                other.indices, other.features, 0, other.features.length);
+        }
+        if (singles != null && other.singles != null) {
+            return DistanceKernels.euclidean(singles, 0, other.singles, 0, dimension);
         }
-        return Math.sqrt(sum);
+        return DistanceKernels.euclidean(values(), 0, other.values(), 0, dimension);
     }
 
     /**
@@ -152,13 +623,7 @@ public class FeatureVector implements Serializable {
      * @throws IllegalArgumentException if dimensions don't match
      */
     public double cosineSimilarity(FeatureVector other) {
-        validateDimensions(other);
-
-        double dotProduct = 0;
-        for (int i = 0; i < features.length; i++) {
-            dotProduct += features[i] * other.features[i];
-        }
-        return dotProduct / (this.norm() * other.norm());
+        return dot(other) / (this.norm() * other.norm());
     }
 
     /**
@@ -180,12 +645,14 @@ public class FeatureVector implements Serializable {
      */
     public double manhattanDistance(FeatureVector other) {
         validateDimensions(other);
-
-        double sum = 0;
-        for (int i = 0; i < features.length; i++) {
-            sum += Math.abs(features[i] - other.features[i]);
+        if (indices != null && other.indices != null) {
+            return DistanceKernels.manhattan(indices, features, 0, features.length,
+                other.indices, other.features, 0, other.features.length);
+        }
+        if (singles != null && other.singles != null) {
+            return DistanceKernels.manhattan(singles, 0, other.singles, 0, dimension);
         }
-        return sum;
+        return DistanceKernels.manhattan(values(), 0, other.values(), 0, dimension);
     }
 
     /**
@@ -197,20 +664,19 @@ public class FeatureVector implements Serializable {
      */
     public double chiSquareDistance(FeatureVector other) {
         validateDimensions(other);
-
-        double sum = 0;
-        for (int i = 0; i < features.length; i++) {
-            double diff = features[i] - other.features[i];
-            double total = features[i] + other.features[i];
-            if (total > 0) {
-                sum += (diff * diff) / total;
-            }
+        if (indices != null && other.indices != null) {
+            return DistanceKernels.chiSquare(indices, features, 0, features.length,
+                other.indices, other.features, 0, other.features.length);
         }
-        return sum;
+        if (singles != null && other.singles != null) {
+            return DistanceKernels.chiSquare(singles, 0, other.singles, 0, dimension);
+        }
+        return DistanceKernels.chiSquare(values(), 0, other.values(), 0, dimension);
     }
 
     /**
-     * Returns a normalized (unit length) version of this vector.
+     * Returns a normalized (unit length) version of this vector, of the same
+     * form and precision as this one.
      *
      * @return a new normalized FeatureVector
      */
@@ -220,57 +686,47 @@ public class FeatureVector implements Serializable {
             return this;
         }
 
-        double[] normalized = new double[features.length];
-        for (int i = 0; i < features.length; i++) {
-            normalized[i] = features[i] / n;
+        double[] normalized = storedValues().clone();
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] /= n;
         }
-        return new FeatureVector(normalized, algorithmName, algorithmVersion);
+        return withValues(normalized);
     }
 
     /**
-     * Adds another feature vector to this one (element-wise).
+     * Adds another feature vector to this one (element-wise). The sum is
+     * sparse if both vectors are, and otherwise has this vector's precision.
      *
      * @param other the vector to add
      * @return a new FeatureVector with summed values
      */
     public FeatureVector add(FeatureVector other) {
-        validateDimensions(other);
-
-        double[] result = new double[features.length];
-        for (int i = 0; i < features.length; i++) {
-            result[i] = features[i] + other.features[i];
-        }
-        return new FeatureVector(result, algorithmName, algorithmVersion);
+        return combine(other, 1.0);
     }
 
     /**
-     * Subtracts another feature vector from this one.
+     * Subtracts another feature vector from this one. The difference is
+     * sparse if both vectors are, and otherwise has this vector's precision.
      *
      * @param other the vector to subtract
      * @return a new FeatureVector with the difference
      */
     public FeatureVector subtract(FeatureVector other) {
-        validateDimensions(other);
-
-        double[] result = new double[features.length];
-        for (int i = 0; i < features.length; i++) {
-            result[i] = features[i] - other.features[i];
-        }
-        return new FeatureVector(result, algorithmName, algorithmVersion);
+        return combine(other, -1.0);
     }
 
     /**
-     * Multiplies this vector by a scalar.
+     * Multiplies this vector by a scalar, keeping its form and precision.
      *
      * @param scalar the scalar value
      * @return a new scaled FeatureVector
      */
     public FeatureVector scale(double scalar) {
-        double[] result = new double[features.length];
-        for (int i = 0; i < features.length; i++) {
-            result[i] = features[i] * scalar;
+        double[] result = storedValues().clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] *= scalar;
         }
-        return new FeatureVector(result, algorithmName, algorithmVersion);
+        return withValues(result);
     }
 
     /**
@@ -281,19 +737,68 @@ public class FeatureVector implements Serializable {
      */
     public double dot(FeatureVector other) {
         validateDimensions(other);
+        if (indices != null && other.indices != null) {
+            return DistanceKernels.dot(indices, features, 0, features.length,
+                other.indices, other.features, 0, other.features.length);
+        }
+        if (singles != null && other.singles != null) {
+            return DistanceKernels.dot(singles, 0, other.singles, 0, dimension);
+        }
+        return DistanceKernels.dot(values(), 0, other.values(), 0, dimension);
+    }
+
+    // A vector of the same form, positions and precision holding the given values.
+    private FeatureVector withValues(double[] values) {
+        if (indices != null) {
+            return new FeatureVector(dimension, indices, values, algorithmName, algorithmVersion);
+        }
+        return of(values, algorithmName, algorithmVersion, getPrecision());
+    }
+
+    private FeatureVector combine(FeatureVector other, double sign) {
+        validateDimensions(other);
+
+        double[] result = getFeatures();
+        other.accumulateInto(result, sign);
+        if (indices != null && other.indices != null) {
+            return sparse(result, algorithmName, algorithmVersion);
+        }
+        return of(result, algorithmName, algorithmVersion, getPrecision());
+    }
+
+    private static float[] narrow(double[] values) {
+        float[] narrowed = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            narrowed[i] = (float) values[i];
+        }
+        return narrowed;
+    }
 
-        double result = 0;
-        for (int i = 0; i < features.length; i++) {
-            result += features[i] * other.features[i];
+    private static double[] widen(float[] values) {
+        double[] widened = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            widened[i] = values[i];
+        }
+        return widened;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Streams written before the dimension was serialised are dense, double precision and leave it at zero
+        if (dimension == 0) {
+            dimension = features.length;
+        }
+        // Streams written before the norm was serialised leave it at zero
+        if (norm == 0.0) {
+            norm = computeNorm();
         }
-        return result;
     }
 
     private void validateDimensions(FeatureVector other) {
         Objects.requireNonNull(other, "Other feature vector cannot be null");
-        if (features.length != other.features.length) {
+        if (dimension != other.dimension) {
             throw new IllegalArgumentException(
-                String.format("Dimension mismatch: %d vs %d", features.length, other.features.length));
+                String.format("Dimension mismatch: %d vs %d", dimension, other.dimension));
         }
     }
 
@@ -305,7 +810,7 @@ public class FeatureVector implements Serializable {
      */
     public boolean isCompatibleWith(FeatureVector other) {
         return other != null &&
-               features.length == other.features.length &&
+               dimension == other.dimension &&
                algorithmName.equals(other.algorithmName);
     }
 
@@ -314,18 +819,52 @@ public class FeatureVector implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         FeatureVector that = (FeatureVector) o;
-        return Arrays.equals(features, that.features);
+        if (indices != null && that.indices != null) {
+            return dimension == that.dimension
+                && Arrays.equals(indices, that.indices)
+                && Arrays.equals(features, that.features);
+        }
+        if (singles != null && that.singles != null) {
+            return Arrays.equals(singles, that.singles);
+        }
+        return dimension == that.dimension && Arrays.equals(values(), that.values());
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(features);
+        if (singles != null) {
+            // Arrays.hashCode of the widened values, so equal vectors of either precision agree
+            int hash = 1;
+            for (float value : singles) {
+                hash = 31 * hash + Double.hashCode(value);
+            }
+            return hash;
+        }
+        if (indices == null) {
+            return Arrays.hashCode(features);
+        }
+        // Arrays.hashCode of the expanded values, without expanding them
+        int hash = 1;
+        int next = 0;
+        for (int i = 0; i < dimension; i++) {
+            double value = next < indices.length && indices[next] == i ? features[next++] : 0.0;
+            hash = 31 * hash + Double.hashCode(value);
+        }
+        return hash;
     }
 
     @Override
     public String toString() {
+        if (indices != null) {
+            return String.format("FeatureVector{dim=%d, nonZero=%d, algorithm=%s, norm=%.4f}",
+                dimension, indices.length, algorithmName, norm());
+        }
+        if (singles != null) {
+            return String.format("FeatureVector{dim=%d, precision=float32, algorithm=%s, norm=%.4f}",
+                dimension, algorithmName, norm());
+        }
         return String.format("FeatureVector{dim=%d, algorithm=%s, norm=%.4f}",
-            features.length, algorithmName, norm());
+            dimension, algorithmName, norm());
     }
 
     /**
@@ -337,13 +876,13 @@ public class FeatureVector implements Serializable {
     public String toDetailedString(int maxValues) {
         StringBuilder sb = new StringBuilder();
         sb.append("FeatureVector[");
-        int count = Math.min(maxValues, features.length);
+        int count = Math.min(maxValues, dimension);
         for (int i = 0; i < count; i++) {
             if (i > 0) sb.append(", ");
-            sb.append(String.format("%.4f", features[i]));
+            sb.append(String.format("%.4f", getFeature(i)));
         }
-        if (count < features.length) {
-            sb.append(", ... (").append(features.length - count).append(" more)");
+        if (count < dimension) {
+            sb.append(", ... (").append(dimension - count).append(" more)");
         }
         sb.append("]");
         return sb.toString();
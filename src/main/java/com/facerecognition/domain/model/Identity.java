@@ -1,8 +1,11 @@
 package com.facerecognition.domain.model;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Represents a known identity in the face recognition system.
@@ -12,6 +15,14 @@ import java.util.*;
  * <p>Identities are the core unit of recognition - the system
  * classifies unknown faces by matching them to enrolled identities.</p>
  *
+ * <p>The centroid returned by {@link #getAverageFeatureVector()} is cached.
+ * A running per-dimension sum of the sample vectors is updated as samples
+ * are enrolled and removed, so the centroid is rebuilt in {@code O(d)}
+ * after a change and costs nothing to read until the next one. Sample
+ * enrolment and removal and the centroid rebuild hold the identity's lock,
+ * so the sum and the cache stay consistent when a centroid is read while
+ * another thread changes the samples.</p>
+ *
  * @author Prasad Subrahmanya
  * @version 2.0
  * @since 2.0
@@ -20,26 +31,48 @@ public class Identity implements Serializable {
 
     private static final long serialVersionUID = 2L;
 
+    /** The partition of identities that were not assigned one. */
+    public static final String DEFAULT_PARTITION = "default";
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,63}");
+
     private final String id;
     private String name;
     private String externalId;
+    // Null in identities serialised before partitions existed; read as DEFAULT_PARTITION.
+    private String partition;
     private final LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private final List<EnrolledSample> samples;
     private final Map<String, String> metadata;
     private boolean active;
 
+    // Running sum of the sample vectors; null until first needed or when
+    // the samples do not share one dimension. Guarded by this.
+    private transient double[] featureSum;
+    // Cached centroid; null when it must be rebuilt from featureSum. Written
+    // under this, read without it.
+    private transient volatile FeatureVector centroid;
+
     /**
      * Represents a single enrolled face sample for an identity.
+     *
+     * <p>A classifier that keeps its own copy of the sample's values may
+     * {@linkplain #offload offload} the sample into a {@link FeatureStore},
+     * after which the sample holds only a key into that store and
+     * {@link #getFeatures()} reads the values back on every call. Offloaded
+     * samples serialise with their values, like any other.</p>
      */
     public static class EnrolledSample implements Serializable {
         private static final long serialVersionUID = 1L;
 
         private final String sampleId;
-        private final FeatureVector features;
+        // Null while the values live in a FeatureStore; see stored.
+        private volatile FeatureVector features;
         private final LocalDateTime enrolledAt;
         private final double qualityScore;
         private final String sourceDescription;
+        private transient volatile StoredVector stored;
 
         /**
          * Creates a new enrolled sample.
@@ -57,11 +90,102 @@ public class Identity implements Serializable {
         }
 
         public String getSampleId() { return sampleId; }
-        public FeatureVector getFeatures() { return features; }
         public LocalDateTime getEnrolledAt() { return enrolledAt; }
         public double getQualityScore() { return qualityScore; }
         public String getSourceDescription() { return sourceDescription; }
 
+        /**
+         * Gets the sample's feature vector, loading it from its store if it
+         * has been offloaded.
+         *
+         * @return the feature vector
+         * @throws IllegalStateException if the sample was offloaded into a
+         *         store that has since been released
+         */
+        public FeatureVector getFeatures() {
+            while (true) {
+                FeatureVector local = features;
+                if (local != null) {
+                    return local;
+                }
+                // offload() sets stored before clearing features and reclaim() sets
+                // features before clearing stored, so one of the two is always set.
+                StoredVector location = stored;
+                if (location == null) {
+                    continue;
+                }
+                FeatureVector loaded = location.load();
+                if (loaded != null) {
+                    return loaded;
+                }
+                if (stored == location) {
+                    throw new IllegalStateException("Sample " + sampleId + " was offloaded into a released store");
+                }
+            }
+        }
+
+        /**
+         * Drops the in-heap vector, reading the values from {@code store}
+         * under {@code key} from now on. The store must already hold them; a
+         * sample offloaded elsewhere is moved.
+         *
+         * @param store the store holding the values
+         * @param key the key of the values in the store
+         */
+        public synchronized void offload(FeatureStore store, long key) {
+            Objects.requireNonNull(store, "Store cannot be null");
+            FeatureVector local = features;
+            stored = local != null ? new StoredVector(store, key, local) : stored.movedTo(store, key);
+            features = null;
+        }
+
+        /**
+         * Loads the values back onto the heap if the sample is offloaded into
+         * {@code store}, so the store can be released.
+         *
+         * @param store the store being released
+         * @return true if the sample was offloaded into it
+         */
+        public synchronized boolean reclaim(FeatureStore store) {
+            StoredVector location = stored;
+            if (location == null || location.store != store) {
+                return false;
+            }
+            FeatureVector loaded = location.load();
+            if (loaded == null) {
+                throw new IllegalStateException("Sample " + sampleId + " was offloaded into a released store");
+            }
+            features = loaded;
+            stored = null;
+            return true;
+        }
+
+        /**
+         * @param store a feature store
+         * @return the key this sample is offloaded under in {@code store}, or -1 if it is not
+         */
+        public long keyIn(FeatureStore store) {
+            StoredVector location = stored;
+            return location != null && location.store == store ? location.key : -1L;
+        }
+
+        /**
+         * @return true if the values live in a {@link FeatureStore} rather than on the heap
+         */
+        public boolean isOffloaded() {
+            return features == null;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            ObjectOutputStream.PutField fields = out.putFields();
+            fields.put("sampleId", sampleId);
+            fields.put("features", getFeatures());
+            fields.put("enrolledAt", enrolledAt);
+            fields.put("qualityScore", qualityScore);
+            fields.put("sourceDescription", sourceDescription);
+            out.writeFields();
+        }
+
         @Override
         public String toString() {
             return String.format("EnrolledSample{id=%s, quality=%.2f, enrolledAt=%s}",
@@ -69,6 +193,44 @@ public class Identity implements Serializable {
         }
     }
 
+    // Where an offloaded sample's values live, and what the vector looked like.
+    private static final class StoredVector {
+        final FeatureStore store;
+        final long key;
+        final String algorithmName;
+        final int algorithmVersion;
+        final FeaturePrecision precision;
+        final boolean sparse;
+
+        StoredVector(FeatureStore store, long key, FeatureVector shape) {
+            this(store, key, shape.getAlgorithmName(), shape.getAlgorithmVersion(), shape.getPrecision(),
+                shape.isSparse());
+        }
+
+        private StoredVector(FeatureStore store, long key, String algorithmName, int algorithmVersion,
+                             FeaturePrecision precision, boolean sparse) {
+            this.store = store;
+            this.key = key;
+            this.algorithmName = algorithmName;
+            this.algorithmVersion = algorithmVersion;
+            this.precision = precision;
+            this.sparse = sparse;
+        }
+
+        StoredVector movedTo(FeatureStore target, long targetKey) {
+            return new StoredVector(target, targetKey, algorithmName, algorithmVersion, precision, sparse);
+        }
+
+        FeatureVector load() {
+            double[] values = store.load(key);
+            if (values == null) {
+                return null;
+            }
+            return sparse ? FeatureVector.sparse(values, algorithmName, algorithmVersion)
+                : FeatureVector.of(values, algorithmName, algorithmVersion, precision);
+        }
+    }
+
     /**
      * Creates a new Identity with the specified name.
      *
@@ -89,6 +251,7 @@ public class Identity implements Serializable {
         this.id = Objects.requireNonNull(id, "ID cannot be null");
         this.name = Objects.requireNonNull(name, "Name cannot be null");
         this.externalId = externalId;
+        this.partition = DEFAULT_PARTITION;
         this.createdAt = LocalDateTime.now();
         this.updatedAt = this.createdAt;
         this.samples = new ArrayList<>();
@@ -96,6 +259,35 @@ public class Identity implements Serializable {
         this.active = true;
     }
 
+    // Copy constructor; see copy().
+    private Identity(Identity source) {
+        this.id = source.id;
+        this.name = source.name;
+        this.externalId = source.externalId;
+        this.partition = source.partition;
+        this.createdAt = source.createdAt;
+        this.updatedAt = source.updatedAt;
+        this.metadata = new HashMap<>(source.metadata);
+        this.active = source.active;
+        synchronized (source) {
+            this.samples = new ArrayList<>(source.samples);
+            this.featureSum = source.featureSum != null ? source.featureSum.clone() : null;
+            this.centroid = source.centroid;
+        }
+    }
+
+    /**
+     * Creates a copy of this identity with the same ID, details, metadata
+     * and samples. Samples enrolled into or removed from either afterwards
+     * do not show in the other; the two share the {@link EnrolledSample}
+     * objects they start with, whose values never change.
+     *
+     * @return the copy
+     */
+    public Identity copy() {
+        return new Identity(this);
+    }
+
     /**
      * Gets the unique identifier.
      *
@@ -143,6 +335,43 @@ public class Identity implements Serializable {
         this.updatedAt = LocalDateTime.now();
     }
 
+    /**
+     * Gets the gallery partition, such as a site or tenant, that this
+     * identity is searched in.
+     *
+     * @return the partition name, {@link #DEFAULT_PARTITION} unless set
+     */
+    public String getPartition() {
+        return partition != null ? partition : DEFAULT_PARTITION;
+    }
+
+    /**
+     * Sets the gallery partition.
+     *
+     * @param partition the partition name, or null for {@link #DEFAULT_PARTITION}
+     * @throws IllegalArgumentException if the name is not 1-64 letters, digits,
+     *         dots, underscores or hyphens starting with a letter or digit
+     */
+    public void setPartition(String partition) {
+        this.partition = partition != null ? checkPartition(partition) : DEFAULT_PARTITION;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Validates a partition name.
+     *
+     * @param partition the partition name
+     * @return the name
+     * @throws IllegalArgumentException if the name is not 1-64 letters, digits,
+     *         dots, underscores or hyphens starting with a letter or digit
+     */
+    public static String checkPartition(String partition) {
+        if (partition == null || !PARTITION_NAME.matcher(partition).matches()) {
+            throw new IllegalArgumentException("Invalid partition name: " + partition);
+        }
+        return partition;
+    }
+
     /**
      * Gets the creation timestamp.
      *
@@ -188,9 +417,18 @@ public class Identity implements Serializable {
      * @param sourceDescription description of the source
      * @return the created EnrolledSample
      */
-    public EnrolledSample enrollSample(FeatureVector features, double qualityScore, String sourceDescription) {
+    public synchronized EnrolledSample enrollSample(FeatureVector features, double qualityScore,
+                                                    String sourceDescription) {
         EnrolledSample sample = new EnrolledSample(features, qualityScore, sourceDescription);
         samples.add(sample);
+        if (featureSum != null) {
+            if (featureSum.length == features.getDimension()) {
+                accumulate(features, 1.0);
+            } else {
+                featureSum = null;
+            }
+        }
+        centroid = null;
         this.updatedAt = LocalDateTime.now();
         return sample;
     }
@@ -201,9 +439,42 @@ public class Identity implements Serializable {
      * @param sampleId the sample ID to remove
      * @return true if removed
      */
-    public boolean removeSample(String sampleId) {
-        boolean removed = samples.removeIf(s -> s.getSampleId().equals(sampleId));
-        if (removed) {
+    public synchronized boolean removeSample(String sampleId) {
+        Iterator<EnrolledSample> iterator = samples.iterator();
+        while (iterator.hasNext()) {
+            EnrolledSample sample = iterator.next();
+            if (!sample.getSampleId().equals(sampleId)) {
+                continue;
+            }
+            iterator.remove();
+            if (samples.isEmpty()) {
+                featureSum = null;
+            } else if (featureSum != null) {
+                accumulate(sample.getFeatures(), -1.0);
+            }
+            centroid = null;
+            this.updatedAt = LocalDateTime.now();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every sample whose ID is not in {@code sampleIds}, in one pass.
+     * The running feature sum is rebuilt from the kept samples when next
+     * needed, rather than updated once per removal.
+     *
+     * @param sampleIds the IDs of the samples to keep
+     * @return the number of samples removed
+     */
+    public synchronized int retainSamples(Set<String> sampleIds) {
+        Objects.requireNonNull(sampleIds, "Sample IDs cannot be null");
+        int before = samples.size();
+        samples.removeIf(sample -> !sampleIds.contains(sample.getSampleId()));
+        int removed = before - samples.size();
+        if (removed > 0) {
+            featureSum = null;
+            centroid = null;
             this.updatedAt = LocalDateTime.now();
         }
         return removed;
@@ -214,9 +485,11 @@ public class Identity implements Serializable {
      * (name, external ID, metadata) is preserved so that re-enrolling samples
      * keeps the caller-visible ID stable across a retrain.
      */
-    public void clearSamples() {
+    public synchronized void clearSamples() {
         if (!samples.isEmpty()) {
             samples.clear();
+            featureSum = null;
+            centroid = null;
             this.updatedAt = LocalDateTime.now();
         }
     }
@@ -262,32 +535,72 @@ public class Identity implements Serializable {
     }
 
     /**
-     * Computes the average (centroid) feature vector of all samples.
+     * Gets the average (centroid) feature vector of all samples.
+     *
+     * <p>The centroid is cached until the samples change. Removing a sample
+     * subtracts it from the running sum, so after many removals the result
+     * may differ from a fresh average in the last bits. The sum is kept in
+     * double precision; the centroid is stored at the first sample's
+     * {@linkplain FeatureVector#getPrecision() precision}.</p>
      *
      * @return the average feature vector, or null if no samples
      */
     public FeatureVector getAverageFeatureVector() {
-        if (samples.isEmpty()) {
-            return null;
+        FeatureVector cached = centroid;
+        if (cached != null) {
+            return cached;
         }
+        synchronized (this) {
+            cached = centroid;
+            if (cached != null || samples.isEmpty()) {
+                return cached;
+            }
+
+            double[] sum = featureSum;
+            if (sum == null) {
+                sum = sumSamples();
+            }
+            double[] mean = new double[sum.length];
+            for (int i = 0; i < sum.length; i++) {
+                mean[i] = sum[i] / samples.size();
+            }
 
+            FeatureVector first = samples.get(0).getFeatures();
+            cached = FeatureVector.of(mean, first.getAlgorithmName(), first.getAlgorithmVersion(),
+                first.getPrecision());
+            centroid = cached;
+            return cached;
+        }
+    }
+
+    // Sums every sample over the first sample's dimension, keeping the sum
+    // for incremental updates only if all samples share that dimension.
+    // Caller holds the lock.
+    private double[] sumSamples() {
         int dimension = samples.get(0).getFeatures().getDimension();
         double[] sum = new double[dimension];
-
+        boolean uniform = true;
         for (EnrolledSample sample : samples) {
-            double[] features = sample.getFeatures().getFeatures();
-            for (int i = 0; i < dimension; i++) {
-                sum[i] += features[i];
+            FeatureVector features = sample.getFeatures();
+            if (features.getDimension() == dimension) {
+                features.accumulateInto(sum);
+            } else {
+                uniform = false;
+                double[] values = features.values();
+                for (int i = 0; i < dimension; i++) {
+                    sum[i] += values[i];
+                }
             }
         }
-
-        for (int i = 0; i < dimension; i++) {
-            sum[i] /= samples.size();
+        if (uniform) {
+            featureSum = sum;
         }
+        return sum;
+    }
 
-        String algorithm = samples.get(0).getFeatures().getAlgorithmName();
-        int version = samples.get(0).getFeatures().getAlgorithmVersion();
-        return new FeatureVector(sum, algorithm, version);
+    // Caller holds the lock.
+    private void accumulate(FeatureVector features, double sign) {
+        features.accumulateInto(featureSum, sign);
     }
 
     /**
@@ -358,7 +671,7 @@ public class Identity implements Serializable {
 
     @Override
     public String toString() {
-        return String.format("Identity{id='%s', name='%s', samples=%d, active=%s}",
-            id.substring(0, 8), name, samples.size(), active);
+        return String.format("Identity{id='%s', name='%s', partition=%s, samples=%d, active=%s}",
+            id.substring(0, 8), name, getPartition(), samples.size(), active);
     }
 }
@@ -35,6 +35,7 @@ public class RecognitionResult implements Serializable {
     private final ProcessingMetrics metrics;
     private final Status status;
     private final String errorMessage;
+    private final long galleryVersion;
 
     /**
      * Recognition result status.
@@ -129,6 +130,7 @@ public class RecognitionResult implements Serializable {
         private ProcessingMetrics metrics;
         private Status status = Status.UNKNOWN;
         private String errorMessage;
+        private long galleryVersion;
 
         public Builder status(Status status) {
             this.status = status;
@@ -165,6 +167,11 @@ public class RecognitionResult implements Serializable {
             return this;
         }
 
+        public Builder galleryVersion(long version) {
+            this.galleryVersion = version;
+            return this;
+        }
+
         public Builder error(String message) {
             this.status = Status.ERROR;
             this.errorMessage = message;
@@ -186,6 +193,7 @@ public class RecognitionResult implements Serializable {
         this.metrics = builder.metrics;
         this.status = builder.status;
         this.errorMessage = builder.errorMessage;
+        this.galleryVersion = builder.galleryVersion;
     }
 
     /**
@@ -393,6 +401,15 @@ public class RecognitionResult implements Serializable {
         return Optional.ofNullable(errorMessage);
     }
 
+    /**
+     * Gets the version of the gallery the probe was matched against.
+     *
+     * @return the gallery version, or 0 if the result was not produced against a versioned gallery
+     */
+    public long getGalleryVersion() {
+        return galleryVersion;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,171 @@
+package com.facerecognition.domain.model;
+
+/**
+ * Plain-loop implementation of {@link DistanceKernels}. Always available and
+ * used whenever the Vector API is not.
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ */
+final class ScalarDistanceKernels implements DistanceKernels.Implementation {
+
+    static final ScalarDistanceKernels INSTANCE = new ScalarDistanceKernels();
+
+    private ScalarDistanceKernels() {
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(double[] a, int offset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double v = a[offset + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double manhattan(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double x = a[aOffset + i];
+            double y = b[bOffset + i];
+            double diff = x - y;
+            double total = x + y;
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(float[] a, int offset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double v = a[offset + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double diff = (double) a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double manhattan(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += Math.abs((double) a[aOffset + i] - b[bOffset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double x = a[aOffset + i];
+            double y = b[bOffset + i];
+            double diff = x - y;
+            double total = x + y;
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += (a[aOffset + i] & 0xFF) * (b[bOffset + i] & 0xFF);
+        }
+        return sum;
+    }
+
+    @Override
+    public long squaredEuclidean(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            int diff = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public long manhattan(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += Math.abs((a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF));
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(byte[] a, int aOffset, byte[] b, int bOffset, double[] bias, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            int x = a[aOffset + i] & 0xFF;
+            int y = b[bOffset + i] & 0xFF;
+            int diff = x - y;
+            double total = x + y + bias[i];
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+}
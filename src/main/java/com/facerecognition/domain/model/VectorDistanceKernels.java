@@ -0,0 +1,403 @@
+package com.facerecognition.domain.model;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of {@link DistanceKernels} on top of the incubating
+ * Vector API ({@code jdk.incubator.vector}).
+ *
+ * <p>Each kernel processes {@link DoubleVector#SPECIES_PREFERRED} lanes per
+ * iteration, keeps one vector accumulator and reduces it once at the end;
+ * the tail that does not fill a whole vector is handled with a scalar loop.
+ * Because lane-wise accumulation reorders the floating-point additions, the
+ * results differ from {@link ScalarDistanceKernels} by rounding error only.</p>
+ *
+ * <p>The {@code float} kernels load {@link FloatVector#SPECIES_PREFERRED},
+ * twice as many lanes as the {@code double} species, widen each half into a
+ * {@code double} vector and accumulate those as the {@code double} kernels
+ * do, so single-precision inputs never lose precision in the sums.</p>
+ *
+ * <p>The 8-bit code kernels load {@link IntVector#SPECIES_PREFERRED}-many
+ * bytes at a time, widen them to {@code int} lanes and accumulate exactly.
+ * The accumulator is flushed into a {@code long} every
+ * {@code CODE_FLUSH_INTERVAL} iterations, before the sum of its lanes could
+ * overflow, because {@code reduceLanesToLong} adds in {@code int} before
+ * widening.
+ * Platforms whose preferred integer vector has fewer than eight lanes use
+ * the scalar code loops.</p>
+ *
+ * <p>This class must only be touched after checking that the
+ * {@code jdk.incubator.vector} module is present in the boot layer;
+ * {@link DistanceKernels} does that before calling {@link #create()}.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ */
+final class VectorDistanceKernels implements DistanceKernels.Implementation {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Same bit size as SPECIES, so each float vector widens into exactly two double vectors.
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Same lane count as INTS; null when that would be narrower than the smallest byte shape.
+    private static final VectorSpecies<Byte> CODES = INTS.length() >= 8
+        ? VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE))
+        : null;
+
+    // Iterations after which the lanes of squared 8-bit differences (at most 255^2 each) must be flushed.
+    private static final int CODE_FLUSH_INTERVAL = Integer.MAX_VALUE / (255 * 255) / INTS.length();
+
+    private VectorDistanceKernels() {
+    }
+
+    /**
+     * Creates the SIMD kernels if the platform offers a useful vector width.
+     *
+     * @return the kernels, or null if fewer than two lanes are available
+     */
+    static VectorDistanceKernels create() {
+        return SPECIES.length() >= 2 ? new VectorDistanceKernels() : null;
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + SPECIES.vectorShape() + ")";
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(double[] a, int offset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, offset + i);
+            acc = va.fma(va, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double v = a[offset + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+            acc = diff.fma(diff, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double manhattan(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+            acc = acc.add(diff.abs());
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            DoubleVector diff = va.sub(vb);
+            DoubleVector total = va.add(vb);
+            // Lanes with total <= 0 would divide by zero; the mask drops them
+            // exactly like the scalar "if (total > 0)" guard.
+            VectorMask<Double> positive = total.compare(VectorOperators.GT, 0.0);
+            acc = acc.add(diff.mul(diff).div(total), positive);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double x = a[aOffset + i];
+            double y = b[bOffset + i];
+            double diff = x - y;
+            double total = x + y;
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            acc = widen(va, 0).fma(widen(vb, 0), acc);
+            acc = widen(va, 1).fma(widen(vb, 1), acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(float[] a, int offset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, offset + i);
+            DoubleVector low = widen(va, 0);
+            DoubleVector high = widen(va, 1);
+            acc = low.fma(low, acc);
+            acc = high.fma(high, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double v = a[offset + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            DoubleVector low = widen(va, 0).sub(widen(vb, 0));
+            DoubleVector high = widen(va, 1).sub(widen(vb, 1));
+            acc = low.fma(low, acc);
+            acc = high.fma(high, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double diff = (double) a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double manhattan(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            acc = acc.add(widen(va, 0).sub(widen(vb, 0)).abs());
+            acc = acc.add(widen(va, 1).sub(widen(vb, 1)).abs());
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += Math.abs((double) a[aOffset + i] - b[bOffset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            for (int part = 0; part < 2; part++) {
+                DoubleVector x = widen(va, part);
+                DoubleVector y = widen(vb, part);
+                DoubleVector diff = x.sub(y);
+                DoubleVector total = x.add(y);
+                VectorMask<Double> positive = total.compare(VectorOperators.GT, 0.0);
+                acc = acc.add(diff.mul(diff).div(total), positive);
+            }
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double x = a[aOffset + i];
+            double y = b[bOffset + i];
+            double diff = x - y;
+            double total = x + y;
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (CODES == null) {
+            return ScalarDistanceKernels.INSTANCE.dot(a, aOffset, b, bOffset, length);
+        }
+        IntVector acc = IntVector.zero(INTS);
+        long sum = 0;
+        int upper = CODES.loopBound(length);
+        int i = 0;
+        for (int pending = 0; i < upper; i += CODES.length()) {
+            acc = acc.add(widen(a, aOffset + i).mul(widen(b, bOffset + i)));
+            if (++pending == CODE_FLUSH_INTERVAL) {
+                sum += acc.reduceLanesToLong(VectorOperators.ADD);
+                acc = IntVector.zero(INTS);
+                pending = 0;
+            }
+        }
+        sum += acc.reduceLanesToLong(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += (a[aOffset + i] & 0xFF) * (b[bOffset + i] & 0xFF);
+        }
+        return sum;
+    }
+
+    @Override
+    public long squaredEuclidean(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (CODES == null) {
+            return ScalarDistanceKernels.INSTANCE.squaredEuclidean(a, aOffset, b, bOffset, length);
+        }
+        IntVector acc = IntVector.zero(INTS);
+        long sum = 0;
+        int upper = CODES.loopBound(length);
+        int i = 0;
+        for (int pending = 0; i < upper; i += CODES.length()) {
+            IntVector diff = widen(a, aOffset + i).sub(widen(b, bOffset + i));
+            acc = acc.add(diff.mul(diff));
+            if (++pending == CODE_FLUSH_INTERVAL) {
+                sum += acc.reduceLanesToLong(VectorOperators.ADD);
+                acc = IntVector.zero(INTS);
+                pending = 0;
+            }
+        }
+        sum += acc.reduceLanesToLong(VectorOperators.ADD);
+        for (; i < length; i++) {
+            int diff = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public long manhattan(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (CODES == null) {
+            return ScalarDistanceKernels.INSTANCE.manhattan(a, aOffset, b, bOffset, length);
+        }
+        IntVector acc = IntVector.zero(INTS);
+        long sum = 0;
+        int upper = CODES.loopBound(length);
+        int i = 0;
+        for (int pending = 0; i < upper; i += CODES.length()) {
+            acc = acc.add(widen(a, aOffset + i).sub(widen(b, bOffset + i)).abs());
+            if (++pending == CODE_FLUSH_INTERVAL) {
+                sum += acc.reduceLanesToLong(VectorOperators.ADD);
+                acc = IntVector.zero(INTS);
+                pending = 0;
+            }
+        }
+        sum += acc.reduceLanesToLong(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += Math.abs((a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF));
+        }
+        return sum;
+    }
+
+    @Override
+    public double chiSquare(byte[] a, int aOffset, byte[] b, int bOffset, double[] bias, int length) {
+        if (CODES == null) {
+            return ScalarDistanceKernels.INSTANCE.chiSquare(a, aOffset, b, bOffset, bias, length);
+        }
+        // Each int vector of codes widens into this many double vectors.
+        int parts = INTS.length() / SPECIES.length();
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int upper = CODES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += CODES.length()) {
+            IntVector va = widen(a, aOffset + i);
+            IntVector vb = widen(b, bOffset + i);
+            IntVector diff = va.sub(vb);
+            IntVector squares = diff.mul(diff);
+            IntVector sums = va.add(vb);
+            for (int part = 0; part < parts; part++) {
+                DoubleVector numerator = (DoubleVector) squares.convertShape(VectorOperators.I2D, SPECIES, part);
+                DoubleVector total = ((DoubleVector) sums.convertShape(VectorOperators.I2D, SPECIES, part))
+                    .add(DoubleVector.fromArray(SPECIES, bias, i + part * SPECIES.length()));
+                VectorMask<Double> positive = total.compare(VectorOperators.GT, 0.0);
+                acc = acc.add(numerator.div(total), positive);
+            }
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            int x = a[aOffset + i] & 0xFF;
+            int y = b[bOffset + i] & 0xFF;
+            int diff = x - y;
+            double total = x + y + bias[i];
+            if (total > 0) {
+                sum += (diff * diff) / total;
+            }
+        }
+        return sum;
+    }
+
+    // Loads CODES.length() unsigned bytes as int lanes.
+    private static IntVector widen(byte[] codes, int offset) {
+        return ((IntVector) ByteVector.fromArray(CODES, codes, offset)
+            .convertShape(VectorOperators.B2I, INTS, 0))
+            .and(0xFF);
+    }
+
+    // Converts one half of a float vector to double lanes.
+    private static DoubleVector widen(FloatVector values, int part) {
+        return (DoubleVector) values.convertShape(VectorOperators.F2D, SPECIES, part);
+    }
+}
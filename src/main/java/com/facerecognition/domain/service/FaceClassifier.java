@@ -4,6 +4,8 @@ import com.facerecognition.domain.model.FeatureVector;
 import com.facerecognition.domain.model.Identity;
 import com.facerecognition.domain.model.RecognitionResult;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,6 +19,14 @@ import java.util.List;
  * <p>Available implementations:</p>
  * <ul>
  *   <li><b>KNNClassifier</b>: k-Nearest Neighbors</li>
+ *   <li><b>HNSWClassifier</b>: Approximate nearest neighbours over an HNSW graph</li>
+ *   <li><b>IVFClassifier</b>: k-means inverted file, scanning the nearest cells only</li>
+ *   <li><b>PQClassifier</b>: Product-quantised codes with exact re-ranking</li>
+ *   <li><b>LSHClassifier</b>: Hamming prefilter over binary sketches with exact re-ranking</li>
+ *   <li><b>VPTreeClassifier</b>: Exact vantage-point tree search for low-dimensional vectors</li>
+ *   <li><b>MappedGalleryClassifier</b>: Exact scan of an off-heap gallery in memory-mapped files</li>
+ *   <li><b>PartitionedClassifier</b>: One independent classifier per gallery partition</li>
+ *   <li><b>CascadeClassifier</b>: Cheap shortlist re-ranked on an expensive representation</li>
  *   <li><b>ThresholdClassifier</b>: Simple distance threshold</li>
  *   <li><b>SVMClassifier</b>: Support Vector Machine</li>
  *   <li><b>NeuralNetClassifier</b>: Neural network classifier</li>
@@ -84,6 +94,49 @@ public interface FaceClassifier {
      */
     RecognitionResult classify(FeatureVector probe, double threshold);
 
+    /**
+     * Classifies against the identities of one {@linkplain Identity#getPartition() partition} only.
+     *
+     * <p>Partitioned classifiers keep a separate index per partition and
+     * search only the requested one. The default supports no partitions:
+     * a null partition classifies against every identity, as
+     * {@link #classify(FeatureVector, double)} does, and any other is
+     * rejected.</p>
+     *
+     * @param probe the feature vector to classify
+     * @param threshold the minimum confidence for a match
+     * @param partition the partition to search, or null for all of them
+     * @return the recognition result; UNKNOWN if the partition is empty
+     * @throws IllegalStateException if a partition is given and this
+     *         classifier is not partitioned
+     */
+    default RecognitionResult classify(FeatureVector probe, double threshold, String partition) {
+        if (partition != null) {
+            throw new IllegalStateException(getName() + " classifier is not partitioned");
+        }
+        return classify(probe, threshold);
+    }
+
+    /**
+     * Classifies many probes with a custom confidence threshold.
+     *
+     * <p>Equivalent to calling {@link #classify(FeatureVector, double)} for
+     * each probe in order. Implementations may override it to share work
+     * across probes, for example by streaming the gallery once per block of
+     * probes instead of once per probe.</p>
+     *
+     * @param probes the feature vectors to classify
+     * @param threshold the minimum confidence for a match
+     * @return one recognition result per probe, in probe order
+     */
+    default List<RecognitionResult> classifyBatch(List<FeatureVector> probes, double threshold) {
+        List<RecognitionResult> results = new ArrayList<>(probes.size());
+        for (FeatureVector probe : probes) {
+            results.add(classify(probe, threshold));
+        }
+        return results;
+    }
+
     /**
      * Gets the top N matches for a feature vector.
      *
@@ -102,6 +155,74 @@ public interface FaceClassifier {
      */
     double getDistance(FeatureVector probe, String identityId);
 
+    /**
+     * Verifies that a probe belongs to one claimed identity.
+     *
+     * <p>Unlike {@link #classify}, this compares the probe only with the
+     * samples of that identity, using the distance {@link #getDistance}
+     * reports, so the cost does not grow with the gallery. The confidence
+     * is calibrated as for {@link #classify}.</p>
+     *
+     * <p>The default looks the identity up among
+     * {@link #getEnrolledIdentities()} and converts {@link #getDistance}
+     * with {@link #distanceToConfidence}. Implementations that can find an
+     * identity by ID directly may override it.</p>
+     *
+     * @param probe the probe feature vector
+     * @param identityId the claimed identity ID
+     * @param threshold the minimum confidence for a match
+     * @return RECOGNIZED with the identity as best match if the confidence
+     *         reaches the threshold; otherwise UNKNOWN, with the identity as
+     *         the only alternative if it is enrolled and active
+     */
+    default RecognitionResult verify(FeatureVector probe, String identityId, double threshold) {
+        Identity identity = null;
+        if (isEnrolled(identityId)) {
+            for (Identity enrolled : getEnrolledIdentities()) {
+                if (enrolled.getId().equals(identityId)) {
+                    identity = enrolled;
+                    break;
+                }
+            }
+        }
+        if (identity == null || !identity.isActive()) {
+            return RecognitionResult.builder()
+                .status(RecognitionResult.Status.UNKNOWN)
+                .extractedFeatures(probe)
+                .build();
+        }
+
+        double distance = getDistance(probe, identityId);
+        RecognitionResult.MatchResult match = new RecognitionResult.MatchResult(
+            identity, distanceToConfidence(distance), distance);
+        if (match.getConfidence() < threshold) {
+            return RecognitionResult.builder()
+                .status(RecognitionResult.Status.UNKNOWN)
+                .alternatives(List.of(match))
+                .extractedFeatures(probe)
+                .build();
+        }
+        return RecognitionResult.builder()
+            .status(RecognitionResult.Status.RECOGNIZED)
+            .bestMatch(match)
+            .extractedFeatures(probe)
+            .build();
+    }
+
+    /**
+     * Converts a distance reported by {@link #getDistance} into a confidence
+     * score, calibrated as for {@link #classify}.
+     *
+     * <p>The default decays exponentially with unit scale, so it suits
+     * distances of order one, such as cosine or chi-square.</p>
+     *
+     * @param distance the distance
+     * @return a confidence score in {@code [0, 1]}
+     */
+    default double distanceToConfidence(double distance) {
+        return Math.exp(-distance);
+    }
+
     /**
      * Gets the name of this classifier implementation.
      *
@@ -130,9 +251,37 @@ public interface FaceClassifier {
 
     /**
      * Retrains the classifier (for classifiers that need training).
+     *
+     * <p>Index-backed classifiers rebuild their index from the enrolled
+     * identities here, so callers should invoke it once after a bulk
+     * enrolment rather than letting the first probe pay for the build.</p>
      */
     void retrain();
 
+    /**
+     * Whether this classifier shares a gallery kept by another writer.
+     *
+     * <p>A read-only classifier rejects {@link #enroll}, {@link #unenroll}
+     * and {@link #clear()} with {@link IllegalStateException}, and
+     * {@link #retrain()} picks up the writer's changes instead.</p>
+     *
+     * @return true if the gallery cannot be changed through this classifier
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Whether the enrolled gallery outlives this object, for example in
+     * files that a restarted service opens again. Such a gallery may
+     * already hold a saved model's identities when the model is loaded.
+     *
+     * @return true if the gallery is kept outside the object
+     */
+    default boolean isPersistent() {
+        return false;
+    }
+
     /**
      * Available distance metrics for face comparison.
      */
@@ -152,7 +301,9 @@ public interface FaceClassifier {
     /**
      * Classifier configuration options.
      */
-    class ClassifierConfig {
+    class ClassifierConfig implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private double threshold = 0.6;
         private int k = 1;
         private DistanceMetric metric = DistanceMetric.EUCLIDEAN;
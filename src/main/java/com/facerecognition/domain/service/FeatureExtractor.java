@@ -1,9 +1,11 @@
 package com.facerecognition.domain.service;
 
 import com.facerecognition.domain.model.FaceImage;
+import com.facerecognition.domain.model.FeaturePrecision;
 import com.facerecognition.domain.model.FeatureVector;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +50,16 @@ public interface FeatureExtractor {
      */
     boolean isTrained();
 
+    /**
+     * Checks whether extraction is independent of the training set, so a
+     * face can be extracted and enrolled without retraining.
+     *
+     * @return true if {@link #train} learns nothing from the faces it is given
+     */
+    default boolean isTrainingFree() {
+        return false;
+    }
+
     /**
      * Extracts features from a face image.
      *
@@ -117,6 +129,7 @@ public interface FeatureExtractor {
         private boolean normalize = true;
         private int imageWidth = 48;
         private int imageHeight = 64;
+        private FeaturePrecision featurePrecision = FeaturePrecision.FLOAT64;
 
         public int getNumComponents() { return numComponents; }
         public ExtractorConfig setNumComponents(int n) { this.numComponents = n; return this; }
@@ -129,5 +142,12 @@ public interface FeatureExtractor {
 
         public int getImageHeight() { return imageHeight; }
         public ExtractorConfig setImageHeight(int h) { this.imageHeight = h; return this; }
+
+        /** How dense output vectors store their values; sparse outputs keep double precision. */
+        public FeaturePrecision getFeaturePrecision() { return featurePrecision; }
+        public ExtractorConfig setFeaturePrecision(FeaturePrecision p) {
+            this.featurePrecision = Objects.requireNonNull(p, "Precision cannot be null");
+            return this;
+        }
     }
 }
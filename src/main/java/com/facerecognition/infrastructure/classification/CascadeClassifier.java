@@ -0,0 +1,243 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.IntSupplier;
+
+/**
+ * Coarse-to-fine classifier for vectors that join a cheap and an expensive
+ * representation, as {@link com.facerecognition.infrastructure.extraction.CascadeFeatureExtractor}
+ * produces.
+ *
+ * <p>Each vector is split after its first {@code coarseDimension} values.
+ * The leading, low-dimensional part of every enrolled sample is held by a
+ * coarse classifier, a {@link KNNClassifier} under the Euclidean metric
+ * unless another is given, which ranks the whole gallery and keeps the
+ * {@code shortlist} nearest identities. Only those are compared on the
+ * trailing part, such as LBPH histograms, under this classifier's own
+ * metric, and reported with those distances. A probe therefore costs one
+ * cheap scan of the gallery plus {@code shortlist} identities' worth of
+ * expensive comparisons, instead of an expensive comparison per sample;
+ * recall is lost only when a true match falls outside the coarse
+ * shortlist. {@link #getDistance} and {@link #verify} compare the fine
+ * parts directly. The fine parts are sliced from the enrolled samples as
+ * they are compared rather than kept a second time.</p>
+ *
+ * <p>The split is read from the supplier when the first identity is
+ * enrolled into an empty gallery, as it is after training, so it follows
+ * an extractor whose dimension is only known once it is trained. It is
+ * then kept, and serialized with the classifier, until {@link #clear()}.</p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>{@code
+ * CascadeFeatureExtractor extractor = new CascadeFeatureExtractor(
+ *     new EigenfacesExtractor(10), new LBPHExtractor());
+ * ClassifierConfig config = new ClassifierConfig().setMetric(DistanceMetric.CHI_SQUARE);
+ * CascadeClassifier classifier = new CascadeClassifier(config, extractor::getCoarseDimension, 50);
+ * }</pre>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see com.facerecognition.infrastructure.extraction.CascadeFeatureExtractor
+ * @see FaceClassifier
+ */
+public class CascadeClassifier extends AbstractFaceClassifier implements Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "Cascade";
+
+    /** Default number of identities re-ranked on the fine representation. */
+    public static final int DEFAULT_SHORTLIST = 50;
+
+    // Not serialized: a deserialized cascade keeps the split it resolved.
+    private final transient IntSupplier coarseDimensionSource;
+    private final AbstractFaceClassifier coarse;
+    private volatile int shortlist;
+    // Number of leading values in the coarse part; 0 until the first enrolment.
+    private volatile int coarseDimension;
+
+    /**
+     * Creates a cascade whose coarse stage is a Euclidean {@link KNNClassifier}.
+     *
+     * @param config the classifier configuration; its metric applies to the fine stage
+     * @param coarseDimension supplies the number of leading values that form the coarse part
+     * @param shortlist the number of identities re-ranked on the fine part, at least 1
+     * @throws IllegalArgumentException if {@code shortlist} is below 1
+     */
+    public CascadeClassifier(ClassifierConfig config, IntSupplier coarseDimension, int shortlist) {
+        this(config, coarseDimension, shortlist,
+            new KNNClassifier(new ClassifierConfig().setMetric(DistanceMetric.EUCLIDEAN)));
+    }
+
+    /**
+     * Creates a cascade with a custom coarse stage.
+     *
+     * @param config the classifier configuration; its metric applies to the fine stage
+     * @param coarseDimension supplies the number of leading values that form the coarse part
+     * @param shortlist the number of identities re-ranked on the fine part, at least 1
+     * @param coarse an empty classifier that ranks the coarse parts under its own metric
+     * @throws IllegalArgumentException if {@code shortlist} is below 1
+     */
+    public CascadeClassifier(ClassifierConfig config, IntSupplier coarseDimension, int shortlist,
+                             AbstractFaceClassifier coarse) {
+        super(config);
+        this.coarseDimensionSource = Objects.requireNonNull(coarseDimension, "Coarse dimension cannot be null");
+        this.coarse = Objects.requireNonNull(coarse, "Coarse classifier cannot be null");
+        setShortlist(shortlist);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getShortlist() {
+        return shortlist;
+    }
+
+    /**
+     * Sets the number of identities re-ranked on the fine part. Takes effect for the next probe.
+     *
+     * @param shortlist the number of identities, at least 1
+     * @throws IllegalArgumentException if {@code shortlist} is below 1
+     */
+    public void setShortlist(int shortlist) {
+        if (shortlist < 1) {
+            throw new IllegalArgumentException("shortlist must be at least 1: " + shortlist);
+        }
+        this.shortlist = shortlist;
+    }
+
+    /**
+     * Gets the number of leading values that form the coarse part.
+     *
+     * @return the split, or 0 if it has not been read since the gallery was last empty
+     */
+    public int getCoarseDimension() {
+        return coarseDimension;
+    }
+
+    /**
+     * Gets the classifier that ranks the coarse parts.
+     *
+     * @return the coarse stage
+     */
+    public FaceClassifier getCoarse() {
+        return coarse;
+    }
+
+    /**
+     * Retrains the coarse stage.
+     */
+    @Override
+    public void retrain() {
+        coarse.retrain();
+    }
+
+    /**
+     * Closes the coarse stage if it holds files or offloaded samples, such
+     * as a {@link PQClassifier}'s re-rank store.
+     *
+     * @throws IOException if the coarse stage cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (coarse instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        if (previous == null && enrolledIdentities.size() == 1) {
+            coarseDimension = 0;
+        }
+        Identity shortlisted = new Identity(identity.getId(), identity.getName(), identity.getExternalId());
+        shortlisted.setActive(identity.isActive());
+        for (Identity.EnrolledSample sample : identity.getSamples()) {
+            FeatureVector features = sample.getFeatures();
+            shortlisted.enrollSample(features.slice(0, split(features)), sample.getQualityScore(),
+                sample.getSourceDescription());
+        }
+        coarse.enroll(shortlisted);
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        coarse.unenroll(identity.getId());
+    }
+
+    @Override
+    protected void onCleared() {
+        coarse.clear();
+        coarseDimension = 0;
+    }
+
+    // Shortlists on the coarse parts, then ranks the shortlist on the fine parts.
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        int split = split(probe);
+        Ranking shortlisted = coarse.rank(probe.slice(0, split), Math.max(shortlist, limit));
+        FeatureVector fineProbe = probe.slice(split, probe.getDimension());
+
+        Identity[] identities = new Identity[shortlisted.size()];
+        double[] distances = new double[shortlisted.size()];
+        TopKSelector nearest = new TopKSelector(Math.min(limit, shortlisted.size()));
+        for (int r = 0; r < shortlisted.size(); r++) {
+            String id = shortlisted.identity(r).getId();
+            Identity identity = enrolledIdentities.get(id);
+            if (identity == null || !identity.isActive()) {
+                continue;
+            }
+            identities[r] = identity;
+            distances[r] = minDistance(fineProbe, identity, split);
+            nearest.offer(r, distances[r]);
+        }
+        return Ranking.of(nearest.drainAscending(), identities, distances);
+    }
+
+    @Override
+    protected double computeMinDistance(FeatureVector probe, Identity identity) {
+        int split = split(probe);
+        return minDistance(probe.slice(split, probe.getDimension()), identity, split);
+    }
+
+    // Compares the fine probe with the fine part of each of the identity's samples.
+    private double minDistance(FeatureVector fineProbe, Identity identity, int split) {
+        double min = Double.MAX_VALUE;
+        for (Identity.EnrolledSample sample : identity.getSamples()) {
+            FeatureVector features = sample.getFeatures();
+            min = Math.min(min, computeDistance(fineProbe, features.slice(split, features.getDimension())));
+        }
+        return min;
+    }
+
+    private int split(FeatureVector features) {
+        int split = coarseDimension;
+        if (split == 0) {
+            if (coarseDimensionSource == null) {
+                throw new IllegalStateException("Coarse dimension was not resolved before serialization");
+            }
+            split = coarseDimensionSource.getAsInt();
+        }
+        if (split < 1 || split >= features.getDimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Cannot split a %d-d vector after %d coarse values", features.getDimension(), split));
+        }
+        coarseDimension = split;
+        return split;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CascadeClassifier{coarse=%s, shortlist=%d, metric=%s, enrolled=%d}",
+            coarse.getName(), shortlist, distanceMetric, enrolledIdentities.size());
+    }
+}
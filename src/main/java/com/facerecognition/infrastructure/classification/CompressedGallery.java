@@ -0,0 +1,30 @@
+package com.facerecognition.infrastructure.classification;
+
+/**
+ * Implemented by classifiers that keep enrolled samples in a compressed
+ * encoding rather than as {@code double[]}, so benchmarks and operators can
+ * see what the encoding saves.
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PQClassifier
+ */
+public interface CompressedGallery {
+
+    /**
+     * Returns the heap bytes held by the encoded gallery, excluding any
+     * full-precision copy kept on disk for re-ranking.
+     *
+     * @return the encoded size in bytes, or 0 before the gallery is built
+     */
+    long getEncodedBytes();
+
+    /**
+     * Returns how many times smaller the encoded gallery is than the same
+     * samples stored as {@code double[]}.
+     *
+     * @return the compression ratio, or 0 before the gallery is built
+     */
+    double getCompressionRatio();
+}
@@ -0,0 +1,163 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of fixed-width {@code double} rows.
+ *
+ * <p>Lets a compressed gallery keep its full-precision vectors off-heap for
+ * the occasional exact re-rank: row {@code r} lives at byte offset
+ * {@code r * dimension * 8}, so reading it is one positional read. As a
+ * {@link FeatureStore} it also holds the values of the samples offloaded
+ * into it, keyed by row.</p>
+ *
+ * <p>Every store is a new file, deleted when the store is closed, so
+ * several stores may share a directory; it is a cache of the gallery, not a
+ * persistence format. Reads of a closed store return null from
+ * {@link #load} and throw from {@link #read}.</p>
+ *
+ * <p>Appends must be serialised by the caller; reads are safe to call
+ * concurrently with each other.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PQClassifier
+ */
+final class DiskVectorStore implements FeatureStore, Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int dimension;
+    private final int rowBytes;
+    private final ThreadLocal<ByteBuffer> buffers;
+    private long rows;
+
+    private DiskVectorStore(Path path, FileChannel channel, int dimension) {
+        this.path = path;
+        this.channel = channel;
+        this.dimension = dimension;
+        this.rowBytes = Math.multiplyExact(dimension, Double.BYTES);
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(rowBytes));
+    }
+
+    /**
+     * Creates an empty store in a new file.
+     *
+     * @param directory the directory to create the file in, or null for the
+     *                  system temporary directory
+     * @param dimension the row width
+     * @return the empty store
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    static DiskVectorStore create(Path directory, int dimension) {
+        Path path = null;
+        try {
+            if (directory != null) {
+                Files.createDirectories(directory);
+                path = Files.createTempFile(directory, "vectors-", ".bin");
+            } else {
+                path = Files.createTempFile("vectors-", ".bin");
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+            return new DiskVectorStore(path, channel, dimension);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create vector store in "
+                + (path != null ? path : directory), e);
+        }
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param vector the row, of length {@code dimension}
+     * @return the row index
+     * @throws UncheckedIOException if the write fails
+     */
+    long append(double[] vector) {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        buffer.asDoubleBuffer().put(vector, 0, dimension);
+        long row = rows;
+        long position = row * rowBytes;
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write vector store " + path, e);
+        }
+        rows++;
+        return row;
+    }
+
+    /**
+     * Reads a row.
+     *
+     * @param row the row index returned by {@link #append}
+     * @param out receives the row; length at least {@code dimension}
+     * @throws UncheckedIOException if the read fails or the store is closed
+     */
+    void read(long row, double[] out) {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        long position = row * rowBytes;
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of vector store at row " + row);
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read vector store " + path, e);
+        }
+        buffer.flip();
+        buffer.asDoubleBuffer().get(out, 0, dimension);
+    }
+
+    @Override
+    public double[] load(long key) {
+        double[] values = new double[dimension];
+        try {
+            read(key, values);
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof ClosedChannelException) {
+                return null;
+            }
+            throw e;
+        }
+        return values;
+    }
+
+    /**
+     * @return the row width
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of rows appended
+     */
+    long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,505 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable, packed copy of every enrolled sample in a gallery.
+ *
+ * <p>All sample vectors are laid out back to back in a single row-major
+ * {@code double[]} with a fixed stride of {@link #dimension()}. A parallel
+ * {@code int[]} maps each row to the index of its owning {@link Identity},
+ * and the L2 norm of every row is precomputed for the cosine metric. A probe
+ * is therefore matched with one linear pass over contiguous memory instead of
+ * walking identity maps, sample lists and individual {@link FeatureVector}
+ * objects.</p>
+ *
+ * <p>A gallery packed for {@link DistanceMetric#COSINE} stores every row
+ * scaled to unit length and scales the probe once per query, so each
+ * comparison is a single dot product. Such a gallery serves only that
+ * metric; see {@link #isPackedFor}.</p>
+ *
+ * <p>For {@link GalleryPrecision#FLOAT32} the rows are held in a
+ * {@code float[]} instead, rounded once when packed, and the probe is rounded
+ * the same way per query. That halves the gallery's memory and bandwidth;
+ * the float kernels still accumulate in {@code double}, so distances are
+ * exact for samples and probes that are already
+ * {@linkplain com.facerecognition.domain.model.FeaturePrecision#FLOAT32 single precision}.
+ * To keep them exact, single-precision rows are never scaled to unit
+ * length: cosine distances divide by the stored norms, and the gallery
+ * serves every metric.</p>
+ *
+ * <p>Batches of probes are ranked block by block, like a blocked matrix
+ * product: each tile of roughly {@value #TILE_BYTES} bytes of gallery rows is
+ * compared with a whole block of {@value #PROBE_BLOCK} probes while it is
+ * still in cache, so the gallery is streamed from memory once per block
+ * rather than once per probe.</p>
+ *
+ * <p>Instances are snapshots: they are built from the identities' samples at
+ * construction time and never change. An enrolment is
+ * {@linkplain #append appended} into spare room at the end of the arrays
+ * (see {@link GalleryOwners}); other changes to the set of enrolled
+ * identities make classifiers rebuild the gallery.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see KNNClassifier
+ */
+final class GalleryMatrix implements PackedGallery {
+
+    /** Gallery bytes compared with a probe block before moving on; sized for a per-core L2 cache. */
+    static final int TILE_BYTES = 256 * 1024;
+    /** Probes that share each gallery tile in {@link #rank(List, DistanceMetric, int)}. */
+    static final int PROBE_BLOCK = 32;
+
+    /** Gallery with no rows. */
+    static final GalleryMatrix EMPTY =
+        new GalleryMatrix(new GalleryOwners(new Identity[0], new int[0]), new double[0], null, new double[0], 0, false);
+
+    private final GalleryOwners owners;
+    // Exactly one of data and singles holds the rows; both may have room past the last row.
+    private final double[] data;
+    private final float[] singles;
+    private final double[] norms;
+    private final int dimension;
+    // Rows scaled to unit length; only cosine distances can be computed.
+    private final boolean unitRows;
+
+    private GalleryMatrix(GalleryOwners owners, double[] data, float[] singles, double[] norms,
+                          int dimension, boolean unitRows) {
+        this.owners = owners;
+        this.data = data;
+        this.singles = singles;
+        this.norms = norms;
+        this.dimension = dimension;
+        this.unitRows = unitRows;
+    }
+
+    /**
+     * Packs every sample of the given identities into a new double-precision gallery.
+     *
+     * @param enrolled the identities to pack
+     * @param metric the metric the gallery will be matched under; {@link DistanceMetric#COSINE}
+     *               stores unit-length rows
+     * @return the packed gallery
+     * @throws IllegalArgumentException if the samples do not all share one dimension
+     */
+    static GalleryMatrix of(Collection<Identity> enrolled, DistanceMetric metric) {
+        return of(enrolled, metric, false);
+    }
+
+    /**
+     * Packs every sample of the given identities into a new gallery.
+     *
+     * @param enrolled the identities to pack
+     * @param metric the metric the gallery will be matched under; {@link DistanceMetric#COSINE}
+     *               stores unit-length rows unless they are single precision
+     * @param singlePrecision whether to store the rows as {@code float}
+     * @return the packed gallery
+     * @throws IllegalArgumentException if the samples do not all share one dimension
+     */
+    static GalleryMatrix of(Collection<Identity> enrolled, DistanceMetric metric, boolean singlePrecision) {
+        List<Identity> withSamples = new ArrayList<>(enrolled.size());
+        int rows = 0;
+        int dimension = 0;
+        for (Identity identity : enrolled) {
+            List<Identity.EnrolledSample> samples = identity.getSamples();
+            if (samples.isEmpty()) {
+                continue;
+            }
+            withSamples.add(identity);
+            rows += samples.size();
+            if (dimension == 0) {
+                dimension = samples.get(0).getFeatures().getDimension();
+            }
+        }
+        if (rows == 0) {
+            return EMPTY;
+        }
+
+        Identity[] identities = withSamples.toArray(new Identity[0]);
+        int[] owners = new int[rows];
+        int cells = Math.multiplyExact(rows, dimension);
+        double[] data = singlePrecision ? null : new double[cells];
+        float[] singles = singlePrecision ? new float[cells] : null;
+        double[] norms = new double[rows];
+
+        boolean unitRows = metric == DistanceMetric.COSINE && !singlePrecision;
+        int row = 0;
+        for (int i = 0; i < identities.length; i++) {
+            for (Identity.EnrolledSample sample : identities[i].getSamples()) {
+                FeatureVector features = sample.getFeatures();
+                if (features.getDimension() != dimension) {
+                    throw new IllegalArgumentException(String.format(
+                        "Dimension mismatch: %d vs %d", dimension, features.getDimension()));
+                }
+                packRow(features, row, data, singles, norms, dimension, unitRows);
+                owners[row] = i;
+                row++;
+            }
+        }
+        return new GalleryMatrix(new GalleryOwners(identities, owners), data, singles, norms, dimension, unitRows);
+    }
+
+    /**
+     * Writes the identity's samples after the last row. An empty gallery,
+     * or samples of another dimension, are left to a repack.
+     */
+    @Override
+    public GalleryMatrix append(Identity identity, Identity previous) {
+        if (isEmpty()) {
+            return null;
+        }
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != dimension) {
+                return null;
+            }
+        }
+        GalleryOwners next = owners.append(identity, samples.size(), previous);
+        if (next == null) {
+            return null;
+        }
+
+        int first = owners.rows();
+        int cells = Math.multiplyExact(next.rows(), dimension);
+        double[] nextData = data != null ? GalleryOwners.ensureCapacity(data, cells) : null;
+        float[] nextSingles = singles != null ? GalleryOwners.ensureCapacity(singles, cells) : null;
+        double[] nextNorms = GalleryOwners.ensureCapacity(norms, next.rows());
+        for (int i = 0; i < samples.size(); i++) {
+            packRow(samples.get(i).getFeatures(), first + i, nextData, nextSingles, nextNorms, dimension, unitRows);
+        }
+        return new GalleryMatrix(next, nextData, nextSingles, nextNorms, dimension, unitRows);
+    }
+
+    // Copies a sample into a row of whichever array holds the rows, with its norm.
+    private static void packRow(FeatureVector features, int row, double[] data, float[] singles, double[] norms,
+                                int dimension, boolean unitRows) {
+        int offset = row * dimension;
+        if (singles == null) {
+            features.copyInto(data, offset);
+            norms[row] = Math.sqrt(DistanceKernels.sumOfSquares(data, offset, dimension));
+            if (unitRows) {
+                scale(data, offset, dimension, norms[row]);
+            }
+        } else {
+            features.copyInto(singles, offset);
+            norms[row] = Math.sqrt(DistanceKernels.sumOfSquares(singles, offset, dimension));
+        }
+    }
+
+    /**
+     * @return true if the gallery holds no rows
+     */
+    boolean isEmpty() {
+        return owners.rows() == 0;
+    }
+
+    @Override
+    public int size() {
+        return owners.rows();
+    }
+
+    /**
+     * @return true if the rows are stored as {@code float}
+     */
+    boolean isSinglePrecision() {
+        return singles != null;
+    }
+
+    /**
+     * @return the row stride, or 0 for an empty gallery
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean isPackedFor(DistanceMetric metric) {
+        return isEmpty() || singles != null || unitRows == (metric == DistanceMetric.COSINE);
+    }
+
+    @Override
+    public int identityCount() {
+        return owners.identityCount();
+    }
+
+    @Override
+    public Identity identity(int index) {
+        return owners.identities()[index];
+    }
+
+    @Override
+    public boolean isLive(int index) {
+        return owners.isLive(index);
+    }
+
+    @Override
+    public double[] minDistances(FeatureVector probe, DistanceMetric metric) {
+        double[] best = new double[owners.identityCount()];
+        Arrays.fill(best, Double.MAX_VALUE);
+        if (isEmpty()) {
+            return best;
+        }
+        if (probe.getDimension() != dimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+        }
+
+        boolean[] active = owners.liveMask();
+
+        checkPackedFor(metric);
+
+        Query query = query(probe);
+        int[] rowOwners = owners.owners();
+        for (int row = 0; row < owners.rows(); row++) {
+            int owner = rowOwners[row];
+            if (!active[owner]) {
+                continue;
+            }
+            best[owner] = Math.min(best[owner], distance(row, query, metric));
+        }
+        return best;
+    }
+
+    @Override
+    public AbstractFaceClassifier.Ranking rank(FeatureVector probe, DistanceMetric metric, int limit,
+                                               ForkJoinPool pool) {
+        if (isEmpty()) {
+            return AbstractFaceClassifier.Ranking.EMPTY;
+        }
+        if (probe.getDimension() != dimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+        }
+
+        checkPackedFor(metric);
+
+        Query query = query(probe);
+        int[] rowOwners = owners.owners();
+        return ParallelGalleryScan.rank(owners, limit, pool, (from, to, out) -> {
+            int owner = -1;
+            boolean active = false;
+            double min = Double.MAX_VALUE;
+            for (int row = from; row < to; row++) {
+                if (rowOwners[row] != owner) {
+                    if (active) {
+                        out.offer(owner, min);
+                    }
+                    owner = rowOwners[row];
+                    active = owners.isLive(owner);
+                    min = Double.MAX_VALUE;
+                }
+                if (active) {
+                    min = Math.min(min, distance(row, query, metric));
+                }
+            }
+            if (active) {
+                out.offer(owner, min);
+            }
+        });
+    }
+
+    @Override
+    public AbstractFaceClassifier.Ranking[] rank(List<FeatureVector> probes, DistanceMetric metric, int limit) {
+        AbstractFaceClassifier.Ranking[] rankings = new AbstractFaceClassifier.Ranking[probes.size()];
+        if (isEmpty()) {
+            Arrays.fill(rankings, AbstractFaceClassifier.Ranking.EMPTY);
+            return rankings;
+        }
+        for (FeatureVector probe : probes) {
+            if (probe.getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+            }
+        }
+
+        checkPackedFor(metric);
+
+        boolean[] active = owners.liveMask();
+        Identity[] identities = owners.identities();
+        int[] rowOwners = owners.owners();
+        int rows = owners.rows();
+
+        int tileRows = Math.max(1, TILE_BYTES / (dimension * (singles != null ? Float.BYTES : Double.BYTES)));
+        int width = Math.min(limit, owners.identityCount());
+        Query[] queries = new Query[PROBE_BLOCK];
+        TopKSelector[] selectors = new TopKSelector[PROBE_BLOCK];
+        // Rows are grouped by owner, so each probe carries the running
+        // minimum of the identity its last tile ended in.
+        int[] currentOwners = new int[PROBE_BLOCK];
+        double[] currentMins = new double[PROBE_BLOCK];
+
+        for (int first = 0; first < rankings.length; first += PROBE_BLOCK) {
+            int block = Math.min(PROBE_BLOCK, rankings.length - first);
+            for (int p = 0; p < block; p++) {
+                queries[p] = query(probes.get(first + p));
+                selectors[p] = new TopKSelector(width);
+                currentOwners[p] = -1;
+                currentMins[p] = Double.MAX_VALUE;
+            }
+
+            for (int tile = 0; tile < rows; tile += tileRows) {
+                int end = Math.min(rows, tile + tileRows);
+                for (int p = 0; p < block; p++) {
+                    Query query = queries[p];
+                    TopKSelector selector = selectors[p];
+                    int owner = currentOwners[p];
+                    double min = currentMins[p];
+                    for (int row = tile; row < end; row++) {
+                        int rowOwner = rowOwners[row];
+                        if (!active[rowOwner]) {
+                            continue;
+                        }
+                        if (rowOwner != owner) {
+                            if (owner >= 0) {
+                                selector.offer(owner, min);
+                            }
+                            owner = rowOwner;
+                            min = Double.MAX_VALUE;
+                        }
+                        min = Math.min(min, distance(row, query, metric));
+                    }
+                    currentOwners[p] = owner;
+                    currentMins[p] = min;
+                }
+            }
+
+            for (int p = 0; p < block; p++) {
+                TopKSelector selector = selectors[p];
+                if (currentOwners[p] >= 0) {
+                    selector.offer(currentOwners[p], currentMins[p]);
+                }
+                double[] distances = new double[selector.size()];
+                int[] order = selector.drainAscending(distances);
+                Identity[] ranked = new Identity[order.length];
+                for (int r = 0; r < order.length; r++) {
+                    ranked[r] = identities[order[r]];
+                }
+                rankings[first + p] = new AbstractFaceClassifier.Ranking(ranked, distances);
+                queries[p] = null;
+            }
+        }
+        return rankings;
+    }
+
+    private double distance(int row, Query query, DistanceMetric metric) {
+        int offset = row * dimension;
+        if (singles != null) {
+            return distance(metric, query.singles, 0, query.norm, singles, offset, norms[row], dimension);
+        }
+        if (unitRows) {
+            return 1.0 - DistanceKernels.dot(query.values, 0, data, offset, dimension);
+        }
+        return distance(metric, query.values, 0, query.norm, data, offset, norms[row], dimension);
+    }
+
+    // The probe's values, scaled to unit length when the rows are, or rounded to float when they are.
+    private Query query(FeatureVector probe) {
+        if (singles == null) {
+            double[] values = probe.getFeatures();
+            if (unitRows) {
+                scale(values, 0, dimension, probe.norm());
+            }
+            return new Query(values, null, probe.norm());
+        }
+        float[] rounded = new float[dimension];
+        probe.copyInto(rounded, 0);
+        return new Query(null, rounded, Math.sqrt(DistanceKernels.sumOfSquares(rounded, 0, dimension)));
+    }
+
+    private void checkPackedFor(DistanceMetric metric) {
+        if (!isPackedFor(metric)) {
+            throw new IllegalArgumentException("Gallery packed for cosine distance cannot match under " + metric);
+        }
+    }
+
+    private static void scale(double[] values, int offset, int length, double norm) {
+        for (int j = offset; j < offset + length; j++) {
+            values[j] /= norm;
+        }
+    }
+
+    /**
+     * Computes the distance between two packed rows under the given metric,
+     * matching the corresponding {@link FeatureVector} method with the first
+     * operand as receiver. Norms are only read for {@link DistanceMetric#COSINE}.
+     *
+     * @param metric the distance metric
+     * @param a the first operand's backing array
+     * @param aOffset start of the first row
+     * @param aNorm L2 norm of the first row
+     * @param b the second operand's backing array
+     * @param bOffset start of the second row
+     * @param bNorm L2 norm of the second row
+     * @param dimension the row length
+     * @return the distance
+     */
+    static double distance(DistanceMetric metric, double[] a, int aOffset, double aNorm,
+                           double[] b, int bOffset, double bNorm, int dimension) {
+        switch (metric) {
+            case COSINE:
+                double dot = DistanceKernels.dot(a, aOffset, b, bOffset, dimension);
+                return 1.0 - dot / (aNorm * bNorm);
+            case MANHATTAN:
+                return DistanceKernels.manhattan(a, aOffset, b, bOffset, dimension);
+            case CHI_SQUARE:
+                return DistanceKernels.chiSquare(a, aOffset, b, bOffset, dimension);
+            case EUCLIDEAN:
+            default:
+                return DistanceKernels.euclidean(a, aOffset, b, bOffset, dimension);
+        }
+    }
+
+    /**
+     * Single-precision counterpart of
+     * {@link #distance(DistanceMetric, double[], int, double, double[], int, double, int)}.
+     *
+     * @param metric the distance metric
+     * @param a the first operand's backing array
+     * @param aOffset start of the first row
+     * @param aNorm L2 norm of the first row
+     * @param b the second operand's backing array
+     * @param bOffset start of the second row
+     * @param bNorm L2 norm of the second row
+     * @param dimension the row length
+     * @return the distance
+     */
+    static double distance(DistanceMetric metric, float[] a, int aOffset, double aNorm,
+                           float[] b, int bOffset, double bNorm, int dimension) {
+        switch (metric) {
+            case COSINE:
+                double dot = DistanceKernels.dot(a, aOffset, b, bOffset, dimension);
+                return 1.0 - dot / (aNorm * bNorm);
+            case MANHATTAN:
+                return DistanceKernels.manhattan(a, aOffset, b, bOffset, dimension);
+            case CHI_SQUARE:
+                return DistanceKernels.chiSquare(a, aOffset, b, bOffset, dimension);
+            case EUCLIDEAN:
+            default:
+                return DistanceKernels.euclidean(a, aOffset, b, bOffset, dimension);
+        }
+    }
+
+    // A probe prepared for this gallery: values in the rows' precision, and its L2 norm.
+    private static final class Query {
+        final double[] values;
+        final float[] singles;
+        final double norm;
+
+        Query(double[] values, float[] singles, double norm) {
+            this.values = values;
+            this.singles = singles;
+            this.norm = norm;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.Identity;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The identities of a packed gallery and the identity that owns each row,
+ * with room to append.
+ *
+ * <p>A packed gallery is an immutable snapshot, but repacking it for every
+ * enrolment costs the whole gallery. Instead an enrolment can be appended:
+ * the new identity takes the next index and its rows go after the last row,
+ * in arrays shared with the previous snapshot, which never reads past its
+ * own counts. The identity it replaces is retired, and scans skip its rows.
+ * Arrays grow by doubling, so an append costs its own rows amortised, plus
+ * a copy of the retired set when it replaces an identity.</p>
+ *
+ * <p>Only the newest snapshot of a pack can be appended to, and appends must
+ * be serialised by the caller. Once retired rows outnumber live ones,
+ * {@link #append} declines and the gallery should be repacked.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PackedGallery#append
+ */
+final class GalleryOwners {
+
+    private final Identity[] identities;
+    private final int identityCount;
+    private final int[] owners;
+    private final int rows;
+    // Never modified once this snapshot is published; an append that retires another copies it.
+    private final BitSet retired;
+    private final int retiredRows;
+    private final Frontier frontier;
+
+    /**
+     * Wraps a freshly packed gallery's owners.
+     *
+     * @param identities the identities, each owning at least one row
+     * @param owners the owning identity index of every row, in ascending order
+     */
+    GalleryOwners(Identity[] identities, int[] owners) {
+        this(identities, identities.length, owners, owners.length, new BitSet(), 0, new Frontier(owners.length));
+    }
+
+    private GalleryOwners(Identity[] identities, int identityCount, int[] owners, int rows, BitSet retired,
+                          int retiredRows, Frontier frontier) {
+        this.identities = identities;
+        this.identityCount = identityCount;
+        this.owners = owners;
+        this.rows = rows;
+        this.retired = retired;
+        this.retiredRows = retiredRows;
+        this.frontier = frontier;
+    }
+
+    /**
+     * @return the number of rows, including those of retired identities
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of identity indices, including retired ones
+     */
+    int identityCount() {
+        return identityCount;
+    }
+
+    /**
+     * @return the identities; indices from {@link #identityCount()} on are unused
+     */
+    Identity[] identities() {
+        return identities;
+    }
+
+    /**
+     * @return the owner of every row; rows from {@link #rows()} on are unused
+     */
+    int[] owners() {
+        return owners;
+    }
+
+    /**
+     * @param index an identity index
+     * @return true if the identity is active and has not been retired
+     */
+    boolean isLive(int index) {
+        return identities[index].isActive() && !retired.get(index);
+    }
+
+    /**
+     * @return {@link #isLive} of every identity index
+     */
+    boolean[] liveMask() {
+        boolean[] live = new boolean[identityCount];
+        for (int i = 0; i < identityCount; i++) {
+            live[i] = isLive(i);
+        }
+        return live;
+    }
+
+    /**
+     * Appends an identity owning the next {@code added} rows and retires the
+     * one it replaces. The caller writes the rows' values into its own
+     * arrays before publishing the result.
+     *
+     * @param identity the identity to append
+     * @param added the number of rows it owns
+     * @param previous the enrolment it replaces, or null
+     * @return the owners after the append, or null if this is not the newest
+     *         snapshot, {@code previous} is not in it, or retired rows would
+     *         outnumber live ones
+     */
+    GalleryOwners append(Identity identity, int added, Identity previous) {
+        if (frontier.rows != rows) {
+            return null;
+        }
+        Map<String, Integer> indices = frontier.indices(identities, identityCount);
+        BitSet nextRetired = retired;
+        int nextRetiredRows = retiredRows;
+        if (previous != null) {
+            Integer index = indices.get(previous.getId());
+            if (index == null) {
+                return null;
+            }
+            nextRetired = (BitSet) retired.clone();
+            nextRetired.set(index);
+            nextRetiredRows += rowsOf(index);
+        }
+        int nextRows = Math.addExact(rows, added);
+        if (nextRetiredRows > nextRows - nextRetiredRows) {
+            return null;
+        }
+
+        Identity[] nextIdentities = ensureCapacity(identities, identityCount + 1);
+        int[] nextOwners = ensureCapacity(owners, nextRows);
+        nextIdentities[identityCount] = identity;
+        Arrays.fill(nextOwners, rows, nextRows, identityCount);
+        indices.put(identity.getId(), identityCount);
+        frontier.rows = nextRows;
+        return new GalleryOwners(nextIdentities, identityCount + 1, nextOwners, nextRows, nextRetired,
+            nextRetiredRows, frontier);
+    }
+
+    // Owners ascend, since packs and appends both add identities' rows in index order.
+    private int rowsOf(int index) {
+        return firstRow(index + 1) - firstRow(index);
+    }
+
+    private int firstRow(int index) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (owners[mid] < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param array an array
+     * @param length the length needed
+     * @return the array if it is long enough, otherwise a copy with room to grow
+     */
+    static double[] ensureCapacity(double[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, length));
+    }
+
+    /** @see #ensureCapacity(double[], int) */
+    static float[] ensureCapacity(float[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, length));
+    }
+
+    /** @see #ensureCapacity(double[], int) */
+    static int[] ensureCapacity(int[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, length));
+    }
+
+    private static Identity[] ensureCapacity(Identity[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, length));
+    }
+
+    private static int grownLength(int current, int needed) {
+        return Math.max(needed, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16L, 2L * current)));
+    }
+
+    // Shared by every snapshot of one pack; touched only by appends.
+    private static final class Frontier {
+
+        // Rows of the newest snapshot; only that snapshot may append.
+        int rows;
+        // Index of the newest enrolment of each ID; built on the first append.
+        private Map<String, Integer> indices;
+
+        Frontier(int rows) {
+            this.rows = rows;
+        }
+
+        Map<String, Integer> indices(Identity[] identities, int identityCount) {
+            if (indices == null) {
+                indices = new HashMap<>(identityCount * 2);
+                for (int i = 0; i < identityCount; i++) {
+                    indices.put(identities[i].getId(), i);
+                }
+            }
+            return indices;
+        }
+    }
+}
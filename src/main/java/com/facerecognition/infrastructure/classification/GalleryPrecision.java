@@ -0,0 +1,26 @@
+package com.facerecognition.infrastructure.classification;
+
+/**
+ * How {@link KNNClassifier} stores the packed copy of its gallery.
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see KNNClassifier
+ */
+public enum GalleryPrecision {
+    /** Full {@code double} precision; distances match {@code FeatureVector} exactly. */
+    FLOAT64,
+    /**
+     * One {@code float} per dimension: half the memory and twice the SIMD
+     * lanes of {@link #FLOAT64}, with distances still accumulated in
+     * {@code double}. Exact for single-precision samples and probes.
+     */
+    FLOAT32,
+    /**
+     * One unsigned byte per dimension, with integer distance kernels; an
+     * eighth of the memory, at the cost of quantisation error. The enrolled
+     * samples are replaced by their decoded values.
+     */
+    INT8
+}
@@ -0,0 +1,755 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gallery of sample vectors in memory-mapped files, scanned in place.
+ *
+ * <p>A segment is a directory holding two little-endian files:</p>
+ * <ul>
+ *   <li>{@value #VECTORS_FILE}: a {@value #HEADER_BYTES}-byte header
+ *       (magic, version, dimension, committed row count, clear count) followed by
+ *       fixed-stride rows of {@code dimension + 2} doubles: the sample
+ *       values, the sample's L2 norm and the owner's ordinal. Rows of one
+ *       identity are contiguous. The file grows in mapped chunks of about
+ *       {@value #CHUNK_BYTES} bytes, and no row straddles two chunks.</li>
+ *   <li>{@value #IDENTITIES_FILE}: one variable-length record per enrolment
+ *       in ordinal order: removed and inactive flags, the first row and row count, and
+ *       the UTF-8 ID, name and external ID.</li>
+ * </ul>
+ *
+ * <p>Opening a segment maps the chunks and skims the identity records for
+ * their offsets and removed flags; no vector is read, so a segment of any
+ * size is ready in about the time it takes to page through its identity
+ * records. Probes read the mapped rows directly, with no copy into the
+ * heap, and the pages live in the operating system's page cache, where
+ * every process that maps the same files shares them. ID strings are
+ * decoded only for ranked results and ID lookups; the ID index is built on
+ * first lookup.</p>
+ *
+ * <p>One process may open a segment for writing. Appends write the identity
+ * record and rows first and then publish them by advancing the header's row
+ * count, so records left behind by a crash are ignored. Read-only openers
+ * pick up later appends and removals with {@link #refresh()}.</p>
+ *
+ * <p>An identity's active flag is recorded when it is appended; later
+ * {@link Identity#setActive} calls on the caller's object do not reach the
+ * segment. Inactive identities are skipped by {@link #rank}.</p>
+ *
+ * <p>Changes and {@link #refresh()} must not overlap any other call, which
+ * {@link MappedGalleryClassifier} ensures with a read-write lock; lookups
+ * and scans are safe with each other.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see MappedGalleryClassifier
+ */
+final class GallerySegment implements Closeable {
+
+    static final String VECTORS_FILE = "vectors.bin";
+    static final String IDENTITIES_FILE = "identities.bin";
+    static final int HEADER_BYTES = 64;
+    static final long CHUNK_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x46524753;
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int DIMENSION_OFFSET = 8;
+    private static final int ROWS_OFFSET = 16;
+    private static final int GENERATION_OFFSET = 24;
+    // flags byte, first row, row count
+    private static final int RECORD_FIXED_BYTES = 1 + Integer.BYTES + Integer.BYTES;
+    private static final byte REMOVED = 1;
+    private static final byte INACTIVE = 2;
+
+    private final Path directory;
+    private final boolean readOnly;
+    private final FileChannel vectors;
+    private final FileChannel identities;
+    private final MappedByteBuffer header;
+
+    private int dimension;
+    // Doubles per row: the values, the norm and the owner ordinal.
+    private int stride;
+    private int rowsPerChunk;
+    private final List<DoubleBuffer> chunks = new ArrayList<>();
+    private int rows;
+    // Bumped by every clear, so readers notice one even if rows were appended since.
+    private int generation;
+
+    private long[] recordOffsets = new long[16];
+    private int identityCount;
+    private long identitiesEnd;
+    private final BitSet removed = new BitSet();
+    // Removed or enrolled inactive; skipped by scans.
+    private final BitSet excluded = new BitSet();
+    private int liveCount;
+    // Built on first lookup by ID; see ordinals().
+    private volatile Map<String, Integer> ordinals;
+
+    private GallerySegment(Path directory, boolean readOnly, FileChannel vectors, FileChannel identities,
+                           MappedByteBuffer header) {
+        this.directory = directory;
+        this.readOnly = readOnly;
+        this.vectors = vectors;
+        this.identities = identities;
+        this.header = header;
+    }
+
+    /**
+     * Opens a segment, creating an empty one if the directory holds none.
+     *
+     * @param directory the segment directory
+     * @param readOnly true to map the files read-only and reject changes
+     * @return the segment
+     * @throws UncheckedIOException if the files cannot be opened or are not a segment
+     */
+    static GallerySegment open(Path directory, boolean readOnly) {
+        FileChannel vectors = null;
+        FileChannel identities = null;
+        try {
+            if (readOnly) {
+                vectors = FileChannel.open(directory.resolve(VECTORS_FILE), StandardOpenOption.READ);
+                identities = FileChannel.open(directory.resolve(IDENTITIES_FILE), StandardOpenOption.READ);
+            } else {
+                Files.createDirectories(directory);
+                vectors = FileChannel.open(directory.resolve(VECTORS_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                identities = FileChannel.open(directory.resolve(IDENTITIES_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            boolean created = vectors.size() == 0;
+            if (created && readOnly) {
+                throw new IOException("Not a gallery segment: " + directory);
+            }
+            MappedByteBuffer header = vectors.map(mode, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+            } else if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a gallery segment: " + directory);
+            }
+
+            GallerySegment segment = new GallerySegment(directory, readOnly, vectors, identities, header);
+            segment.refresh();
+            if (!readOnly) {
+                // Drop a record whose append did not complete.
+                identities.truncate(segment.identitiesEnd);
+            }
+            return segment;
+        } catch (IOException e) {
+            closeQuietly(vectors);
+            closeQuietly(identities);
+            throw new UncheckedIOException("Cannot open gallery segment " + directory, e);
+        }
+    }
+
+    /**
+     * Maps rows and reads identity records published since the last call.
+     * Only needed by read-only openers; a writer's own changes are visible at once.
+     *
+     * @return true if anything changed
+     * @throws UncheckedIOException if the files cannot be read
+     */
+    boolean refresh() {
+        int committedRows = (int) header.getLong(ROWS_OFFSET);
+        int committedDimension = header.getInt(DIMENSION_OFFSET);
+        try {
+            boolean changed = committedRows != rows;
+            int committedGeneration = header.getInt(GENERATION_OFFSET);
+            if (committedGeneration != generation) {
+                // The writer cleared the segment since the last refresh.
+                reset();
+                generation = committedGeneration;
+                changed = true;
+            }
+            if (dimension == 0 && committedDimension > 0) {
+                setDimension(committedDimension);
+            }
+            if (committedRows > rows) {
+                ensureChunks(committedRows);
+                rows = committedRows;
+            }
+            return readIdentities() || changed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read gallery segment " + directory, e);
+        }
+    }
+
+    /**
+     * @return the vector dimension, or 0 while the segment is empty
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of committed rows, including rows of removed identities
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of identities that have not been removed
+     */
+    int liveIdentities() {
+        return liveCount;
+    }
+
+    /**
+     * Finds a live enrolment that already holds an identity as it is now:
+     * the same record and the same sample values in the same order.
+     *
+     * @param identity the identity
+     * @return the first of the enrolment's rows, or -1 if there is no such enrolment
+     */
+    int findRows(Identity identity) {
+        Integer ordinal = ordinals().get(identity.getId());
+        if (ordinal == null) {
+            return -1;
+        }
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        ByteBuffer stored = readRecord(ordinal, recordLength(ordinal));
+        int firstRow = stored.getInt(1);
+        if (!Arrays.equals(stored.array(), encode(identity, firstRow, samples.size()))) {
+            return -1;
+        }
+        for (int i = 0; i < samples.size(); i++) {
+            FeatureVector features = samples.get(i).getFeatures();
+            if (features.getDimension() != dimension) {
+                return -1;
+            }
+            DoubleBuffer chunk = chunks.get((firstRow + i) / rowsPerChunk);
+            int base = ((firstRow + i) % rowsPerChunk) * stride;
+            if (!chunk.slice(base, dimension).equals(features.asReadOnlyBuffer())) {
+                return -1;
+            }
+        }
+        return firstRow;
+    }
+
+    /**
+     * @param row a committed row
+     * @return a key for the row's values that {@link #load} accepts until the segment is cleared
+     */
+    long keyOf(int row) {
+        return ((long) generation << 32) | row;
+    }
+
+    /**
+     * Reads the sample values of a row into the heap.
+     *
+     * @param key a key from {@link #keyOf}
+     * @return the values, or null if the segment was cleared since the key was made
+     */
+    double[] load(long key) {
+        int row = (int) key;
+        if ((int) (key >>> 32) != generation || row >= rows) {
+            return null;
+        }
+        double[] values = new double[dimension];
+        chunks.get(row / rowsPerChunk).get((row % rowsPerChunk) * stride, values);
+        return values;
+    }
+
+    /**
+     * Appends every sample of an identity, replacing an earlier enrolment with the same ID.
+     *
+     * @param identity the identity to append
+     * @return the row of the first sample; the others follow it
+     * @throws IllegalArgumentException if a sample's dimension differs from the segment's
+     * @throws IllegalStateException if the segment is read-only
+     * @throws UncheckedIOException if the files cannot be written
+     */
+    int append(Identity identity) {
+        checkWritable();
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        int width = dimension > 0 ? dimension : samples.get(0).getFeatures().getDimension();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != width) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", width, sample.getFeatures().getDimension()));
+            }
+        }
+
+        try {
+            if (dimension == 0) {
+                setDimension(width);
+                header.putInt(DIMENSION_OFFSET, width);
+            }
+            int firstRow = rows;
+            ensureChunks(firstRow + samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                FeatureVector features = samples.get(i).getFeatures();
+                DoubleBuffer chunk = chunks.get((firstRow + i) / rowsPerChunk);
+                int base = ((firstRow + i) % rowsPerChunk) * stride;
+                chunk.put(base, features.asReadOnlyBuffer(), 0, dimension);
+                chunk.put(base + dimension, features.norm());
+                chunk.put(base + dimension + 1, identityCount);
+            }
+
+            byte[] record = encode(identity, firstRow, samples.size());
+            long offset = identitiesEnd;
+            write(identities, ByteBuffer.wrap(record), offset);
+
+            // Publish: the row count makes both the rows and the record visible.
+            header.putLong(ROWS_OFFSET, firstRow + samples.size());
+            remove(identity.getId());
+            rows = firstRow + samples.size();
+            addRecord(offset, record.length, record[0]);
+            if (ordinals != null) {
+                ordinals.put(identity.getId(), identityCount - 1);
+            }
+            return firstRow;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write gallery segment " + directory, e);
+        }
+    }
+
+    /**
+     * Marks an identity removed. Its rows stay in the file and are skipped by scans.
+     *
+     * @param identityId the identity ID
+     * @return true if a live identity was removed
+     * @throws IllegalStateException if the segment is read-only
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    boolean remove(String identityId) {
+        checkWritable();
+        Integer ordinal = ordinals().remove(identityId);
+        if (ordinal == null) {
+            return false;
+        }
+        try {
+            write(identities, ByteBuffer.wrap(new byte[]{REMOVED}), recordOffsets[ordinal]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write gallery segment " + directory, e);
+        }
+        removed.set(ordinal);
+        excluded.set(ordinal);
+        liveCount--;
+        return true;
+    }
+
+    /**
+     * Removes every identity and truncates the identity records.
+     *
+     * @throws IllegalStateException if the segment is read-only
+     * @throws UncheckedIOException if the files cannot be truncated
+     */
+    void clear() {
+        checkWritable();
+        header.putLong(ROWS_OFFSET, 0L);
+        header.putInt(DIMENSION_OFFSET, 0);
+        header.putInt(GENERATION_OFFSET, ++generation);
+        try {
+            identities.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate gallery segment " + directory, e);
+        }
+        reset();
+    }
+
+    // Forgets every row and record; the vectors file keeps its size, so
+    // mappings held by readers stay valid.
+    private void reset() {
+        chunks.clear();
+        dimension = 0;
+        stride = 0;
+        rows = 0;
+        identityCount = 0;
+        identitiesEnd = 0;
+        liveCount = 0;
+        removed.clear();
+        excluded.clear();
+        ordinals = null;
+    }
+
+    /**
+     * @param identityId the identity ID
+     * @return true if a live identity has that ID
+     */
+    boolean contains(String identityId) {
+        return ordinals().containsKey(identityId);
+    }
+
+    /**
+     * Decodes one live identity. The identity carries no samples.
+     *
+     * @param identityId the identity ID
+     * @return the identity, or null if it is not live
+     */
+    Identity find(String identityId) {
+        Integer ordinal = ordinals().get(identityId);
+        return ordinal == null ? null : identity(ordinal);
+    }
+
+    /**
+     * Decodes every live identity. The identities carry no samples.
+     *
+     * @return the live identities in ordinal order
+     */
+    List<Identity> identities() {
+        List<Identity> live = new ArrayList<>(liveCount);
+        for (int ordinal = 0; ordinal < identityCount; ordinal++) {
+            if (!removed.get(ordinal)) {
+                live.add(identity(ordinal));
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Computes the minimum distance between the probe and any row of an identity.
+     *
+     * @param probe the probe vector
+     * @param identityId the identity ID
+     * @param metric the distance metric
+     * @return the minimum distance, or {@link Double#MAX_VALUE} if the identity is not live
+     * @throws IllegalArgumentException if the probe dimension does not match
+     */
+    double minDistance(FeatureVector probe, String identityId, DistanceMetric metric) {
+        Integer ordinal = ordinals().get(identityId);
+        if (ordinal == null) {
+            return Double.MAX_VALUE;
+        }
+        checkDimension(probe);
+        ByteBuffer fixed = readRecord(ordinal, RECORD_FIXED_BYTES);
+        int firstRow = fixed.getInt(1);
+        int count = fixed.getInt(1 + Integer.BYTES);
+        double[] query = probe.getFeatures();
+        double best = Double.MAX_VALUE;
+        for (int row = firstRow; row < firstRow + count; row++) {
+            best = Math.min(best, distance(metric, query, probe.norm(), row));
+        }
+        return best;
+    }
+
+    /**
+     * Ranks the live identities nearest to the probe by minimum row distance,
+     * reading the mapped rows in place.
+     *
+     * @param probe the probe vector
+     * @param metric the distance metric
+     * @param limit the maximum number of identities to return
+     * @return the ranking
+     * @throws IllegalArgumentException if the probe dimension does not match
+     */
+    AbstractFaceClassifier.Ranking rank(FeatureVector probe, DistanceMetric metric, int limit) {
+        if (rows == 0) {
+            return AbstractFaceClassifier.Ranking.EMPTY;
+        }
+        checkDimension(probe);
+        double[] query = probe.getFeatures();
+        double queryNorm = probe.norm();
+
+        TopKSelector selector = new TopKSelector(Math.min(limit, liveCount));
+        int owner = -1;
+        double min = Double.MAX_VALUE;
+        for (int row = 0; row < rows; row++) {
+            DoubleBuffer chunk = chunks.get(row / rowsPerChunk);
+            int base = (row % rowsPerChunk) * stride;
+            int rowOwner = (int) chunk.get(base + dimension + 1);
+            if (excluded.get(rowOwner)) {
+                continue;
+            }
+            if (rowOwner != owner) {
+                if (owner >= 0) {
+                    selector.offer(owner, min);
+                }
+                owner = rowOwner;
+                min = Double.MAX_VALUE;
+            }
+            min = Math.min(min, distance(metric, query, queryNorm, chunk, base));
+        }
+        if (owner >= 0) {
+            selector.offer(owner, min);
+        }
+
+        double[] distances = new double[selector.size()];
+        int[] order = selector.drainAscending(distances);
+        Identity[] ranked = new Identity[order.length];
+        for (int r = 0; r < order.length; r++) {
+            ranked[r] = identity(order[r]);
+        }
+        return new AbstractFaceClassifier.Ranking(ranked, distances);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            vectors.close();
+        } finally {
+            identities.close();
+        }
+    }
+
+    private double distance(DistanceMetric metric, double[] query, double queryNorm, int row) {
+        return distance(metric, query, queryNorm, chunks.get(row / rowsPerChunk), (row % rowsPerChunk) * stride);
+    }
+
+    // Mirrors GalleryMatrix.distance, reading the row from the mapped chunk.
+    private double distance(DistanceMetric metric, double[] query, double queryNorm, DoubleBuffer chunk, int base) {
+        double sum = 0.0;
+        switch (metric) {
+            case COSINE:
+                for (int j = 0; j < dimension; j++) {
+                    sum += query[j] * chunk.get(base + j);
+                }
+                return 1.0 - sum / (queryNorm * chunk.get(base + dimension));
+            case MANHATTAN:
+                for (int j = 0; j < dimension; j++) {
+                    sum += Math.abs(query[j] - chunk.get(base + j));
+                }
+                return sum;
+            case CHI_SQUARE:
+                for (int j = 0; j < dimension; j++) {
+                    double x = query[j];
+                    double y = chunk.get(base + j);
+                    double total = x + y;
+                    if (total > 0) {
+                        sum += (x - y) * (x - y) / total;
+                    }
+                }
+                return sum;
+            case EUCLIDEAN:
+            default:
+                for (int j = 0; j < dimension; j++) {
+                    double diff = query[j] - chunk.get(base + j);
+                    sum += diff * diff;
+                }
+                return Math.sqrt(sum);
+        }
+    }
+
+    private void setDimension(int dimension) {
+        this.dimension = dimension;
+        this.stride = dimension + 2;
+        this.rowsPerChunk = (int) Math.max(1, CHUNK_BYTES / ((long) stride * Double.BYTES));
+    }
+
+    private void ensureChunks(int requiredRows) throws IOException {
+        int required = (requiredRows + rowsPerChunk - 1) / rowsPerChunk;
+        long chunkBytes = (long) rowsPerChunk * stride * Double.BYTES;
+        FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        while (chunks.size() < required) {
+            // READ_WRITE mappings extend the file; readers only map chunks the writer already has.
+            MappedByteBuffer mapped = vectors.map(mode, HEADER_BYTES + chunks.size() * chunkBytes, chunkBytes);
+            chunks.add(mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+        }
+    }
+
+    // Re-reads the removed flags of known records, then skims records
+    // appended since the last call. The file is mapped for the duration, so
+    // skimming millions of records costs no system call per record.
+    private boolean readIdentities() throws IOException {
+        long size = identities.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Identity records exceed 2 GiB: " + directory);
+        }
+        ByteBuffer records = identities.map(FileChannel.MapMode.READ_ONLY, 0, size)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        boolean changed = false;
+
+        if (readOnly) {
+            // Removals by the writer flip flags of records this reader already knows.
+            for (int ordinal = removed.nextClearBit(0); ordinal < identityCount;
+                 ordinal = removed.nextClearBit(ordinal + 1)) {
+                if ((records.get((int) recordOffsets[ordinal]) & REMOVED) != 0) {
+                    removed.set(ordinal);
+                    excluded.set(ordinal);
+                    liveCount--;
+                    if (ordinals != null) {
+                        ordinals.remove(decodeId(ordinal), ordinal);
+                    }
+                    changed = true;
+                }
+            }
+        }
+
+        while (identitiesEnd + RECORD_FIXED_BYTES <= size) {
+            int offset = (int) identitiesEnd;
+            int firstRow = records.getInt(offset + 1);
+            int count = records.getInt(offset + 1 + Integer.BYTES);
+            if (firstRow + count > rows) {
+                break;
+            }
+            long position = offset + RECORD_FIXED_BYTES;
+            int fields = 0;
+            while (fields < 3 && position + Integer.BYTES <= size) {
+                position += Integer.BYTES + records.getInt((int) position);
+                fields++;
+            }
+            if (fields < 3 || position > size) {
+                break;
+            }
+            addRecord(offset, (int) (position - offset), records.get(offset));
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void addRecord(long offset, int length, byte flags) {
+        if (identityCount == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, Math.multiplyExact(recordOffsets.length, 2));
+        }
+        int ordinal = identityCount++;
+        recordOffsets[ordinal] = offset;
+        identitiesEnd = offset + length;
+        if ((flags & REMOVED) != 0) {
+            removed.set(ordinal);
+            excluded.set(ordinal);
+        } else {
+            if ((flags & INACTIVE) != 0) {
+                excluded.set(ordinal);
+            }
+            liveCount++;
+            if (ordinals != null) {
+                ordinals.put(decodeId(ordinal), ordinal);
+            }
+        }
+    }
+
+    // Lookups run concurrently with rank() under the classifier's read lock,
+    // so the lazy build is synchronised; changes to a built index only happen
+    // under its write lock.
+    private Map<String, Integer> ordinals() {
+        Map<String, Integer> index = ordinals;
+        if (index == null) {
+            synchronized (this) {
+                index = ordinals;
+                if (index == null) {
+                    index = new HashMap<>();
+                    for (int ordinal = 0; ordinal < identityCount; ordinal++) {
+                        if (!removed.get(ordinal)) {
+                            index.put(decodeId(ordinal), ordinal);
+                        }
+                    }
+                    ordinals = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private Identity identity(int ordinal) {
+        ByteBuffer record = readRecord(ordinal, recordLength(ordinal));
+        record.position(RECORD_FIXED_BYTES);
+        String id = readString(record);
+        String name = readString(record);
+        String externalId = readString(record);
+        Identity identity = new Identity(id, name, externalId.isEmpty() ? null : externalId);
+        identity.setActive((record.get(0) & INACTIVE) == 0);
+        return identity;
+    }
+
+    private String decodeId(int ordinal) {
+        ByteBuffer record = readRecord(ordinal, recordLength(ordinal));
+        record.position(RECORD_FIXED_BYTES);
+        return readString(record);
+    }
+
+    private int recordLength(int ordinal) {
+        long end = ordinal + 1 < identityCount ? recordOffsets[ordinal + 1] : identitiesEnd;
+        return (int) (end - recordOffsets[ordinal]);
+    }
+
+    private ByteBuffer readRecord(int ordinal, int length) {
+        ByteBuffer record = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            read(identities, record, recordOffsets[ordinal]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read gallery segment " + directory, e);
+        }
+        return record;
+    }
+
+    private void checkDimension(FeatureVector probe) {
+        if (probe.getDimension() != dimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the segment is read-only
+     */
+    void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Gallery segment is read-only: " + directory);
+        }
+    }
+
+    private static byte[] encode(Identity identity, int firstRow, int count) {
+        byte[] id = identity.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] name = identity.getName().getBytes(StandardCharsets.UTF_8);
+        String externalId = identity.getExternalId();
+        byte[] external = (externalId != null ? externalId : "").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_FIXED_BYTES + 3 * Integer.BYTES
+            + id.length + name.length + external.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(identity.isActive() ? 0 : INACTIVE).putInt(firstRow).putInt(count);
+        record.putInt(id.length).put(id);
+        record.putInt(name.length).put(name);
+        record.putInt(external.length).put(external);
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of gallery segment");
+            }
+            position += read;
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already failing; the original exception is more useful
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest-neighbour classifier backed by a Hierarchical Navigable
+ * Small World graph.
+ *
+ * <p>Where {@link KNNClassifier} compares the probe with every enrolled
+ * sample, this classifier walks a proximity graph and visits only a few
+ * hundred to a few thousand samples per probe, which keeps latency roughly
+ * logarithmic in gallery size. The trade-off is recall: the true nearest
+ * identity is occasionally missed. Three knobs control it:</p>
+ * <ul>
+ *   <li><b>M</b>: neighbours per node (layer 0 keeps {@code 2M}). Higher
+ *       improves recall on high-dimensional data at the cost of memory.</li>
+ *   <li><b>efConstruction</b>: beam width while inserting. Higher builds a
+ *       better graph, more slowly.</li>
+ *   <li><b>efSearch</b>: beam width while searching, adjustable at runtime.
+ *       Higher improves recall and costs latency.</li>
+ * </ul>
+ *
+ * <p>Enrolment inserts incrementally; unenrolment tombstones the identity's
+ * nodes, and the graph is rebuilt lazily once tombstones make up more than
+ * half of it, after {@link #clear()} or a metric change, or on
+ * {@link #retrain()}, which callers should invoke after a bulk enrolment.
+ * Reported distances are exact distances to the samples the search reached,
+ * and {@link #getDistance} is always exact. Every {@link DistanceMetric}
+ * supported by {@link KNNClassifier} is supported here.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see HnswGraph
+ * @see FaceClassifier
+ */
+public class HNSWClassifier extends AbstractFaceClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "HNSW";
+
+    /** Default number of neighbours per node. */
+    public static final int DEFAULT_M = 16;
+    /** Default beam width while inserting. */
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    /** Default beam width while searching. */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private static final long LEVEL_SEED = 42L;
+
+    private final int m;
+    private final int efConstruction;
+    private volatile int efSearch;
+
+    private final ReentrantReadWriteLock graphLock = new ReentrantReadWriteLock();
+    // Guarded by graphLock; null means it must be rebuilt from enrolledIdentities.
+    private transient HnswGraph graph;
+
+    /**
+     * Creates an HNSW classifier with default settings.
+     */
+    public HNSWClassifier() {
+        this(new ClassifierConfig());
+    }
+
+    /**
+     * Creates an HNSW classifier with default graph parameters.
+     *
+     * @param config the classifier configuration
+     */
+    public HNSWClassifier(ClassifierConfig config) {
+        this(config, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * Creates an HNSW classifier with custom graph parameters.
+     *
+     * @param config the classifier configuration
+     * @param m neighbours per node, at least 2
+     * @param efConstruction beam width while inserting, at least {@code m}
+     * @param efSearch beam width while searching, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public HNSWClassifier(ClassifierConfig config, int m, int efConstruction, int efSearch) {
+        super(config);
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2: " + m);
+        }
+        if (efConstruction < m) {
+            throw new IllegalArgumentException("efConstruction must be at least M: " + efConstruction);
+        }
+        this.m = m;
+        this.efConstruction = efConstruction;
+        setEfSearch(efSearch);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Sets the search beam width. Takes effect for the next probe.
+     *
+     * @param efSearch the beam width, at least 1
+     * @throws IllegalArgumentException if {@code efSearch} is below 1
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch must be at least 1: " + efSearch);
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Rebuilds the graph from the enrolled identities, dropping tombstones.
+     */
+    @Override
+    public synchronized void retrain() {
+        graphLock.writeLock().lock();
+        try {
+            graph = buildGraph();
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        graphLock.writeLock().lock();
+        try {
+            if (graph == null) {
+                return;
+            }
+            if (previous != null) {
+                graph.remove(previous.getId());
+            }
+            try {
+                graph.add(identity);
+            } catch (RuntimeException e) {
+                // The enrolment is rolled back; rebuild from the restored gallery
+                graph = null;
+                throw e;
+            }
+            rebuildIfMostlyDeleted();
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        graphLock.writeLock().lock();
+        try {
+            if (graph != null) {
+                graph.remove(identity.getId());
+                rebuildIfMostlyDeleted();
+            }
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        graphLock.writeLock().lock();
+        try {
+            graph = null;
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        graphLock.writeLock().lock();
+        try {
+            graph = null;
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        graphLock.readLock().lock();
+        try {
+            if (graph != null) {
+                return search(graph, probe, limit);
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+
+        // Build under the monitor so no enrolment lands between reading
+        // enrolledIdentities and publishing the graph.
+        synchronized (this) {
+            graphLock.writeLock().lock();
+            try {
+                if (graph == null) {
+                    graph = buildGraph();
+                }
+                // Downgrade so concurrent probes are not held up by this search.
+                graphLock.readLock().lock();
+            } finally {
+                graphLock.writeLock().unlock();
+            }
+        }
+        try {
+            return search(graph, probe, limit);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    private Ranking search(HnswGraph index, FeatureVector probe, int limit) {
+        if (index.size() == 0) {
+            return Ranking.EMPTY;
+        }
+        if (probe.getDimension() != index.dimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), index.dimension()));
+        }
+
+        int ef = Math.max(efSearch, limit);
+        double[] nodeDistances = new double[ef];
+        int[] nodes = index.search(probe.getFeatures(), probe.norm(), ef, nodeDistances);
+
+        // Nodes arrive nearest first, so the first node seen for an identity
+        // carries that identity's best distance.
+        Set<String> seen = new HashSet<>();
+        Identity[] identities = new Identity[Math.min(limit, nodes.length)];
+        double[] distances = new double[identities.length];
+        int count = 0;
+        for (int i = 0; i < nodes.length && count < identities.length; i++) {
+            Identity owner = index.owner(nodes[i]);
+            if (!owner.isActive() || !seen.add(owner.getId())) {
+                continue;
+            }
+            identities[count] = owner;
+            distances[count] = nodeDistances[i];
+            count++;
+        }
+        if (count < identities.length) {
+            identities = Arrays.copyOf(identities, count);
+            distances = Arrays.copyOf(distances, count);
+        }
+        return new Ranking(identities, distances);
+    }
+
+    private void rebuildIfMostlyDeleted() {
+        if (graph.deletedCount() * 2 > graph.size()) {
+            graph = buildGraph();
+        }
+    }
+
+    private HnswGraph buildGraph() {
+        HnswGraph built = newGraph();
+        for (Identity identity : enrolledIdentities.values()) {
+            if (identity.hasSamples()) {
+                built.add(identity);
+            }
+        }
+        return built;
+    }
+
+    private HnswGraph newGraph() {
+        return new HnswGraph(distanceMetric, m, efConstruction, LEVEL_SEED);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HNSWClassifier{M=%d, efConstruction=%d, efSearch=%d, metric=%s, enrolled=%d}",
+            m, efConstruction, efSearch, distanceMetric, enrolledIdentities.size());
+    }
+}
@@ -0,0 +1,497 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical Navigable Small World graph over enrolled sample vectors
+ * (Malkov &amp; Yashunin, 2016).
+ *
+ * <p>Every sample is a node. A node drawn at level {@code L} takes part in
+ * layers {@code 0..L}; upper layers are sparse long-range shortcuts and layer
+ * 0 holds every node. Searches descend greedily from the single entry point
+ * on the top layer and finish with a beam search of width {@code ef} on layer
+ * 0. Neighbour lists are pruned with the diversity heuristic from the paper,
+ * topped up with the nearest pruned candidates.</p>
+ *
+ * <p>Vectors are stored packed, row-major, in one growable {@code double[]}
+ * together with their L2 norms, so node distances use the same
+ * {@link DistanceKernels} as the linear-scan classifier. Removal is by
+ * tombstone: deleted nodes keep routing searches but are never returned. The
+ * owning classifier rebuilds the graph once tombstones dominate.</p>
+ *
+ * <p>Not thread-safe. {@link HNSWClassifier} serialises writers against
+ * readers; concurrent {@link #search} calls are safe with each other because
+ * per-search scratch state is thread-local.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see HNSWClassifier
+ */
+final class HnswGraph {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final DistanceMetric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private int dimension;
+    private double[] vectors = new double[0];
+    private double[] norms = new double[INITIAL_CAPACITY];
+    private Identity[] owners = new Identity[INITIAL_CAPACITY];
+    private boolean[] deleted = new boolean[INITIAL_CAPACITY];
+    // links[node][level] = {count, neighbour1, neighbour2, ...}
+    private int[][][] links = new int[INITIAL_CAPACITY][][];
+    private final Map<String, List<Integer>> nodesByIdentity = new HashMap<>();
+
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<VisitedMarks> visited = ThreadLocal.withInitial(VisitedMarks::new);
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param metric the distance metric
+     * @param m the number of neighbours per node on upper layers; layer 0 keeps {@code 2m}
+     * @param efConstruction the beam width used while inserting
+     * @param seed seed for the level generator
+     */
+    HnswGraph(DistanceMetric metric, int m, int efConstruction, long seed) {
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Inserts every sample of an identity.
+     *
+     * @param identity the owning identity
+     * @throws IllegalArgumentException if a sample's dimension differs from the graph's
+     */
+    void add(Identity identity) {
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        int expected = dimension != 0 ? dimension : samples.get(0).getFeatures().getDimension();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != expected) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", expected, sample.getFeatures().getDimension()));
+            }
+        }
+        dimension = expected;
+
+        List<Integer> nodes = nodesByIdentity.computeIfAbsent(identity.getId(), k -> new ArrayList<>());
+        for (Identity.EnrolledSample sample : samples) {
+            nodes.add(insert(identity, sample.getFeatures()));
+        }
+    }
+
+    /**
+     * Tombstones every node owned by the identity.
+     *
+     * @param identityId the identity ID
+     */
+    void remove(String identityId) {
+        List<Integer> nodes = nodesByIdentity.remove(identityId);
+        if (nodes == null) {
+            return;
+        }
+        for (int node : nodes) {
+            if (!deleted[node]) {
+                deleted[node] = true;
+                owners[node] = null;
+                deletedCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes, including tombstones
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of tombstoned nodes
+     */
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * @return the vector dimension, or 0 while the graph is empty
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @param node a node returned by {@link #search}
+     * @return the identity owning the node
+     */
+    Identity owner(int node) {
+        return owners[node];
+    }
+
+    /**
+     * Finds approximately the {@code ef} live nodes nearest to the query.
+     *
+     * @param query the query vector
+     * @param queryNorm the query's L2 norm
+     * @param ef the beam width, and the maximum number of nodes returned
+     * @param distancesOut receives the node distances, nearest first; length at least {@code ef}
+     * @return the nodes, nearest first
+     */
+    int[] search(double[] query, double queryNorm, int ef, double[] distancesOut) {
+        if (entryPoint < 0) {
+            return new int[0];
+        }
+        int current = entryPoint;
+        double currentDistance = distance(query, queryNorm, current);
+        for (int level = maxLevel; level > 0; level--) {
+            current = greedyClosest(query, queryNorm, current, currentDistance, level);
+            currentDistance = distance(query, queryNorm, current);
+        }
+
+        TopKSelector nearest = searchLayer(query, queryNorm, new int[]{current},
+            new double[]{currentDistance}, ef, 0);
+        double[] scratch = new double[nearest.size()];
+        int[] nodes = nearest.drainAscending(scratch);
+
+        int live = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (!deleted[nodes[i]]) {
+                nodes[live] = nodes[i];
+                distancesOut[live] = scratch[i];
+                live++;
+            }
+        }
+        return Arrays.copyOf(nodes, live);
+    }
+
+    private int insert(Identity owner, FeatureVector features) {
+        int node = size;
+        ensureCapacity(node + 1);
+        int offset = node * dimension;
+        features.copyInto(vectors, offset);
+        norms[node] = Math.sqrt(DistanceKernels.sumOfSquares(vectors, offset, dimension));
+        owners[node] = owner;
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[1 + maxNeighbours(l)];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        double currentDistance = distance(vectors, offset, norms[node], current);
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vectors, offset, norms[node], current, currentDistance, l);
+            currentDistance = distance(vectors, offset, norms[node], current);
+        }
+
+        int[] entries = {current};
+        double[] entryDistances = {currentDistance};
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            TopKSelector candidates = searchLayer(vectors, offset, norms[node], entries, entryDistances,
+                efConstruction, l);
+            entryDistances = new double[candidates.size()];
+            entries = candidates.drainAscending(entryDistances);
+
+            int[] neighbours = selectNeighbours(entries, entryDistances, entries.length, m);
+            int[] list = links[node][l];
+            for (int neighbour : neighbours) {
+                list[++list[0]] = neighbour;
+                connect(neighbour, node, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    /**
+     * Adds {@code node} to {@code target}'s neighbour list on the given level,
+     * re-pruning the list with the heuristic if it overflows.
+     */
+    private void connect(int target, int node, int level) {
+        int[] list = links[target][level];
+        int count = list[0];
+        if (count < list.length - 1) {
+            list[++list[0]] = node;
+            return;
+        }
+
+        int targetOffset = target * dimension;
+        double[] candidateDistances = new double[count + 1];
+        TopKSelector sorted = new TopKSelector(count + 1);
+        for (int i = 1; i <= count; i++) {
+            sorted.offer(list[i], distance(vectors, targetOffset, norms[target], list[i]));
+        }
+        sorted.offer(node, distance(vectors, targetOffset, norms[target], node));
+        int[] candidates = sorted.drainAscending(candidateDistances);
+
+        int[] kept = selectNeighbours(candidates, candidateDistances, candidates.length, maxNeighbours(level));
+        list[0] = kept.length;
+        System.arraycopy(kept, 0, list, 1, kept.length);
+    }
+
+    /**
+     * Neighbour-selection heuristic: walk candidates nearest first and keep one
+     * only if it is closer to the base than to every neighbour kept so far,
+     * then top up with the nearest discarded candidates.
+     */
+    private int[] selectNeighbours(int[] candidates, double[] distances, int count, int max) {
+        if (count <= max) {
+            return Arrays.copyOf(candidates, count);
+        }
+        int[] kept = new int[max];
+        int keptCount = 0;
+        boolean[] taken = new boolean[count];
+        for (int i = 0; i < count && keptCount < max; i++) {
+            int candidate = candidates[i];
+            int candidateOffset = candidate * dimension;
+            boolean diverse = true;
+            for (int j = 0; j < keptCount; j++) {
+                if (distance(vectors, candidateOffset, norms[candidate], kept[j]) < distances[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                kept[keptCount++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && keptCount < max; i++) {
+            if (!taken[i]) {
+                kept[keptCount++] = candidates[i];
+            }
+        }
+        return kept;
+    }
+
+    private int greedyClosest(double[] query, double queryNorm, int start, double startDistance, int level) {
+        return greedyClosest(query, 0, queryNorm, start, startDistance, level);
+    }
+
+    private int greedyClosest(double[] query, int queryOffset, double queryNorm,
+                              int start, double startDistance, int level) {
+        int current = start;
+        double currentDistance = startDistance;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbour = list[i];
+                double d = distance(query, queryOffset, queryNorm, neighbour);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private TopKSelector searchLayer(double[] query, double queryNorm, int[] entries, double[] entryDistances,
+                                     int ef, int level) {
+        return searchLayer(query, 0, queryNorm, entries, entryDistances, ef, level);
+    }
+
+    /**
+     * Beam search on one layer. Returns the {@code ef} nearest nodes seen,
+     * tombstones included so that they can keep routing upper-layer searches.
+     */
+    private TopKSelector searchLayer(double[] query, int queryOffset, double queryNorm,
+                                     int[] entries, double[] entryDistances, int ef, int level) {
+        VisitedMarks marks = visited.get();
+        marks.reset(size);
+
+        TopKSelector results = new TopKSelector(ef);
+        CandidateQueue candidates = new CandidateQueue(Math.max(ef, entries.length));
+        for (int i = 0; i < entries.length; i++) {
+            marks.visit(entries[i]);
+            candidates.push(entries[i], entryDistances[i]);
+            results.offer(entries[i], entryDistances[i]);
+        }
+
+        while (!candidates.isEmpty()) {
+            double nearestDistance = candidates.peekDistance();
+            if (results.size() >= ef && nearestDistance > results.worstDistance()) {
+                break;
+            }
+            int[] list = links[candidates.pop()][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbour = list[i];
+                if (!marks.visit(neighbour)) {
+                    continue;
+                }
+                double d = distance(query, queryOffset, queryNorm, neighbour);
+                if (results.size() < ef || d < results.worstDistance()) {
+                    candidates.push(neighbour, d);
+                    results.offer(neighbour, d);
+                }
+            }
+        }
+        return results;
+    }
+
+    private double distance(double[] query, double queryNorm, int node) {
+        return distance(query, 0, queryNorm, node);
+    }
+
+    private double distance(double[] query, int queryOffset, double queryNorm, int node) {
+        return GalleryMatrix.distance(metric, query, queryOffset, queryNorm,
+            vectors, node * dimension, norms[node], dimension);
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return (int) Math.floor(-Math.log(u) * levelMultiplier);
+    }
+
+    private int maxNeighbours(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int nodes) {
+        int capacity = owners.length;
+        if (nodes > capacity) {
+            capacity = Math.max(nodes, Math.multiplyExact(capacity, 2));
+            norms = Arrays.copyOf(norms, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+            links = Arrays.copyOf(links, capacity);
+        }
+        int required = Math.multiplyExact(capacity, dimension);
+        if (vectors.length < required) {
+            vectors = Arrays.copyOf(vectors, required);
+        }
+    }
+
+    /** Growable binary min-heap of (node, distance) pairs. */
+    private static final class CandidateQueue {
+        private double[] distances;
+        private int[] nodes;
+        private int size;
+
+        CandidateQueue(int capacity) {
+            this.distances = new double[Math.max(capacity, 4)];
+            this.nodes = new int[distances.length];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekDistance() {
+            return distances[0];
+        }
+
+        void push(int node, double distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (Double.compare(distances[parent], distance) <= 0) {
+                    break;
+                }
+                nodes[child] = nodes[parent];
+                distances[child] = distances[parent];
+                child = parent;
+            }
+            nodes[child] = node;
+            distances[child] = distance;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            int lastNode = nodes[size];
+            double lastDistance = distances[size];
+            int parent = 0;
+            while (true) {
+                int left = 2 * parent + 1;
+                if (left >= size) {
+                    break;
+                }
+                int smaller = left;
+                if (left + 1 < size && Double.compare(distances[left + 1], distances[left]) < 0) {
+                    smaller = left + 1;
+                }
+                if (Double.compare(lastDistance, distances[smaller]) <= 0) {
+                    break;
+                }
+                nodes[parent] = nodes[smaller];
+                distances[parent] = distances[smaller];
+                parent = smaller;
+            }
+            nodes[parent] = lastNode;
+            distances[parent] = lastDistance;
+            return top;
+        }
+    }
+
+    /** Per-thread visited set, cleared in O(1) by bumping a generation counter. */
+    private static final class VisitedMarks {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int nodes) {
+            if (marks.length < nodes) {
+                marks = new int[Math.max(nodes, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /** @return true if the node had not been visited in this generation */
+        boolean visit(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted-file (IVF) classifier: a k-means coarse quantiser in front of
+ * a partial linear scan.
+ *
+ * <p>The enrolled samples are partitioned into {@code nlist} cells around
+ * k-means centroids. A probe is compared with every centroid, then with the
+ * samples in its {@code nprobe} nearest cells only, so on a gallery of
+ * {@code N} samples it costs about {@code nlist + N * nprobe / nlist}
+ * distance evaluations. A good starting point is {@code nlist ≈ sqrt(N)} and
+ * {@code nprobe} a few percent of {@code nlist}; raising {@code nprobe}
+ * trades latency for recall, and {@code nprobe >= nlist} makes the scan
+ * exact.</p>
+ *
+ * <p>The quantiser is fitted by {@link #retrain()}, or lazily by the first
+ * probe after a {@link #clear()} or metric change. Between retrains,
+ * {@link #enroll} assigns new samples to the existing centroids and
+ * {@link #unenroll} removes them, so a gallery that grows well beyond the
+ * one the centroids were fitted on should be retrained. Reported distances
+ * are exact, and {@link #getDistance} is always exact.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see IvfIndex
+ * @see FaceClassifier
+ */
+public class IVFClassifier extends AbstractFaceClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "IVF";
+
+    /** Default number of k-means cells. */
+    public static final int DEFAULT_NLIST = 128;
+    /** Default number of cells scanned per probe. */
+    public static final int DEFAULT_NPROBE = 8;
+    /** Default maximum number of k-means iterations. */
+    public static final int DEFAULT_ITERATIONS = 20;
+
+    private static final long TRAINING_SEED = 42L;
+
+    private final int nlist;
+    private final int iterations;
+    private volatile int nprobe;
+
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // Guarded by indexLock; null means it must be trained from enrolledIdentities.
+    private transient IvfIndex index;
+
+    /**
+     * Creates an IVF classifier with default settings.
+     */
+    public IVFClassifier() {
+        this(new ClassifierConfig());
+    }
+
+    /**
+     * Creates an IVF classifier with default index parameters.
+     *
+     * @param config the classifier configuration
+     */
+    public IVFClassifier(ClassifierConfig config) {
+        this(config, DEFAULT_NLIST, DEFAULT_NPROBE);
+    }
+
+    /**
+     * Creates an IVF classifier with custom index parameters.
+     *
+     * @param config the classifier configuration
+     * @param nlist the number of k-means cells, at least 1
+     * @param nprobe the number of cells scanned per probe, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public IVFClassifier(ClassifierConfig config, int nlist, int nprobe) {
+        this(config, nlist, nprobe, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Creates an IVF classifier with custom index and training parameters.
+     *
+     * @param config the classifier configuration
+     * @param nlist the number of k-means cells, at least 1
+     * @param nprobe the number of cells scanned per probe, at least 1
+     * @param iterations the maximum number of k-means iterations, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public IVFClassifier(ClassifierConfig config, int nlist, int nprobe, int iterations) {
+        super(config);
+        if (nlist < 1) {
+            throw new IllegalArgumentException("nlist must be at least 1: " + nlist);
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1: " + iterations);
+        }
+        this.nlist = nlist;
+        this.iterations = iterations;
+        setNprobe(nprobe);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getNlist() {
+        return nlist;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * Sets the number of cells scanned per probe. Takes effect for the next probe.
+     *
+     * @param nprobe the number of cells, at least 1
+     * @throws IllegalArgumentException if {@code nprobe} is below 1
+     */
+    public void setNprobe(int nprobe) {
+        if (nprobe < 1) {
+            throw new IllegalArgumentException("nprobe must be at least 1: " + nprobe);
+        }
+        this.nprobe = nprobe;
+    }
+
+    /**
+     * Re-clusters the enrolled samples and rebuilds the inverted lists.
+     */
+    @Override
+    public synchronized void retrain() {
+        indexLock.writeLock().lock();
+        try {
+            index = trainIndex();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        indexLock.writeLock().lock();
+        try {
+            if (index == null) {
+                return;
+            }
+            if (previous != null) {
+                index.remove(previous.getId());
+            }
+            try {
+                index.add(identity);
+            } catch (RuntimeException e) {
+                // The enrolment is rolled back; retrain from the restored gallery
+                index = null;
+                throw e;
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        indexLock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.remove(identity.getId());
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        invalidate();
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        invalidate();
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        indexLock.readLock().lock();
+        try {
+            if (index != null) {
+                return search(index, probe, limit);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        // Build under the monitor so no enrolment lands between reading
+        // enrolledIdentities and publishing the index.
+        synchronized (this) {
+            indexLock.writeLock().lock();
+            try {
+                if (index == null) {
+                    index = trainIndex();
+                }
+                // Downgrade so concurrent probes are not held up by this search.
+                indexLock.readLock().lock();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        try {
+            return search(index, probe, limit);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private Ranking search(IvfIndex ivf, FeatureVector probe, int limit) {
+        if (ivf == null || ivf.size() == 0) {
+            return Ranking.EMPTY;
+        }
+        if (probe.getDimension() != ivf.dimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), ivf.dimension()));
+        }
+        return ivf.search(probe.getFeatures(), probe.norm(), nprobe, limit);
+    }
+
+    private void invalidate() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private IvfIndex trainIndex() {
+        List<Identity> identities = new ArrayList<>();
+        for (Identity identity : enrolledIdentities.values()) {
+            if (identity.hasSamples()) {
+                identities.add(identity);
+            }
+        }
+        if (identities.isEmpty()) {
+            return null;
+        }
+        return IvfIndex.train(identities, distanceMetric, nlist, iterations, TRAINING_SEED);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IVFClassifier{nlist=%d, nprobe=%d, metric=%s, enrolled=%d}",
+            nlist, nprobe, distanceMetric, enrolledIdentities.size());
+    }
+}
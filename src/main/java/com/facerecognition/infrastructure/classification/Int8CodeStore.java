@@ -0,0 +1,261 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureStore;
+
+import java.util.Arrays;
+
+/**
+ * Append-only heap store of scalar-quantised rows, one unsigned byte per
+ * dimension, on a grid fixed when the store is created.
+ *
+ * <p>Dimension {@code j} is encoded as
+ * {@code code = round((x - min[j]) / step)} and clamped to
+ * {@code [0, 255]}; it decodes to {@code min[j] + step * code}. Next to each
+ * row the store keeps the two per-row terms {@link Int8GalleryMatrix} needs
+ * for cosine: {@code sum(min[j] * code[j])} and the decoded row's L2
+ * norm.</p>
+ *
+ * <p>As a {@link FeatureStore} it holds the samples an {@link Int8GalleryMatrix}
+ * was packed from, so the samples need not keep their {@code double[]}
+ * values as well; they read back the decoded values, keyed by row. Rows are
+ * never rewritten, so a snapshot of the arrays taken after an append stays
+ * valid for the rows it covers while later rows are appended.</p>
+ *
+ * <p>Appends must be serialised by the caller; {@link #load} may be called
+ * concurrently with them.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see Int8GalleryMatrix
+ */
+final class Int8CodeStore implements FeatureStore {
+
+    /** The largest code. */
+    static final int LEVELS = 255;
+
+    private final int dimension;
+    private final double[] mins;
+    private final double step;
+    // sum(mins[j]^2), shared by every cosine evaluation.
+    private final double minsSquared;
+    // 2 * mins[j] / step: the decoded c + d is step * (c + d + chiBias[j]).
+    private final double[] chiBias;
+
+    // Replaced, never resized in place, so readers holding an older array see complete rows.
+    private volatile byte[] codes;
+    private volatile double[] offsetDots;
+    private volatile double[] norms;
+    private int rows;
+
+    /**
+     * Creates an empty store on the given grid.
+     *
+     * @param mins the value of code 0 in each dimension
+     * @param step the value between consecutive codes, shared by every dimension; positive
+     * @param capacity the number of rows to allocate up front
+     */
+    Int8CodeStore(double[] mins, double step, int capacity) {
+        this.dimension = mins.length;
+        this.mins = mins.clone();
+        this.step = step;
+        this.minsSquared = DistanceKernels.sumOfSquares(mins, 0, dimension);
+        this.chiBias = new double[dimension];
+        for (int j = 0; j < dimension; j++) {
+            chiBias[j] = 2.0 * mins[j] / step;
+        }
+        this.codes = new byte[Math.multiplyExact(capacity, dimension)];
+        this.offsetDots = new double[capacity];
+        this.norms = new double[capacity];
+    }
+
+    /**
+     * Creates an empty store whose grid spans the given ranges. The widest
+     * range is split into {@value #LEVELS} steps.
+     *
+     * @param mins the smallest value of each dimension
+     * @param maxs the largest value of each dimension
+     * @param capacity the number of rows to allocate up front
+     * @return the empty store
+     */
+    static Int8CodeStore spanning(double[] mins, double[] maxs, int capacity) {
+        double widest = 0.0;
+        for (int j = 0; j < mins.length; j++) {
+            widest = Math.max(widest, maxs[j] - mins[j]);
+        }
+        // A constant gallery encodes to all-zero codes; any positive step will do.
+        return new Int8CodeStore(mins, widest > 0.0 ? widest / LEVELS : 1.0, capacity);
+    }
+
+    /**
+     * Encodes and appends a row.
+     *
+     * @param values the row, of length {@code dimension}
+     * @return the row index
+     */
+    long append(double[] values) {
+        int row = reserve();
+        encode(values, codes, row * dimension);
+        return finish(row);
+    }
+
+    /**
+     * Appends a copy of a row of a store on the same grid, without decoding it.
+     *
+     * @param source a store for which {@link #sameGrid} is true
+     * @param sourceRow the row to copy
+     * @return the row index in this store
+     */
+    long copy(Int8CodeStore source, long sourceRow) {
+        int row = reserve();
+        System.arraycopy(source.codes, Math.toIntExact(sourceRow) * dimension, codes, row * dimension, dimension);
+        return finish(row);
+    }
+
+    /**
+     * @param other another store
+     * @return true if a code means the same value in both stores
+     */
+    boolean sameGrid(Int8CodeStore other) {
+        return other != null && step == other.step && Arrays.equals(mins, other.mins);
+    }
+
+    /**
+     * @param j a dimension
+     * @param value a value of that dimension
+     * @return true if the value lies on the grid's range and encodes without clamping
+     */
+    boolean covers(int j, double value) {
+        return value >= mins[j] && value <= upperBound(j);
+    }
+
+    /**
+     * @param j a dimension
+     * @return the value of code 0 in that dimension
+     */
+    double lowerBound(int j) {
+        return mins[j];
+    }
+
+    /**
+     * @param j a dimension
+     * @return the value of the largest code in that dimension
+     */
+    double upperBound(int j) {
+        return mins[j] + step * LEVELS;
+    }
+
+    @Override
+    public double[] load(long key) {
+        byte[] snapshot = codes;
+        int offset = Math.toIntExact(key) * dimension;
+        double[] values = new double[dimension];
+        for (int j = 0; j < dimension; j++) {
+            values[j] = mins[j] + step * (snapshot[offset + j] & 0xFF);
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of rows appended
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @return the row stride
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the value between consecutive codes
+     */
+    double step() {
+        return step;
+    }
+
+    double minsSquared() {
+        return minsSquared;
+    }
+
+    double[] chiBias() {
+        return chiBias;
+    }
+
+    /**
+     * @return the codes of every row appended so far, row-major; later appends may reallocate
+     */
+    byte[] codes() {
+        return codes;
+    }
+
+    /**
+     * @return {@code sum(min[j] * code[j])} of every row appended so far
+     */
+    double[] offsetDots() {
+        return offsetDots;
+    }
+
+    /**
+     * @return the decoded L2 norm of every row appended so far
+     */
+    double[] norms() {
+        return norms;
+    }
+
+    /**
+     * Encodes a vector on this store's grid, clamping values outside it.
+     *
+     * @param values the vector
+     * @param out receives the codes
+     * @param offset where the codes start in {@code out}
+     */
+    void encode(double[] values, byte[] out, int offset) {
+        for (int j = 0; j < dimension; j++) {
+            long code = Math.round((values[j] - mins[j]) / step);
+            out[offset + j] = (byte) Math.max(0, Math.min(LEVELS, code));
+        }
+    }
+
+    /**
+     * @param row codes
+     * @param offset where the codes start in {@code row}
+     * @return {@code sum(min[j] * code[j])}
+     */
+    double offsetDot(byte[] row, int offset) {
+        double sum = 0.0;
+        for (int j = 0; j < dimension; j++) {
+            sum += mins[j] * (row[offset + j] & 0xFF);
+        }
+        return sum;
+    }
+
+    // |min + step * c|^2 = |min|^2 + 2 step (min . c) + step^2 (c . c)
+    double decodedNorm(byte[] row, int offset, double offsetDot) {
+        double squared = minsSquared + 2.0 * step * offsetDot
+            + step * step * DistanceKernels.dot(row, offset, row, offset, dimension);
+        return Math.sqrt(Math.max(0.0, squared));
+    }
+
+    private int reserve() {
+        if (rows == offsetDots.length) {
+            int capacity = Math.max(16, Math.multiplyExact(offsetDots.length, 2));
+            codes = Arrays.copyOf(codes, Math.multiplyExact(capacity, dimension));
+            offsetDots = Arrays.copyOf(offsetDots, capacity);
+            norms = Arrays.copyOf(norms, capacity);
+        }
+        return rows;
+    }
+
+    private long finish(int row) {
+        int offset = row * dimension;
+        offsetDots[row] = offsetDot(codes, offset);
+        norms[row] = decodedNorm(codes, offset, offsetDots[row]);
+        rows++;
+        return row;
+    }
+}
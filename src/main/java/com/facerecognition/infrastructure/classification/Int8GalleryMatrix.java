@@ -0,0 +1,353 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scalar-quantised counterpart of {@link GalleryMatrix}: every sample
+ * dimension is stored as one unsigned byte instead of a {@code double}.
+ *
+ * <p>Dimension {@code j} is encoded as
+ * {@code code = round((x - min[j]) / step)}, where {@code min[j]} is the
+ * smallest value of that dimension in the gallery and {@code step} is the
+ * widest dimension's range divided by 255. A per-dimension offset keeps
+ * histograms and embeddings whose dimensions sit at different levels from
+ * wasting codes; a single step keeps code differences proportional to real
+ * differences, so the distances between decoded vectors follow from integer
+ * sums over the codes:</p>
+ * <ul>
+ *   <li>Euclidean: {@code step * sqrt(sum (c - d)^2)}</li>
+ *   <li>Manhattan: {@code step * sum |c - d|}</li>
+ *   <li>Cosine: the integer dot product of the codes, plus per-row terms
+ *       for the offsets that are computed once when the row is packed</li>
+ *   <li>Chi-square: integer numerators {@code (c - d)^2} over the decoded
+ *       sums {@code c + d + 2 min[j] / step}</li>
+ * </ul>
+ *
+ * <p>Probes are encoded with the gallery's parameters; values outside the
+ * gallery's range are clamped to the nearest code. Reported distances are
+ * therefore those between the decoded probe and the decoded rows, within
+ * {@code step / 2} per dimension of the exact ones.</p>
+ *
+ * <p>The codes live in an {@link Int8CodeStore}, and packing
+ * {@linkplain Identity.EnrolledSample#offload offloads} every sample into
+ * it: from then on the sample holds no {@code double[]} and reads back its
+ * decoded values. A repack that is given the previous store keeps its grid
+ * whenever the new samples fit on it and copies the offloaded samples' codes
+ * unchanged, so repacking does not add quantisation error; the grid is only
+ * widened, re-encoding the decoded values once, when a new sample falls
+ * outside it.</p>
+ *
+ * <p>An enrolment whose samples all fit on the grid is
+ * {@linkplain #append appended} to the store without repacking; kept
+ * samples of the identity it replaces have their codes copied.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see KNNClassifier
+ * @see GalleryPrecision#INT8
+ */
+final class Int8GalleryMatrix implements PackedGallery {
+
+    private final Int8CodeStore store;
+    private final GalleryOwners owners;
+    private final int dimension;
+    private final double step;
+    private final double minsSquared;
+    private final double[] chiBias;
+    // Snapshots of the store's arrays, covering at least owners.rows() rows.
+    private final byte[] codes;
+    private final double[] offsetDots;
+    private final double[] norms;
+
+    private Int8GalleryMatrix(Int8CodeStore store, GalleryOwners owners) {
+        this.store = store;
+        this.owners = owners;
+        this.dimension = store.dimension();
+        this.step = store.step();
+        this.minsSquared = store.minsSquared();
+        this.chiBias = store.chiBias();
+        this.codes = store.codes();
+        this.offsetDots = store.offsetDots();
+        this.norms = store.norms();
+    }
+
+    /**
+     * Quantises every sample of the given identities into a new gallery on
+     * a grid fitted to them.
+     *
+     * @param enrolled the identities to pack
+     * @return the packed gallery, or {@link GalleryMatrix#EMPTY} if there are no samples
+     * @throws IllegalArgumentException if the samples do not all share one dimension
+     */
+    static PackedGallery of(Collection<Identity> enrolled) {
+        return of(enrolled, null);
+    }
+
+    /**
+     * Packs every sample of the given identities into a new store and
+     * offloads the samples into it. Samples already offloaded into
+     * {@code previous} keep their codes when the grid is unchanged.
+     *
+     * @param enrolled the identities to pack
+     * @param previous the store of the last pack, or null
+     * @return the packed gallery, or {@link GalleryMatrix#EMPTY} if there are no samples
+     * @throws IllegalArgumentException if the samples do not all share one dimension
+     */
+    static PackedGallery of(Collection<Identity> enrolled, Int8CodeStore previous) {
+        List<Identity> withSamples = new ArrayList<>(enrolled.size());
+        int rows = 0;
+        int dimension = 0;
+        for (Identity identity : enrolled) {
+            List<Identity.EnrolledSample> samples = identity.getSamples();
+            if (samples.isEmpty()) {
+                continue;
+            }
+            withSamples.add(identity);
+            rows += samples.size();
+            if (dimension == 0) {
+                dimension = samples.get(0).getFeatures().getDimension();
+            }
+        }
+        if (rows == 0) {
+            return GalleryMatrix.EMPTY;
+        }
+        if (previous != null && previous.dimension() != dimension) {
+            previous = null;
+        }
+
+        // Fit the grid to the samples that need encoding, widened to the previous
+        // grid if any samples are still coded on it.
+        double[] mins = new double[dimension];
+        double[] maxs = new double[dimension];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        boolean reused = false;
+        double[] values = new double[dimension];
+        for (Identity identity : withSamples) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                if (previous != null && sample.keyIn(previous) >= 0) {
+                    reused = true;
+                    continue;
+                }
+                FeatureVector features = sample.getFeatures();
+                if (features.getDimension() != dimension) {
+                    throw new IllegalArgumentException(String.format(
+                        "Dimension mismatch: %d vs %d", dimension, features.getDimension()));
+                }
+                features.copyInto(values, 0);
+                for (int j = 0; j < dimension; j++) {
+                    mins[j] = Math.min(mins[j], values[j]);
+                    maxs[j] = Math.max(maxs[j], values[j]);
+                }
+            }
+        }
+        boolean fits = reused;
+        for (int j = 0; reused && j < dimension; j++) {
+            fits &= mins[j] == Double.POSITIVE_INFINITY
+                || (previous.covers(j, mins[j]) && previous.covers(j, maxs[j]));
+            mins[j] = Math.min(mins[j], previous.lowerBound(j));
+            maxs[j] = Math.max(maxs[j], previous.upperBound(j));
+        }
+        // When everything fits, mins are now exactly the previous grid's.
+        Int8CodeStore store = fits
+            ? new Int8CodeStore(mins, previous.step(), rows)
+            : Int8CodeStore.spanning(mins, maxs, rows);
+
+        Identity[] identities = withSamples.toArray(new Identity[0]);
+        int[] owners = new int[rows];
+        int row = 0;
+        for (int i = 0; i < identities.length; i++) {
+            for (Identity.EnrolledSample sample : identities[i].getSamples()) {
+                long key = previous != null ? sample.keyIn(previous) : -1L;
+                if (key >= 0 && store.sameGrid(previous)) {
+                    key = store.copy(previous, key);
+                } else {
+                    sample.getFeatures().copyInto(values, 0);
+                    key = store.append(values);
+                }
+                sample.offload(store, key);
+                owners[row++] = i;
+            }
+        }
+        return new Int8GalleryMatrix(store, new GalleryOwners(identities, owners));
+    }
+
+    /**
+     * Encodes the identity's samples after the last row and offloads them.
+     * Samples that fall outside the grid are left to a repack, which widens it.
+     */
+    @Override
+    public Int8GalleryMatrix append(Identity identity, Identity previous) {
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        double[] values = new double[dimension];
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.keyIn(store) >= 0) {
+                continue;
+            }
+            FeatureVector features = sample.getFeatures();
+            if (features.getDimension() != dimension) {
+                return null;
+            }
+            features.copyInto(values, 0);
+            for (int j = 0; j < dimension; j++) {
+                if (!store.covers(j, values[j])) {
+                    return null;
+                }
+            }
+        }
+        GalleryOwners next = owners.append(identity, samples.size(), previous);
+        if (next == null) {
+            return null;
+        }
+
+        for (Identity.EnrolledSample sample : samples) {
+            long key = sample.keyIn(store);
+            if (key >= 0) {
+                key = store.copy(store, key);
+            } else {
+                sample.getFeatures().copyInto(values, 0);
+                key = store.append(values);
+            }
+            sample.offload(store, key);
+        }
+        return new Int8GalleryMatrix(store, next);
+    }
+
+    /**
+     * @return the store holding this gallery's codes
+     */
+    Int8CodeStore store() {
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return owners.rows();
+    }
+
+    /**
+     * @return the row stride
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the quantisation step shared by every dimension
+     */
+    double step() {
+        return step;
+    }
+
+    @Override
+    public boolean isPackedFor(DistanceMetric metric) {
+        return true;
+    }
+
+    @Override
+    public int identityCount() {
+        return owners.identityCount();
+    }
+
+    @Override
+    public Identity identity(int index) {
+        return owners.identities()[index];
+    }
+
+    @Override
+    public boolean isLive(int index) {
+        return owners.isLive(index);
+    }
+
+    @Override
+    public double[] minDistances(FeatureVector probe, DistanceMetric metric) {
+        double[] best = new double[owners.identityCount()];
+        Arrays.fill(best, Double.MAX_VALUE);
+        if (probe.getDimension() != dimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+        }
+
+        boolean[] active = owners.liveMask();
+
+        byte[] query = new byte[dimension];
+        store.encode(probe.getFeatures(), query, 0);
+        double queryOffsetDot = store.offsetDot(query, 0);
+        double queryNorm = store.decodedNorm(query, 0, queryOffsetDot);
+
+        int[] rowOwners = owners.owners();
+        for (int row = 0; row < owners.rows(); row++) {
+            int owner = rowOwners[row];
+            if (!active[owner]) {
+                continue;
+            }
+            double d = distance(metric, query, queryOffsetDot, queryNorm, row);
+            best[owner] = Math.min(best[owner], d);
+        }
+        return best;
+    }
+
+    @Override
+    public AbstractFaceClassifier.Ranking rank(FeatureVector probe, DistanceMetric metric, int limit,
+                                               ForkJoinPool pool) {
+        if (probe.getDimension() != dimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), dimension));
+        }
+
+        byte[] query = new byte[dimension];
+        store.encode(probe.getFeatures(), query, 0);
+        double queryOffsetDot = store.offsetDot(query, 0);
+        double queryNorm = store.decodedNorm(query, 0, queryOffsetDot);
+
+        int[] rowOwners = owners.owners();
+        return ParallelGalleryScan.rank(owners, limit, pool, (from, to, out) -> {
+            int owner = -1;
+            boolean active = false;
+            double min = Double.MAX_VALUE;
+            for (int row = from; row < to; row++) {
+                if (rowOwners[row] != owner) {
+                    if (active) {
+                        out.offer(owner, min);
+                    }
+                    owner = rowOwners[row];
+                    active = owners.isLive(owner);
+                    min = Double.MAX_VALUE;
+                }
+                if (active) {
+                    min = Math.min(min, distance(metric, query, queryOffsetDot, queryNorm, row));
+                }
+            }
+            if (active) {
+                out.offer(owner, min);
+            }
+        });
+    }
+
+    private double distance(DistanceMetric metric, byte[] query, double queryOffsetDot, double queryNorm, int row) {
+        int offset = row * dimension;
+        switch (metric) {
+            case COSINE:
+                double dot = minsSquared + step * (queryOffsetDot + offsetDots[row])
+                    + step * step * DistanceKernels.dot(query, 0, codes, offset, dimension);
+                return 1.0 - dot / (queryNorm * norms[row]);
+            case MANHATTAN:
+                return step * DistanceKernels.manhattan(query, 0, codes, offset, dimension);
+            case CHI_SQUARE:
+                return step * DistanceKernels.chiSquare(query, 0, codes, offset, chiBias, dimension);
+            case EUCLIDEAN:
+            default:
+                return step * Math.sqrt(DistanceKernels.squaredEuclidean(query, 0, codes, offset, dimension));
+        }
+    }
+}
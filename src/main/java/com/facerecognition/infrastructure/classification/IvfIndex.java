@@ -0,0 +1,274 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Inverted-file index over enrolled sample vectors.
+ *
+ * <p>A coarse quantiser of up to {@code nlist} k-means centroids splits the
+ * vector space into cells; each sample is stored, packed row-major, in the
+ * cell of its nearest centroid. A query ranks the centroids and scans only
+ * the {@code nprobe} nearest cells, so the cost per probe is roughly
+ * {@code nlist + nprobe / nlist * N} distance evaluations instead of
+ * {@code N}.</p>
+ *
+ * <p>Centroids are fitted once by {@link #train} with {@link KMeans} on at
+ * most {@value #TRAINING_POINTS_PER_CELL} samples per cell, assigning under
+ * the configured metric.
+ * Later {@link #add} calls assign new samples to the existing centroids; if
+ * the distribution drifts, train again.</p>
+ *
+ * <p>Not thread-safe. {@link IVFClassifier} serialises writers against
+ * readers; concurrent {@link #search} calls are safe with each other because
+ * per-search scratch state is thread-local.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see IVFClassifier
+ */
+final class IvfIndex {
+
+    /** Upper bound on k-means training points per cell; enough for stable centroids, cheap to fit. */
+    static final int TRAINING_POINTS_PER_CELL = 64;
+
+    private final DistanceMetric metric;
+    private final int dimension;
+    private final int cellCount;
+    private final double[] centroids;
+    private final double[] centroidNorms;
+    private final Cell[] cells;
+
+    private Identity[] identities = new Identity[16];
+    private int ordinalCount;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, List<Integer>> cellsByIdentity = new HashMap<>();
+    private int size;
+
+    private final ThreadLocal<OrdinalMinimums> scratch = ThreadLocal.withInitial(OrdinalMinimums::new);
+
+    private IvfIndex(DistanceMetric metric, int dimension, double[] centroids, int cellCount) {
+        this.metric = metric;
+        this.dimension = dimension;
+        this.cellCount = cellCount;
+        this.centroids = centroids;
+        this.centroidNorms = new double[cellCount];
+        this.cells = new Cell[cellCount];
+        for (int c = 0; c < cellCount; c++) {
+            centroidNorms[c] = Math.sqrt(DistanceKernels.sumOfSquares(centroids, c * dimension, dimension));
+            cells[c] = new Cell(dimension);
+        }
+    }
+
+    /**
+     * Fits the coarse quantiser on the identities' samples and indexes them.
+     *
+     * @param identities the identities to index; must contain at least one sample
+     * @param metric the distance metric
+     * @param nlist the maximum number of cells; fewer are used when there are fewer samples
+     * @param iterations the maximum number of Lloyd iterations
+     * @param seed seed for sampling and centroid initialisation
+     * @return the trained index
+     * @throws IllegalArgumentException if the samples do not share one dimension
+     */
+    static IvfIndex train(Collection<Identity> identities, DistanceMetric metric,
+                          int nlist, int iterations, long seed) {
+        List<FeatureVector> samples = new ArrayList<>();
+        for (Identity identity : identities) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                samples.add(sample.getFeatures());
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train on an empty gallery");
+        }
+        int dimension = samples.get(0).getDimension();
+        for (FeatureVector sample : samples) {
+            if (sample.getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getDimension()));
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int k = Math.min(nlist, samples.size());
+        double[] points = KMeans.sample(samples, (long) k * TRAINING_POINTS_PER_CELL, random);
+        double[] centroids = KMeans.fit(points, dimension, k, iterations, metric, random);
+
+        IvfIndex index = new IvfIndex(metric, dimension, centroids, k);
+        for (Identity identity : identities) {
+            index.add(identity);
+        }
+        return index;
+    }
+
+    /**
+     * Assigns every sample of an identity to its nearest cell.
+     *
+     * @param identity the owning identity
+     * @throws IllegalArgumentException if a sample's dimension differs from the index's
+     */
+    void add(Identity identity) {
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getFeatures().getDimension()));
+            }
+        }
+
+        int ordinal = ordinalCount++;
+        if (ordinal == identities.length) {
+            identities = Arrays.copyOf(identities, Math.multiplyExact(identities.length, 2));
+        }
+        identities[ordinal] = identity;
+        ordinals.put(identity.getId(), ordinal);
+
+        List<Integer> assigned = cellsByIdentity.computeIfAbsent(identity.getId(), id -> new ArrayList<>());
+        double[] values = new double[dimension];
+        for (Identity.EnrolledSample sample : samples) {
+            FeatureVector features = sample.getFeatures();
+            features.copyInto(values, 0);
+            int cell = KMeans.nearest(metric, values, 0, features.norm(),
+                centroids, centroidNorms, dimension);
+            cells[cell].append(values, features.norm(), ordinal);
+            assigned.add(cell);
+            size++;
+        }
+    }
+
+    /**
+     * Removes every sample of an identity.
+     *
+     * @param identityId the identity ID
+     */
+    void remove(String identityId) {
+        Integer ordinal = ordinals.remove(identityId);
+        List<Integer> assigned = cellsByIdentity.remove(identityId);
+        if (ordinal == null) {
+            return;
+        }
+        identities[ordinal] = null;
+        for (int cell : assigned) {
+            // A cell listed more than once is compacted on its first visit.
+            size -= cells[cell].removeOwner(ordinal);
+        }
+    }
+
+    /**
+     * @return the number of indexed samples
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the vector dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of cells
+     */
+    int cellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Finds the active identities nearest to the query among the samples in
+     * the {@code nprobe} cells closest to it.
+     *
+     * @param query the query vector
+     * @param queryNorm the query's L2 norm
+     * @param nprobe the number of cells to scan
+     * @param limit the maximum number of identities to return
+     * @return the ranking
+     */
+    AbstractFaceClassifier.Ranking search(double[] query, double queryNorm, int nprobe, int limit) {
+        TopKSelector nearestCells = new TopKSelector(Math.min(nprobe, cellCount));
+        for (int c = 0; c < cellCount; c++) {
+            nearestCells.offer(c, GalleryMatrix.distance(metric, query, 0, queryNorm,
+                centroids, c * dimension, centroidNorms[c], dimension));
+        }
+
+        OrdinalMinimums best = scratch.get();
+        best.reset(ordinalCount);
+        for (int c : nearestCells.drainAscending()) {
+            Cell cell = cells[c];
+            for (int row = 0; row < cell.size; row++) {
+                int owner = cell.owners[row];
+                double d = GalleryMatrix.distance(metric, query, 0, queryNorm,
+                    cell.vectors, row * dimension, cell.norms[row], dimension);
+                best.offer(owner, d);
+            }
+        }
+
+        TopKSelector nearest = new TopKSelector(limit);
+        double[] distances = best.distances();
+        for (int i = 0; i < best.touchedCount(); i++) {
+            int owner = best.touched(i);
+            if (identities[owner].isActive()) {
+                nearest.offer(owner, distances[owner]);
+            }
+        }
+        return AbstractFaceClassifier.Ranking.of(nearest.drainAscending(), identities, distances);
+    }
+
+    /** Packed, growable rows of one cell. */
+    private static final class Cell {
+        private final int dimension;
+        private double[] vectors = new double[0];
+        private double[] norms = new double[0];
+        private int[] owners = new int[0];
+        private int size;
+
+        Cell(int dimension) {
+            this.dimension = dimension;
+        }
+
+        void append(double[] vector, double norm, int owner) {
+            if (size == owners.length) {
+                int capacity = Math.max(8, Math.multiplyExact(owners.length, 2));
+                vectors = Arrays.copyOf(vectors, Math.multiplyExact(capacity, dimension));
+                norms = Arrays.copyOf(norms, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+            System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+            norms[size] = norm;
+            owners[size] = owner;
+            size++;
+        }
+
+        /** @return the number of rows removed */
+        int removeOwner(int owner) {
+            int kept = 0;
+            for (int row = 0; row < size; row++) {
+                if (owners[row] == owner) {
+                    continue;
+                }
+                if (kept != row) {
+                    System.arraycopy(vectors, row * dimension, vectors, kept * dimension, dimension);
+                    norms[kept] = norms[row];
+                    owners[kept] = owners[row];
+                }
+                kept++;
+            }
+            int removed = size - kept;
+            size = kept;
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Lloyd's k-means over packed row-major points, shared by the quantisers in
+ * this package.
+ *
+ * <p>Assignment uses the given {@link DistanceMetric}; the update step takes
+ * the arithmetic mean, which is the exact minimiser for Euclidean distance
+ * and a good approximation for the others (cosine is scale-invariant, so the
+ * mean direction is what counts). Centroids are initialised from distinct
+ * random points and an empty cluster is re-seeded from a random point rather
+ * than dropped, so exactly {@code k} centroids are always returned.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see IvfIndex
+ * @see ProductQuantizer
+ */
+final class KMeans {
+
+    private KMeans() {
+    }
+
+    /**
+     * Copies up to {@code limit} vectors, chosen uniformly at random, into one packed array.
+     *
+     * @param vectors the candidate vectors, all of one dimension
+     * @param limit the maximum number of vectors to copy
+     * @param random the random source
+     * @return the chosen vectors, packed row-major
+     */
+    static double[] sample(List<FeatureVector> vectors, long limit, SplittableRandom random) {
+        int count = (int) Math.min(vectors.size(), limit);
+        int[] chosen = new int[count];
+        // Reservoir sampling keeps the choice uniform without shuffling every vector.
+        for (int i = 0; i < vectors.size(); i++) {
+            if (i < count) {
+                chosen[i] = i;
+            } else {
+                int j = random.nextInt(i + 1);
+                if (j < count) {
+                    chosen[j] = i;
+                }
+            }
+        }
+        int dimension = count == 0 ? 0 : vectors.get(0).getDimension();
+        double[] points = new double[Math.multiplyExact(count, dimension)];
+        for (int p = 0; p < count; p++) {
+            vectors.get(chosen[p]).copyInto(points, p * dimension);
+        }
+        return points;
+    }
+
+    /**
+     * Clusters the points.
+     *
+     * @param points the points, packed row-major; at least {@code k} of them
+     * @param dimension the point dimension
+     * @param k the number of clusters
+     * @param iterations the maximum number of Lloyd iterations; stops early once assignments settle
+     * @param metric the assignment metric
+     * @param random the random source for initialisation and re-seeding
+     * @return the {@code k} centroids, packed row-major
+     */
+    static double[] fit(double[] points, int dimension, int k, int iterations,
+                        DistanceMetric metric, SplittableRandom random) {
+        int n = points.length / dimension;
+        double[] pointNorms = new double[n];
+        for (int p = 0; p < n; p++) {
+            pointNorms[p] = Math.sqrt(DistanceKernels.sumOfSquares(points, p * dimension, dimension));
+        }
+
+        // Initialise with k distinct points (a partial Fisher-Yates shuffle).
+        int[] order = new int[n];
+        for (int p = 0; p < n; p++) {
+            order[p] = p;
+        }
+        double[] centroids = new double[k * dimension];
+        for (int c = 0; c < k; c++) {
+            int swap = c + random.nextInt(n - c);
+            int p = order[swap];
+            order[swap] = order[c];
+            order[c] = p;
+            System.arraycopy(points, p * dimension, centroids, c * dimension, dimension);
+        }
+
+        double[] centroidNorms = new double[k];
+        int[] assignment = new int[n];
+        Arrays.fill(assignment, -1);
+        double[] sums = new double[k * dimension];
+        int[] counts = new int[k];
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int c = 0; c < k; c++) {
+                centroidNorms[c] = Math.sqrt(DistanceKernels.sumOfSquares(centroids, c * dimension, dimension));
+            }
+
+            boolean changed = false;
+            for (int p = 0; p < n; p++) {
+                int nearest = nearest(metric, points, p * dimension, pointNorms[p],
+                    centroids, centroidNorms, dimension);
+                if (assignment[p] != nearest) {
+                    assignment[p] = nearest;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+
+            Arrays.fill(sums, 0.0);
+            Arrays.fill(counts, 0);
+            for (int p = 0; p < n; p++) {
+                int c = assignment[p];
+                counts[c]++;
+                int from = p * dimension;
+                int to = c * dimension;
+                for (int j = 0; j < dimension; j++) {
+                    sums[to + j] += points[from + j];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                int to = c * dimension;
+                if (counts[c] == 0) {
+                    // Re-seed an empty cluster from a random point rather than losing it.
+                    System.arraycopy(points, random.nextInt(n) * dimension, centroids, to, dimension);
+                    continue;
+                }
+                for (int j = 0; j < dimension; j++) {
+                    centroids[to + j] = sums[to + j] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Finds the centroid nearest to a packed vector.
+     *
+     * @param metric the distance metric
+     * @param vector the vector's backing array
+     * @param offset start of the vector
+     * @param norm the vector's L2 norm
+     * @param centroids the centroids, packed row-major
+     * @param centroidNorms the centroids' L2 norms
+     * @param dimension the vector dimension
+     * @return the index of the nearest centroid; ties go to the lower index
+     */
+    static int nearest(DistanceMetric metric, double[] vector, int offset, double norm,
+                       double[] centroids, double[] centroidNorms, int dimension) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < centroidNorms.length; c++) {
+            double d = GalleryMatrix.distance(metric, vector, offset, norm,
+                centroids, c * dimension, centroidNorms[c], dimension);
+            if (d < nearestDistance) {
+                nearestDistance = d;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+}
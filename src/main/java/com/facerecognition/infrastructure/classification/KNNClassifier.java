@@ -2,12 +2,14 @@ package com.facerecognition.infrastructure.classification;
 
 import com.facerecognition.domain.model.FeatureVector;
 import com.facerecognition.domain.model.Identity;
-import com.facerecognition.domain.model.RecognitionResult;
 import com.facerecognition.domain.service.FaceClassifier;
 
-import java.io.Serializable;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * K-Nearest Neighbors classifier for face recognition.
@@ -22,20 +24,76 @@ import java.util.concurrent.ConcurrentHashMap;
  *   <li><b>Weighted</b>: Distance-weighted voting</li>
  * </ul>
  *
+ * <p>Enrolled samples are matched through a {@link GalleryMatrix}, a packed
+ * row-major copy of every sample vector. {@link #enroll} appends the
+ * identity's samples to it under the classifier's monitor, at the cost of
+ * the new samples rather than the gallery, and retires the rows of the
+ * enrolment it replaces; it is rebuilt lazily after {@link #unenroll},
+ * {@link #clear}, or once retired rows outnumber live ones. Samples added to
+ * an {@link Identity} after it was enrolled become visible on its next
+ * {@link #enroll} call.</p>
+ *
+ * <p>{@link #classifyBatch} ranks its probes against the packed gallery
+ * tile by tile, a block of probes at a time, so a large batch streams the
+ * gallery from memory once per block instead of once per probe. Results are
+ * identical to classifying the probes one by one.</p>
+ *
+ * <p>Once the packed gallery holds at least {@code parallelThreshold}
+ * samples, a single probe is matched by splitting the rows into shards that
+ * are scanned in parallel on a dedicated fork/join pool, one shard per
+ * processor, and merging the shards' nearest identities (see
+ * {@link ParallelGalleryScan}). Smaller galleries are scanned on the calling
+ * thread, where handing work to other threads would cost more than it
+ * saves. Both paths produce identical rankings.</p>
+ *
+ * <p>Under {@link DistanceMetric#COSINE} the packed rows are scaled to unit
+ * length when the gallery is built and the probe once per query, so each
+ * comparison is a single dot product; the gallery is repacked when the
+ * metric changes.</p>
+ *
+ * <p>When every enrolled sample is {@linkplain FeatureVector#isSparse()
+ * sparse}, as LBPH histograms are, the gallery is packed as a
+ * {@link SparseGalleryMatrix} that stores only non-zero values and compares
+ * them by merging positions, with the same rankings and distances.</p>
+ *
+ * <p>With {@link GalleryPrecision#FLOAT32} the packed rows are stored as
+ * {@code float}, halving the gallery's memory and bandwidth. Rankings match
+ * {@link GalleryPrecision#FLOAT64} exactly when the samples and probes are
+ * themselves single precision, as they are for an extractor configured with
+ * {@link com.facerecognition.domain.model.FeaturePrecision#FLOAT32}.</p>
+ *
+ * <p>With {@link GalleryPrecision#INT8} the packed gallery holds one byte
+ * per dimension and is scanned with integer kernels (see
+ * {@link Int8GalleryMatrix}). Packing offloads the enrolled samples into
+ * those codes, so the samples stop holding their own {@code double[]} and
+ * the gallery as a whole takes about an eighth of the memory. The price is
+ * that the quantisation is permanent: ranking distances are those between
+ * the quantised vectors, and {@link #getDistance}, average-feature matching
+ * and anything else that reads a packed sample see its decoded values.
+ * Unenrolled samples keep their decoded values on the heap.</p>
+ *
  * @author Prasad Subrahmanya
  * @version 2.0
  * @since 1.0
  * @see FaceClassifier
  */
-public class KNNClassifier implements FaceClassifier, Serializable {
+public class KNNClassifier extends AbstractFaceClassifier {
 
-    private static final long serialVersionUID = 2L;
+    // 3: config, enrolledIdentities and distanceMetric moved to AbstractFaceClassifier.
+    private static final long serialVersionUID = 3L;
 
     private static final String NAME = "KNN";
 
-    private final ClassifierConfig config;
-    private final Map<String, Identity> enrolledIdentities;
-    private DistanceMetric distanceMetric;
+    /** Default number of packed samples from which a probe is matched in parallel. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 32_768;
+
+    private final GalleryPrecision precision;
+    private final int parallelThreshold;
+
+    // Packed copy of the enrolled samples; null means it must be rebuilt.
+    private transient volatile PackedGallery gallery;
+    // Guarded by this; the INT8 codes the enrolled samples were last offloaded into.
+    private transient Int8CodeStore codes;
 
     /**
      * Creates a KNN classifier with default settings.
@@ -50,180 +108,169 @@ public class KNNClassifier implements FaceClassifier, Serializable {
      * @param config the classifier configuration
      */
     public KNNClassifier(ClassifierConfig config) {
-        this.config = Objects.requireNonNull(config);
-        this.enrolledIdentities = new ConcurrentHashMap<>();
-        this.distanceMetric = config.getMetric();
-    }
-
-    @Override
-    public void enroll(Identity identity) {
-        Objects.requireNonNull(identity, "Identity cannot be null");
-        if (!identity.hasSamples()) {
-            throw new IllegalArgumentException("Identity must have at least one enrolled sample");
-        }
-        enrolledIdentities.put(identity.getId(), identity);
-    }
-
-    @Override
-    public boolean unenroll(String identityId) {
-        return enrolledIdentities.remove(identityId) != null;
+        this(config, GalleryPrecision.FLOAT64);
     }
 
-    @Override
-    public boolean isEnrolled(String identityId) {
-        return enrolledIdentities.containsKey(identityId);
+    /**
+     * Creates a KNN classifier with custom configuration and gallery storage.
+     *
+     * @param config the classifier configuration
+     * @param precision how the packed gallery stores sample values
+     */
+    public KNNClassifier(ClassifierConfig config, GalleryPrecision precision) {
+        this(config, precision, DEFAULT_PARALLEL_THRESHOLD);
     }
 
-    @Override
-    public int getEnrolledCount() {
-        return enrolledIdentities.size();
+    /**
+     * Creates a KNN classifier with custom configuration, gallery storage
+     * and parallel scan threshold.
+     *
+     * @param config the classifier configuration
+     * @param precision how the packed gallery stores sample values
+     * @param parallelThreshold the number of packed samples from which a probe is
+     *                          matched in parallel; {@link Integer#MAX_VALUE} disables it
+     * @throws IllegalArgumentException if {@code parallelThreshold} is less than 1
+     */
+    public KNNClassifier(ClassifierConfig config, GalleryPrecision precision, int parallelThreshold) {
+        super(config);
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be at least 1: " + parallelThreshold);
+        }
+        this.precision = Objects.requireNonNull(precision, "Precision cannot be null");
+        this.parallelThreshold = parallelThreshold;
     }
 
     @Override
-    public List<Identity> getEnrolledIdentities() {
-        return new ArrayList<>(enrolledIdentities.values());
+    public String getName() {
+        return NAME;
     }
 
-    @Override
-    public RecognitionResult classify(FeatureVector probe) {
-        return classify(probe, config.getThreshold());
+    public GalleryPrecision getPrecision() {
+        return precision;
     }
 
-    @Override
-    public RecognitionResult classify(FeatureVector probe, double threshold) {
-        if (enrolledIdentities.isEmpty()) {
-            return RecognitionResult.builder()
-                .status(RecognitionResult.Status.UNKNOWN)
-                .extractedFeatures(probe)
-                .build();
-        }
-
-        // Find all distances
-        List<DistanceEntry> distances = computeAllDistances(probe);
-
-        if (distances.isEmpty()) {
-            return RecognitionResult.builder()
-                .status(RecognitionResult.Status.UNKNOWN)
-                .extractedFeatures(probe)
-                .build();
-        }
-
-        // Sort by distance
-        distances.sort(Comparator.comparingDouble(e -> e.distance));
-
-        // Get best match
-        DistanceEntry best = distances.get(0);
-        double confidence = distanceToConfidence(best.distance);
-
-        // Check threshold
-        if (confidence < threshold) {
-            // Build result with alternatives but no match
-            List<RecognitionResult.MatchResult> alternatives = buildAlternatives(distances, config.getK());
-            return RecognitionResult.builder()
-                .status(RecognitionResult.Status.UNKNOWN)
-                .alternatives(alternatives)
-                .extractedFeatures(probe)
-                .build();
-        }
-
-        // Build match result
-        RecognitionResult.MatchResult bestMatch = new RecognitionResult.MatchResult(
-            best.identity, confidence, best.distance);
-
-        List<RecognitionResult.MatchResult> alternatives = buildAlternatives(distances.subList(1, distances.size()), config.getK() - 1);
-
-        return RecognitionResult.builder()
-            .status(RecognitionResult.Status.RECOGNIZED)
-            .bestMatch(bestMatch)
-            .alternatives(alternatives)
-            .extractedFeatures(probe)
-            .build();
+    public int getParallelThreshold() {
+        return parallelThreshold;
     }
 
     @Override
-    public RecognitionResult getTopMatches(FeatureVector probe, int n) {
-        List<DistanceEntry> distances = computeAllDistances(probe);
-        distances.sort(Comparator.comparingDouble(e -> e.distance));
-
-        List<RecognitionResult.MatchResult> alternatives = buildAlternatives(distances, n);
-
-        if (alternatives.isEmpty()) {
-            return RecognitionResult.builder()
-                .status(RecognitionResult.Status.UNKNOWN)
-                .extractedFeatures(probe)
-                .build();
+    protected void onEnrolled(Identity identity, Identity previous) {
+        // Called under the monitor, which serialises appends with repacks.
+        PackedGallery current = gallery;
+        gallery = current != null ? current.append(identity, previous) : null;
+        if (previous != null && codes != null) {
+            Set<Identity.EnrolledSample> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            kept.addAll(identity.getSamples());
+            for (Identity.EnrolledSample sample : previous.getSamples()) {
+                if (!kept.contains(sample)) {
+                    sample.reclaim(codes);
+                }
+            }
         }
-
-        RecognitionResult.MatchResult best = alternatives.get(0);
-        return RecognitionResult.builder()
-            .status(best.getConfidence() >= config.getThreshold()
-                ? RecognitionResult.Status.RECOGNIZED
-                : RecognitionResult.Status.UNKNOWN)
-            .bestMatch(best)
-            .alternatives(alternatives.subList(1, alternatives.size()))
-            .extractedFeatures(probe)
-            .build();
     }
 
     @Override
-    public double getDistance(FeatureVector probe, String identityId) {
-        Identity identity = enrolledIdentities.get(identityId);
-        if (identity == null) {
-            return Double.MAX_VALUE;
+    protected void onUnenrolled(Identity identity) {
+        gallery = null;
+        if (codes != null) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                sample.reclaim(codes);
+            }
         }
-        return computeMinDistance(probe, identity);
     }
 
     @Override
-    public String getName() {
-        return NAME;
+    protected void onCleared() {
+        gallery = GalleryMatrix.EMPTY;
     }
 
     @Override
-    public DistanceMetric getDistanceMetric() {
-        return distanceMetric;
+    protected void onDistanceMetricChanged() {
+        gallery = null;
     }
 
     @Override
-    public void setDistanceMetric(DistanceMetric metric) {
-        this.distanceMetric = Objects.requireNonNull(metric);
-    }
+    protected Ranking rank(FeatureVector probe, int limit) {
+        Identity[] identities;
+        double[] distances;
+        boolean[] live;
+
+        if (config.isUseAverageFeatures()) {
+            identities = enrolledIdentities.values().toArray(new Identity[0]);
+            distances = new double[identities.length];
+            live = new boolean[identities.length];
+            for (int i = 0; i < identities.length; i++) {
+                live[i] = identities[i].isActive();
+                if (!live[i]) continue;
+                distances[i] = computeDistanceToAverage(probe, identities[i]);
+            }
+        } else {
+            DistanceMetric metric = distanceMetric;
+            PackedGallery matrix = gallery(metric);
+            if (matrix.size() >= getParallelThreshold()) {
+                return matrix.rank(probe, metric, limit, ParallelGalleryScan.pool());
+            }
+            identities = new Identity[matrix.identityCount()];
+            live = new boolean[identities.length];
+            for (int i = 0; i < identities.length; i++) {
+                identities[i] = matrix.identity(i);
+                live[i] = matrix.isLive(i);
+            }
+            distances = matrix.minDistances(probe, metric);
+        }
 
-    @Override
-    public void clear() {
-        enrolledIdentities.clear();
+        // Keep only the nearest few instead of sorting every identity.
+        TopKSelector selector = new TopKSelector(Math.min(limit, identities.length));
+        for (int i = 0; i < identities.length; i++) {
+            if (!live[i]) continue;
+            selector.offer(i, distances[i]);
+        }
+        return Ranking.of(selector.drainAscending(), identities, distances);
     }
 
     @Override
-    public void retrain() {
-        // KNN doesn't require training
+    protected Ranking[] rankBatch(List<FeatureVector> probes, int limit) {
+        if (config.isUseAverageFeatures()) {
+            return super.rankBatch(probes, limit);
+        }
+        DistanceMetric metric = distanceMetric;
+        return gallery(metric).rank(probes, metric, limit);
     }
 
-    private List<DistanceEntry> computeAllDistances(FeatureVector probe) {
-        List<DistanceEntry> entries = new ArrayList<>();
-
-        for (Identity identity : enrolledIdentities.values()) {
-            if (!identity.isActive()) continue;
-
-            double distance = config.isUseAverageFeatures()
-                ? computeDistanceToAverage(probe, identity)
-                : computeMinDistance(probe, identity);
-
-            entries.add(new DistanceEntry(identity, distance));
+    /**
+     * Returns the packed gallery, rebuilding it first if an enrolment change
+     * invalidated it or it was packed for a different metric. Rebuilds share
+     * the monitor used by the mutators so a stale snapshot can never
+     * overwrite a newer invalidation.
+     */
+    private PackedGallery gallery(DistanceMetric metric) {
+        PackedGallery snapshot = gallery;
+        if (snapshot == null || !snapshot.isPackedFor(metric)) {
+            synchronized (this) {
+                snapshot = gallery;
+                if (snapshot == null || !snapshot.isPackedFor(metric)) {
+                    snapshot = pack(metric);
+                    gallery = snapshot;
+                }
+            }
         }
-
-        return entries;
+        return snapshot;
     }
 
-    private double computeMinDistance(FeatureVector probe, Identity identity) {
-        double minDistance = Double.MAX_VALUE;
-
-        for (Identity.EnrolledSample sample : identity.getSamples()) {
-            double distance = computeDistance(probe, sample.getFeatures());
-            minDistance = Math.min(minDistance, distance);
+    // Caller holds the monitor.
+    private PackedGallery pack(DistanceMetric metric) {
+        Collection<Identity> enrolled = enrolledIdentities.values();
+        if (getPrecision() == GalleryPrecision.INT8) {
+            PackedGallery packed = Int8GalleryMatrix.of(enrolled, codes);
+            if (packed instanceof Int8GalleryMatrix) {
+                codes = ((Int8GalleryMatrix) packed).store();
+            }
+            return packed;
         }
-
-        return minDistance;
+        if (SparseGalleryMatrix.accepts(enrolled)) {
+            return SparseGalleryMatrix.of(enrolled);
+        }
+        return GalleryMatrix.of(enrolled, metric, getPrecision() == GalleryPrecision.FLOAT32);
     }
 
     private double computeDistanceToAverage(FeatureVector probe, Identity identity) {
@@ -234,101 +281,9 @@ public class KNNClassifier implements FaceClassifier, Serializable {
         return computeDistance(probe, average);
     }
 
-    private double computeDistance(FeatureVector v1, FeatureVector v2) {
-        switch (distanceMetric) {
-            case EUCLIDEAN:
-                return v1.euclideanDistance(v2);
-            case COSINE:
-                return v1.cosineDistance(v2);
-            case MANHATTAN:
-                return v1.manhattanDistance(v2);
-            case CHI_SQUARE:
-                return v1.chiSquareDistance(v2);
-            default:
-                return v1.euclideanDistance(v2);
-        }
-    }
-
-    /**
-     * Maps a raw distance to a confidence in {@code [0, 1]} via exponential decay:
-     * {@code confidence = exp(-distance / scale)}.
-     *
-     * <p>The per-metric scale constants returned by {@link #getDistanceScale()} are
-     * <em>calibration defaults</em> chosen so that typical raw distances on 48x64
-     * Eigenfaces features land around the 0.6 recognition threshold. They are not
-     * universal — if you swap extractor, image size, or feature dimension, you
-     * will want to recalibrate them for your dataset. The classical way is to
-     * compute the distribution of same-identity vs different-identity distances
-     * on a validation set and choose {@code scale} such that {@code exp(-μ/scale)}
-     * lands on the desired operating point.</p>
-     *
-     * <p>This is deliberately a single line of code so the calibration stays
-     * obvious: don't replace it with an opaque callback unless you have a
-     * reason to.</p>
-     *
-     * @param distance the raw distance produced by {@link #computeDistance}
-     * @return a confidence score in {@code [0, 1]}
-     */
-    private double distanceToConfidence(double distance) {
-        return Math.exp(-distance / getDistanceScale());
-    }
-
-    /**
-     * Scale constants used by {@link #distanceToConfidence(double)}. These
-     * numbers come from empirical measurement on classical extractors —
-     * Eigenfaces/Fisherfaces raw Euclidean distances between aligned 48x64
-     * grayscale faces cluster in the 1000–10000 range, so 5000 is a decent
-     * half-decay. LBPH chi-square and cosine distances live on very different
-     * scales.
-     */
-    private double getDistanceScale() {
-        switch (distanceMetric) {
-            case EUCLIDEAN:
-                return 5000.0;
-            case COSINE:
-                return 0.5;
-            case MANHATTAN:
-                return 10000.0;
-            case CHI_SQUARE:
-                return 1.0;
-            default:
-                return 5000.0;
-        }
-    }
-
-    private List<RecognitionResult.MatchResult> buildAlternatives(List<DistanceEntry> entries, int maxCount) {
-        List<RecognitionResult.MatchResult> results = new ArrayList<>();
-        Set<String> seen = new HashSet<>();
-
-        for (DistanceEntry entry : entries) {
-            if (seen.contains(entry.identity.getId())) continue;
-            seen.add(entry.identity.getId());
-
-            results.add(new RecognitionResult.MatchResult(
-                entry.identity,
-                distanceToConfidence(entry.distance),
-                entry.distance
-            ));
-
-            if (results.size() >= maxCount) break;
-        }
-
-        return results;
-    }
-
-    private static class DistanceEntry {
-        final Identity identity;
-        final double distance;
-
-        DistanceEntry(Identity identity, double distance) {
-            this.identity = identity;
-            this.distance = distance;
-        }
-    }
-
     @Override
     public String toString() {
-        return String.format("KNNClassifier{k=%d, metric=%s, enrolled=%d}",
-            config.getK(), distanceMetric, enrolledIdentities.size());
+        return String.format("KNNClassifier{k=%d, metric=%s, precision=%s, parallelThreshold=%d, enrolled=%d}",
+            config.getK(), distanceMetric, getPrecision(), getParallelThreshold(), enrolledIdentities.size());
     }
 }
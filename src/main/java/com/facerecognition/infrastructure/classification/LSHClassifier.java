@@ -0,0 +1,245 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Locality-sensitive hashing (LSH) classifier: a binary-sketch prefilter in
+ * front of an exact re-rank.
+ *
+ * <p>Every enrolled sample is reduced to a {@code bits}-bit sign sketch
+ * against random hyperplanes through the gallery mean, computed when it is
+ * enrolled. A probe is ranked against all sketches by Hamming distance with
+ * {@link Long#bitCount}, which touches {@code bits / 8} bytes per sample,
+ * and the configured metric is evaluated only on the samples of the
+ * identities owning the {@code candidates} nearest sketches. On a gallery
+ * of {@code N} samples a probe therefore costs {@code N} popcount
+ * comparisons plus the distance evaluations of at most {@code candidates}
+ * identities. Raising {@code candidates} trades latency for recall, and
+ * {@code candidates >= N} makes the search exact.</p>
+ *
+ * <p>The hyperplanes are drawn by {@link #retrain()}, or lazily by the first
+ * probe after a {@link #clear()} or metric change, and centred on the mean of
+ * the gallery at that time. Between retrains, {@link #enroll} sketches new
+ * samples against the existing hyperplanes and {@link #unenroll} removes
+ * them. Every shortlisted identity is scored on all of its samples, so
+ * reported distances are exact, as {@link #getDistance} always is.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see LshIndex
+ * @see FaceClassifier
+ */
+public class LSHClassifier extends AbstractFaceClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "LSH";
+
+    /** Default sketch length in bits. */
+    public static final int DEFAULT_BITS = 256;
+    /** Default number of samples evaluated exactly per probe. */
+    public static final int DEFAULT_CANDIDATES = 256;
+
+    private static final long TRAINING_SEED = 42L;
+
+    private final int bits;
+    private volatile int candidates;
+
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // Guarded by indexLock; null means it must be built from enrolledIdentities.
+    private transient LshIndex index;
+
+    /**
+     * Creates an LSH classifier with default settings.
+     */
+    public LSHClassifier() {
+        this(new ClassifierConfig());
+    }
+
+    /**
+     * Creates an LSH classifier with default sketch parameters.
+     *
+     * @param config the classifier configuration
+     */
+    public LSHClassifier(ClassifierConfig config) {
+        this(config, DEFAULT_BITS, DEFAULT_CANDIDATES);
+    }
+
+    /**
+     * Creates an LSH classifier with custom sketch parameters.
+     *
+     * @param config the classifier configuration
+     * @param bits the sketch length, a positive multiple of 64
+     * @param candidates the number of samples evaluated exactly per probe, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public LSHClassifier(ClassifierConfig config, int bits, int candidates) {
+        super(config);
+        if (bits < Long.SIZE || bits % Long.SIZE != 0) {
+            throw new IllegalArgumentException("bits must be a positive multiple of 64: " + bits);
+        }
+        this.bits = bits;
+        setCandidates(candidates);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Sets the number of samples evaluated exactly per probe. Takes effect for the next probe.
+     *
+     * @param candidates the number of samples, at least 1
+     * @throws IllegalArgumentException if {@code candidates} is below 1
+     */
+    public void setCandidates(int candidates) {
+        if (candidates < 1) {
+            throw new IllegalArgumentException("candidates must be at least 1: " + candidates);
+        }
+        this.candidates = candidates;
+    }
+
+    /**
+     * Redraws the hyperplanes around the current gallery mean and re-sketches the enrolled samples.
+     */
+    @Override
+    public synchronized void retrain() {
+        indexLock.writeLock().lock();
+        try {
+            index = buildIndex();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        indexLock.writeLock().lock();
+        try {
+            if (index == null) {
+                return;
+            }
+            if (previous != null) {
+                index.remove(previous.getId());
+            }
+            try {
+                index.add(identity);
+            } catch (RuntimeException e) {
+                // The enrolment is rolled back; rebuild from the restored gallery
+                index = null;
+                throw e;
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        indexLock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.remove(identity.getId());
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        invalidate();
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        invalidate();
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        indexLock.readLock().lock();
+        try {
+            if (index != null) {
+                return search(index, probe, limit);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        // Build under the monitor so no enrolment lands between reading
+        // enrolledIdentities and publishing the index.
+        synchronized (this) {
+            indexLock.writeLock().lock();
+            try {
+                if (index == null) {
+                    index = buildIndex();
+                }
+                // Downgrade so concurrent probes are not held up by this search.
+                indexLock.readLock().lock();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        try {
+            return search(index, probe, limit);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private Ranking search(LshIndex lsh, FeatureVector probe, int limit) {
+        if (lsh == null || lsh.size() == 0) {
+            return Ranking.EMPTY;
+        }
+        if (probe.getDimension() != lsh.dimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), lsh.dimension()));
+        }
+        return lsh.search(probe.getFeatures(), probe.norm(), limit, candidates);
+    }
+
+    private void invalidate() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private LshIndex buildIndex() {
+        List<Identity> identities = new ArrayList<>();
+        for (Identity identity : enrolledIdentities.values()) {
+            if (identity.hasSamples()) {
+                identities.add(identity);
+            }
+        }
+        if (identities.isEmpty()) {
+            return null;
+        }
+        return LshIndex.build(identities, distanceMetric, bits, TRAINING_SEED);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LSHClassifier{bits=%d, candidates=%d, metric=%s, enrolled=%d}",
+            bits, candidates, distanceMetric, enrolledIdentities.size());
+    }
+}
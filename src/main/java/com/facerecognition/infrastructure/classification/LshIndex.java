@@ -0,0 +1,283 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Random-hyperplane sketch index over enrolled sample vectors.
+ *
+ * <p>Every sample is reduced to a {@code bits}-bit sketch, packed into
+ * {@code bits / 64} longs: bit {@code b} is set when the sample lies on the
+ * positive side of the {@code b}-th Gaussian hyperplane through the gallery
+ * mean. The fraction of differing bits between two sketches estimates the
+ * angle between the mean-centred vectors, so near neighbours under any of
+ * the supported metrics tend to have small Hamming distances.</p>
+ *
+ * <p>A search sketches the query, ranks every row by Hamming distance with
+ * {@link Long#bitCount} over {@code bits / 8} contiguous bytes per row, and
+ * evaluates the exact metric on every sample of the identities owning the
+ * {@code candidates} nearest rows, so each reported distance is the
+ * identity's exact minimum. The scan reads 32 bytes per 256-bit row instead
+ * of eight bytes per dimension, so large galleries are scanned at close to
+ * memory bandwidth; the exact stage costs at most {@code candidates}
+ * identities' samples whatever the gallery size.</p>
+ *
+ * <p>The hyperplanes and mean are fixed by {@link #build}. Later
+ * {@link #add} calls sketch new samples against them; if the distribution
+ * drifts, build again.</p>
+ *
+ * <p>Not thread-safe. {@link LSHClassifier} serialises writers against
+ * readers; concurrent {@link #search} calls are safe with each other because
+ * per-search scratch state is thread-local.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see LSHClassifier
+ */
+final class LshIndex {
+
+    private final DistanceMetric metric;
+    private final int dimension;
+    private final int bits;
+    private final int words;
+    // Row-major, bits x dimension.
+    private final double[] hyperplanes;
+    // hyperplane . mean, subtracted from every projection.
+    private final double[] planeOffsets;
+
+    private long[] sketches = new long[0];
+    private int[] owners = new int[0];
+    private int rows;
+
+    private Identity[] identities = new Identity[16];
+    private int ordinalCount;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    private final ThreadLocal<OrdinalMinimums> scratch = ThreadLocal.withInitial(OrdinalMinimums::new);
+
+    private LshIndex(DistanceMetric metric, int dimension, int bits, double[] hyperplanes, double[] mean) {
+        this.metric = metric;
+        this.dimension = dimension;
+        this.bits = bits;
+        this.words = bits / Long.SIZE;
+        this.hyperplanes = hyperplanes;
+        this.planeOffsets = new double[bits];
+        for (int b = 0; b < bits; b++) {
+            planeOffsets[b] = DistanceKernels.dot(hyperplanes, b * dimension, mean, 0, dimension);
+        }
+    }
+
+    /**
+     * Draws the hyperplanes, centres them on the gallery mean and sketches
+     * every sample of the identities.
+     *
+     * @param identities the identities to index; must contain at least one sample
+     * @param metric the distance metric for the exact stage
+     * @param bits the sketch length, a positive multiple of 64
+     * @param seed seed for the hyperplanes
+     * @return the index
+     * @throws IllegalArgumentException if the samples do not share one dimension
+     */
+    static LshIndex build(Collection<Identity> identities, DistanceMetric metric, int bits, long seed) {
+        List<FeatureVector> samples = new ArrayList<>();
+        for (Identity identity : identities) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                samples.add(sample.getFeatures());
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("Cannot build on an empty gallery");
+        }
+        int dimension = samples.get(0).getDimension();
+        double[] mean = new double[dimension];
+        for (FeatureVector sample : samples) {
+            if (sample.getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getDimension()));
+            }
+            sample.accumulateInto(mean);
+        }
+        for (int j = 0; j < dimension; j++) {
+            mean[j] /= samples.size();
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] hyperplanes = new double[Math.multiplyExact(bits, dimension)];
+        for (int i = 0; i < hyperplanes.length; i++) {
+            hyperplanes[i] = random.nextGaussian();
+        }
+
+        LshIndex index = new LshIndex(metric, dimension, bits, hyperplanes, mean);
+        for (Identity identity : identities) {
+            index.add(identity);
+        }
+        return index;
+    }
+
+    /**
+     * Sketches every sample of an identity.
+     *
+     * @param identity the owning identity
+     * @throws IllegalArgumentException if a sample's dimension differs from the index's
+     */
+    void add(Identity identity) {
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getFeatures().getDimension()));
+            }
+        }
+
+        int ordinal = ordinalCount++;
+        if (ordinal == identities.length) {
+            identities = Arrays.copyOf(identities, Math.multiplyExact(identities.length, 2));
+        }
+        identities[ordinal] = identity;
+        ordinals.put(identity.getId(), ordinal);
+
+        ensureCapacity(rows + samples.size());
+        double[] values = new double[dimension];
+        for (Identity.EnrolledSample sample : samples) {
+            FeatureVector features = sample.getFeatures();
+            features.copyInto(values, 0);
+            sketch(values, sketches, rows * words);
+            owners[rows] = ordinal;
+            rows++;
+        }
+    }
+
+    /**
+     * Removes every sketch of an identity.
+     *
+     * @param identityId the identity ID
+     */
+    void remove(String identityId) {
+        Integer ordinal = ordinals.remove(identityId);
+        if (ordinal == null) {
+            return;
+        }
+        identities[ordinal] = null;
+        int kept = 0;
+        for (int row = 0; row < rows; row++) {
+            if (owners[row] == ordinal) {
+                continue;
+            }
+            if (kept != row) {
+                System.arraycopy(sketches, row * words, sketches, kept * words, words);
+                owners[kept] = owners[row];
+            }
+            kept++;
+        }
+        rows = kept;
+    }
+
+    /**
+     * @return the number of sketched samples
+     */
+    int size() {
+        return rows;
+    }
+
+    /**
+     * @return the vector dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the sketch length in bits
+     */
+    int bits() {
+        return bits;
+    }
+
+    /**
+     * Finds the active identities nearest to the query among those owning
+     * the {@code candidates} rows whose sketches are nearest to its sketch,
+     * scoring each on all of its samples.
+     *
+     * @param query the query vector
+     * @param queryNorm the query's L2 norm
+     * @param limit the maximum number of identities to return
+     * @param candidates the number of rows to evaluate exactly
+     * @return the ranking, with exact distances
+     */
+    AbstractFaceClassifier.Ranking search(double[] query, double queryNorm, int limit, int candidates) {
+        long[] querySketch = new long[words];
+        sketch(query, querySketch, 0);
+
+        int capacity = Math.min(candidates, rows);
+        TopKSelector nearestRows = new TopKSelector(capacity);
+        // Rows are offered in ascending order, so a tie with the worst kept row never displaces it.
+        int worst = Integer.MAX_VALUE;
+        for (int row = 0, offset = 0; row < rows; row++, offset += words) {
+            int hamming = 0;
+            for (int w = 0; w < words; w++) {
+                hamming += Long.bitCount(sketches[offset + w] ^ querySketch[w]);
+            }
+            if (hamming < worst) {
+                nearestRows.offer(row, hamming);
+                if (nearestRows.size() == capacity) {
+                    worst = (int) nearestRows.worstDistance();
+                }
+            }
+        }
+
+        // The shortlisted identities, each scored on every one of its samples, not just the candidate rows.
+        OrdinalMinimums best = scratch.get();
+        best.reset(ordinalCount);
+        for (int row : nearestRows.drainAscending()) {
+            int owner = owners[row];
+            if (identities[owner].isActive()) {
+                best.offer(owner, Double.MAX_VALUE);
+            }
+        }
+
+        TopKSelector nearest = new TopKSelector(limit);
+        double[] distances = best.distances();
+        double[] values = new double[dimension];
+        for (int i = 0; i < best.touchedCount(); i++) {
+            int owner = best.touched(i);
+            for (Identity.EnrolledSample sample : identities[owner].getSamples()) {
+                FeatureVector features = sample.getFeatures();
+                features.copyInto(values, 0);
+                best.offer(owner, GalleryMatrix.distance(metric, query, 0, queryNorm,
+                    values, 0, features.norm(), dimension));
+            }
+            nearest.offer(owner, distances[owner]);
+        }
+        return AbstractFaceClassifier.Ranking.of(nearest.drainAscending(), identities, distances);
+    }
+
+    private void sketch(double[] vector, long[] out, int offset) {
+        Arrays.fill(out, offset, offset + words, 0L);
+        for (int b = 0; b < bits; b++) {
+            double projection = DistanceKernels.dot(hyperplanes, b * dimension, vector, 0, dimension);
+            if (projection > planeOffsets[b]) {
+                out[offset + (b >>> 6)] |= 1L << b;
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= owners.length) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(16, Math.multiplyExact(owners.length, 2)));
+        sketches = Arrays.copyOf(sketches, Math.multiplyExact(capacity, words));
+        owners = Arrays.copyOf(owners, capacity);
+    }
+}
@@ -0,0 +1,338 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureStore;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Exact nearest-identity classifier whose gallery lives off-heap in a
+ * memory-mapped {@link GallerySegment}.
+ *
+ * <p>Samples are written to fixed-stride rows in a file and every probe
+ * scans the mapped rows in place, so the gallery costs no heap and no
+ * garbage collection work however large it grows. Opening an existing
+ * segment reads no vectors: a restarted service classifies immediately,
+ * paging rows in as they are scanned. Every JVM on the host that maps the
+ * same directory shares one copy of the pages through the operating
+ * system's page cache.</p>
+ *
+ * <p>One instance may write to a directory. Others open it read-only with
+ * {@link #MappedGalleryClassifier(ClassifierConfig, Path, boolean)} and
+ * pick up the writer's changes on {@link #retrain()}. The gallery outlives
+ * the instance, so a writer restarted over the same directory can keep the
+ * identities it holds: enrolling an identity the segment already holds
+ * unchanged writes nothing.</p>
+ *
+ * <p>The ranking and distances match {@link KNNClassifier}, except that
+ * cosine distances may differ in the last bits because rows keep their
+ * original scale. Identities come back without samples, and an identity's
+ * active flag is the one it had when enrolled. Enrolment stores the samples
+ * rather than the caller's object, so the identity is not held on the heap,
+ * and {@linkplain Identity.EnrolledSample#offload offloads} the caller's
+ * samples into their rows, so neither are their values. A {@link #clear()}
+ * reads the values of samples it offloaded back into the heap before it
+ * drops the rows.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see GallerySegment
+ * @see FaceClassifier
+ */
+public class MappedGalleryClassifier extends AbstractFaceClassifier implements FeatureStore, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "Mapped";
+
+    private final String directory;
+    private final boolean readOnly;
+
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    // Guarded by segmentLock; null means it must be opened from the directory.
+    private transient GallerySegment segment;
+    // Samples offloaded into the segment since it was last cleared; guarded by segmentLock.
+    private transient Set<Identity.EnrolledSample> offloaded;
+
+    /**
+     * Creates a classifier that reads and writes the segment in a directory,
+     * creating an empty segment if there is none.
+     *
+     * @param config the classifier configuration
+     * @param directory the segment directory
+     */
+    public MappedGalleryClassifier(ClassifierConfig config, Path directory) {
+        this(config, directory, false);
+    }
+
+    /**
+     * Creates a classifier over the segment in a directory.
+     *
+     * @param config the classifier configuration
+     * @param directory the segment directory
+     * @param readOnly true to share a segment written by another instance;
+     *                 changes then throw {@link IllegalStateException}
+     * @throws java.io.UncheckedIOException if the segment cannot be opened
+     */
+    public MappedGalleryClassifier(ClassifierConfig config, Path directory, boolean readOnly) {
+        super(config);
+        this.directory = Objects.requireNonNull(directory).toString();
+        this.readOnly = readOnly;
+        this.segment = GallerySegment.open(directory, readOnly);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public Path getDirectory() {
+        return Path.of(directory);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return true: the gallery lives in the segment's files
+     */
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void enroll(Identity identity) {
+        Objects.requireNonNull(identity, "Identity cannot be null");
+        if (!identity.hasSamples()) {
+            throw new IllegalArgumentException("Identity must have at least one enrolled sample");
+        }
+        GallerySegment gallery = lockForWrite();
+        try {
+            gallery.checkWritable();
+            int firstRow = gallery.findRows(identity);
+            if (firstRow < 0) {
+                firstRow = gallery.append(identity);
+            }
+            List<Identity.EnrolledSample> samples = identity.getSamples();
+            for (int i = 0; i < samples.size(); i++) {
+                samples.get(i).offload(this, gallery.keyOf(firstRow + i));
+                offloaded().add(samples.get(i));
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean unenroll(String identityId) {
+        GallerySegment gallery = lockForWrite();
+        try {
+            return gallery.remove(identityId);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isEnrolled(String identityId) {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.contains(identityId);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getEnrolledCount() {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.liveIdentities();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes every enrolled identity from the segment. The identities carry no samples.
+     *
+     * @return the enrolled identities in enrolment order
+     */
+    @Override
+    public List<Identity> getEnrolledIdentities() {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.identities();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getDistance(FeatureVector probe, String identityId) {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.minDistance(probe, identityId, distanceMetric);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public RecognitionResult verify(FeatureVector probe, String identityId, double threshold) {
+        GallerySegment gallery = lockForRead();
+        try {
+            Identity identity = gallery.find(identityId);
+            if (identity == null) {
+                return toVerification(probe, null, Double.MAX_VALUE, threshold);
+            }
+            return toVerification(probe, identity, gallery.minDistance(probe, identityId, distanceMetric), threshold);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        GallerySegment gallery = lockForWrite();
+        try {
+            gallery.checkWritable();
+            // Callers may still hold identities whose samples read from the rows about to go.
+            for (Identity.EnrolledSample sample : offloaded()) {
+                sample.reclaim(this);
+            }
+            offloaded().clear();
+            gallery.clear();
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Picks up identities enrolled or removed by the writing instance since
+     * the last call. A writer sees its own changes at once.
+     */
+    @Override
+    public void retrain() {
+        GallerySegment gallery = lockForWrite();
+        try {
+            gallery.refresh();
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unmaps the segment's files. A later call reopens them.
+     *
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        segmentLock.writeLock().lock();
+        try {
+            if (segment != null) {
+                GallerySegment closing = segment;
+                segment = null;
+                closing.close();
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads an offloaded sample's values from its row.
+     *
+     * @param key the key the sample was offloaded with
+     * @return the values, or null if the rows were cleared since
+     */
+    @Override
+    public double[] load(long key) {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.load(key);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean isGalleryEmpty() {
+        return getEnrolledCount() == 0;
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        GallerySegment gallery = lockForRead();
+        try {
+            return gallery.rank(probe, distanceMetric, limit);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    // Called with the write lock held.
+    private Set<Identity.EnrolledSample> offloaded() {
+        if (offloaded == null) {
+            offloaded = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        return offloaded;
+    }
+
+    // Returns the open segment with the read lock held.
+    private GallerySegment lockForRead() {
+        segmentLock.readLock().lock();
+        if (segment != null) {
+            return segment;
+        }
+        segmentLock.readLock().unlock();
+
+        segmentLock.writeLock().lock();
+        try {
+            if (segment == null) {
+                segment = GallerySegment.open(Path.of(directory), readOnly);
+            }
+            // Downgrade so concurrent probes are not held up.
+            segmentLock.readLock().lock();
+            return segment;
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // Returns the open segment with the write lock held.
+    private GallerySegment lockForWrite() {
+        segmentLock.writeLock().lock();
+        try {
+            if (segment == null) {
+                segment = GallerySegment.open(Path.of(directory), readOnly);
+            }
+            return segment;
+        } catch (RuntimeException e) {
+            segmentLock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedGalleryClassifier{directory=%s, readOnly=%s, metric=%s, enrolled=%d}",
+            directory, readOnly, distanceMetric, getEnrolledCount());
+    }
+}
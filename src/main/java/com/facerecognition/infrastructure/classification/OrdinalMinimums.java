@@ -0,0 +1,84 @@
+package com.facerecognition.infrastructure.classification;
+
+import java.util.Arrays;
+
+/**
+ * Minimum distance per identity ordinal over the rows a search visits,
+ * reset in O(1) per search by generation counting so that a gallery of
+ * millions of identities is not cleared for every probe.
+ *
+ * <p>Not thread-safe; indexes keep one instance per searching thread.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see IvfIndex
+ * @see LshIndex
+ */
+final class OrdinalMinimums {
+
+    private double[] distances = new double[0];
+    private int[] marks = new int[0];
+    private int[] touched = new int[0];
+    private int touchedCount;
+    private int generation;
+
+    /**
+     * Forgets every recorded distance.
+     *
+     * @param ordinals the number of ordinals the next search may offer
+     */
+    void reset(int ordinals) {
+        if (marks.length < ordinals) {
+            int capacity = Math.max(ordinals, marks.length * 2);
+            distances = new double[capacity];
+            marks = new int[capacity];
+            touched = new int[capacity];
+            generation = 0;
+        }
+        touchedCount = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Records a distance, keeping the smaller one if the ordinal was seen before.
+     *
+     * @param ordinal the identity ordinal
+     * @param distance the distance
+     */
+    void offer(int ordinal, double distance) {
+        if (marks[ordinal] != generation) {
+            marks[ordinal] = generation;
+            distances[ordinal] = distance;
+            touched[touchedCount++] = ordinal;
+        } else {
+            distances[ordinal] = Math.min(distances[ordinal], distance);
+        }
+    }
+
+    /**
+     * @return the number of ordinals offered since the last reset
+     */
+    int touchedCount() {
+        return touchedCount;
+    }
+
+    /**
+     * @param i an index below {@link #touchedCount()}
+     * @return the {@code i}-th distinct ordinal offered
+     */
+    int touched(int i) {
+        return touched[i];
+    }
+
+    /**
+     * @return the distances indexed by ordinal; valid only for touched ordinals
+     */
+    double[] distances() {
+        return distances;
+    }
+}
@@ -0,0 +1,385 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Product-quantised classifier: every enrolled sample is held as a few
+ * bytes of {@link ProductQuantizer} codes instead of a {@code double[]}.
+ *
+ * <p>With the default {@value #DEFAULT_SUBSPACES} sub-spaces a 128-d sample
+ * shrinks from 1&nbsp;KiB to 32 code bytes plus a norm and an owner, about
+ * 23 times smaller. A probe builds one asymmetric-distance lookup table and
+ * scans all codes with table lookups only, then re-scores the best
+ * {@code rerank} identities exactly to recover the precision the codes lose.
+ * The full-precision vectors for that re-rank live in a temporary
+ * {@link DiskVectorStore} file, and every indexed sample is
+ * {@linkplain Identity.EnrolledSample#offload offloaded} into it, so the
+ * heap keeps only the codes; {@link Identity.EnrolledSample#getFeatures()}
+ * reads such a sample back from the file. Setting {@code rerank} to 0 skips
+ * the re-rank and reports approximate distances.</p>
+ *
+ * <p>The codebooks are learned by {@link #retrain()}, or lazily by the
+ * first probe after a {@link #clear()} or metric change. Between retrains,
+ * {@link #enroll} encodes new samples with the existing codebooks.
+ * {@link #getDistance} is always exact.</p>
+ *
+ * <p>Every retrain writes a fresh store and deletes the old one. Samples are
+ * loaded back onto the heap when their identity is unenrolled, on
+ * {@link #clear()} and on {@link #close()}, so the identities stay usable
+ * after the classifier lets go of them.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PqIndex
+ * @see CompressedGallery
+ * @see FaceClassifier
+ */
+public class PQClassifier extends AbstractFaceClassifier implements CompressedGallery, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "PQ";
+
+    /** Default number of sub-spaces, which is also the code length in bytes. */
+    public static final int DEFAULT_SUBSPACES = 32;
+    /** Default number of approximate candidates re-scored exactly. */
+    public static final int DEFAULT_RERANK = 64;
+    /** Default maximum number of k-means iterations per codebook. */
+    public static final int DEFAULT_ITERATIONS = 15;
+
+    private static final long TRAINING_SEED = 42L;
+
+    private final int subspaces;
+    private final int iterations;
+    // Kept as a string because Path is not serializable.
+    private final String storeDirectory;
+    private volatile int rerank;
+
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // Guarded by indexLock; null means it must be trained from enrolledIdentities.
+    private transient PqIndex index;
+    // Guarded by indexLock; holds the values of the samples offloaded by index.
+    private transient DiskVectorStore store;
+
+    /**
+     * Creates a PQ classifier with default settings.
+     */
+    public PQClassifier() {
+        this(new ClassifierConfig());
+    }
+
+    /**
+     * Creates a PQ classifier with default quantisation parameters.
+     *
+     * @param config the classifier configuration
+     */
+    public PQClassifier(ClassifierConfig config) {
+        this(config, DEFAULT_SUBSPACES, DEFAULT_RERANK);
+    }
+
+    /**
+     * Creates a PQ classifier that keeps its re-rank store in the system temporary directory.
+     *
+     * @param config the classifier configuration
+     * @param subspaces the number of sub-spaces, at least 1; clamped to the vector dimension
+     * @param rerank the number of candidates re-scored exactly, at least 0
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public PQClassifier(ClassifierConfig config, int subspaces, int rerank) {
+        this(config, subspaces, rerank, DEFAULT_ITERATIONS, null);
+    }
+
+    /**
+     * Creates a PQ classifier with custom parameters.
+     *
+     * @param config the classifier configuration
+     * @param subspaces the number of sub-spaces, at least 1; clamped to the vector dimension
+     * @param rerank the number of candidates re-scored exactly, at least 0
+     * @param iterations the maximum number of k-means iterations per codebook, at least 1
+     * @param storeDirectory directory for the temporary file of full-precision vectors, or
+     *                       null for the system temporary directory
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public PQClassifier(ClassifierConfig config, int subspaces, int rerank, int iterations, Path storeDirectory) {
+        super(config);
+        if (subspaces < 1) {
+            throw new IllegalArgumentException("subspaces must be at least 1: " + subspaces);
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1: " + iterations);
+        }
+        this.subspaces = subspaces;
+        this.iterations = iterations;
+        this.storeDirectory = storeDirectory != null ? storeDirectory.toString() : null;
+        setRerank(rerank);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getSubspaces() {
+        return subspaces;
+    }
+
+    public int getRerank() {
+        return rerank;
+    }
+
+    /**
+     * Sets the number of approximate candidates re-scored exactly. Takes effect for the next probe.
+     *
+     * @param rerank the number of candidates; 0 disables re-ranking
+     * @throws IllegalArgumentException if {@code rerank} is negative
+     */
+    public void setRerank(int rerank) {
+        if (rerank < 0) {
+            throw new IllegalArgumentException("rerank must not be negative: " + rerank);
+        }
+        this.rerank = rerank;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        indexLock.readLock().lock();
+        try {
+            return index != null ? (long) index.size() * index.bytesPerSample() : 0L;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        indexLock.readLock().lock();
+        try {
+            if (index == null || index.size() == 0) {
+                return 0.0;
+            }
+            return (double) index.dimension() * Double.BYTES / index.bytesPerSample();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-learns the codebooks, re-encodes the enrolled samples and rewrites
+     * the re-rank store without the rows of removed samples.
+     */
+    @Override
+    public synchronized void retrain() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+            index = trainIndex();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all identities, loading their samples back onto the heap and
+     * deleting the re-rank store.
+     */
+    @Override
+    public synchronized void clear() {
+        release();
+        super.clear();
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        indexLock.writeLock().lock();
+        try {
+            if (index != null) {
+                if (previous != null) {
+                    index.remove(previous.getId());
+                }
+                try {
+                    index.add(identity);
+                } catch (RuntimeException e) {
+                    // The enrolment is rolled back; retrain from the restored gallery
+                    reclaim(identity);
+                    index = null;
+                    throw e;
+                }
+            }
+            if (previous != null && store != null) {
+                // Samples the new identity dropped would otherwise go down with the store.
+                Set<Identity.EnrolledSample> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+                kept.addAll(identity.getSamples());
+                for (Identity.EnrolledSample sample : previous.getSamples()) {
+                    if (!kept.contains(sample)) {
+                        sample.reclaim(store);
+                    }
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        indexLock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.remove(identity.getId());
+            }
+            reclaim(identity);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        indexLock.readLock().lock();
+        try {
+            if (index != null) {
+                return search(index, probe, limit);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        // Build under the monitor so no enrolment lands between reading enrolledIdentities and publishing the index.
+        synchronized (this) {
+            indexLock.writeLock().lock();
+            try {
+                if (index == null) {
+                    index = trainIndex();
+                }
+                // Downgrade so concurrent probes are not held up by this search.
+                indexLock.readLock().lock();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        try {
+            return search(index, probe, limit);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the enrolled samples back onto the heap and deletes the re-rank
+     * store. The classifier rebuilds both on the next probe.
+     */
+    @Override
+    public synchronized void close() {
+        release();
+    }
+
+    private Ranking search(PqIndex pq, FeatureVector probe, int limit) {
+        if (pq == null || pq.size() == 0) {
+            return Ranking.EMPTY;
+        }
+        if (probe.getDimension() != pq.dimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), pq.dimension()));
+        }
+        return pq.search(probe.getFeatures(), probe.norm(), limit, rerank);
+    }
+
+    // Caller holds the monitor.
+    private void release() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+            if (store != null) {
+                for (Identity identity : enrolledIdentities.values()) {
+                    reclaim(identity);
+                }
+                closeStore(store);
+                store = null;
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock.
+    private void reclaim(Identity identity) {
+        if (store != null) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                sample.reclaim(store);
+            }
+        }
+    }
+
+    // Caller holds the monitor and the write lock. Moves the samples into a new store,
+    // then deletes the old one.
+    private PqIndex trainIndex() {
+        List<Identity> identities = new ArrayList<>();
+        for (Identity identity : enrolledIdentities.values()) {
+            if (identity.hasSamples()) {
+                identities.add(identity);
+            }
+        }
+        if (identities.isEmpty()) {
+            return null;
+        }
+        int dimension = identities.get(0).getSamples().get(0).getFeatures().getDimension();
+        Path directory = storeDirectory != null ? Paths.get(storeDirectory) : null;
+        DiskVectorStore previous = store;
+        store = DiskVectorStore.create(directory, dimension);
+        PqIndex built;
+        try {
+            built = PqIndex.build(identities, distanceMetric, subspaces, iterations, TRAINING_SEED, store);
+        } catch (RuntimeException e) {
+            for (Identity identity : identities) {
+                reclaim(identity);
+            }
+            closeStore(store);
+            store = previous;
+            throw e;
+        }
+        if (previous != null) {
+            closeStore(previous);
+        }
+        return built;
+    }
+
+    private void closeStore(DiskVectorStore closing) {
+        try {
+            closing.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close re-rank store in "
+                + (storeDirectory != null ? storeDirectory : "the temporary directory"), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PQClassifier{subspaces=%d, rerank=%d, metric=%s, enrolled=%d}",
+            subspaces, rerank, distanceMetric, enrolledIdentities.size());
+    }
+}
@@ -0,0 +1,132 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable snapshot of an enrolled gallery, packed for linear scans.
+ *
+ * <p>A snapshot does not change once built, but an enrolment can be
+ * {@linkplain #append appended} to the newest one, producing another that
+ * shares its storage. Identity indices then include the identities that
+ * later appends replaced, which are no longer {@linkplain #isLive live}.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see GalleryMatrix
+ * @see Int8GalleryMatrix
+ */
+interface PackedGallery {
+
+    /**
+     * Whether this gallery was packed for matching under the given metric.
+     * Callers repack when it returns false.
+     *
+     * @param metric the distance metric
+     * @return true if {@link #minDistances} may be called with {@code metric}
+     */
+    boolean isPackedFor(DistanceMetric metric);
+
+    /**
+     * @return the number of packed sample rows
+     */
+    int size();
+
+    /**
+     * @return the number of identity indices in the gallery, including replaced identities
+     */
+    int identityCount();
+
+    /**
+     * @param index an identity index in {@code [0, identityCount())}
+     * @return the identity at that index
+     */
+    Identity identity(int index);
+
+    /**
+     * @param index an identity index in {@code [0, identityCount())}
+     * @return true if the identity is active and has not been replaced by a later append
+     */
+    boolean isLive(int index);
+
+    /**
+     * Returns a gallery that also holds an identity's samples, without
+     * repacking the rows already packed. This gallery is unchanged and may
+     * still be scanned while the append runs. Appends must be serialised by
+     * the caller.
+     *
+     * @param identity the newly enrolled identity
+     * @param previous the enrolment it replaces, whose rows are skipped from
+     *                 then on, or null
+     * @return the new gallery, or null if the samples cannot be appended and
+     *         the identities must be packed again
+     */
+    PackedGallery append(Identity identity, Identity previous);
+
+    /**
+     * Computes, for every identity, the minimum distance between the probe
+     * and any of that identity's samples. Rows belonging to identities that
+     * are not live are skipped and leave {@link Double#MAX_VALUE} in place.
+     *
+     * @param probe the probe vector
+     * @param metric the distance metric
+     * @return an array indexed like {@link #identity(int)}
+     * @throws IllegalArgumentException if the probe dimension does not match
+     */
+    double[] minDistances(FeatureVector probe, DistanceMetric metric);
+
+    /**
+     * Ranks the nearest live identities of one probe by minimum sample
+     * distance, scanning shards of rows in parallel on {@code pool}. The
+     * ranking is the one {@link KNNClassifier} builds from
+     * {@link #minDistances}.
+     *
+     * @param probe the probe vector
+     * @param metric the distance metric
+     * @param limit the maximum number of identities to return
+     * @param pool the pool to scan on
+     * @return the ranking
+     * @throws IllegalArgumentException if the probe dimension does not match
+     * @see ParallelGalleryScan
+     */
+    AbstractFaceClassifier.Ranking rank(FeatureVector probe, DistanceMetric metric, int limit, ForkJoinPool pool);
+
+    /**
+     * Ranks the nearest live identities of each probe by minimum sample
+     * distance, as {@link KNNClassifier} ranks a single probe from
+     * {@link #minDistances}.
+     *
+     * <p>The default scans the gallery once per probe.</p>
+     *
+     * @param probes the probe vectors
+     * @param metric the distance metric
+     * @param limit the maximum number of identities per ranking
+     * @return one ranking per probe, in probe order
+     * @throws IllegalArgumentException if a probe dimension does not match
+     */
+    default AbstractFaceClassifier.Ranking[] rank(List<FeatureVector> probes, DistanceMetric metric, int limit) {
+        int identities = identityCount();
+        Identity[] ordered = new Identity[identities];
+        for (int i = 0; i < identities; i++) {
+            ordered[i] = identity(i);
+        }
+
+        AbstractFaceClassifier.Ranking[] rankings = new AbstractFaceClassifier.Ranking[probes.size()];
+        for (int p = 0; p < rankings.length; p++) {
+            double[] distances = minDistances(probes.get(p), metric);
+            TopKSelector selector = new TopKSelector(Math.min(limit, identities));
+            for (int i = 0; i < identities; i++) {
+                if (isLive(i)) {
+                    selector.offer(i, distances[i]);
+                }
+            }
+            rankings[p] = AbstractFaceClassifier.Ranking.of(selector.drainAscending(), ordered, distances);
+        }
+        return rankings;
+    }
+}
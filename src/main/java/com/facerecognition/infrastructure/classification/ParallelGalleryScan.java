@@ -0,0 +1,152 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.Identity;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join scan of a packed gallery for a single probe.
+ *
+ * <p>The rows are cut into one shard per pool thread, each at least
+ * {@value #MIN_SHARD_ROWS} rows long. Shard boundaries are moved forward to
+ * the next change of owner, so every identity's rows fall in exactly one
+ * shard and each shard can reduce them to per-identity minimums on its own.
+ * Every shard keeps its own {@link TopKSelector}; the selectors are merged
+ * pairwise as the fork/join tree unwinds. Because the selector breaks ties
+ * by identity index, the merged ranking is the one a sequential scan
+ * produces.</p>
+ *
+ * <p>Scans run on a dedicated pool of daemon threads, one per available
+ * processor, so gallery scans neither compete with nor wait behind tasks in
+ * the common pool.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see KNNClassifier
+ */
+final class ParallelGalleryScan {
+
+    /** Smallest shard worth handing to another thread. */
+    static final int MIN_SHARD_ROWS = 4096;
+
+    /**
+     * Reduces a range of rows that starts and ends on owner boundaries.
+     */
+    @FunctionalInterface
+    interface RowScan {
+
+        /**
+         * Offers the minimum distance of every live identity owning rows
+         * in {@code [from, to)} to {@code out}.
+         *
+         * @param from the first row
+         * @param to one past the last row
+         * @param out the shard's selector
+         */
+        void scan(int from, int to, TopKSelector out);
+    }
+
+    private ParallelGalleryScan() {
+    }
+
+    /**
+     * @return the pool gallery scans run on
+     */
+    static ForkJoinPool pool() {
+        return PoolHolder.POOL;
+    }
+
+    /**
+     * Scans the rows in parallel shards and ranks the nearest identities.
+     *
+     * @param gallery the gallery's identities and the owner of every row, grouped by owner
+     * @param limit the maximum number of identities to return
+     * @param pool the pool to scan on
+     * @param scan reduces one shard
+     * @return the ranking
+     */
+    static AbstractFaceClassifier.Ranking rank(GalleryOwners gallery, int limit, ForkJoinPool pool, RowScan scan) {
+        int[] owners = gallery.owners();
+        Identity[] identities = gallery.identities();
+        int rows = gallery.rows();
+        int shards = Math.max(1, Math.min(pool.getParallelism(), rows / MIN_SHARD_ROWS));
+        int[] bounds = new int[shards + 1];
+        bounds[shards] = rows;
+        for (int s = 1; s < shards; s++) {
+            int bound = Math.max(bounds[s - 1], (int) ((long) rows * s / shards));
+            while (bound > 0 && bound < rows && owners[bound] == owners[bound - 1]) {
+                bound++;
+            }
+            bounds[s] = bound;
+        }
+
+        int width = Math.min(limit, gallery.identityCount());
+        TopKSelector selector = pool.invoke(new Shards(bounds, 0, shards, width, scan));
+        double[] distances = new double[selector.size()];
+        int[] order = selector.drainAscending(distances);
+        Identity[] ranked = new Identity[order.length];
+        for (int r = 0; r < order.length; r++) {
+            ranked[r] = identities[order[r]];
+        }
+        return new AbstractFaceClassifier.Ranking(ranked, distances);
+    }
+
+    /**
+     * Scans shards {@code [first, last)}, splitting the range in half until a
+     * single shard is left.
+     */
+    private static final class Shards extends RecursiveTask<TopKSelector> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final int first;
+        private final int last;
+        private final int width;
+        private final transient RowScan scan;
+
+        Shards(int[] bounds, int first, int last, int width, RowScan scan) {
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+            this.width = width;
+            this.scan = scan;
+        }
+
+        @Override
+        protected TopKSelector compute() {
+            if (last - first == 1) {
+                TopKSelector selector = new TopKSelector(width);
+                scan.scan(bounds[first], bounds[last], selector);
+                return selector;
+            }
+            int middle = (first + last) >>> 1;
+            Shards left = new Shards(bounds, first, middle, width, scan);
+            left.fork();
+            TopKSelector merged = new Shards(bounds, middle, last, width, scan).compute();
+            TopKSelector other = left.join();
+            double[] distances = new double[other.size()];
+            int[] indices = other.drainAscending(distances);
+            for (int i = 0; i < indices.length; i++) {
+                merged.offer(indices[i], distances[i]);
+            }
+            return merged;
+        }
+    }
+
+    // Created on first use so classifiers that never scan in parallel start no threads.
+    private static final class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("gallery-scan-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            },
+            null, false);
+    }
+}
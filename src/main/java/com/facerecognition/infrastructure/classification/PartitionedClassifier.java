@@ -0,0 +1,288 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Classifier that keeps every gallery {@linkplain Identity#getPartition()
+ * partition}, such as a site or tenant, in its own classifier.
+ *
+ * <p>Each partition gets a fresh classifier from the factory the first time
+ * one of its identities is enrolled, so it packs, indexes and retrains only
+ * its own identities. {@link #classify(FeatureVector, double, String)}
+ * searches one partition and never touches the others: the cost of a probe
+ * follows the size of its partition rather than the whole gallery, and
+ * enrolment churn in one partition leaves the packed galleries and indexes
+ * of the rest untouched.</p>
+ *
+ * <p>Calls that name no partition search all of them and merge their
+ * rankings, so {@link #classify(FeatureVector, double)} and
+ * {@link #getTopMatches} behave as a single classifier over every identity.
+ * {@link #getDistance} and {@link #verify} go straight to the partition that
+ * holds the identity.</p>
+ *
+ * <p>The factory is not serialized. A deserialized classifier keeps its
+ * partitions but creates new ones as {@link KNNClassifier}s until
+ * {@link #setPartitionFactory} binds the factory again.</p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>{@code
+ * ClassifierConfig config = new ClassifierConfig().setMetric(DistanceMetric.COSINE);
+ * PartitionedClassifier classifier = new PartitionedClassifier(config, () -> new HNSWClassifier(config));
+ * identity.setPartition("site-12");
+ * classifier.enroll(identity);
+ * RecognitionResult result = classifier.classify(probe, 0.6, "site-12");
+ * }</pre>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see Identity#getPartition()
+ * @see FaceClassifier#classify(FeatureVector, double, String)
+ */
+public class PartitionedClassifier extends AbstractFaceClassifier implements Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "Partitioned";
+
+    private transient volatile Supplier<? extends AbstractFaceClassifier> factory;
+
+    private final Map<String, AbstractFaceClassifier> partitions = new ConcurrentHashMap<>();
+    // Partition each identity was enrolled into; the identity's own may have changed since.
+    private final Map<String, String> assignments = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a partitioned classifier with a {@link KNNClassifier} per partition.
+     *
+     * @param config the classifier configuration, shared by every partition
+     */
+    public PartitionedClassifier(ClassifierConfig config) {
+        this(config, knnFactory(config));
+    }
+
+    /**
+     * Creates a partitioned classifier.
+     *
+     * @param config the classifier configuration; its threshold, k and metric
+     *        should match those of the classifiers the factory creates
+     * @param factory creates an empty classifier for each new partition
+     */
+    public PartitionedClassifier(ClassifierConfig config, Supplier<? extends AbstractFaceClassifier> factory) {
+        super(config);
+        this.factory = Objects.requireNonNull(factory, "Partition factory cannot be null");
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Binds the factory for partitions created from now on, such as after
+     * the classifier was deserialized. Existing partitions are kept.
+     *
+     * @param factory creates an empty classifier for each new partition
+     */
+    public void setPartitionFactory(Supplier<? extends AbstractFaceClassifier> factory) {
+        this.factory = Objects.requireNonNull(factory, "Partition factory cannot be null");
+    }
+
+    /**
+     * Gets the partitions that have had identities enrolled.
+     *
+     * @return the partition names, sorted
+     */
+    public Set<String> getPartitionNames() {
+        return new TreeSet<>(partitions.keySet());
+    }
+
+    /**
+     * Gets the classifier that holds one partition.
+     *
+     * @param partition the partition name
+     * @return its classifier, or null if nothing was enrolled in it
+     */
+    public FaceClassifier getPartition(String partition) {
+        return partitions.get(partition);
+    }
+
+    @Override
+    public RecognitionResult classify(FeatureVector probe, double threshold, String partition) {
+        if (partition == null) {
+            return classify(probe, threshold);
+        }
+        AbstractFaceClassifier classifier = partitions.get(partition);
+        if (classifier == null) {
+            return unknown(probe);
+        }
+        return classifier.classify(probe, threshold);
+    }
+
+    @Override
+    public double getDistance(FeatureVector probe, String identityId) {
+        AbstractFaceClassifier classifier = partitionOf(identityId);
+        return classifier != null ? classifier.getDistance(probe, identityId) : Double.MAX_VALUE;
+    }
+
+    @Override
+    public RecognitionResult verify(FeatureVector probe, String identityId, double threshold) {
+        AbstractFaceClassifier classifier = partitionOf(identityId);
+        if (classifier == null) {
+            return toVerification(probe, null, Double.MAX_VALUE, threshold);
+        }
+        return classifier.verify(probe, identityId, threshold);
+    }
+
+    /**
+     * Retrains every partition.
+     */
+    @Override
+    public void retrain() {
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            classifier.retrain();
+        }
+    }
+
+    @Override
+    protected boolean isGalleryEmpty() {
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            if (!classifier.isGalleryEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        String partition = identity.getPartition();
+        partitions.computeIfAbsent(partition, name -> newPartition()).enroll(identity);
+        String moved = assignments.put(identity.getId(), partition);
+        if (moved != null && !moved.equals(partition)) {
+            partitions.get(moved).unenroll(identity.getId());
+        }
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        AbstractFaceClassifier classifier = partitionOf(identity.getId());
+        assignments.remove(identity.getId());
+        if (classifier != null) {
+            classifier.unenroll(identity.getId());
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            classifier.clear();
+        }
+        partitions.clear();
+        assignments.clear();
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            classifier.setDistanceMetric(distanceMetric);
+        }
+    }
+
+    // Merges the nearest identities of every partition.
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        List<Ranking> rankings = new ArrayList<>(partitions.size());
+        int candidates = 0;
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            if (!classifier.isGalleryEmpty()) {
+                Ranking ranking = classifier.rank(probe, limit);
+                rankings.add(ranking);
+                candidates += ranking.size();
+            }
+        }
+
+        Identity[] identities = new Identity[candidates];
+        double[] distances = new double[candidates];
+        TopKSelector selector = new TopKSelector(Math.min(limit, candidates));
+        int index = 0;
+        for (Ranking ranking : rankings) {
+            for (int r = 0; r < ranking.size(); r++, index++) {
+                identities[index] = ranking.identity(r);
+                distances[index] = ranking.distance(r);
+                selector.offer(index, distances[index]);
+            }
+        }
+        return Ranking.of(selector.drainAscending(), identities, distances);
+    }
+
+    /**
+     * Closes every partition classifier that holds files or offloaded
+     * samples, such as a {@link PQClassifier}'s re-rank store. Each one is
+     * closed even if another fails.
+     *
+     * @throws IOException if a partition cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (AbstractFaceClassifier classifier : partitions.values()) {
+            if (classifier instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private AbstractFaceClassifier partitionOf(String identityId) {
+        String partition = assignments.get(identityId);
+        return partition != null ? partitions.get(partition) : null;
+    }
+
+    private AbstractFaceClassifier newPartition() {
+        AbstractFaceClassifier classifier = Objects.requireNonNull(factory.get(),
+            "Partition factory returned null");
+        classifier.setDistanceMetric(distanceMetric);
+        return classifier;
+    }
+
+    private static Supplier<KNNClassifier> knnFactory(ClassifierConfig config) {
+        return () -> new KNNClassifier(config);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // The factory was not written; fall back to the one-argument constructor's.
+        factory = knnFactory(config);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PartitionedClassifier{partitions=%d, metric=%s, enrolled=%d}",
+            partitions.size(), distanceMetric, enrolledIdentities.size());
+    }
+}
@@ -0,0 +1,258 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Product-quantised gallery: one {@link ProductQuantizer} code per enrolled
+ * sample, packed into a single {@code byte[]}, plus the reconstructed norm
+ * cosine needs and the owning identity.
+ *
+ * <p>A search scans every code with the query's ADC lookup table, keeps the
+ * best {@code max(limit, rerank)} identities by approximate distance and, if
+ * {@code rerank > 0}, re-scores those candidates exactly. Full-precision
+ * vectors for the re-rank come from a {@link DiskVectorStore} owned by the
+ * classifier: every indexed sample is
+ * {@linkplain Identity.EnrolledSample#offload offloaded} into it, so the
+ * heap holds only the codes, and a sample already in the store keeps its
+ * row.</p>
+ *
+ * <p>Not thread-safe for writers. {@link PQClassifier} serialises writers
+ * against readers; concurrent {@link #search} calls are safe with each
+ * other.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PQClassifier
+ */
+final class PqIndex {
+
+    private final DistanceMetric metric;
+    private final ProductQuantizer quantizer;
+    private final int codeLength;
+    private final DiskVectorStore store;
+
+    private byte[] codes = new byte[0];
+    private double[] codeNorms = new double[0];
+    private int[] owners = new int[0];
+    private int rows;
+
+    private Identity[] identities = new Identity[16];
+    private long[][] storeRows = new long[16][];
+    private int ordinalCount;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    private PqIndex(DistanceMetric metric, ProductQuantizer quantizer, DiskVectorStore store) {
+        this.metric = metric;
+        this.quantizer = quantizer;
+        this.codeLength = quantizer.codeLength();
+        this.store = store;
+    }
+
+    /**
+     * Learns the codebooks from the identities' samples and encodes them.
+     *
+     * @param identities the identities to index; must contain at least one sample
+     * @param metric the distance metric
+     * @param subspaces the requested number of sub-spaces (code bytes per sample)
+     * @param iterations the maximum number of k-means iterations per codebook
+     * @param seed seed for sampling and codebook initialisation
+     * @param store the store the samples are offloaded into and re-ranked from
+     * @return the index
+     * @throws IllegalArgumentException if the samples do not share the store's dimension
+     */
+    static PqIndex build(Collection<Identity> identities, DistanceMetric metric, int subspaces,
+                         int iterations, long seed, DiskVectorStore store) {
+        List<FeatureVector> samples = new ArrayList<>();
+        for (Identity identity : identities) {
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                samples.add(sample.getFeatures());
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train on an empty gallery");
+        }
+        int dimension = store.dimension();
+        for (FeatureVector sample : samples) {
+            if (sample.getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getDimension()));
+            }
+        }
+
+        ProductQuantizer quantizer = ProductQuantizer.train(samples, subspaces, iterations,
+            new SplittableRandom(seed));
+        PqIndex index = new PqIndex(metric, quantizer, store);
+        for (Identity identity : identities) {
+            index.add(identity);
+        }
+        return index;
+    }
+
+    /**
+     * Encodes every sample of an identity with the existing codebooks and
+     * offloads it into the store.
+     *
+     * @param identity the owning identity
+     * @throws IllegalArgumentException if a sample's dimension differs from the index's
+     */
+    void add(Identity identity) {
+        List<Identity.EnrolledSample> samples = identity.getSamples();
+        for (Identity.EnrolledSample sample : samples) {
+            if (sample.getFeatures().getDimension() != quantizer.dimension()) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", quantizer.dimension(), sample.getFeatures().getDimension()));
+            }
+        }
+
+        int ordinal = ordinalCount++;
+        if (ordinal == identities.length) {
+            int capacity = Math.multiplyExact(identities.length, 2);
+            identities = Arrays.copyOf(identities, capacity);
+            storeRows = Arrays.copyOf(storeRows, capacity);
+        }
+        identities[ordinal] = identity;
+        ordinals.put(identity.getId(), ordinal);
+
+        ensureCapacity(rows + samples.size());
+        long[] sampleRows = new long[samples.size()];
+        double[] features = new double[quantizer.dimension()];
+        for (int i = 0; i < samples.size(); i++) {
+            Identity.EnrolledSample sample = samples.get(i);
+            sample.getFeatures().copyInto(features, 0);
+            quantizer.encode(features, codes, rows * codeLength);
+            codeNorms[rows] = quantizer.reconstructedNorm(codes, rows * codeLength);
+            owners[rows] = ordinal;
+            long row = sample.keyIn(store);
+            if (row < 0) {
+                row = store.append(features);
+                sample.offload(store, row);
+            }
+            sampleRows[i] = row;
+            rows++;
+        }
+        storeRows[ordinal] = sampleRows;
+    }
+
+    /**
+     * Removes every code of an identity. Its rows in the store are abandoned until the next rebuild.
+     *
+     * @param identityId the identity ID
+     */
+    void remove(String identityId) {
+        Integer ordinal = ordinals.remove(identityId);
+        if (ordinal == null) {
+            return;
+        }
+        identities[ordinal] = null;
+        storeRows[ordinal] = null;
+        int kept = 0;
+        for (int row = 0; row < rows; row++) {
+            if (owners[row] == ordinal) {
+                continue;
+            }
+            if (kept != row) {
+                System.arraycopy(codes, row * codeLength, codes, kept * codeLength, codeLength);
+                codeNorms[kept] = codeNorms[row];
+                owners[kept] = owners[row];
+            }
+            kept++;
+        }
+        rows = kept;
+    }
+
+    /**
+     * @return the number of encoded samples
+     */
+    int size() {
+        return rows;
+    }
+
+    /**
+     * @return the vector dimension
+     */
+    int dimension() {
+        return quantizer.dimension();
+    }
+
+    /**
+     * @return the heap bytes per encoded sample: code, reconstructed norm, owner and store row
+     */
+    int bytesPerSample() {
+        return codeLength + Double.BYTES + Integer.BYTES + Long.BYTES;
+    }
+
+    /**
+     * Ranks the active identities nearest to the query.
+     *
+     * @param query the query vector
+     * @param queryNorm the query's L2 norm
+     * @param limit the maximum number of identities to return
+     * @param rerank how many approximate candidates to re-score exactly; 0 disables re-ranking
+     * @return the ranking; distances are exact when re-ranked, asymmetric otherwise
+     */
+    AbstractFaceClassifier.Ranking search(double[] query, double queryNorm, int limit, int rerank) {
+        double[] table = quantizer.lookupTable(query, metric);
+        double[] best = new double[ordinalCount];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int row = 0; row < rows; row++) {
+            int owner = owners[row];
+            double d = quantizer.distance(table, metric, queryNorm, codes, row * codeLength, codeNorms[row]);
+            best[owner] = Math.min(best[owner], d);
+        }
+
+        TopKSelector approximate = new TopKSelector(Math.max(limit, rerank));
+        for (int o = 0; o < ordinalCount; o++) {
+            Identity identity = identities[o];
+            if (identity != null && identity.isActive()) {
+                approximate.offer(o, best[o]);
+            }
+        }
+        int[] candidates = approximate.drainAscending();
+        if (rerank <= 0) {
+            return AbstractFaceClassifier.Ranking.of(
+                Arrays.copyOf(candidates, Math.min(limit, candidates.length)), identities, best);
+        }
+
+        double[] exact = new double[ordinalCount];
+        double[] buffer = new double[quantizer.dimension()];
+        TopKSelector nearest = new TopKSelector(limit);
+        for (int candidate : candidates) {
+            exact[candidate] = exactDistance(candidate, query, queryNorm, buffer);
+            nearest.offer(candidate, exact[candidate]);
+        }
+        return AbstractFaceClassifier.Ranking.of(nearest.drainAscending(), identities, exact);
+    }
+
+    private double exactDistance(int ordinal, double[] query, double queryNorm, double[] buffer) {
+        int dimension = quantizer.dimension();
+        double min = Double.MAX_VALUE;
+        for (long row : storeRows[ordinal]) {
+            store.read(row, buffer);
+            double norm = Math.sqrt(DistanceKernels.sumOfSquares(buffer, 0, dimension));
+            min = Math.min(min, GalleryMatrix.distance(metric, query, 0, queryNorm, buffer, 0, norm, dimension));
+        }
+        return min;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= owners.length) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(16, Math.multiplyExact(owners.length, 2)));
+        codes = Arrays.copyOf(codes, Math.multiplyExact(capacity, codeLength));
+        codeNorms = Arrays.copyOf(codeNorms, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+    }
+}
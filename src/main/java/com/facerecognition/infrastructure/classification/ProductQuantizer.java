@@ -0,0 +1,214 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Product-quantisation codec (Jégou, Douze &amp; Schmid, 2011).
+ *
+ * <p>A vector is split into {@code m} contiguous sub-spaces, and each
+ * sub-vector is replaced by the index of its nearest centroid in that
+ * sub-space's codebook of at most {@value #CENTROIDS} entries, so a sample is
+ * stored as {@code m} bytes. Codebooks are learned with Euclidean
+ * {@link KMeans} on a sample of the enrolled vectors.</p>
+ *
+ * <p>Queries use asymmetric distance computation (ADC): the query stays
+ * uncompressed, one lookup table of query-to-centroid partial distances is
+ * built per sub-space, and the distance to any code is the sum of {@code m}
+ * table entries. Every {@link DistanceMetric} decomposes this way: Euclidean
+ * sums squared partials, Manhattan and chi-square sum the partials directly,
+ * and cosine sums partial dot products and divides by the query norm and the
+ * norm of the reconstructed code.</p>
+ *
+ * <p>Immutable once trained, so safe to share between threads.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see PQClassifier
+ */
+final class ProductQuantizer {
+
+    /** Codebook size per sub-space; codes are one unsigned byte. */
+    static final int CENTROIDS = 256;
+
+    /** Upper bound on training vectors per codebook entry. */
+    static final int TRAINING_POINTS_PER_CENTROID = 16;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int centroids;
+    // Sub-space s covers dimensions [offsets[s], offsets[s + 1]).
+    private final int[] offsets;
+    // codebooks[s] holds `centroids` rows of width offsets[s + 1] - offsets[s].
+    private final double[][] codebooks;
+
+    private ProductQuantizer(int dimension, int[] offsets, int centroids, double[][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = offsets.length - 1;
+        this.centroids = centroids;
+        this.offsets = offsets;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Learns the codebooks.
+     *
+     * @param vectors the training vectors, all of one dimension; at least one
+     * @param subspaces the requested number of sub-spaces; clamped to the dimension
+     * @param iterations the maximum number of k-means iterations per codebook
+     * @param random the random source
+     * @return the trained codec
+     */
+    static ProductQuantizer train(List<FeatureVector> vectors, int subspaces, int iterations,
+                                  SplittableRandom random) {
+        int dimension = vectors.get(0).getDimension();
+        int m = Math.min(subspaces, dimension);
+        int[] offsets = new int[m + 1];
+        for (int s = 0; s <= m; s++) {
+            // Spread any remainder over the sub-spaces rather than piling it on the last.
+            offsets[s] = (int) ((long) s * dimension / m);
+        }
+
+        int k = Math.min(CENTROIDS, vectors.size());
+        double[] points = KMeans.sample(vectors, (long) k * TRAINING_POINTS_PER_CENTROID, random);
+        int n = points.length / dimension;
+
+        double[][] codebooks = new double[m][];
+        for (int s = 0; s < m; s++) {
+            int width = offsets[s + 1] - offsets[s];
+            double[] sub = new double[n * width];
+            for (int p = 0; p < n; p++) {
+                System.arraycopy(points, p * dimension + offsets[s], sub, p * width, width);
+            }
+            codebooks[s] = KMeans.fit(sub, width, k, iterations, DistanceMetric.EUCLIDEAN, random);
+        }
+        return new ProductQuantizer(dimension, offsets, k, codebooks);
+    }
+
+    /**
+     * @return the input dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of sub-spaces, which is also the code length in bytes
+     */
+    int codeLength() {
+        return subspaces;
+    }
+
+    /**
+     * Encodes a vector.
+     *
+     * @param vector the vector to encode
+     * @param codes receives {@link #codeLength()} codes
+     * @param offset where to write the first code
+     */
+    void encode(double[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            int from = offsets[s];
+            int width = offsets[s + 1] - from;
+            double[] codebook = codebooks[s];
+            int nearest = 0;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < centroids; c++) {
+                double d = DistanceKernels.squaredEuclidean(vector, from, codebook, c * width, width);
+                if (d < nearestDistance) {
+                    nearestDistance = d;
+                    nearest = c;
+                }
+            }
+            codes[offset + s] = (byte) nearest;
+        }
+    }
+
+    /**
+     * Computes the L2 norm of the vector a code decodes to.
+     *
+     * @param codes the codes
+     * @param offset where the code starts
+     * @return the reconstruction's norm
+     */
+    double reconstructedNorm(byte[] codes, int offset) {
+        double sum = 0.0;
+        for (int s = 0; s < subspaces; s++) {
+            int width = offsets[s + 1] - offsets[s];
+            sum += DistanceKernels.sumOfSquares(codebooks[s], (codes[offset + s] & 0xFF) * width, width);
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Builds the ADC lookup table for a query.
+     *
+     * @param query the query vector
+     * @param metric the distance metric
+     * @return {@code codeLength() * CENTROIDS} partial distances, indexed {@code s * CENTROIDS + code}
+     */
+    double[] lookupTable(double[] query, DistanceMetric metric) {
+        double[] table = new double[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int from = offsets[s];
+            int width = offsets[s + 1] - from;
+            double[] codebook = codebooks[s];
+            int base = s * CENTROIDS;
+            for (int c = 0; c < centroids; c++) {
+                int at = c * width;
+                double partial;
+                switch (metric) {
+                    case COSINE:
+                        partial = DistanceKernels.dot(query, from, codebook, at, width);
+                        break;
+                    case MANHATTAN:
+                        partial = DistanceKernels.manhattan(query, from, codebook, at, width);
+                        break;
+                    case CHI_SQUARE:
+                        partial = DistanceKernels.chiSquare(query, from, codebook, at, width);
+                        break;
+                    case EUCLIDEAN:
+                    default:
+                        partial = DistanceKernels.squaredEuclidean(query, from, codebook, at, width);
+                        break;
+                }
+                table[base + c] = partial;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Computes the asymmetric distance from the query behind {@code table} to a code.
+     *
+     * @param table the query's lookup table
+     * @param metric the metric the table was built for
+     * @param queryNorm the query's L2 norm; only read for {@link DistanceMetric#COSINE}
+     * @param codes the codes
+     * @param offset where the code starts
+     * @param codeNorm the code's {@link #reconstructedNorm}; only read for {@link DistanceMetric#COSINE}
+     * @return the approximate distance
+     */
+    double distance(double[] table, DistanceMetric metric, double queryNorm,
+                    byte[] codes, int offset, double codeNorm) {
+        double sum = 0.0;
+        for (int s = 0, base = 0; s < subspaces; s++, base += CENTROIDS) {
+            sum += table[base + (codes[offset + s] & 0xFF)];
+        }
+        switch (metric) {
+            case COSINE:
+                return 1.0 - sum / (queryNorm * codeNorm);
+            case MANHATTAN:
+            case CHI_SQUARE:
+                return sum;
+            case EUCLIDEAN:
+            default:
+                return Math.sqrt(sum);
+        }
+    }
+}
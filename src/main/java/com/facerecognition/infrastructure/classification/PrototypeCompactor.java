@@ -0,0 +1,232 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounds the number of samples per identity by keeping a few representative
+ * ones, its prototypes.
+ *
+ * <p>An identity with more than {@code maxPrototypes} samples is clustered
+ * by k-medoids, with each sample weighted by its
+ * {@linkplain Identity.EnrolledSample#getQualityScore() quality score}, and
+ * only the medoids are kept. Because medoids are real samples, the kept
+ * prototypes are unchanged enrolments and stay comparable under any metric.
+ * Once compacted, matching an identity costs at most {@code maxPrototypes}
+ * comparisons however many times the person was enrolled.</p>
+ *
+ * <p>The first medoid minimises the weighted distance to every sample;
+ * each further one is the sample whose weighted distance to its nearest
+ * medoid is largest. Samples are then assigned to their nearest medoid and
+ * each cluster's medoid replaced by the member with the least weighted
+ * distance to the rest, until no medoid changes. Each identity costs
+ * {@code n²} distance evaluations for {@code n} samples.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see Identity#retainSamples(Set)
+ */
+public final class PrototypeCompactor {
+
+    /** Default cap on medoid-refinement rounds. */
+    public static final int DEFAULT_MAX_ITERATIONS = 10;
+
+    private final int maxPrototypes;
+    private final DistanceMetric metric;
+    private final int maxIterations;
+
+    /**
+     * Creates a compactor with the default number of refinement rounds.
+     *
+     * @param maxPrototypes the most samples to keep per identity, at least 1
+     * @param metric the metric samples are clustered under
+     * @throws IllegalArgumentException if {@code maxPrototypes} is below 1
+     */
+    public PrototypeCompactor(int maxPrototypes, DistanceMetric metric) {
+        this(maxPrototypes, metric, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Creates a compactor.
+     *
+     * @param maxPrototypes the most samples to keep per identity, at least 1
+     * @param metric the metric samples are clustered under
+     * @param maxIterations the most medoid-refinement rounds, at least 0
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public PrototypeCompactor(int maxPrototypes, DistanceMetric metric, int maxIterations) {
+        if (maxPrototypes < 1) {
+            throw new IllegalArgumentException("maxPrototypes must be at least 1: " + maxPrototypes);
+        }
+        if (maxIterations < 0) {
+            throw new IllegalArgumentException("maxIterations must be non-negative: " + maxIterations);
+        }
+        this.maxPrototypes = maxPrototypes;
+        this.metric = Objects.requireNonNull(metric, "Metric cannot be null");
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxPrototypes() {
+        return maxPrototypes;
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Checks whether an identity has more samples than it may keep.
+     *
+     * @param identity the identity
+     * @return true if {@link #compact} would remove samples from it
+     */
+    public boolean needsCompaction(Identity identity) {
+        return identity.getSampleCount() > maxPrototypes;
+    }
+
+    /**
+     * Chooses the samples an identity keeps.
+     *
+     * @param samples the identity's samples
+     * @return the IDs of at most {@code maxPrototypes} samples; all of them
+     *         if there are no more than that
+     */
+    public Set<String> selectPrototypes(List<Identity.EnrolledSample> samples) {
+        Set<String> kept = new HashSet<>();
+        if (samples.size() <= maxPrototypes) {
+            for (Identity.EnrolledSample sample : samples) {
+                kept.add(sample.getSampleId());
+            }
+            return kept;
+        }
+        for (int medoid : medoids(samples)) {
+            kept.add(samples.get(medoid).getSampleId());
+        }
+        return kept;
+    }
+
+    /**
+     * Reduces an identity to its prototypes.
+     *
+     * @param identity the identity to compact
+     * @return the number of samples removed
+     */
+    public int compact(Identity identity) {
+        if (!needsCompaction(identity)) {
+            return 0;
+        }
+        return identity.retainSamples(selectPrototypes(identity.getSamples()));
+    }
+
+    private int[] medoids(List<Identity.EnrolledSample> samples) {
+        int n = samples.size();
+        double[] distances = new double[Math.multiplyExact(n, n)];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double d = AbstractFaceClassifier.distance(metric,
+                    samples.get(i).getFeatures(), samples.get(j).getFeatures());
+                distances[i * n + j] = d;
+                distances[j * n + i] = d;
+            }
+        }
+        double[] weights = weights(samples);
+
+        int[] medoids = new int[maxPrototypes];
+        medoids[0] = bestMedoid(distances, weights, n, null, 0);
+        double[] nearest = new double[n];
+        for (int i = 0; i < n; i++) {
+            nearest[i] = distances[medoids[0] * n + i];
+        }
+        for (int m = 1; m < maxPrototypes; m++) {
+            int next = -1;
+            double farthest = -1.0;
+            for (int i = 0; i < n; i++) {
+                double score = weights[i] * nearest[i];
+                if (nearest[i] > 0 && score > farthest) {
+                    farthest = score;
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                // Every remaining sample duplicates a medoid
+                return Arrays.copyOf(medoids, m);
+            }
+            medoids[m] = next;
+            for (int i = 0; i < n; i++) {
+                nearest[i] = Math.min(nearest[i], distances[next * n + i]);
+            }
+        }
+
+        int[] assignment = new int[n];
+        for (int round = 0; round < maxIterations; round++) {
+            assign(distances, n, medoids, assignment);
+            boolean changed = false;
+            for (int m = 0; m < medoids.length; m++) {
+                int best = bestMedoid(distances, weights, n, assignment, m);
+                if (best >= 0 && best != medoids[m]) {
+                    medoids[m] = best;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        return medoids;
+    }
+
+    // Quality scores as weights; all-equal weights when none is positive.
+    private static double[] weights(List<Identity.EnrolledSample> samples) {
+        double[] weights = new double[samples.size()];
+        boolean positive = false;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.max(0.0, samples.get(i).getQualityScore());
+            positive |= weights[i] > 0;
+        }
+        if (!positive) {
+            Arrays.fill(weights, 1.0);
+        }
+        return weights;
+    }
+
+    private static void assign(double[] distances, int n, int[] medoids, int[] assignment) {
+        for (int i = 0; i < n; i++) {
+            int closest = 0;
+            for (int m = 1; m < medoids.length; m++) {
+                if (distances[medoids[m] * n + i] < distances[medoids[closest] * n + i]) {
+                    closest = m;
+                }
+            }
+            assignment[i] = closest;
+        }
+    }
+
+    // The member of cluster m (every sample if assignment is null) with the least weighted distance to the others.
+    private static int bestMedoid(double[] distances, double[] weights, int n, int[] assignment, int m) {
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (assignment != null && assignment[i] != m) {
+                continue;
+            }
+            double cost = 0.0;
+            for (int j = 0; j < n; j++) {
+                if (assignment == null || assignment[j] == m) {
+                    cost += weights[j] * distances[i * n + j];
+                }
+            }
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,150 @@
+package com.facerecognition.infrastructure.classification;
+
+/**
+ * Bounded selection of the {@code k} smallest distances from a stream of
+ * {@code (index, distance)} pairs.
+ *
+ * <p>Keeps a binary max-heap of at most {@code k} entries in two parallel
+ * primitive arrays, so offering {@code N} candidates costs
+ * {@code O(N log k)} time and allocates nothing per candidate. Entries are
+ * ordered by {@link Double#compare(double, double)} on the distance and then
+ * by index, which reproduces a stable sort over the offering order — the
+ * ranking the classifiers produced when they sorted every candidate.</p>
+ *
+ * <p>Instances are not thread-safe; create one per query.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ */
+final class TopKSelector {
+
+    private final double[] distances;
+    private final int[] indices;
+    private int size;
+
+    /**
+     * Creates a selector that retains at most {@code k} entries.
+     *
+     * @param k the number of entries to keep
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    TopKSelector(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative: " + k);
+        }
+        this.distances = new double[k];
+        this.indices = new int[k];
+    }
+
+    /**
+     * Offers a candidate. It is kept if fewer than {@code k} entries are held
+     * or if it ranks before the current worst entry.
+     *
+     * @param index the candidate index; ties on distance are broken by lower index
+     * @param distance the candidate distance
+     */
+    void offer(int index, double distance) {
+        int capacity = indices.length;
+        if (size < capacity) {
+            distances[size] = distance;
+            indices[size] = index;
+            siftUp(size++);
+        } else if (capacity > 0 && before(distance, index, distances[0], indices[0])) {
+            distances[0] = distance;
+            indices[0] = index;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * @return the number of entries currently held
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the distance of the worst retained entry; only meaningful when {@link #size()} is positive
+     */
+    double worstDistance() {
+        return distances[0];
+    }
+
+    /**
+     * Drains the selector into ascending order. The selector is empty afterwards.
+     *
+     * @return the retained indices, nearest first
+     */
+    int[] drainAscending() {
+        return drainAscending(null);
+    }
+
+    /**
+     * Drains the selector into ascending order, also copying the distances.
+     * The selector is empty afterwards.
+     *
+     * @param distancesOut receives the retained distances, nearest first; may be null.
+     *                     Must have room for at least {@link #size()} entries.
+     * @return the retained indices, nearest first
+     */
+    int[] drainAscending(double[] distancesOut) {
+        int n = size;
+        // In-place heap sort: repeatedly move the current worst to the end.
+        for (int end = n - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        int[] result = new int[n];
+        System.arraycopy(indices, 0, result, 0, n);
+        if (distancesOut != null) {
+            System.arraycopy(distances, 0, distancesOut, 0, n);
+        }
+        size = 0;
+        return result;
+    }
+
+    private void siftUp(int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!before(distances[parent], indices[parent], distances[child], indices[child])) {
+                return;
+            }
+            swap(parent, child);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int parent, int limit) {
+        while (true) {
+            int left = 2 * parent + 1;
+            if (left >= limit) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < limit && before(distances[left], indices[left], distances[right], indices[right])) {
+                worst = right;
+            }
+            if (!before(distances[parent], indices[parent], distances[worst], indices[worst])) {
+                return;
+            }
+            swap(parent, worst);
+            parent = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        double d = distances[i];
+        distances[i] = distances[j];
+        distances[j] = d;
+        int x = indices[i];
+        indices[i] = indices[j];
+        indices[j] = x;
+    }
+
+    private static boolean before(double d1, int i1, double d2, int i2) {
+        int cmp = Double.compare(d1, d2);
+        return cmp < 0 || (cmp == 0 && i1 < i2);
+    }
+}
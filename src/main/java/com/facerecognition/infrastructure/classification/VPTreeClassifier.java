@@ -0,0 +1,194 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Exact nearest-identity classifier backed by a vantage-point tree.
+ *
+ * <p>On the low-dimensional vectors produced by Eigenfaces and Fisherfaces
+ * (tens of components), most of the gallery lies far outside the distance
+ * of the current best matches, and a {@link VpTree} discards it a subtree at
+ * a time using the triangle inequality. A probe then evaluates a small
+ * fraction of the samples, and the fraction shrinks as the gallery grows.
+ * The ranking and distances are exactly those of {@link KNNClassifier}
+ * under {@link DistanceMetric#EUCLIDEAN} and
+ * {@link DistanceMetric#MANHATTAN}. The other metrics do not satisfy the
+ * triangle inequality; under them every probe scans all samples.</p>
+ *
+ * <p>Pruning weakens as the dimension grows, so on embeddings of a hundred
+ * or more dimensions the tree visits most of the gallery and
+ * {@link KNNClassifier} is usually faster.</p>
+ *
+ * <p>The tree is built by {@link #retrain()}, or lazily by the first probe
+ * after any {@link #enroll}, {@link #unenroll}, {@link #clear()} or metric
+ * change.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see VpTree
+ * @see FaceClassifier
+ */
+public class VPTreeClassifier extends AbstractFaceClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String NAME = "VPTree";
+
+    /** Default number of samples below which a subtree is scanned linearly. */
+    public static final int DEFAULT_LEAF_SIZE = 16;
+
+    private static final long TRAINING_SEED = 42L;
+
+    private final int leafSize;
+
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // Guarded by indexLock; null means it must be built from enrolledIdentities.
+    private transient VpTree index;
+
+    /**
+     * Creates a VP-tree classifier with default settings.
+     */
+    public VPTreeClassifier() {
+        this(new ClassifierConfig());
+    }
+
+    /**
+     * Creates a VP-tree classifier with the default leaf size.
+     *
+     * @param config the classifier configuration
+     */
+    public VPTreeClassifier(ClassifierConfig config) {
+        this(config, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Creates a VP-tree classifier with a custom leaf size.
+     *
+     * @param config the classifier configuration
+     * @param leafSize the largest subtree scanned linearly, at least 1
+     * @throws IllegalArgumentException if {@code leafSize} is below 1
+     */
+    public VPTreeClassifier(ClassifierConfig config, int leafSize) {
+        super(config);
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("leafSize must be at least 1: " + leafSize);
+        }
+        this.leafSize = leafSize;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * Rebuilds the tree from the enrolled samples.
+     */
+    @Override
+    public void retrain() {
+        indexLock.writeLock().lock();
+        try {
+            index = buildIndex();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void onEnrolled(Identity identity, Identity previous) {
+        invalidate();
+    }
+
+    @Override
+    protected void onUnenrolled(Identity identity) {
+        invalidate();
+    }
+
+    @Override
+    protected void onCleared() {
+        invalidate();
+    }
+
+    @Override
+    protected void onDistanceMetricChanged() {
+        invalidate();
+    }
+
+    @Override
+    protected Ranking rank(FeatureVector probe, int limit) {
+        indexLock.readLock().lock();
+        try {
+            if (index != null) {
+                return search(index, probe, limit);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        indexLock.writeLock().lock();
+        try {
+            if (index == null) {
+                index = buildIndex();
+            }
+            // Downgrade so concurrent probes are not held up by this search.
+            indexLock.readLock().lock();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        try {
+            return search(index, probe, limit);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private Ranking search(VpTree tree, FeatureVector probe, int limit) {
+        if (tree == null) {
+            return Ranking.EMPTY;
+        }
+        if (probe.getDimension() != tree.dimension()) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", probe.getDimension(), tree.dimension()));
+        }
+        return tree.search(probe.getFeatures(), probe.norm(), limit);
+    }
+
+    private void invalidate() {
+        indexLock.writeLock().lock();
+        try {
+            index = null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private VpTree buildIndex() {
+        List<Identity> identities = new ArrayList<>();
+        for (Identity identity : enrolledIdentities.values()) {
+            if (identity.hasSamples()) {
+                identities.add(identity);
+            }
+        }
+        if (identities.isEmpty()) {
+            return null;
+        }
+        return VpTree.build(identities, distanceMetric, leafSize, TRAINING_SEED);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VPTreeClassifier{leafSize=%d, metric=%s, enrolled=%d}",
+            leafSize, distanceMetric, enrolledIdentities.size());
+    }
+}
@@ -0,0 +1,386 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.DistanceKernels;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Vantage-point tree over enrolled sample vectors, stored in flat arrays.
+ *
+ * <p>The rows are reordered so that every subtree occupies a contiguous
+ * range {@code [lo, hi)}. The row at {@code lo} is the node's vantage point,
+ * chosen at random; rows {@code [lo + 1, split)} lie within
+ * {@code radius[lo]} of it and rows {@code [split, hi)} at or beyond it,
+ * where the radius is the median distance. Ranges of at most
+ * {@code leafSize} rows are leaves and are scanned linearly.</p>
+ *
+ * <p>A search keeps the {@code limit} nearest distinct identities found so
+ * far and the distance {@code tau} of the worst of them. By the triangle
+ * inequality, a row in the inside half is at least {@code d - radius} from
+ * the query and a row in the outside half at least {@code radius - d},
+ * where {@code d} is the query's distance to the vantage point; a half whose
+ * bound exceeds {@code tau} cannot improve the result and is skipped. Ties
+ * with {@code tau} are still visited, so identities are ranked by distance
+ * and then by ordinal exactly as {@link GalleryMatrix} ranks them. The
+ * distances come from the same kernels and match {@link KNNClassifier}'s
+ * bit for bit.</p>
+ *
+ * <p>Pruning needs a true metric, so only {@link DistanceMetric#EUCLIDEAN}
+ * and {@link DistanceMetric#MANHATTAN} build a tree. Under other metrics
+ * the rows stay in gallery order and every search scans them all.</p>
+ *
+ * <p>Immutable after {@link #build}; concurrent searches are safe.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see VPTreeClassifier
+ */
+final class VpTree {
+
+    // Relative slack on pruning bounds, so rounding in the distance kernels
+    // never prunes a row that ties with tau.
+    private static final double SLACK = 1e-9;
+
+    private final DistanceMetric metric;
+    private final Identity[] identities;
+    private final int dimension;
+    private final int leafSize;
+    private final boolean tree;
+    // Rows in tree order.
+    private final double[] data;
+    private final double[] norms;
+    private final int[] owners;
+    // Per internal node, indexed by the vantage row.
+    private final double[] radii;
+    private final int[] splits;
+
+    private VpTree(DistanceMetric metric, Identity[] identities, int dimension, int leafSize, boolean tree,
+                   double[] data, double[] norms, int[] owners, double[] radii, int[] splits) {
+        this.metric = metric;
+        this.identities = identities;
+        this.dimension = dimension;
+        this.leafSize = leafSize;
+        this.tree = tree;
+        this.data = data;
+        this.norms = norms;
+        this.owners = owners;
+        this.radii = radii;
+        this.splits = splits;
+    }
+
+    /**
+     * Whether searches under the metric can prune with a tree.
+     *
+     * @param metric the distance metric
+     * @return true for metrics that satisfy the triangle inequality
+     */
+    static boolean supports(DistanceMetric metric) {
+        return metric == DistanceMetric.EUCLIDEAN || metric == DistanceMetric.MANHATTAN;
+    }
+
+    /**
+     * Packs every sample of the identities and builds the tree.
+     *
+     * @param enrolled the identities to index; ordinals follow iteration order
+     * @param metric the distance metric
+     * @param leafSize the largest range scanned linearly, at least 1
+     * @param seed seed for the vantage point choices
+     * @return the tree
+     * @throws IllegalArgumentException if there are no samples or they do not share one dimension
+     */
+    static VpTree build(Collection<Identity> enrolled, DistanceMetric metric, int leafSize, long seed) {
+        List<Identity> withSamples = new ArrayList<>(enrolled.size());
+        int rows = 0;
+        for (Identity identity : enrolled) {
+            if (identity.hasSamples()) {
+                withSamples.add(identity);
+                rows += identity.getSampleCount();
+            }
+        }
+        if (rows == 0) {
+            throw new IllegalArgumentException("Cannot build on an empty gallery");
+        }
+
+        Identity[] identities = withSamples.toArray(new Identity[0]);
+        int dimension = identities[0].getSamples().get(0).getFeatures().getDimension();
+        double[] packed = new double[Math.multiplyExact(rows, dimension)];
+        double[] packedNorms = new double[rows];
+        int[] packedOwners = new int[rows];
+        int row = 0;
+        for (int i = 0; i < identities.length; i++) {
+            for (Identity.EnrolledSample sample : identities[i].getSamples()) {
+                FeatureVector features = sample.getFeatures();
+                if (features.getDimension() != dimension) {
+                    throw new IllegalArgumentException(String.format(
+                        "Dimension mismatch: %d vs %d", dimension, features.getDimension()));
+                }
+                features.copyInto(packed, row * dimension);
+                packedNorms[row] = features.norm();
+                packedOwners[row] = i;
+                row++;
+            }
+        }
+
+        boolean tree = supports(metric);
+        int[] order = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            order[r] = r;
+        }
+        double[] radii = new double[tree ? rows : 0];
+        int[] splits = new int[tree ? rows : 0];
+        if (tree) {
+            new Builder(metric, packed, dimension, leafSize, order, radii, splits, new SplittableRandom(seed))
+                .build(0, rows);
+        }
+
+        double[] data = new double[packed.length];
+        double[] norms = new double[rows];
+        int[] owners = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(packed, order[r] * dimension, data, r * dimension, dimension);
+            norms[r] = packedNorms[order[r]];
+            owners[r] = packedOwners[order[r]];
+        }
+        return new VpTree(metric, identities, dimension, leafSize, tree, data, norms, owners, radii, splits);
+    }
+
+    /**
+     * @return the number of indexed samples
+     */
+    int size() {
+        return owners.length;
+    }
+
+    /**
+     * @return the vector dimension
+     */
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Finds the active identities nearest to the query.
+     *
+     * @param query the query vector
+     * @param queryNorm the query's L2 norm
+     * @param limit the maximum number of identities to return
+     * @return the ranking
+     */
+    AbstractFaceClassifier.Ranking search(double[] query, double queryNorm, int limit) {
+        int width = Math.min(limit, identities.length);
+        if (width <= 0) {
+            return AbstractFaceClassifier.Ranking.EMPTY;
+        }
+        NearestOwners nearest = new NearestOwners(width);
+        if (tree) {
+            search(query, queryNorm, 0, owners.length, nearest);
+        } else {
+            scan(query, queryNorm, 0, owners.length, nearest);
+        }
+
+        TopKSelector selector = new TopKSelector(nearest.size);
+        for (int i = 0; i < nearest.size; i++) {
+            selector.offer(nearest.owners[i], nearest.distances[i]);
+        }
+        double[] distances = new double[selector.size()];
+        int[] order = selector.drainAscending(distances);
+        Identity[] ranked = new Identity[order.length];
+        for (int r = 0; r < order.length; r++) {
+            ranked[r] = identities[order[r]];
+        }
+        return new AbstractFaceClassifier.Ranking(ranked, distances);
+    }
+
+    private void search(double[] query, double queryNorm, int lo, int hi, NearestOwners nearest) {
+        if (hi - lo <= leafSize) {
+            scan(query, queryNorm, lo, hi, nearest);
+            return;
+        }
+        double d = distance(query, queryNorm, lo);
+        nearest.offer(owners[lo], d, identities);
+        double radius = radii[lo];
+        int split = splits[lo];
+        double slack = SLACK * (d + radius);
+        if (d < radius) {
+            search(query, queryNorm, lo + 1, split, nearest);
+            if (radius - d - slack <= nearest.tau()) {
+                search(query, queryNorm, split, hi, nearest);
+            }
+        } else {
+            search(query, queryNorm, split, hi, nearest);
+            if (d - radius - slack <= nearest.tau()) {
+                search(query, queryNorm, lo + 1, split, nearest);
+            }
+        }
+    }
+
+    private void scan(double[] query, double queryNorm, int from, int to, NearestOwners nearest) {
+        for (int row = from; row < to; row++) {
+            nearest.offer(owners[row], distance(query, queryNorm, row), identities);
+        }
+    }
+
+    private double distance(double[] query, double queryNorm, int row) {
+        return GalleryMatrix.distance(metric, query, 0, queryNorm, data, row * dimension, norms[row], dimension);
+    }
+
+    /**
+     * The {@code k} nearest distinct active identities seen so far, each with
+     * its smallest distance. {@code k} is small, so membership is a linear scan.
+     */
+    private static final class NearestOwners {
+
+        private final int[] owners;
+        private final double[] distances;
+        private int size;
+        private int worst;
+
+        NearestOwners(int k) {
+            this.owners = new int[k];
+            this.distances = new double[k];
+        }
+
+        double tau() {
+            return size == owners.length ? distances[worst] : Double.POSITIVE_INFINITY;
+        }
+
+        void offer(int owner, double distance, Identity[] identities) {
+            boolean full = size == owners.length;
+            if (full && (!before(distance, owner, distances[worst], owners[worst]))) {
+                return;
+            }
+            if (!identities[owner].isActive()) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (owners[i] == owner) {
+                    if (distance < distances[i]) {
+                        distances[i] = distance;
+                        if (i == worst) {
+                            findWorst();
+                        }
+                    }
+                    return;
+                }
+            }
+            if (full) {
+                owners[worst] = owner;
+                distances[worst] = distance;
+            } else {
+                owners[size] = owner;
+                distances[size] = distance;
+                size++;
+            }
+            findWorst();
+        }
+
+        private void findWorst() {
+            worst = 0;
+            for (int i = 1; i < size; i++) {
+                if (before(distances[worst], owners[worst], distances[i], owners[i])) {
+                    worst = i;
+                }
+            }
+        }
+
+        private static boolean before(double distance, int owner, double otherDistance, int otherOwner) {
+            int c = Double.compare(distance, otherDistance);
+            return c < 0 || (c == 0 && owner < otherOwner);
+        }
+    }
+
+    /**
+     * Recursively picks vantage points and partitions {@code order} around
+     * their median distance.
+     */
+    private static final class Builder {
+
+        private final DistanceMetric metric;
+        private final double[] data;
+        private final int dimension;
+        private final int leafSize;
+        private final int[] order;
+        private final double[] radii;
+        private final int[] splits;
+        private final SplittableRandom random;
+        private final double[] scratch;
+
+        Builder(DistanceMetric metric, double[] data, int dimension, int leafSize, int[] order,
+                double[] radii, int[] splits, SplittableRandom random) {
+            this.metric = metric;
+            this.data = data;
+            this.dimension = dimension;
+            this.leafSize = leafSize;
+            this.order = order;
+            this.radii = radii;
+            this.splits = splits;
+            this.random = random;
+            this.scratch = new double[order.length];
+        }
+
+        void build(int lo, int hi) {
+            if (hi - lo <= leafSize) {
+                return;
+            }
+            swap(lo, lo + random.nextInt(hi - lo));
+            int vantage = order[lo] * dimension;
+            for (int i = lo + 1; i < hi; i++) {
+                scratch[i] = metric == DistanceMetric.MANHATTAN
+                    ? DistanceKernels.manhattan(data, vantage, data, order[i] * dimension, dimension)
+                    : DistanceKernels.euclidean(data, vantage, data, order[i] * dimension, dimension);
+            }
+            int split = (lo + 1 + hi) >>> 1;
+            select(lo + 1, hi, split);
+            radii[lo] = scratch[split];
+            splits[lo] = split;
+            build(lo + 1, split);
+            build(split, hi);
+        }
+
+        // Quickselect: afterwards scratch[k] holds the value that belongs at k,
+        // smaller-or-equal values before it and greater-or-equal after.
+        private void select(int from, int to, int k) {
+            int left = from;
+            int right = to - 1;
+            while (left < right) {
+                double pivot = scratch[left + random.nextInt(right - left + 1)];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (scratch[i] < pivot) {
+                        i++;
+                    }
+                    while (scratch[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = order[a];
+            order[a] = order[b];
+            order[b] = row;
+            double distance = scratch[a];
+            scratch[a] = scratch[b];
+            scratch[b] = distance;
+        }
+    }
+}
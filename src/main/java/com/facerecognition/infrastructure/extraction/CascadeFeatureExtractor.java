@@ -0,0 +1,158 @@
+package com.facerecognition.infrastructure.extraction;
+
+import com.facerecognition.domain.model.FaceImage;
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.service.FeatureExtractor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Feature extractor that runs a cheap and an expensive extractor on the same
+ * face and joins their outputs into one vector.
+ *
+ * <p>The first {@link #getCoarseDimension()} values come from the coarse
+ * extractor, typically a 10-component Eigenfaces projection, and the rest
+ * from the fine one, typically LBPH histograms. Each enrolled sample of an
+ * {@link com.facerecognition.domain.model.Identity} therefore carries both
+ * representations, and a
+ * {@link com.facerecognition.infrastructure.classification.CascadeClassifier}
+ * splits them again: it shortlists the gallery on the coarse values and
+ * re-ranks only the shortlist on the fine ones.</p>
+ *
+ * <p>The joined vector is sparse when the fine extractor's output is, so
+ * LBPH histograms keep their sparse storage. Classifiers that are not
+ * cascade-aware compare the joined vectors as a whole, which mixes the two
+ * scales; pair this extractor with a {@code CascadeClassifier}.</p>
+ *
+ * <h3>Usage Example:</h3>
+ * <pre>{@code
+ * CascadeFeatureExtractor extractor = new CascadeFeatureExtractor(
+ *     new EigenfacesExtractor(10), new LBPHExtractor());
+ * extractor.train(trainingFaces, labels);
+ * FaceClassifier classifier = new CascadeClassifier(config, extractor::getCoarseDimension, 50);
+ * }</pre>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see com.facerecognition.infrastructure.classification.CascadeClassifier
+ */
+public class CascadeFeatureExtractor implements FeatureExtractor, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Separates the coarse and fine algorithm names in {@link #getAlgorithmName()}. */
+    public static final String ALGORITHM_SEPARATOR = ">";
+
+    private final FeatureExtractor coarse;
+    private final FeatureExtractor fine;
+
+    /**
+     * Creates a cascaded extractor.
+     *
+     * @param coarse the cheap, low-dimensional extractor used to shortlist
+     * @param fine the discriminative extractor used to re-rank the shortlist
+     */
+    public CascadeFeatureExtractor(FeatureExtractor coarse, FeatureExtractor fine) {
+        this.coarse = Objects.requireNonNull(coarse, "Coarse extractor cannot be null");
+        this.fine = Objects.requireNonNull(fine, "Fine extractor cannot be null");
+    }
+
+    @Override
+    public void train(List<FaceImage> faces, List<String> labels) {
+        if (faces == null || faces.isEmpty()) {
+            throw new IllegalArgumentException("Training set cannot be empty");
+        }
+        coarse.train(faces, labels);
+        fine.train(faces, labels);
+    }
+
+    @Override
+    public boolean isTrained() {
+        return coarse.isTrained() && fine.isTrained();
+    }
+
+    @Override
+    public boolean isTrainingFree() {
+        return coarse.isTrainingFree() && fine.isTrainingFree();
+    }
+
+    @Override
+    public FeatureVector extract(FaceImage face) {
+        if (!isTrained()) {
+            throw new IllegalStateException("Extractor not trained");
+        }
+        return FeatureVector.concat(coarse.extract(face), fine.extract(face), getAlgorithmName(), getVersion());
+    }
+
+    @Override
+    public int getFeatureDimension() {
+        return coarse.getFeatureDimension() + fine.getFeatureDimension();
+    }
+
+    /**
+     * Gets the number of leading values that hold the coarse representation.
+     *
+     * @return the coarse extractor's current dimension
+     */
+    public int getCoarseDimension() {
+        return coarse.getFeatureDimension();
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return coarse.getAlgorithmName() + ALGORITHM_SEPARATOR + fine.getAlgorithmName();
+    }
+
+    @Override
+    public int getVersion() {
+        return fine.getVersion();
+    }
+
+    @Override
+    public int[] getExpectedImageSize() {
+        return fine.getExpectedImageSize();
+    }
+
+    @Override
+    public void reset() {
+        coarse.reset();
+        fine.reset();
+    }
+
+    /**
+     * Gets the coarse extractor's configuration, whose component count sets
+     * the size of the shortlist representation.
+     *
+     * @return the coarse extractor's configuration
+     */
+    @Override
+    public ExtractorConfig getConfig() {
+        return coarse.getConfig();
+    }
+
+    /**
+     * Gets the extractor used to shortlist.
+     *
+     * @return the coarse extractor
+     */
+    public FeatureExtractor getCoarse() {
+        return coarse;
+    }
+
+    /**
+     * Gets the extractor used to re-rank the shortlist.
+     *
+     * @return the fine extractor
+     */
+    public FeatureExtractor getFine() {
+        return fine;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CascadeFeatureExtractor{coarse=%s, fine=%s}", coarse, fine);
+    }
+}
@@ -346,7 +346,7 @@ public class EigenfacesExtractor implements FeatureExtractor, Serializable {
             }
         }
 
-        return new FeatureVector(coefficients, ALGORITHM_NAME, VERSION);
+        return FeatureVector.of(coefficients, ALGORITHM_NAME, VERSION, config.getFeaturePrecision());
     }
 
     @Override
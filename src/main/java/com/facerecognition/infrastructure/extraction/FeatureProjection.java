@@ -0,0 +1,309 @@
+package com.facerecognition.infrastructure.extraction;
+
+import com.facerecognition.domain.model.FeatureVector;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A PCA projection from high-dimensional feature vectors to a few hundred
+ * dimensions, computed as {@code y = Wᵀ(x - μ)}.
+ *
+ * <p>The columns of {@code W} are the leading principal components of a
+ * set of training vectors, found with the Gram-matrix trick used by
+ * {@link EigenfacesExtractor}: the {@code n x n} matrix of centred inner
+ * products is decomposed instead of the {@code d x d} covariance, and its
+ * eigenvectors are mapped back to feature space. Inner products of sparse
+ * samples use the sparse distance kernels, so fitting never expands them
+ * all at once.</p>
+ *
+ * <p>{@code W} is held input-major, one row of {@code k} weights per input
+ * dimension, and {@code Wᵀμ} is precomputed. A sparse input such as an LBPH
+ * histogram is therefore projected by adding up the rows of its non-zero
+ * positions only, without expanding it.</p>
+ *
+ * <p>Instances are immutable and thread-safe.</p>
+ *
+ * @author Prasad Subrahmanya
+ * @version 2.0
+ * @since 2.1
+ * @see ProjectedFeatureExtractor
+ */
+public final class FeatureProjection implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Components whose variance is below this fraction of the largest are dropped. */
+    private static final double RELATIVE_EIGENVALUE_THRESHOLD = 1e-10;
+
+    /** PCA is fitted on at most this many vectors, spread evenly over the input. */
+    static final int MAX_FIT_SAMPLES = 2000;
+
+    private final int inputDimension;
+    private final int outputDimension;
+    private final double[] mean;
+    // Row j holds the k weights of input dimension j.
+    private final double[] weights;
+    // Wᵀμ, subtracted from every projection.
+    private final double[] offset;
+
+    private FeatureProjection(double[] mean, double[] weights, int outputDimension) {
+        this.inputDimension = mean.length;
+        this.outputDimension = outputDimension;
+        this.mean = mean;
+        this.weights = weights;
+        this.offset = new double[outputDimension];
+        addRows(offset, DoubleBuffer.wrap(mean));
+    }
+
+    /**
+     * Fits a PCA projection onto the leading principal components of the
+     * given vectors.
+     *
+     * <p>At most {@code samples.size() - 1} components carry variance, so
+     * fewer than {@code maxComponents} are kept when there are few samples.
+     * Beyond {@value #MAX_FIT_SAMPLES} samples, an evenly spaced subset is
+     * used.</p>
+     *
+     * @param samples the training vectors, all of one dimension
+     * @param maxComponents the largest number of components to keep
+     * @return the projection
+     * @throws IllegalArgumentException if there are fewer than two samples,
+     *         their dimensions differ, or they have no variance
+     */
+    public static FeatureProjection fit(List<FeatureVector> samples, int maxComponents) {
+        Objects.requireNonNull(samples, "Samples cannot be null");
+        if (maxComponents < 1) {
+            throw new IllegalArgumentException("Projection dimension must be positive");
+        }
+        List<FeatureVector> fit = subsample(samples);
+        int n = fit.size();
+        if (n < 2) {
+            throw new IllegalArgumentException("PCA projection needs at least two training vectors");
+        }
+        int dimension = fit.get(0).getDimension();
+
+        // Step 1: mean vector
+        double[] mean = new double[dimension];
+        for (FeatureVector sample : fit) {
+            if (sample.getDimension() != dimension) {
+                throw new IllegalArgumentException(String.format(
+                    "Dimension mismatch: %d vs %d", dimension, sample.getDimension()));
+            }
+            int[] indices = sample.getNonZeroIndices();
+            double[] values = sample.getNonZeroValues();
+            for (int k = 0; k < indices.length; k++) {
+                mean[indices[k]] += values[k];
+            }
+        }
+        for (int j = 0; j < dimension; j++) {
+            mean[j] /= n;
+        }
+
+        // Step 2: centred Gram matrix, (x_i - μ)·(x_j - μ) = x_i·x_j - μ·x_i - μ·x_j + μ·μ
+        FeatureVector meanVector = new FeatureVector(mean);
+        double[] meanDots = new double[n];
+        for (int i = 0; i < n; i++) {
+            meanDots[i] = fit.get(i).dot(meanVector);
+        }
+        double meanSquared = meanVector.dot(meanVector);
+        double[][] gram = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                double value = fit.get(i).dot(fit.get(j)) - meanDots[i] - meanDots[j] + meanSquared;
+                gram[i][j] = value;
+                gram[j][i] = value;
+            }
+        }
+
+        // Step 3: eigenvectors of the Gram matrix, largest eigenvalue first
+        EigenvalueDecomposition eigen = new Matrix(gram).eig();
+        double[] eigenValues = eigen.getRealEigenvalues();
+        double[][] eigenVectors = eigen.getV().getArray();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(eigenValues[b], eigenValues[a]));
+        double largest = eigenValues[order[0]];
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < n && kept.size() < maxComponents; i++) {
+            if (eigenValues[order[i]] > largest * RELATIVE_EIGENVALUE_THRESHOLD && eigenValues[order[i]] > 0) {
+                kept.add(order[i]);
+            }
+        }
+        if (kept.isEmpty()) {
+            throw new IllegalArgumentException("Training vectors have no variance");
+        }
+        int k = kept.size();
+
+        // Step 4: map back to feature space, w_c = Σ_i v_ic (x_i - μ), then normalise
+        double[] weights = new double[Math.multiplyExact(dimension, k)];
+        double[] coefficients = new double[k];
+        double[] coefficientSums = new double[k];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < k; c++) {
+                coefficients[c] = eigenVectors[i][kept.get(c)];
+                coefficientSums[c] += coefficients[c];
+            }
+            FeatureVector sample = fit.get(i);
+            int[] indices = sample.getNonZeroIndices();
+            double[] values = sample.getNonZeroValues();
+            for (int p = 0; p < indices.length; p++) {
+                axpy(values[p], coefficients, 0, weights, indices[p] * k, k);
+            }
+        }
+        double[] norms = new double[k];
+        for (int j = 0; j < dimension; j++) {
+            int row = j * k;
+            for (int c = 0; c < k; c++) {
+                double w = weights[row + c] - coefficientSums[c] * mean[j];
+                weights[row + c] = w;
+                norms[c] += w * w;
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            norms[c] = norms[c] > 0 ? 1.0 / Math.sqrt(norms[c]) : 0.0;
+        }
+        for (int j = 0; j < dimension; j++) {
+            int row = j * k;
+            for (int c = 0; c < k; c++) {
+                weights[row + c] *= norms[c];
+            }
+        }
+        return new FeatureProjection(mean, weights, k);
+    }
+
+    /**
+     * Rebuilds a projection from its mean and components, as returned
+     * by {@link #getMean()} and {@link #getComponents()}.
+     *
+     * @param mean the mean vector
+     * @param components one row of component weights per input dimension
+     * @return the projection
+     * @throws IllegalArgumentException if the shapes do not agree
+     */
+    public static FeatureProjection of(double[] mean, double[][] components) {
+        Objects.requireNonNull(mean, "Mean cannot be null");
+        Objects.requireNonNull(components, "Components cannot be null");
+        if (components.length != mean.length || components.length == 0 || components[0].length == 0) {
+            throw new IllegalArgumentException("Components must have one non-empty row per mean dimension");
+        }
+        int k = components[0].length;
+        double[] weights = new double[Math.multiplyExact(mean.length, k)];
+        for (int j = 0; j < components.length; j++) {
+            if (components[j].length != k) {
+                throw new IllegalArgumentException("Component rows have inconsistent lengths");
+            }
+            System.arraycopy(components[j], 0, weights, j * k, k);
+        }
+        return new FeatureProjection(mean.clone(), weights, k);
+    }
+
+    /**
+     * Projects a feature vector.
+     *
+     * @param features the vector to project
+     * @param algorithmName the algorithm name to give the result
+     * @param algorithmVersion the algorithm version to give the result
+     * @return a dense vector of {@link #getOutputDimension()} values
+     * @throws IllegalArgumentException if the vector has the wrong dimension
+     */
+    public FeatureVector project(FeatureVector features, String algorithmName, int algorithmVersion) {
+        if (features.getDimension() != inputDimension) {
+            throw new IllegalArgumentException(String.format(
+                "Dimension mismatch: %d vs %d", features.getDimension(), inputDimension));
+        }
+        double[] projected = new double[outputDimension];
+        if (features.isSparse()) {
+            int[] indices = features.getNonZeroIndices();
+            double[] values = features.getNonZeroValues();
+            for (int p = 0; p < indices.length; p++) {
+                axpy(values[p], weights, indices[p] * outputDimension, projected, 0, outputDimension);
+            }
+        } else {
+            addRows(projected, features.asReadOnlyBuffer());
+        }
+        for (int c = 0; c < outputDimension; c++) {
+            projected[c] -= offset[c];
+        }
+        return new FeatureVector(projected, algorithmName, algorithmVersion);
+    }
+
+    // target += Wᵀ x, skipping zeros
+    private void addRows(double[] target, DoubleBuffer x) {
+        for (int j = 0; j < x.limit(); j++) {
+            double value = x.get(j);
+            if (value != 0) {
+                axpy(value, weights, j * outputDimension, target, 0, outputDimension);
+            }
+        }
+    }
+
+    // target[to..to + length) += scale * source[from..from + length)
+    private static void axpy(double scale, double[] source, int from, double[] target, int to, int length) {
+        for (int c = 0; c < length; c++) {
+            target[to + c] += scale * source[from + c];
+        }
+    }
+
+    private static List<FeatureVector> subsample(List<FeatureVector> samples) {
+        if (samples.size() <= MAX_FIT_SAMPLES) {
+            return samples;
+        }
+        List<FeatureVector> fit = new ArrayList<>(MAX_FIT_SAMPLES);
+        for (int i = 0; i < MAX_FIT_SAMPLES; i++) {
+            fit.add(samples.get((int) ((long) i * samples.size() / MAX_FIT_SAMPLES)));
+        }
+        return fit;
+    }
+
+    /**
+     * @return the dimension of the vectors it projects
+     */
+    public int getInputDimension() {
+        return inputDimension;
+    }
+
+    /**
+     * @return the dimension of the projected vectors
+     */
+    public int getOutputDimension() {
+        return outputDimension;
+    }
+
+    /**
+     * Gets the mean subtracted before projecting.
+     *
+     * @return a copy of the mean
+     */
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * Gets the projection weights, one row of {@link #getOutputDimension()}
+     * component weights per input dimension.
+     *
+     * @return a copy of the weights
+     */
+    public double[][] getComponents() {
+        double[][] components = new double[inputDimension][];
+        for (int j = 0; j < inputDimension; j++) {
+            components[j] = Arrays.copyOfRange(weights, j * outputDimension, (j + 1) * outputDimension);
+        }
+        return components;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FeatureProjection{%d -> %d}", inputDimension, outputDimension);
+    }
+}
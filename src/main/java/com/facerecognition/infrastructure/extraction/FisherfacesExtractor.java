@@ -419,7 +419,7 @@ public class FisherfacesExtractor implements FeatureExtractor, Serializable {
             }
         }
 
-        return new FeatureVector(coefficients, ALGORITHM_NAME, VERSION);
+        return FeatureVector.of(coefficients, ALGORITHM_NAME, VERSION, config.getFeaturePrecision());
     }
 
     @Override
@@ -39,6 +39,18 @@ import java.util.Objects;
  *   <li>Computationally efficient</li>
  * </ul>
  *
+ * <h3>Uniform Patterns:</h3>
+ * <p>Codes with at most two 0/1 transitions around the circle (see
+ * {@link #isUniform(int)}) are the 58 "uniform" patterns, and they account
+ * for most codes in face images. In uniform mode each uniform code gets its
+ * own bin and all other codes share one, giving 59 bins per region instead
+ * of 256: 3,776 dimensions at the default 8x8 grid instead of 16,384.</p>
+ *
+ * <p>A region has far fewer pixels than the 256 bins of its histogram, so
+ * most bins are empty. Features are therefore returned as
+ * {@linkplain FeatureVector#isSparse() sparse} vectors that keep only the
+ * non-zero bins.</p>
+ *
  * @author Prasad Subrahmanya
  * @version 2.0
  * @since 2.0
@@ -54,11 +66,18 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
     /** Number of histogram bins (2^8 = 256 for 8 neighbors). */
     private static final int NUM_BINS = 256;
 
+    /** Number of histogram bins in uniform mode: 58 uniform patterns plus one for the rest. */
+    private static final int UNIFORM_BINS = 59;
+
+    /** Maps each LBP code to its uniform-mode bin. */
+    private static final int[] UNIFORM_LABELS = uniformLabels();
+
     private final ExtractorConfig config;
     private final int gridX;
     private final int gridY;
     private final int radius;
     private final int neighbors;
+    private final boolean uniform;
 
     private boolean initialized;
 
@@ -79,6 +98,20 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
      * @param neighbors number of neighbors to sample
      */
     public LBPHExtractor(int gridX, int gridY, int radius, int neighbors) {
+        this(gridX, gridY, radius, neighbors, false);
+    }
+
+    /**
+     * Creates an LBPH extractor with custom grid and LBP parameters,
+     * optionally histogramming uniform patterns only.
+     *
+     * @param gridX number of horizontal grid divisions
+     * @param gridY number of vertical grid divisions
+     * @param radius radius for neighbor sampling
+     * @param neighbors number of neighbors to sample
+     * @param uniform whether to use 59 uniform-pattern bins per region instead of 256
+     */
+    public LBPHExtractor(int gridX, int gridY, int radius, int neighbors, boolean uniform) {
         if (gridX < 1 || gridY < 1) {
             throw new IllegalArgumentException("Grid dimensions must be positive");
         }
@@ -90,11 +123,12 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
         }
 
         this.config = new ExtractorConfig()
-            .setNumComponents(gridX * gridY * NUM_BINS);
+            .setNumComponents(gridX * gridY * (uniform ? UNIFORM_BINS : NUM_BINS));
         this.gridX = gridX;
         this.gridY = gridY;
         this.radius = radius;
         this.neighbors = neighbors;
+        this.uniform = uniform;
         this.initialized = true; // LBPH doesn't need training
     }
 
@@ -113,6 +147,11 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
         return initialized;
     }
 
+    @Override
+    public boolean isTrainingFree() {
+        return true;
+    }
+
     @Override
     public FeatureVector extract(FaceImage face) {
         if (!initialized) {
@@ -141,7 +180,7 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
             normalizeHistogram(histogram);
         }
 
-        return new FeatureVector(histogram, ALGORITHM_NAME, VERSION);
+        return FeatureVector.sparse(histogram, ALGORITHM_NAME, VERSION);
     }
 
     private int[][] toGrayscaleMatrix(FaceImage face) {
@@ -187,7 +226,7 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
                     }
                 }
 
-                lbp[y][x] = lbpCode;
+                lbp[y][x] = uniform ? UNIFORM_LABELS[lbpCode] : lbpCode;
             }
         }
 
@@ -224,11 +263,12 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
     private double[] computeRegionHistograms(int[][] lbp, int width, int height) {
         int regionWidth = width / gridX;
         int regionHeight = height / gridY;
-        double[] histogram = new double[gridX * gridY * NUM_BINS];
+        int bins = getBinsPerRegion();
+        double[] histogram = new double[gridX * gridY * bins];
 
         for (int gy = 0; gy < gridY; gy++) {
             for (int gx = 0; gx < gridX; gx++) {
-                int regionIdx = (gy * gridX + gx) * NUM_BINS;
+                int regionIdx = (gy * gridX + gx) * bins;
 
                 int startX = gx * regionWidth;
                 int startY = gy * regionHeight;
@@ -249,16 +289,17 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
 
     private void normalizeHistogram(double[] histogram) {
         // Normalize each region's histogram independently
+        int bins = getBinsPerRegion();
         for (int region = 0; region < gridX * gridY; region++) {
-            int start = region * NUM_BINS;
+            int start = region * bins;
             double sum = 0;
 
-            for (int i = 0; i < NUM_BINS; i++) {
+            for (int i = 0; i < bins; i++) {
                 sum += histogram[start + i];
             }
 
             if (sum > 0) {
-                for (int i = 0; i < NUM_BINS; i++) {
+                for (int i = 0; i < bins; i++) {
                     histogram[start + i] /= sum;
                 }
             }
@@ -267,7 +308,7 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
 
     @Override
     public int getFeatureDimension() {
-        return gridX * gridY * NUM_BINS;
+        return gridX * gridY * getBinsPerRegion();
     }
 
     @Override
@@ -323,6 +364,24 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
         return neighbors;
     }
 
+    /**
+     * Whether histograms use uniform-pattern bins.
+     *
+     * @return true if each region has 59 uniform-pattern bins, false for 256
+     */
+    public boolean isUniformPatterns() {
+        return uniform;
+    }
+
+    /**
+     * Gets the number of histogram bins per grid region.
+     *
+     * @return 59 in uniform mode, otherwise 256
+     */
+    public int getBinsPerRegion() {
+        return uniform ? UNIFORM_BINS : NUM_BINS;
+    }
+
     /**
      * Computes the uniform LBP pattern.
      * Uniform patterns have at most 2 bitwise transitions.
@@ -350,9 +409,22 @@ public class LBPHExtractor implements FeatureExtractor, Serializable {
         return transitions <= 2;
     }
 
+    /**
+     * Numbers the uniform codes 0-57 in ascending order and maps every
+     * other code to the shared bin 58.
+     */
+    private static int[] uniformLabels() {
+        int[] labels = new int[NUM_BINS];
+        int next = 0;
+        for (int code = 0; code < NUM_BINS; code++) {
+            labels[code] = isUniform(code) ? next++ : UNIFORM_BINS - 1;
+        }
+        return labels;
+    }
+
     @Override
     public String toString() {
-        return String.format("LBPHExtractor{grid=%dx%d, radius=%d, neighbors=%d, dim=%d}",
-            gridX, gridY, radius, neighbors, getFeatureDimension());
+        return String.format("LBPHExtractor{grid=%dx%d, radius=%d, neighbors=%d, uniform=%b, dim=%d}",
+            gridX, gridY, radius, neighbors, uniform, getFeatureDimension());
     }
 }
@@ -98,6 +98,12 @@ public class OnnxDeepFeatureExtractor implements FeatureExtractor, Serializable
         return modelLoaded;
     }
 
+    // The weights are fixed; extract() loads them on first use.
+    @Override
+    public boolean isTrainingFree() {
+        return true;
+    }
+
     @Override
     public FeatureVector extract(FaceImage face) {
         ensureModelLoaded();
@@ -1,5 +1,6 @@
 package com.facerecognition.infrastructure.persistence;
 
+import com.facerecognition.domain.model.FeaturePrecision;
 import com.facerecognition.domain.model.FeatureVector;
 import com.facerecognition.domain.model.Identity;
 
@@ -421,7 +422,7 @@ public class TrainedModel implements Serializable {
             if (ei.getIdentityId() == null || ei.getIdentityId().trim().isEmpty()) {
                 errors.add("Enrolled identity at index " + i + " has no ID");
             }
-            if (ei.getFeatureVectorData() == null || ei.getFeatureVectorData().length == 0) {
+            if (ei.getDimension() == 0) {
                 errors.add("Enrolled identity " + ei.getIdentityId() + " has no feature vector");
             }
         }
@@ -498,18 +499,24 @@ public class TrainedModel implements Serializable {
 
     /**
      * Represents an enrolled identity stored within the model.
-     * Contains the identity's feature vector for recognition.
+     * Contains the identity's feature vector for recognition, kept in
+     * single precision when the vector was, so such models are half the size.
      */
     public static class EnrolledIdentity implements Serializable {
         private static final long serialVersionUID = 1L;
 
         private final String identityId;
         private final String identityName;
+        // Exactly one of the two holds the values; models saved before
+        // single precision existed always use featureVectorData.
         private final double[] featureVectorData;
+        private final float[] featureVectorSingles;
         private final String algorithmName;
         private final int algorithmVersion;
         private final long enrolledAtMillis;
         private final Map<String, String> metadata;
+        // Absent from models saved before partitions existed.
+        private final String partition;
 
         /**
          * Creates an EnrolledIdentity from an Identity and its feature vector.
@@ -520,11 +527,18 @@ public class TrainedModel implements Serializable {
         public EnrolledIdentity(Identity identity, FeatureVector featureVector) {
             this.identityId = identity.getId();
             this.identityName = identity.getName();
-            this.featureVectorData = featureVector.getFeatures();
+            if (featureVector.getPrecision() == FeaturePrecision.FLOAT32) {
+                this.featureVectorData = null;
+                this.featureVectorSingles = featureVector.getFloatFeatures();
+            } else {
+                this.featureVectorData = featureVector.getFeatures();
+                this.featureVectorSingles = null;
+            }
             this.algorithmName = featureVector.getAlgorithmName();
             this.algorithmVersion = featureVector.getAlgorithmVersion();
             this.enrolledAtMillis = System.currentTimeMillis();
             this.metadata = new HashMap<>(identity.getAllMetadata());
+            this.partition = identity.getPartition();
         }
 
         /**
@@ -541,10 +555,12 @@ public class TrainedModel implements Serializable {
             this.identityId = identityId;
             this.identityName = identityName;
             this.featureVectorData = Arrays.copyOf(featureVectorData, featureVectorData.length);
+            this.featureVectorSingles = null;
             this.algorithmName = algorithmName;
             this.algorithmVersion = algorithmVersion;
             this.enrolledAtMillis = System.currentTimeMillis();
             this.metadata = new HashMap<>();
+            this.partition = Identity.DEFAULT_PARTITION;
         }
 
         /**
@@ -566,23 +582,54 @@ public class TrainedModel implements Serializable {
         }
 
         /**
-         * Gets the feature vector data.
+         * Gets the feature vector data, widened to double if stored in single precision.
          *
          * @return a copy of the feature vector array
          */
         public double[] getFeatureVectorData() {
+            if (featureVectorSingles != null) {
+                double[] widened = new double[featureVectorSingles.length];
+                for (int i = 0; i < widened.length; i++) {
+                    widened[i] = featureVectorSingles[i];
+                }
+                return widened;
+            }
             return Arrays.copyOf(featureVectorData, featureVectorData.length);
         }
 
         /**
-         * Gets the feature vector as a FeatureVector object.
+         * Gets the feature vector as a FeatureVector object, at the precision it was stored in.
          *
          * @return a new FeatureVector instance
          */
         public FeatureVector getFeatureVector() {
+            if (featureVectorSingles != null) {
+                return FeatureVector.ofFloats(featureVectorSingles, algorithmName, algorithmVersion);
+            }
             return new FeatureVector(featureVectorData, algorithmName, algorithmVersion);
         }
 
+        /**
+         * Gets how the feature vector values are stored.
+         *
+         * @return the storage precision
+         */
+        public FeaturePrecision getPrecision() {
+            return featureVectorSingles != null ? FeaturePrecision.FLOAT32 : FeaturePrecision.FLOAT64;
+        }
+
+        /**
+         * Gets the dimension of the feature vector.
+         *
+         * @return the number of stored values, or 0 if there are none
+         */
+        public int getDimension() {
+            if (featureVectorSingles != null) {
+                return featureVectorSingles.length;
+            }
+            return featureVectorData != null ? featureVectorData.length : 0;
+        }
+
         /**
          * Gets the algorithm name used for this feature vector.
          *
@@ -621,12 +668,21 @@ public class TrainedModel implements Serializable {
             return Collections.unmodifiableMap(metadata);
         }
 
+        /**
+         * Gets the gallery partition the identity belongs to.
+         *
+         * @return the partition name, {@link Identity#DEFAULT_PARTITION} for older models
+         */
+        public String getPartition() {
+            return partition != null ? partition : Identity.DEFAULT_PARTITION;
+        }
+
         @Override
         public String toString() {
             return String.format("EnrolledIdentity{id='%s', name='%s', features=%d}",
                     identityId.substring(0, Math.min(8, identityId.length())),
                     identityName,
-                    featureVectorData.length);
+                    getDimension());
         }
     }
 
@@ -3,6 +3,9 @@ package com.facerecognition.api.rest;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -75,7 +78,7 @@ class FaceRecognitionControllerWebMvcTest {
     void recognizeHappyPath() throws Exception {
         Identity john = new Identity("John Doe");
         RecognitionResult result = RecognitionResult.recognized(john, 0.87, 1200.0);
-        when(service.recognize(any(FaceImage.class))).thenReturn(result);
+        when(service.recognize(any(FaceImage.class), isNull())).thenReturn(result);
 
         mvc.perform(multipart("/api/v1/recognize")
                         .file(new MockMultipartFile("image", "probe.png", "image/png", pngBytes))
@@ -88,14 +91,14 @@ class FaceRecognitionControllerWebMvcTest {
                 .andExpect(jsonPath("$.bestMatch.confidence").value(0.87));
 
         ArgumentCaptor<FaceImage> captor = ArgumentCaptor.forClass(FaceImage.class);
-        verify(service).recognize(captor.capture());
+        verify(service).recognize(captor.capture(), isNull());
         assertThat(captor.getValue().getWidth()).isEqualTo(32);
     }
 
     @Test
     @DisplayName("POST /api/v1/recognize returns 200 + unknown when the classifier is not confident")
     void recognizeUnknown() throws Exception {
-        when(service.recognize(any(FaceImage.class))).thenReturn(RecognitionResult.unknown());
+        when(service.recognize(any(FaceImage.class), isNull())).thenReturn(RecognitionResult.unknown());
 
         mvc.perform(multipart("/api/v1/recognize")
                         .file(new MockMultipartFile("image", "probe.png", "image/png", pngBytes)))
@@ -107,7 +110,7 @@ class FaceRecognitionControllerWebMvcTest {
     @Test
     @DisplayName("POST /api/v1/recognize returns 200 + NO_FACE_DETECTED when the detector can't find a face")
     void recognizeNoFace() throws Exception {
-        when(service.recognize(any(FaceImage.class)))
+        when(service.recognize(any(FaceImage.class), isNull()))
                 .thenReturn(RecognitionResult.noFaceDetected());
 
         mvc.perform(multipart("/api/v1/recognize")
@@ -127,7 +130,7 @@ class FaceRecognitionControllerWebMvcTest {
                 .andExpect(jsonPath("$.message").exists())
                 .andExpect(jsonPath("$.traceId").exists());
 
-        verify(service, never()).recognize(any());
+        verify(service, never()).recognize(any(), any());
     }
 
     @Test
@@ -137,7 +140,21 @@ class FaceRecognitionControllerWebMvcTest {
                         .file(new MockMultipartFile("image", "probe.txt", "text/plain", "not-an-image".getBytes())))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.traceId").exists());
-        verify(service, never()).recognize(any());
+        verify(service, never()).recognize(any(), any());
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/recognize passes the partition through to the service")
+    void recognizeInPartition() throws Exception {
+        when(service.recognize(any(FaceImage.class), eq("site-12"))).thenReturn(RecognitionResult.unknown());
+
+        mvc.perform(multipart("/api/v1/recognize")
+                        .file(new MockMultipartFile("image", "probe.png", "image/png", pngBytes))
+                        .param("partition", "site-12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UNKNOWN"));
+
+        verify(service).recognize(any(FaceImage.class), eq("site-12"));
     }
 
     @Test
@@ -145,7 +162,7 @@ class FaceRecognitionControllerWebMvcTest {
     void enrollHappyPath() throws Exception {
         Identity john = new Identity("John Doe");
         john.enrollSample(new com.facerecognition.domain.model.FeatureVector(new double[]{1.0, 2.0}, "t", 1), 1.0, "t");
-        when(service.enroll(any(FaceImage.class), any(), any())).thenReturn(john);
+        when(service.enroll(any(FaceImage.class), any(), any(), any())).thenReturn(john);
 
         mvc.perform(multipart("/api/v1/enroll")
                         .file(new MockMultipartFile("image", "john.png", "image/png", pngBytes))
@@ -154,6 +171,7 @@ class FaceRecognitionControllerWebMvcTest {
                 .andExpect(status().isCreated())
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.name").value("John Doe"))
+                .andExpect(jsonPath("$.partition").value(Identity.DEFAULT_PARTITION))
                 .andExpect(jsonPath("$.externalId").doesNotExist());
     }
 
@@ -163,7 +181,38 @@ class FaceRecognitionControllerWebMvcTest {
         mvc.perform(multipart("/api/v1/enroll")
                         .file(new MockMultipartFile("image", "x.png", "image/png", pngBytes)))
                 .andExpect(status().isBadRequest());
-        verify(service, never()).enroll(any(), any(), any());
+        verify(service, never()).enroll(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/verify returns 200 + the decision for the claimed identity")
+    void verifyHappyPath() throws Exception {
+        Identity john = new Identity("John Doe");
+        when(service.getIdentity(john.getId())).thenReturn(john);
+        when(service.verify(any(FaceImage.class), eq(john.getId()), eq(0.7)))
+                .thenReturn(RecognitionResult.recognized(john, 0.87, 1200.0));
+
+        mvc.perform(multipart("/api/v1/verify")
+                        .file(new MockMultipartFile("image", "probe.png", "image/png", pngBytes))
+                        .param("identityId", john.getId())
+                        .param("threshold", "0.7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.verified").value(true))
+                .andExpect(jsonPath("$.identityId").value(john.getId()))
+                .andExpect(jsonPath("$.name").value("John Doe"))
+                .andExpect(jsonPath("$.confidence").value(0.87))
+                .andExpect(jsonPath("$.threshold").value(0.7));
+        verify(service, never()).recognize(any(), any());
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/verify returns 404 for an unknown identity")
+    void verifyUnknownIdentity() throws Exception {
+        mvc.perform(multipart("/api/v1/verify")
+                        .file(new MockMultipartFile("image", "probe.png", "image/png", pngBytes))
+                        .param("identityId", "missing"))
+                .andExpect(status().isNotFound());
+        verify(service, never()).verify(any(), anyString(), anyDouble());
     }
 
     @Test
@@ -183,7 +232,7 @@ class FaceRecognitionControllerWebMvcTest {
     @Test
     @DisplayName("Every response carries an X-Request-ID header (stamped by RequestIdFilter)")
     void responsesCarryTraceId() throws Exception {
-        when(service.recognize(any(FaceImage.class))).thenReturn(RecognitionResult.unknown());
+        when(service.recognize(any(FaceImage.class), isNull())).thenReturn(RecognitionResult.unknown());
 
         // The filter isn't picked up by @WebMvcTest unless we also pass it as a
         // controller dependency. For Web MVC scope we simply check that the
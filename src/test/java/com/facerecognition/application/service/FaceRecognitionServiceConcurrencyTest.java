@@ -39,13 +39,36 @@ class FaceRecognitionServiceConcurrencyTest {
     void concurrentEnrollTrainRecognize() throws Exception {
         // LBPH needs no training pass — ideal for a stress test where we
         // hammer train() over and over. KNN is already ConcurrentHashMap-backed.
-        FaceRecognitionService service = FaceRecognitionService.builder()
+        enrollTrainRecognize(FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor(4, 4, 1, 8))
+                .classifier(new KNNClassifier()), false);
+    }
+
+    @Test
+    @DisplayName("concurrent enrol + train + recognize never throws when every training run builds a new classifier")
+    void concurrentEnrollTrainRecognizeWithFreshModels() throws Exception {
+        enrollTrainRecognize(FaceRecognitionService.builder()
                 .extractor(new LBPHExtractor(4, 4, 1, 8))
                 .classifier(new KNNClassifier())
+                .classifierFactory(extractor -> new KNNClassifier()), false);
+    }
+
+    @Test
+    @DisplayName("faces enrolled online while a new classifier trains are all in the model it publishes")
+    void concurrentOnlineEnrollTrainRecognizeWithFreshModels() throws Exception {
+        enrollTrainRecognize(FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor(4, 4, 1, 8))
+                .classifier(new KNNClassifier())
+                .classifierFactory(extractor -> new KNNClassifier()), true);
+    }
+
+    private void enrollTrainRecognize(FaceRecognitionService.Builder builder, boolean online) throws Exception {
+        FaceRecognitionService service = builder
                 .config(new FaceRecognitionService.Config()
                         .setTargetWidth(32)
                         .setTargetHeight(32)
-                        .setRecognitionThreshold(0.0))
+                        .setRecognitionThreshold(0.0)
+                        .setOnlineEnrollment(online))
                 .build();
 
         // Pre-seed one identity + train so recognize() has something to match.
@@ -116,6 +139,12 @@ class FaceRecognitionServiceConcurrencyTest {
                 .as("recognize() should never fail with an unexpected RuntimeException under contention")
                 .isZero();
 
+        if (online) {
+            // Training runs must not have dropped anything enrolled online while they ran.
+            assertThat(service.isTrained()).isTrue();
+            assertThat(service.getClassifier().getEnrolledCount()).isEqualTo(1 + enrollers * iterationsPerTask);
+        }
+
         // Final training run so the service reaches a quiescent state.
         service.train();
         int totalIdentities = service.getIdentityCount();
@@ -3,10 +3,16 @@ package com.facerecognition.application.service;
 import com.facerecognition.domain.model.*;
 import com.facerecognition.domain.service.*;
 import com.facerecognition.infrastructure.classification.KNNClassifier;
+import com.facerecognition.infrastructure.classification.MappedGalleryClassifier;
+import com.facerecognition.infrastructure.classification.PartitionedClassifier;
 import com.facerecognition.infrastructure.extraction.LBPHExtractor;
+import com.facerecognition.infrastructure.extraction.ProjectedFeatureExtractor;
+import com.facerecognition.infrastructure.persistence.ModelRepository;
+import com.facerecognition.infrastructure.persistence.TrainedModel;
 
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -14,10 +20,16 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import javax.imageio.ImageIO;
 
 import static org.assertj.core.api.Assertions.*;
@@ -172,6 +184,326 @@ class FaceRecognitionServiceTest {
 
             assertThat(result).isNotNull();
         }
+
+        @Test
+        @DisplayName("Should restore the PCA projection with a saved model")
+        void shouldRestoreProjectionWithSavedModel() {
+            FaceRecognitionService projectedService = createProjectedService();
+            for (int i = 0; i < 4; i++) {
+                projectedService.enroll(createNoiseFaceImage(48, 64, i), "Person " + i);
+            }
+            projectedService.train();
+            TrainedModel model = projectedService.snapshot();
+
+            FaceRecognitionService restored = createProjectedService();
+            restored.loadModel(model);
+            RecognitionResult result = restored.recognize(createNoiseFaceImage(48, 64, 2));
+
+            assertThat(model.getHyperparameters()).containsKey("projection.components");
+            assertThat(result.getIdentity()).map(Identity::getName).contains("Person 2");
+        }
+
+        @Test
+        @DisplayName("Should recognize only within the requested partition")
+        void shouldRecognizeOnlyWithinRequestedPartition() {
+            FaceRecognitionService partitioned = createPartitionedService();
+            Identity siteA = partitioned.enroll(createNoiseFaceImage(48, 64, 1), "Alex", null, "site-a");
+            Identity siteB = partitioned.enroll(createNoiseFaceImage(48, 64, 2), "Alex", null, "site-b");
+            partitioned.enroll(createNoiseFaceImage(48, 64, 3), "Blair", null, "site-b");
+            partitioned.train();
+
+            RecognitionResult inA = partitioned.recognize(createNoiseFaceImage(48, 64, 2), "site-a");
+            RecognitionResult inB = partitioned.recognize(createNoiseFaceImage(48, 64, 2), "site-b");
+
+            assertThat(siteA.getId()).isNotEqualTo(siteB.getId());
+            assertThat(inA.getIdentity()).map(Identity::getId).isNotEqualTo(Optional.of(siteB.getId()));
+            assertThat(inB.getIdentity()).map(Identity::getId).contains(siteB.getId());
+        }
+
+        @Test
+        @DisplayName("Should keep partitions across a saved model")
+        void shouldKeepPartitionsAcrossSavedModel() {
+            FaceRecognitionService partitioned = createPartitionedService();
+            partitioned.enroll(createNoiseFaceImage(48, 64, 1), "Alex", null, "site-a");
+            partitioned.enroll(createNoiseFaceImage(48, 64, 2), "Blair", null, "site-b");
+            partitioned.train();
+
+            FaceRecognitionService restored = createPartitionedService();
+            restored.loadModel(partitioned.snapshot());
+
+            assertThat(restored.getIdentities()).extracting(Identity::getPartition)
+                .containsExactlyInAnyOrder("site-a", "site-b");
+            assertThat(restored.recognize(createNoiseFaceImage(48, 64, 2), "site-b").getIdentity())
+                .map(Identity::getName).contains("Blair");
+        }
+
+        @Test
+        @DisplayName("Should reject a partition when the classifier is not partitioned")
+        void shouldRejectPartitionWithoutPartitionedClassifier() {
+            realService.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            realService.train();
+
+            assertThatIllegalStateException()
+                .isThrownBy(() -> realService.recognize(createNoiseFaceImage(48, 64, 1), "site-a"));
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> realService.recognize(createNoiseFaceImage(48, 64, 1), "../site-a"));
+        }
+
+        @Test
+        @DisplayName("Should recognize an online enrollment without training")
+        void shouldRecognizeOnlineEnrollmentWithoutTraining() {
+            FaceRecognitionService online = createOnlineService(extractor -> new KNNClassifier());
+            online.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            online.enroll(createNoiseFaceImage(48, 64, 2), "Blair");
+
+            assertThat(online.isTrained()).isTrue();
+            assertThat(online.getClassifier().getEnrolledCount()).isEqualTo(2);
+            assertThat(online.recognize(createNoiseFaceImage(48, 64, 2)).getIdentity())
+                .map(Identity::getName).contains("Blair");
+        }
+
+        @Test
+        @DisplayName("Should keep a face enrolled online while a new model trains")
+        void shouldKeepOnlineEnrollmentMadeDuringTraining() {
+            AtomicReference<FaceRecognitionService> online = new AtomicReference<>();
+            AtomicBoolean training = new AtomicBoolean();
+            online.set(createOnlineService(extractor -> {
+                if (training.compareAndSet(true, false)) {
+                    // Stands in for an enrolment on another thread while the new model is built.
+                    online.get().enroll(createNoiseFaceImage(48, 64, 9), "Late Person");
+                }
+                return new KNNClassifier();
+            }));
+            online.get().enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            training.set(true);
+
+            online.get().train();
+
+            assertThat(training).isFalse();
+            assertThat(online.get().isTrained()).isTrue();
+            assertThat(online.get().getClassifier().getEnrolledCount()).isEqualTo(2);
+            assertThat(online.get().recognize(createNoiseFaceImage(48, 64, 9)).getIdentity())
+                .map(Identity::getName).contains("Late Person");
+        }
+
+        @Test
+        @DisplayName("Should queue enrollments unless online enrollment is enabled")
+        void shouldQueueEnrollmentsByDefault() {
+            FaceRecognitionService queued = FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new KNNClassifier())
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+
+            queued.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+
+            assertThat(queued.isTrained()).isFalse();
+            assertThat(queued.getClassifier().getEnrolledCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should enroll online into a frozen projection")
+        void shouldEnrollOnlineIntoFrozenProjection() {
+            FaceRecognitionService projected = FaceRecognitionService.builder()
+                .extractor(new ProjectedFeatureExtractor(new LBPHExtractor(), 8))
+                .classifier(new KNNClassifier(new FaceClassifier.ClassifierConfig()
+                    .setMetric(FaceClassifier.DistanceMetric.COSINE)))
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64)
+                    .setOnlineEnrollment(true)
+                    .setFreezeProjection(true))
+                .build();
+            for (int i = 0; i < 4; i++) {
+                projected.enroll(createNoiseFaceImage(48, 64, i), "Person " + i);
+            }
+            assertThat(projected.isTrained()).isFalse();
+            projected.train();
+
+            projected.enroll(createNoiseFaceImage(48, 64, 9), "Late Person");
+
+            assertThat(projected.isTrained()).isTrue();
+            assertThat(projected.recognize(createNoiseFaceImage(48, 64, 9)).getIdentity())
+                .map(Identity::getName).contains("Late Person");
+        }
+
+        @Test
+        @DisplayName("Should publish compacted copies of identities as a new version")
+        void shouldPublishCompactedCopies() {
+            FaceRecognitionService compacting = FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new KNNClassifier())
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64)
+                    .setOnlineEnrollment(true)
+                    .setMaxPrototypes(1))
+                .build();
+            Identity alex = null;
+            for (int i = 0; i < 3; i++) {
+                alex = compacting.enroll(createNoiseFaceImage(48, 64, i), "Alex");
+            }
+            GallerySnapshot before = compacting.getGallerySnapshot();
+
+            CompactionReport report = compacting.compactGallery();
+
+            GallerySnapshot after = compacting.getGallerySnapshot();
+            assertThat(report.getIdentitiesCompacted()).isEqualTo(1);
+            assertThat(after.getVersion()).isGreaterThan(before.getVersion());
+            assertThat(after.isTrained()).isTrue();
+            assertThat(after.getIdentity(alex.getId()).getSampleCount()).isEqualTo(1);
+            assertThat(before.getIdentity(alex.getId()).getSampleCount()).isEqualTo(3);
+            assertThat(compacting.getClassifier().getEnrolledIdentities())
+                .singleElement().isSameAs(after.getIdentity(alex.getId()));
+        }
+
+        @Test
+        @DisplayName("Should train a new model without changing the published one")
+        void shouldTrainNewModelBesidePublishedOne() {
+            FaceRecognitionService fresh = FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new KNNClassifier())
+                .classifierFactory(extractor -> new KNNClassifier())
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+            fresh.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            fresh.enroll(createNoiseFaceImage(48, 64, 2), "Blair");
+            fresh.train();
+            FaceClassifier trained = fresh.getClassifier();
+            GallerySnapshot published = fresh.getGallerySnapshot();
+            Identity blair = published.findByName("Blair");
+
+            fresh.train();
+
+            assertThat(fresh.getClassifier()).isNotSameAs(trained);
+            assertThat(trained.getEnrolledCount()).isEqualTo(2);
+            assertThat(published.getIdentity(blair.getId())).isSameAs(blair);
+            assertThat(fresh.getIdentity(blair.getId())).isNotSameAs(blair);
+            assertThat(fresh.recognize(createNoiseFaceImage(48, 64, 2)).getIdentity())
+                .map(Identity::getName).contains("Blair");
+        }
+
+        @Test
+        @DisplayName("Should keep a file-backed gallery that already holds the saved model")
+        void shouldKeepMappedGalleryHoldingSavedModel(@TempDir Path directory) throws IOException {
+            realService.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            realService.enroll(createNoiseFaceImage(48, 64, 2), "Blair");
+            realService.train();
+            TrainedModel model = realService.snapshot();
+            Path identitiesFile = directory.resolve("identities.bin");
+
+            MappedGalleryClassifier first = new MappedGalleryClassifier(new FaceClassifier.ClassifierConfig(), directory);
+            createMappedService(first).loadModel(model);
+            first.close();
+            long written = Files.size(identitiesFile);
+
+            MappedGalleryClassifier reopened = new MappedGalleryClassifier(new FaceClassifier.ClassifierConfig(), directory);
+            try {
+                FaceRecognitionService restarted = createMappedService(reopened);
+                restarted.loadModel(model);
+
+                assertThat(Files.size(identitiesFile)).isEqualTo(written);
+                assertThat(restarted.getIdentities()).flatExtracting(Identity::getSamples)
+                    .allMatch(Identity.EnrolledSample::isOffloaded);
+                assertThat(restarted.recognize(createNoiseFaceImage(48, 64, 2)).getIdentity())
+                    .map(Identity::getName).contains("Blair");
+            } finally {
+                reopened.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should load a saved model over a read-only gallery without changing it")
+        void shouldLoadModelOverReadOnlyGallery(@TempDir Path directory) throws IOException {
+            realService.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            realService.enroll(createNoiseFaceImage(48, 64, 2), "Blair");
+            realService.train();
+            TrainedModel model = realService.snapshot();
+            MappedGalleryClassifier writer = new MappedGalleryClassifier(new FaceClassifier.ClassifierConfig(), directory);
+            createMappedService(writer).loadModel(model);
+
+            MappedGalleryClassifier reader = new MappedGalleryClassifier(
+                new FaceClassifier.ClassifierConfig(), directory, true);
+            try {
+                FaceRecognitionService replica = createMappedService(reader);
+                replica.loadModel(model);
+                replica.enroll(createNoiseFaceImage(48, 64, 3), "Casey");
+
+                assertThat(reader.getEnrolledCount()).isEqualTo(2);
+                assertThat(replica.getIdentityCount()).isEqualTo(3);
+                assertThat(replica.recognize(createNoiseFaceImage(48, 64, 1)).getIdentity())
+                    .map(Identity::getName).contains("Alex");
+            } finally {
+                reader.close();
+                writer.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should report a saved model the classifier cannot take instead of throwing")
+        void shouldReportUnloadableSavedModel() throws IOException {
+            realService.enroll(createNoiseFaceImage(48, 64, 1), "Alex");
+            realService.train();
+            ModelRepository repository = mock(ModelRepository.class);
+            when(repository.load("default")).thenReturn(Optional.of(realService.snapshot()));
+            doThrow(new IllegalStateException("Gallery segment is read-only")).when(mockClassifier).clear();
+            FaceRecognitionService failing = FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(mockClassifier)
+                .modelRepository(repository)
+                .build();
+
+            assertThat(failing.tryLoadSavedModel()).isFalse();
+            assertThat(failing.isTrained()).isFalse();
+        }
+
+        private FaceRecognitionService createMappedService(MappedGalleryClassifier classifier) {
+            return FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(classifier)
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+        }
+
+        private FaceRecognitionService createOnlineService(Function<FeatureExtractor, FaceClassifier> classifiers) {
+            return FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new KNNClassifier())
+                .classifierFactory(classifiers)
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64)
+                    .setOnlineEnrollment(true))
+                .build();
+        }
+
+        private FaceRecognitionService createPartitionedService() {
+            return FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new PartitionedClassifier(new FaceClassifier.ClassifierConfig()
+                    .setMetric(FaceClassifier.DistanceMetric.CHI_SQUARE)))
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+        }
+
+        private FaceRecognitionService createProjectedService() {
+            return FaceRecognitionService.builder()
+                .extractor(new ProjectedFeatureExtractor(new LBPHExtractor(), 8))
+                .classifier(new KNNClassifier(new FaceClassifier.ClassifierConfig()
+                    .setMetric(FaceClassifier.DistanceMetric.COSINE)))
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+        }
     }
 
     @Nested
@@ -346,6 +678,29 @@ class FaceRecognitionServiceTest {
             verify(mockExtractor).reset();
         }
 
+        @Test
+        @DisplayName("Should weight trained samples by the quality of their faces")
+        void shouldWeightTrainedSamplesByFaceQuality() {
+            FaceRecognitionService real = FaceRecognitionService.builder()
+                .extractor(new LBPHExtractor())
+                .classifier(new KNNClassifier())
+                .config(new FaceRecognitionService.Config()
+                    .setTargetWidth(48)
+                    .setTargetHeight(64))
+                .build();
+            FaceImage flat = createTestFaceImage(48, 64, Color.GRAY);
+            FaceImage textured = createNoiseFaceImage(48, 64, 1);
+            Identity alex = real.enroll(flat, "Alex");
+            real.enroll(textured, "Alex");
+
+            real.train();
+
+            assertThat(real.getGallerySnapshot().getIdentity(alex.getId()).getSamples())
+                .extracting(Identity.EnrolledSample::getQualityScore)
+                .containsExactly(flat.getQualityScore(), textured.getQualityScore());
+            assertThat(flat.getQualityScore()).isNotEqualTo(textured.getQualityScore());
+        }
+
         @Test
         @DisplayName("Should clear classifier before enrolling")
         void shouldClearClassifierBeforeEnrolling() {
@@ -459,6 +814,83 @@ class FaceRecognitionServiceTest {
 
             assertThat(result).isNotNull();
         }
+
+        @Test
+        @DisplayName("Should report the gallery version the model was trained on")
+        void shouldReportTrainedGalleryVersion() {
+            service.enroll(createTestFaceImage(48, 64, Color.GRAY), "Test Person");
+            when(mockExtractor.extract(any())).thenReturn(createMockFeatureVector());
+            when(mockClassifier.classify(any(), anyDouble())).thenReturn(RecognitionResult.unknown());
+
+            service.train();
+            GallerySnapshot trained = service.getGallerySnapshot();
+
+            assertThat(trained.isTrained()).isTrue();
+            assertThat(service.recognize(createTestFaceImage(48, 64, Color.GRAY)).getGalleryVersion())
+                .isEqualTo(trained.getVersion());
+        }
+
+        @Test
+        @DisplayName("Should keep recognising with the trained model after a new enrollment")
+        void shouldKeepRecognisingAfterEnrollment() {
+            service.enroll(createTestFaceImage(48, 64, Color.GRAY), "Test Person");
+            when(mockExtractor.extract(any())).thenReturn(createMockFeatureVector());
+            when(mockClassifier.classify(any(), anyDouble())).thenReturn(RecognitionResult.unknown());
+            service.train();
+            long trainedVersion = service.getGallerySnapshot().getVersion();
+
+            service.enroll(createTestFaceImage(48, 64, Color.RED), "New Person");
+
+            GallerySnapshot pending = service.getGallerySnapshot();
+            assertThat(pending.getVersion()).isGreaterThan(trainedVersion);
+            assertThat(pending.getModelVersion()).isEqualTo(trainedVersion);
+            assertThat(service.isTrained()).isFalse();
+            assertThat(service.recognize(createTestFaceImage(48, 64, Color.GRAY)).getGalleryVersion())
+                .isEqualTo(trainedVersion);
+        }
+
+        @Test
+        @DisplayName("Should verify against the claimed identity only")
+        void shouldVerifyAgainstClaimedIdentityOnly() {
+            Identity identity = service.enroll(createTestFaceImage(48, 64, Color.GRAY), "Test Person");
+            FeatureVector mockFeatures = createMockFeatureVector();
+            when(mockExtractor.extract(any())).thenReturn(mockFeatures);
+            when(mockClassifier.verify(any(), anyString(), anyDouble()))
+                .thenReturn(RecognitionResult.recognized(identity, 0.9, 0.1));
+            service.train();
+
+            RecognitionResult result = service.verify(createTestFaceImage(48, 64, Color.GRAY), identity.getId());
+
+            assertThat(result.isRecognized()).isTrue();
+            assertThat(result.getMetrics()).isPresent();
+            assertThat(result.getGalleryVersion()).isEqualTo(service.getGallerySnapshot().getModelVersion());
+            verify(mockClassifier).verify(mockFeatures, identity.getId(), 0.6);
+            verify(mockClassifier, never()).classify(any(), anyDouble());
+        }
+
+        @Test
+        @DisplayName("Should reject verification against an unknown identity")
+        void shouldRejectVerificationOfUnknownIdentity() {
+            service.enroll(createTestFaceImage(48, 64, Color.GRAY), "Test Person");
+            when(mockExtractor.extract(any())).thenReturn(createMockFeatureVector());
+            service.train();
+            FaceImage probe = createTestFaceImage(48, 64, Color.GRAY);
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> service.verify(probe, "missing"))
+                .withMessageContaining("missing");
+        }
+
+        @Test
+        @DisplayName("Should throw exception when verifying before training")
+        void shouldThrowExceptionWhenVerifyingBeforeTraining() {
+            Identity identity = service.enroll(createTestFaceImage(48, 64, Color.GRAY), "Test Person");
+            FaceImage probe = createTestFaceImage(48, 64, Color.GRAY);
+
+            assertThatIllegalStateException()
+                .isThrownBy(() -> service.verify(probe, identity.getId()))
+                .withMessage("System not trained. Call train() first.");
+        }
     }
 
     @Nested
@@ -673,6 +1105,19 @@ class FaceRecognitionServiceTest {
         return FaceImage.fromBufferedImage(image);
     }
 
+    // LBPH histograms of a solid colour are all alike, so projection tests need texture.
+    private FaceImage createNoiseFaceImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gray = random.nextInt(256);
+                image.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+            }
+        }
+        return FaceImage.fromBufferedImage(image);
+    }
+
     private BufferedImage createBufferedImage(int width, int height, Color color) {
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
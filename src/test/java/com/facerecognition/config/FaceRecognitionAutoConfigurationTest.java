@@ -2,10 +2,14 @@ package com.facerecognition.config;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.context.annotation.Bean;
@@ -14,10 +18,18 @@ import org.springframework.context.annotation.Configuration;
 import com.facerecognition.application.service.FaceRecognitionService;
 import com.facerecognition.config.FaceRecognitionProperties.DetectorType;
 import com.facerecognition.config.FaceRecognitionProperties.ExtractorType;
+import com.facerecognition.domain.model.FaceImage;
 import com.facerecognition.domain.service.FaceClassifier;
 import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
 import com.facerecognition.domain.service.FaceDetector;
 import com.facerecognition.domain.service.FeatureExtractor;
+import com.facerecognition.infrastructure.classification.HNSWClassifier;
+import com.facerecognition.infrastructure.classification.GalleryPrecision;
+import com.facerecognition.infrastructure.classification.IVFClassifier;
+import com.facerecognition.infrastructure.classification.LSHClassifier;
+import com.facerecognition.infrastructure.classification.PQClassifier;
+import com.facerecognition.infrastructure.classification.VPTreeClassifier;
+import com.facerecognition.infrastructure.classification.MappedGalleryClassifier;
 import com.facerecognition.infrastructure.classification.KNNClassifier;
 import com.facerecognition.infrastructure.detection.HaarCascadeFaceDetector;
 import com.facerecognition.infrastructure.detection.SkinColorDetector;
@@ -136,6 +148,117 @@ class FaceRecognitionAutoConfigurationTest {
         });
     }
 
+    @Test
+    @DisplayName("gallery-precision=INT8 builds a KNN classifier with a quantised gallery")
+    void int8KnnGallery() {
+        runner.withPropertyValues("facerecognition.classification.gallery-precision=INT8").run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(KNNClassifier.class);
+            assertThat(((KNNClassifier) classifier).getPrecision()).isEqualTo(GalleryPrecision.INT8);
+        });
+    }
+
+    @Test
+    @DisplayName("parallel-threshold configures when the KNN classifier scans in parallel")
+    void knnParallelThreshold() {
+        runner.withPropertyValues("facerecognition.classification.parallel-threshold=1000").run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(KNNClassifier.class);
+            assertThat(((KNNClassifier) classifier).getParallelThreshold()).isEqualTo(1000);
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=HNSW switches the classifier bean to HNSWClassifier with configured graph")
+    void hnswClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=HNSW",
+                "facerecognition.classification.hnsw.m=8",
+                "facerecognition.classification.hnsw.ef-construction=100",
+                "facerecognition.classification.hnsw.ef-search=32"
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(HNSWClassifier.class);
+            HNSWClassifier hnsw = (HNSWClassifier) classifier;
+            assertThat(hnsw.getM()).isEqualTo(8);
+            assertThat(hnsw.getEfConstruction()).isEqualTo(100);
+            assertThat(hnsw.getEfSearch()).isEqualTo(32);
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=IVF switches the classifier bean to IVFClassifier with configured cells")
+    void ivfClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=IVF",
+                "facerecognition.classification.ivf.nlist=32",
+                "facerecognition.classification.ivf.nprobe=4"
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(IVFClassifier.class);
+            assertThat(((IVFClassifier) classifier).getNlist()).isEqualTo(32);
+            assertThat(((IVFClassifier) classifier).getNprobe()).isEqualTo(4);
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=PQ switches the classifier bean to PQClassifier with configured codes")
+    void pqClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=PQ",
+                "facerecognition.classification.pq.subspaces=16",
+                "facerecognition.classification.pq.rerank=0"
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(PQClassifier.class);
+            assertThat(((PQClassifier) classifier).getSubspaces()).isEqualTo(16);
+            assertThat(((PQClassifier) classifier).getRerank()).isZero();
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=LSH switches the classifier bean to LSHClassifier with configured sketches")
+    void lshClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=LSH",
+                "facerecognition.classification.lsh.bits=128",
+                "facerecognition.classification.lsh.candidates=32"
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(LSHClassifier.class);
+            assertThat(((LSHClassifier) classifier).getBits()).isEqualTo(128);
+            assertThat(((LSHClassifier) classifier).getCandidates()).isEqualTo(32);
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=VPTREE switches the classifier bean to VPTreeClassifier with configured leaves")
+    void vpTreeClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=VPTREE",
+                "facerecognition.classification.vp-tree.leaf-size=8"
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(VPTreeClassifier.class);
+            assertThat(((VPTreeClassifier) classifier).getLeafSize()).isEqualTo(8);
+        });
+    }
+
+    @Test
+    @DisplayName("algorithm=MAPPED switches the classifier bean to MappedGalleryClassifier over the configured directory")
+    void mappedGalleryClassifier(@TempDir Path directory) {
+        runner.withPropertyValues(
+                "facerecognition.classification.algorithm=MAPPED",
+                "facerecognition.classification.mapped.directory=" + directory
+        ).run(ctx -> {
+            FaceClassifier classifier = ctx.getBean(FaceClassifier.class);
+            assertThat(classifier).isInstanceOf(MappedGalleryClassifier.class);
+            assertThat(((MappedGalleryClassifier) classifier).getDirectory()).isEqualTo(directory);
+            assertThat(((MappedGalleryClassifier) classifier).isReadOnly()).isFalse();
+            ((MappedGalleryClassifier) classifier).close();
+        });
+    }
+
     @Test
     @DisplayName("a user-provided FaceDetector bean takes precedence over the default")
     void userBeanOverridesDefault() {
@@ -147,6 +270,41 @@ class FaceRecognitionAutoConfigurationTest {
         });
     }
 
+    @Test
+    @DisplayName("training builds a new classifier from the properties, leaving the bean as it was")
+    void trainingBuildsNewClassifier() {
+        runner.withPropertyValues(
+                "facerecognition.extraction.algorithm=LBPH",
+                "facerecognition.detection.type=SKIN_COLOR"
+        ).run(ctx -> {
+            FaceRecognitionService service = ctx.getBean(FaceRecognitionService.class);
+            FaceClassifier bean = ctx.getBean(FaceClassifier.class);
+            service.enroll(noiseFace(1), "Alex");
+            service.enroll(noiseFace(2), "Blair");
+
+            service.train();
+
+            assertThat(service.getClassifier()).isNotSameAs(bean).isInstanceOf(KNNClassifier.class);
+            assertThat(service.getClassifier().getEnrolledCount()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    @DisplayName("a user-provided FaceClassifier bean is retrained in place")
+    void userClassifierRetrainedInPlace() {
+        runner.withUserConfiguration(UserClassifierConfig.class)
+                .withPropertyValues("facerecognition.extraction.algorithm=LBPH")
+                .run(ctx -> {
+                    FaceRecognitionService service = ctx.getBean(FaceRecognitionService.class);
+                    service.enroll(noiseFace(1), "Alex");
+
+                    service.train();
+
+                    assertThat(service.getClassifier()).isSameAs(ctx.getBean(FaceClassifier.class));
+                    assertThat(service.getClassifier().getEnrolledCount()).isEqualTo(1);
+                });
+    }
+
     @Test
     @DisplayName("properties object is populated with the full nested schema")
     void propertiesPopulated() {
@@ -174,6 +332,26 @@ class FaceRecognitionAutoConfigurationTest {
         }
     }
 
+    @Configuration
+    static class UserClassifierConfig {
+        @Bean
+        FaceClassifier userClassifier() {
+            return new KNNClassifier();
+        }
+    }
+
+    private static FaceImage noiseFace(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gray = random.nextInt(256);
+                image.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+            }
+        }
+        return FaceImage.fromBufferedImage(image);
+    }
+
     /** Silences unused-warning on the IOException declared by the repo factory. */
     @SuppressWarnings("unused")
     private static void suppressChecked() throws IOException {
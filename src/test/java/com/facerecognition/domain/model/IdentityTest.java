@@ -5,9 +5,16 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -183,6 +190,113 @@ class IdentityTest {
             assertThat(average.getAlgorithmVersion()).isEqualTo(2);
         }
 
+        @Test
+        @DisplayName("Should reuse the cached average until the samples change")
+        void shouldReuseCachedAverage() {
+            Identity identity = new Identity(TEST_NAME);
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0}, "test", 1), 0.9, "s1");
+
+            FeatureVector first = identity.getAverageFeatureVector();
+
+            assertThat(identity.getAverageFeatureVector()).isSameAs(first);
+            identity.enrollSample(new FeatureVector(new double[]{3.0, 4.0}, "test", 1), 0.9, "s2");
+            assertThat(identity.getAverageFeatureVector()).isNotSameAs(first);
+        }
+
+        @Test
+        @DisplayName("Should update the average as samples are enrolled and removed")
+        void shouldUpdateAverageIncrementally() {
+            Identity identity = new Identity(TEST_NAME);
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0, 3.0}, "test", 1), 0.9, "s1");
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(1.0, 2.0, 3.0);
+
+            Identity.EnrolledSample second =
+                identity.enrollSample(new FeatureVector(new double[]{3.0, 4.0, 5.0}, "test", 1), 0.9, "s2");
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(2.0, 3.0, 4.0);
+
+            identity.enrollSample(new FeatureVector(new double[]{5.0, 6.0, 7.0}, "test", 1), 0.9, "s3");
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(3.0, 4.0, 5.0);
+
+            identity.removeSample(second.getSampleId());
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(3.0, 4.0, 5.0);
+        }
+
+        @Test
+        @DisplayName("Should keep the average exact while it is read during enrolment")
+        void shouldKeepAverageExactUnderConcurrentReads() throws Exception {
+            Identity identity = new Identity(TEST_NAME);
+            identity.enrollSample(new FeatureVector(new double[]{0.0, 0.0}, "test", 1), 0.9, "s0");
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] readers = new Thread[4];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = new Thread(() -> {
+                    try {
+                        while (!done.get()) {
+                            identity.getAverageFeatureVector();
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                });
+                readers[r].start();
+            }
+
+            int samples = 5000;
+            for (int i = 1; i < samples; i++) {
+                identity.enrollSample(new FeatureVector(new double[]{i, -i}, "test", 1), 0.9, "s" + i);
+                if (i % 10 == 0) {
+                    identity.removeSample(identity.getSamples().get(0).getSampleId());
+                    identity.enrollSample(new FeatureVector(new double[]{0.0, 0.0}, "test", 1), 0.9, "z" + i);
+                }
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertThat(failure.get()).isNull();
+            double sum = 0;
+            for (Identity.EnrolledSample sample : identity.getSamples()) {
+                sum += sample.getFeatures().getFeature(0);
+            }
+            assertThat(identity.getAverageFeatureVector().getFeature(0)).isCloseTo(sum / samples, within(1e-9));
+        }
+
+        @Test
+        @DisplayName("Should forget the average when samples are cleared")
+        void shouldForgetAverageWhenCleared() {
+            Identity identity = new Identity(TEST_NAME);
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0}, "test", 1), 0.9, "s1");
+            identity.getAverageFeatureVector();
+
+            identity.clearSamples();
+            assertThat(identity.getAverageFeatureVector()).isNull();
+
+            identity.enrollSample(new FeatureVector(new double[]{5.0, 6.0}, "test", 1), 0.9, "s2");
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(5.0, 6.0);
+        }
+
+        @Test
+        @DisplayName("Should rebuild the average after serialization")
+        void shouldRebuildAverageAfterSerialization() throws Exception {
+            Identity identity = new Identity(TEST_NAME);
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0}, "test", 1), 0.9, "s1");
+            identity.getAverageFeatureVector();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(identity);
+            }
+            Identity copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (Identity) in.readObject();
+            }
+            copy.enrollSample(new FeatureVector(new double[]{3.0, 4.0}, "test", 1), 0.9, "s2");
+
+            assertThat(copy.getAverageFeatureVector().getFeatures()).containsExactly(2.0, 3.0);
+        }
+
         @Test
         @DisplayName("Should get all feature vectors")
         void shouldGetAllFeatureVectors() {
@@ -417,6 +531,24 @@ class IdentityTest {
             identity.setActive(true);
             assertThat(identity.isActive()).isTrue();
         }
+
+        @Test
+        @DisplayName("Should copy details and samples independently of the original")
+        void shouldCopyIndependently() {
+            Identity identity = new Identity("id", TEST_NAME, TEST_EXTERNAL_ID);
+            identity.setPartition("site-a");
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0}, "test", 1), 0.9, "s1");
+
+            Identity copy = identity.copy();
+            copy.enrollSample(new FeatureVector(new double[]{3.0, 4.0}, "test", 1), 0.9, "s2");
+
+            assertThat(copy).isEqualTo(identity);
+            assertThat(copy.getExternalId()).isEqualTo(TEST_EXTERNAL_ID);
+            assertThat(copy.getPartition()).isEqualTo("site-a");
+            assertThat(identity.getSampleCount()).isEqualTo(1);
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(1.0, 2.0);
+            assertThat(copy.getAverageFeatureVector().getFeatures()).containsExactly(2.0, 3.0);
+        }
     }
 
     @Nested
@@ -495,6 +627,67 @@ class IdentityTest {
         }
     }
 
+    @Nested
+    @DisplayName("Sample Offload")
+    class SampleOffload {
+
+        @Test
+        @DisplayName("Should read offloaded values back from the store")
+        void shouldReadOffloadedValuesFromStore() {
+            Identity identity = new Identity(TEST_NAME);
+            FeatureVector features = createTestFeatureVector(16);
+            Identity.EnrolledSample sample = identity.enrollSample(features, 0.9, "source");
+            Map<Long, double[]> values = new HashMap<>();
+            values.put(7L, features.getFeatures());
+            FeatureStore store = key -> values.containsKey(key) ? values.get(key).clone() : null;
+
+            sample.offload(store, 7L);
+
+            assertThat(sample.isOffloaded()).isTrue();
+            assertThat(sample.keyIn(store)).isEqualTo(7L);
+            assertThat(sample.getFeatures()).isEqualTo(features);
+            assertThat(sample.getFeatures().getAlgorithmName()).isEqualTo("test");
+
+            assertThat(sample.reclaim(store)).isTrue();
+            assertThat(sample.isOffloaded()).isFalse();
+            assertThat(sample.keyIn(store)).isEqualTo(-1L);
+            assertThat(sample.getFeatures()).isEqualTo(features);
+        }
+
+        @Test
+        @DisplayName("Should fail to read a sample whose store was released")
+        void shouldFailForReleasedStore() {
+            Identity identity = new Identity(TEST_NAME);
+            Identity.EnrolledSample sample = identity.enrollSample(createTestFeatureVector(16), 0.9, "source");
+
+            sample.offload(key -> null, 0L);
+
+            assertThatIllegalStateException().isThrownBy(sample::getFeatures)
+                .withMessageContaining("released store");
+        }
+
+        @Test
+        @DisplayName("Should serialize offloaded samples with their values")
+        void shouldSerializeOffloadedSamplesWithValues() throws Exception {
+            Identity identity = new Identity(TEST_NAME);
+            FeatureVector features = createTestFeatureVector(16);
+            identity.enrollSample(features, 0.9, "source").offload(key -> features.getFeatures(), 0L);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(identity);
+            }
+            Identity restored;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                restored = (Identity) in.readObject();
+            }
+
+            Identity.EnrolledSample sample = restored.getSamples().get(0);
+            assertThat(sample.isOffloaded()).isFalse();
+            assertThat(sample.getFeatures()).isEqualTo(features);
+        }
+    }
+
     // Helper methods
 
     private FeatureVector createTestFeatureVector(int dimension) {
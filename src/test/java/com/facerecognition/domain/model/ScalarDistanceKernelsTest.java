@@ -0,0 +1,156 @@
+package com.facerecognition.domain.model;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Checks the scalar reference kernels and the sparse merges against the
+ * dense double-precision loops. Runs in every build; the Vector API kernels
+ * are checked against these by {@link VectorDistanceKernelsTest} under the
+ * {@code simd} profile.
+ */
+@DisplayName("ScalarDistanceKernels Tests")
+class ScalarDistanceKernelsTest {
+
+    private final DistanceKernels.Implementation scalar = ScalarDistanceKernels.INSTANCE;
+
+    @ParameterizedTest
+    @DisplayName("Should match the double kernels on widened single-precision slices")
+    @ValueSource(ints = {1, 3, 7, 8, 15, 17, 64, 257, 3776})
+    void shouldMatchDoubleKernelsOnFloats(int length) {
+        Random random = new Random(length);
+        double[] a = sparseHistogram(random, length + 5);
+        double[] b = sparseHistogram(random, length + 3);
+        float[] af = new float[a.length];
+        float[] bf = new float[b.length];
+        for (int i = 0; i < a.length; i++) {
+            af[i] = (float) a[i];
+            a[i] = af[i];
+        }
+        for (int i = 0; i < b.length; i++) {
+            bf[i] = (float) b[i];
+            b[i] = bf[i];
+        }
+
+        // The scalar float loops widen first, so they add exactly the double loops' terms.
+        assertThat(scalar.dot(af, 5, bf, 3, length)).isEqualTo(scalar.dot(a, 5, b, 3, length));
+        assertThat(scalar.sumOfSquares(af, 5, length)).isEqualTo(scalar.sumOfSquares(a, 5, length));
+        assertThat(scalar.squaredEuclidean(af, 5, bf, 3, length)).isEqualTo(scalar.squaredEuclidean(a, 5, b, 3, length));
+        assertThat(scalar.manhattan(af, 5, bf, 3, length)).isEqualTo(scalar.manhattan(a, 5, b, 3, length));
+        assertThat(scalar.chiSquare(af, 5, bf, 3, length)).isEqualTo(scalar.chiSquare(a, 5, b, 3, length));
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should match the double kernels on unsigned 8-bit codes")
+    @ValueSource(ints = {1, 3, 7, 8, 15, 17, 64, 257, 3776})
+    void shouldMatchDoubleKernelsOnCodes(int length) {
+        Random random = new Random(length);
+        byte[] a = new byte[length + 5];
+        byte[] b = new byte[length + 3];
+        random.nextBytes(a);
+        random.nextBytes(b);
+        double[] ad = unsigned(a);
+        double[] bd = unsigned(b);
+
+        // Integer sums of at most a few million are exact in double precision.
+        assertThat((double) scalar.dot(a, 5, b, 3, length)).isEqualTo(scalar.dot(ad, 5, bd, 3, length));
+        assertThat((double) scalar.squaredEuclidean(a, 5, b, 3, length))
+            .isEqualTo(scalar.squaredEuclidean(ad, 5, bd, 3, length));
+        assertThat((double) scalar.manhattan(a, 5, b, 3, length)).isEqualTo(scalar.manhattan(ad, 5, bd, 3, length));
+        assertThat(scalar.chiSquare(a, 5, b, 3, new double[length], length))
+            .isCloseTo(scalar.chiSquare(ad, 5, bd, 3, length), within(1e-9 * length));
+    }
+
+    @Test
+    @DisplayName("Should add the bias to each bin's total in the code chi-square")
+    void shouldAddBiasInCodeChiSquare() {
+        byte[] a = {(byte) 200, 0, 4};
+        byte[] b = {100, 0, 4};
+        double[] bias = {0.0, -1.0, 2.0};
+
+        // Bin 0: 100^2 / 300; bin 1 has a negative total and is skipped; bin 2 has no difference.
+        assertThat(scalar.chiSquare(a, 0, b, 0, bias, 3)).isCloseTo(10_000.0 / 300.0, within(1e-12));
+    }
+
+    @Test
+    @DisplayName("Should not overflow on long runs of extreme codes")
+    void shouldNotOverflowOnExtremeCodes() {
+        byte[] a = new byte[300_000];
+        byte[] b = new byte[300_000];
+        Arrays.fill(a, (byte) 255);
+
+        assertThat(scalar.squaredEuclidean(a, 0, b, 0, a.length)).isEqualTo(300_000L * 255 * 255);
+        assertThat(scalar.dot(a, 0, a, 0, a.length)).isEqualTo(300_000L * 255 * 255);
+        assertThat(scalar.manhattan(a, 0, b, 0, a.length)).isEqualTo(300_000L * 255);
+    }
+
+    @Test
+    @DisplayName("Should ignore bins that are empty in both histograms")
+    void shouldIgnoreEmptyBinsInChiSquare() {
+        double[] a = new double[64];
+        double[] b = new double[64];
+        a[10] = 0.5;
+        b[10] = 0.25;
+
+        assertThat(scalar.chiSquare(a, 0, b, 0, a.length)).isCloseTo(0.0625 / 0.75, within(1e-15));
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should match the scalar kernels on sparse slices")
+    @ValueSource(ints = {1, 7, 64, 3776})
+    void shouldMatchScalarKernelsOnSparseSlices(int length) {
+        Random random = new Random(length);
+        double[] a = sparseHistogram(random, length);
+        double[] b = sparseHistogram(random, length);
+        b[0] = -b[0];
+        FeatureVector sparseA = FeatureVector.sparse(a, "test", 1);
+        FeatureVector sparseB = FeatureVector.sparse(b, "test", 1);
+        int[] ai = sparseA.getNonZeroIndices();
+        double[] av = sparseA.getNonZeroValues();
+        int[] bi = sparseB.getNonZeroIndices();
+        double[] bv = sparseB.getNonZeroValues();
+
+        // The merges add the dense loops' non-zero terms in the same order.
+        assertThat(DistanceKernels.dot(ai, av, 0, ai.length, bi, bv, 0, bi.length))
+            .isEqualTo(scalar.dot(a, 0, b, 0, length));
+        assertThat(DistanceKernels.squaredEuclidean(ai, av, 0, ai.length, bi, bv, 0, bi.length))
+            .isEqualTo(scalar.squaredEuclidean(a, 0, b, 0, length));
+        assertThat(DistanceKernels.manhattan(ai, av, 0, ai.length, bi, bv, 0, bi.length))
+            .isEqualTo(scalar.manhattan(a, 0, b, 0, length));
+        assertThat(DistanceKernels.chiSquare(ai, av, 0, ai.length, bi, bv, 0, bi.length))
+            .isEqualTo(scalar.chiSquare(a, 0, b, 0, length));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the scalar kernels without the Vector API")
+    void shouldFallBackToScalarKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            assertThat(DistanceKernels.implementationName()).isEqualTo(scalar.name());
+        } else {
+            assertThat(DistanceKernels.implementationName()).isNotBlank();
+        }
+    }
+
+    private static double[] unsigned(byte[] codes) {
+        double[] values = new double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            values[i] = codes[i] & 0xFF;
+        }
+        return values;
+    }
+
+    // LBPH-like data: non-negative, about half the bins empty.
+    private static double[] sparseHistogram(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextBoolean() ? 0.0 : random.nextDouble();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,155 @@
+package com.facerecognition.domain.model;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the Vector API kernels agree with the scalar reference loops.
+ * Compiled and run only under the {@code simd} Maven profile, which starts
+ * the test JVM with {@code --add-modules jdk.incubator.vector}; the scalar
+ * and sparse kernels are covered by {@link ScalarDistanceKernelsTest} in
+ * every build.
+ */
+@DisplayName("VectorDistanceKernels Tests")
+class VectorDistanceKernelsTest {
+
+    private static final double RELATIVE_TOLERANCE = 1e-9;
+
+    private final DistanceKernels.Implementation scalar = ScalarDistanceKernels.INSTANCE;
+    private DistanceKernels.Implementation vector;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+            "jdk.incubator.vector not resolved in this JVM");
+        vector = VectorDistanceKernels.create();
+        assumeTrue(vector != null, "platform has fewer than two double lanes");
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should match the scalar kernels, including the scalar tail")
+    @ValueSource(ints = {1, 3, 7, 8, 15, 64, 257, 3776, 16384})
+    void shouldMatchScalarKernels(int length) {
+        Random random = new Random(length);
+        double[] a = sparseHistogram(random, length + 5);
+        double[] b = sparseHistogram(random, length + 3);
+
+        // Odd offsets exercise unaligned loads, as in a packed gallery row.
+        assertClose(vector.dot(a, 5, b, 3, length), scalar.dot(a, 5, b, 3, length));
+        assertClose(vector.sumOfSquares(a, 5, length), scalar.sumOfSquares(a, 5, length));
+        assertClose(vector.squaredEuclidean(a, 5, b, 3, length), scalar.squaredEuclidean(a, 5, b, 3, length));
+        assertClose(vector.manhattan(a, 5, b, 3, length), scalar.manhattan(a, 5, b, 3, length));
+        assertClose(vector.chiSquare(a, 5, b, 3, length), scalar.chiSquare(a, 5, b, 3, length));
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should match the scalar kernels on single-precision slices")
+    @ValueSource(ints = {1, 3, 7, 8, 15, 17, 64, 257, 3776, 16384})
+    void shouldMatchScalarKernelsOnFloats(int length) {
+        Random random = new Random(length);
+        float[] af = toFloats(sparseHistogram(random, length + 5));
+        float[] bf = toFloats(sparseHistogram(random, length + 3));
+
+        assertClose(vector.dot(af, 5, bf, 3, length), scalar.dot(af, 5, bf, 3, length));
+        assertClose(vector.sumOfSquares(af, 5, length), scalar.sumOfSquares(af, 5, length));
+        assertClose(vector.squaredEuclidean(af, 5, bf, 3, length), scalar.squaredEuclidean(af, 5, bf, 3, length));
+        assertClose(vector.manhattan(af, 5, bf, 3, length), scalar.manhattan(af, 5, bf, 3, length));
+        assertClose(vector.chiSquare(af, 5, bf, 3, length), scalar.chiSquare(af, 5, bf, 3, length));
+    }
+
+    @ParameterizedTest
+    @DisplayName("Should match the scalar 8-bit code kernels")
+    @ValueSource(ints = {1, 3, 7, 8, 15, 17, 64, 257, 3776, 16384})
+    void shouldMatchScalarCodeKernels(int length) {
+        Random random = new Random(length);
+        byte[] a = new byte[length + 5];
+        byte[] b = new byte[length + 3];
+        random.nextBytes(a);
+        random.nextBytes(b);
+        double[] bias = new double[length];
+        for (int i = 0; i < length; i++) {
+            bias[i] = random.nextDouble() * 3 - 1;
+        }
+
+        assertThat(vector.dot(a, 5, b, 3, length)).isEqualTo(scalar.dot(a, 5, b, 3, length));
+        assertThat(vector.squaredEuclidean(a, 5, b, 3, length)).isEqualTo(scalar.squaredEuclidean(a, 5, b, 3, length));
+        assertThat(vector.manhattan(a, 5, b, 3, length)).isEqualTo(scalar.manhattan(a, 5, b, 3, length));
+        assertClose(vector.chiSquare(a, 5, b, 3, bias, length), scalar.chiSquare(a, 5, b, 3, bias, length));
+    }
+
+    @Test
+    @DisplayName("Should not overflow on long runs of extreme codes")
+    void shouldNotOverflowOnExtremeCodes() {
+        byte[] a = new byte[300_000];
+        byte[] b = new byte[300_000];
+        Arrays.fill(a, (byte) 255);
+
+        assertThat(vector.squaredEuclidean(a, 0, b, 0, a.length)).isEqualTo(300_000L * 255 * 255);
+        assertThat(vector.dot(a, 0, a, 0, a.length)).isEqualTo(300_000L * 255 * 255);
+        assertThat(vector.manhattan(a, 0, b, 0, a.length)).isEqualTo(300_000L * 255);
+    }
+
+    @Test
+    @DisplayName("Should ignore bins that are empty in both histograms")
+    void shouldIgnoreEmptyBinsInChiSquare() {
+        double[] a = new double[64];
+        double[] b = new double[64];
+        a[10] = 0.5;
+        b[10] = 0.25;
+
+        assertThat(vector.chiSquare(a, 0, b, 0, a.length))
+            .isCloseTo(scalar.chiSquare(a, 0, b, 0, a.length), within(1e-15))
+            .isNotNaN();
+    }
+
+    @Test
+    @DisplayName("Should handle negative values")
+    void shouldHandleNegativeValues() {
+        Random random = new Random(42);
+        double[] a = new double[1000];
+        double[] b = new double[1000];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = random.nextGaussian() * 1000;
+            b[i] = random.nextGaussian() * 1000;
+        }
+
+        assertClose(vector.dot(a, 0, b, 0, a.length), scalar.dot(a, 0, b, 0, a.length));
+        assertClose(vector.squaredEuclidean(a, 0, b, 0, a.length), scalar.squaredEuclidean(a, 0, b, 0, a.length));
+        assertClose(vector.manhattan(a, 0, b, 0, a.length), scalar.manhattan(a, 0, b, 0, a.length));
+    }
+
+    @Test
+    @DisplayName("Should expose the active implementation name")
+    void shouldExposeImplementationName() {
+        assertThat(DistanceKernels.implementationName()).isIn("scalar", vector.name());
+    }
+
+    private static void assertClose(double actual, double expected) {
+        double tolerance = Math.max(1e-12, Math.abs(expected) * RELATIVE_TOLERANCE);
+        assertThat(actual).isCloseTo(expected, within(tolerance));
+    }
+
+    private static float[] toFloats(double[] values) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return floats;
+    }
+
+    // LBPH-like data: non-negative, about half the bins empty.
+    private static double[] sparseHistogram(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextBoolean() ? 0.0 : random.nextDouble();
+        }
+        return values;
+    }
+}
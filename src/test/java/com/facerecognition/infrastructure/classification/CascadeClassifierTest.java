@@ -0,0 +1,205 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for CascadeClassifier.
+ */
+@DisplayName("CascadeClassifier Tests")
+class CascadeClassifierTest {
+
+    private static final int COARSE = 4;
+    private static final int FINE = 64;
+
+    private final Random random = new Random(31);
+    private final ClassifierConfig config = new ClassifierConfig().setK(3).setMetric(DistanceMetric.CHI_SQUARE);
+
+    @Nested
+    @DisplayName("Ranking Tests")
+    class RankingTests {
+
+        @Test
+        @DisplayName("Should match a fine-only scan when the shortlist covers the gallery")
+        void shouldMatchFineOnlyScanWithFullShortlist() {
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> COARSE, 40);
+            KNNClassifier fineOnly = new KNNClassifier(config);
+            List<double[]> coarseParts = new ArrayList<>();
+            List<double[]> fineParts = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                coarseParts.add(coarsePart());
+                fineParts.add(finePart());
+                cascade.enroll(identity("id" + i, coarseParts.get(i), fineParts.get(i)));
+                Identity fine = new Identity("id" + i, "Person " + i, null);
+                fine.enrollSample(FeatureVector.sparse(fineParts.get(i), "test", 1), 1.0, "test");
+                fineOnly.enroll(fine);
+            }
+
+            for (int t = 0; t < 10; t++) {
+                double[] fine = finePart();
+                FeatureVector probe = joined(coarsePart(), fine);
+
+                RecognitionResult expected = fineOnly.getTopMatches(FeatureVector.sparse(fine, "test", 1), 3);
+                RecognitionResult actual = cascade.getTopMatches(probe, 3);
+
+                assertThat(actual.getBestMatch()).get()
+                    .extracting(match -> match.getIdentity().getId())
+                    .isEqualTo(expected.getBestMatch().get().getIdentity().getId());
+                assertThat(actual.getBestMatch().get().getDistance())
+                    .isCloseTo(expected.getBestMatch().get().getDistance(), within(1e-9));
+            }
+        }
+
+        @Test
+        @DisplayName("Should re-rank only the coarse shortlist")
+        void shouldReRankOnlyCoarseShortlist() {
+            double[] sharedFine = finePart();
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> COARSE, 1);
+            cascade.enroll(identity("near", new double[]{0.0, 0.0, 0.0, 0.0}, finePart()));
+            cascade.enroll(identity("far", new double[]{100.0, 100.0, 100.0, 100.0}, sharedFine));
+
+            RecognitionResult result = cascade.getTopMatches(joined(new double[]{1.0, 0.0, 0.0, 0.0}, sharedFine), 1);
+
+            assertThat(result.getBestMatch()).get()
+                .extracting(match -> match.getIdentity().getId()).isEqualTo("near");
+        }
+
+        @Test
+        @DisplayName("Should verify on the fine part only")
+        void shouldVerifyOnFinePart() {
+            double[] fine = finePart();
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> COARSE, 5);
+            cascade.enroll(identity("ann", new double[]{100.0, 100.0, 100.0, 100.0}, fine));
+
+            FeatureVector probe = joined(new double[]{0.0, 0.0, 0.0, 0.0}, fine);
+
+            assertThat(cascade.getDistance(probe, "ann")).isEqualTo(0.0);
+            assertThat(cascade.verify(probe, "ann", 0.9).isRecognized()).isTrue();
+        }
+    }
+
+    @Nested
+    @DisplayName("Gallery Tests")
+    class GalleryTests {
+
+        @Test
+        @DisplayName("Should keep the coarse stage in step with enrolment")
+        void shouldKeepCoarseStageInStep() {
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> COARSE, 5);
+            cascade.enroll(identity("ann", coarsePart(), finePart()));
+            cascade.enroll(identity("bob", coarsePart(), finePart()));
+
+            cascade.unenroll("ann");
+            assertThat(cascade.getCoarse().getEnrolledCount()).isEqualTo(1);
+
+            cascade.clear();
+            assertThat(cascade.getCoarse().getEnrolledCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should reject vectors that cannot be split")
+        void shouldRejectUnsplittableVectors() {
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> COARSE, 5);
+            Identity identity = new Identity("ann", "Ann", null);
+            identity.enrollSample(new FeatureVector(new double[]{1.0, 2.0, 3.0}), 1.0, "test");
+
+            assertThatThrownBy(() -> cascade.enroll(identity))
+                .isInstanceOf(IllegalArgumentException.class);
+            assertThat(cascade.isEnrolled("ann")).isFalse();
+        }
+
+        @Test
+        @DisplayName("Should read the split once per gallery and keep it across serialization")
+        void shouldKeepSplitAcrossSerialization() throws Exception {
+            int[] reads = {0};
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> {
+                reads[0]++;
+                return COARSE;
+            }, 5);
+            Identity ann = identity("ann", coarsePart(), finePart());
+            cascade.enroll(ann);
+            cascade.enroll(identity("bob", coarsePart(), finePart()));
+            FeatureVector probe = ann.getSamples().get(0).getFeatures();
+            cascade.classify(probe, 0.0);
+            assertThat(reads[0]).isEqualTo(1);
+            assertThat(cascade.getCoarseDimension()).isEqualTo(COARSE);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(cascade);
+            }
+            CascadeClassifier restored;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                restored = (CascadeClassifier) in.readObject();
+            }
+            restored.enroll(identity("cal", coarsePart(), finePart()));
+
+            assertThat(restored.getCoarseDimension()).isEqualTo(COARSE);
+            assertThat(restored.classify(probe, 0.0).getIdentity()).map(Identity::getId).contains("ann");
+            assertThat(restored.getDistance(probe, "ann")).isEqualTo(cascade.getDistance(probe, "ann"));
+        }
+
+        @Test
+        @DisplayName("Should read the split again after clear")
+        void shouldReadSplitAgainAfterClear() {
+            int[] split = {COARSE};
+            CascadeClassifier cascade = new CascadeClassifier(config, () -> split[0], 5);
+            cascade.enroll(identity("ann", coarsePart(), finePart()));
+
+            cascade.clear();
+            split[0] = COARSE + 1;
+            cascade.enroll(identity("bob", coarsePart(), finePart()));
+
+            assertThat(cascade.getCoarseDimension()).isEqualTo(COARSE + 1);
+        }
+
+        @Test
+        @DisplayName("Should reject an empty shortlist")
+        void shouldRejectEmptyShortlist() {
+            assertThatThrownBy(() -> new CascadeClassifier(config, () -> COARSE, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private Identity identity(String id, double[] coarse, double[] fine) {
+        Identity identity = new Identity(id, "Person " + id, null);
+        identity.enrollSample(joined(coarse, fine), 1.0, "test");
+        return identity;
+    }
+
+    private FeatureVector joined(double[] coarse, double[] fine) {
+        return FeatureVector.concat(new FeatureVector(coarse), FeatureVector.sparse(fine, "test", 1), "test", 1);
+    }
+
+    private double[] coarsePart() {
+        double[] values = new double[COARSE];
+        for (int i = 0; i < COARSE; i++) {
+            values[i] = random.nextGaussian() * 10;
+        }
+        return values;
+    }
+
+    // A histogram with a handful of filled bins.
+    private double[] finePart() {
+        double[] values = new double[FINE];
+        for (int i = 0; i < 8; i++) {
+            values[random.nextInt(FINE)] = random.nextDouble();
+        }
+        return values;
+    }
+}
@@ -1,5 +1,6 @@
 package com.facerecognition.infrastructure.classification;
 
+import com.facerecognition.domain.model.FeaturePrecision;
 import com.facerecognition.domain.model.FeatureVector;
 import com.facerecognition.domain.model.Identity;
 import com.facerecognition.domain.model.RecognitionResult;
@@ -12,7 +13,20 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -419,6 +433,97 @@ class KNNClassifierTest {
         }
     }
 
+    @Nested
+    @DisplayName("Verification Tests")
+    class VerificationTests {
+
+        @Test
+        @DisplayName("Should verify the claimed identity at its getDistance distance")
+        void shouldVerifyClaimedIdentity() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(createIdentityWithFeatures("Jane", new double[]{1.0, 0.1, 0.0}));
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.05, 0.0}, "test", 1);
+            RecognitionResult result = classifier.verify(probe, john.getId(), 0.5);
+
+            assertThat(result.getStatus()).isEqualTo(RecognitionResult.Status.RECOGNIZED);
+            assertThat(result.getBestMatch().orElseThrow().getIdentity().getId()).isEqualTo(john.getId());
+            assertThat(result.getBestMatch().orElseThrow().getDistance())
+                .isEqualTo(classifier.getDistance(probe, john.getId()));
+            assertThat(result.getAlternatives()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Should score like classify")
+        void shouldScoreLikeClassify() {
+            Identity identity = createIdentityWithSamples("Test", 3);
+            classifier.enroll(identity);
+
+            FeatureVector probe = createTestFeatureVector(128);
+            RecognitionResult.MatchResult classified = classifier.getTopMatches(probe, 1).getBestMatch().orElseThrow();
+            RecognitionResult verified = classifier.verify(probe, identity.getId(), 0.0);
+
+            assertThat(verified.getConfidence()).isEqualTo(classified.getConfidence());
+        }
+
+        @Test
+        @DisplayName("Should reject below threshold and report the score as an alternative")
+        void shouldRejectBelowThreshold() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0});
+            classifier.enroll(john);
+
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 1.0}, "test", 1);
+            RecognitionResult result = classifier.verify(probe, john.getId(), 1.0);
+
+            assertThat(result.getStatus()).isEqualTo(RecognitionResult.Status.UNKNOWN);
+            assertThat(result.getBestMatch()).isEmpty();
+            assertThat(result.getAlternatives()).singleElement()
+                .satisfies(match -> assertThat(match.getIdentity().getId()).isEqualTo(john.getId()));
+        }
+
+        @Test
+        @DisplayName("Should not verify unknown or inactive identities")
+        void shouldNotVerifyUnknownOrInactiveIdentities() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0});
+            john.setActive(false);
+            classifier.enroll(john);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0}, "test", 1);
+
+            assertThat(classifier.verify(probe, john.getId(), 0.0).getStatus())
+                .isEqualTo(RecognitionResult.Status.UNKNOWN);
+            assertThat(classifier.verify(probe, "missing", 0.0).getAlternatives()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Should verify the same through the interface default")
+        void shouldVerifySameThroughInterfaceDefault() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0});
+            jane.setActive(false);
+            classifier.enroll(john);
+            classifier.enroll(jane);
+            // Routes verify to FaceClassifier's default and everything else to the classifier.
+            FaceClassifier view = (FaceClassifier) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FaceClassifier.class}, (proxy, method, args) -> method.getName().equals("verify")
+                    ? InvocationHandler.invokeDefault(proxy, method, args)
+                    : method.invoke(classifier, args));
+
+            FeatureVector probe = new FeatureVector(new double[]{0.9, 0.1, 0.0}, "test", 1);
+            for (double threshold : new double[]{0.0, 1.0}) {
+                RecognitionResult expected = classifier.verify(probe, john.getId(), threshold);
+                RecognitionResult actual = view.verify(probe, john.getId(), threshold);
+
+                assertThat(actual.getStatus()).isEqualTo(expected.getStatus());
+                assertThat(actual.getConfidence()).isEqualTo(expected.getConfidence());
+                assertThat(actual.getAlternatives()).hasSameSizeAs(expected.getAlternatives());
+            }
+            assertThat(view.verify(probe, jane.getId(), 0.0).getStatus()).isEqualTo(RecognitionResult.Status.UNKNOWN);
+            assertThat(view.verify(probe, "missing", 0.0).getAlternatives()).isEmpty();
+        }
+    }
+
     @Nested
     @DisplayName("Configuration Tests")
     class ConfigurationTests {
@@ -523,6 +628,675 @@ class KNNClassifierTest {
         }
     }
 
+    @Nested
+    @DisplayName("Packed Gallery Tests")
+    class PackedGalleryTests {
+
+        @ParameterizedTest
+        @DisplayName("Should report the same distances as the per-identity path")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldMatchPerIdentityDistances(DistanceMetric metric) {
+            KNNClassifier metricClassifier = new KNNClassifier(new ClassifierConfig().setMetric(metric));
+            for (int i = 0; i < 20; i++) {
+                metricClassifier.enroll(createIdentityWithSamples("Person " + i, 3));
+            }
+
+            FeatureVector probe = createTestFeatureVector(128);
+            RecognitionResult result = metricClassifier.getTopMatches(probe, 5);
+
+            // Cosine is scored on unit-length rows, which rounds differently from FeatureVector
+            RecognitionResult.MatchResult best = result.getBestMatch().orElseThrow();
+            assertThat(best.getDistance())
+                .isCloseTo(metricClassifier.getDistance(probe, best.getIdentity().getId()), within(1e-12));
+            for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+                assertThat(alternative.getDistance())
+                    .isCloseTo(metricClassifier.getDistance(probe, alternative.getIdentity().getId()), within(1e-12))
+                    .isGreaterThanOrEqualTo(best.getDistance());
+            }
+        }
+
+        @Test
+        @DisplayName("Should stop matching an identity after unenroll")
+        void shouldStopMatchingAfterUnenroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(john);
+
+            classifier.unenroll(john.getId());
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should pick up new samples when an identity is re-enrolled")
+        void shouldPickUpNewSamplesOnReEnroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1);
+            classifier.classify(probe, 0.0);
+
+            jane.enrollSample(new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1), 0.9, "extra");
+            classifier.enroll(jane);
+
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(jane);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @ParameterizedTest
+        @DisplayName("Should rank enrolments appended to a packed gallery like a fresh pack")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldRankAppendedEnrolmentsLikeFreshPack(DistanceMetric metric) {
+            KNNClassifier appended = new KNNClassifier(new ClassifierConfig().setMetric(metric));
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                identities.add(createIdentityWithSamples("Person " + i, 2));
+                appended.enroll(identities.get(i));
+            }
+            appended.classify(createTestFeatureVector(128), 0.0);
+
+            for (int i = 10; i < 15; i++) {
+                identities.add(createIdentityWithSamples("Person " + i, 1));
+                appended.enroll(identities.get(i));
+            }
+            for (int i = 0; i < 3; i++) {
+                Identity copy = identities.get(i).copy();
+                copy.enrollSample(createTestFeatureVector(128), 0.9, "extra");
+                identities.set(i, copy);
+                appended.enroll(copy);
+            }
+            KNNClassifier fresh = new KNNClassifier(new ClassifierConfig().setMetric(metric));
+            identities.forEach(fresh::enroll);
+
+            FeatureVector probe = createTestFeatureVector(128);
+            RecognitionResult expected = fresh.getTopMatches(probe, identities.size());
+            RecognitionResult actual = appended.getTopMatches(probe, identities.size());
+
+            assertThat(distancesById(actual)).isEqualTo(distancesById(expected));
+        }
+
+        @Test
+        @DisplayName("Should stop matching the samples of an identity replaced after packing")
+        void shouldRetireReplacedSamples() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(john);
+
+            Identity moved = john.copy();
+            moved.clearSamples();
+            moved.enrollSample(new FeatureVector(new double[]{0.0, 0.0, 5.0, 0.0}, "test", 1), 0.9, "moved");
+            classifier.enroll(moved);
+
+            RecognitionResult result = classifier.getTopMatches(probe, 2);
+            assertThat(result.getIdentity()).contains(jane);
+            assertThat(result.getAlternatives()).singleElement()
+                .satisfies(m -> assertThat(m.getDistance()).isEqualTo(Math.sqrt(26.0)));
+        }
+
+        @Test
+        @DisplayName("Should repack the gallery when switching to and from cosine")
+        void shouldRepackWhenSwitchingCosine() {
+            Identity near = createIdentityWithFeatures("Near", new double[]{10.0, 0.0});
+            Identity aligned = createIdentityWithFeatures("Aligned", new double[]{100.0, 100.0});
+            classifier.enroll(near);
+            classifier.enroll(aligned);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 1.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(near);
+
+            classifier.setDistanceMetric(DistanceMetric.COSINE);
+            RecognitionResult cosine = classifier.classify(probe, 0.0);
+            assertThat(cosine.getIdentity()).contains(aligned);
+            assertThat(cosine.getBestMatch().orElseThrow().getDistance()).isCloseTo(0.0, within(1e-12));
+
+            classifier.setDistanceMetric(DistanceMetric.EUCLIDEAN);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(near);
+        }
+
+        @Test
+        @DisplayName("Should reject a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2));
+
+            FeatureVector probe = createTestFeatureVector(64);
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classify(probe))
+                .withMessageContaining("Dimension mismatch");
+        }
+    }
+
+    @Nested
+    @DisplayName("Int8 Gallery Tests")
+    class Int8GalleryTests {
+
+        @ParameterizedTest
+        @DisplayName("Should rank like the double gallery with distances close to exact")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldRankLikeDoubleGallery(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier exact = new KNNClassifier(config);
+            KNNClassifier quantised = new KNNClassifier(config, GalleryPrecision.INT8);
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 2);
+                identities.add(identity);
+                exact.enroll(identity);
+                quantised.enroll(identity);
+            }
+
+            for (Identity target : identities) {
+                double[] values = target.getSamples().get(0).getFeatures().getFeatures().clone();
+                values[0] += 0.01;
+                FeatureVector probe = new FeatureVector(values, "test", 1);
+
+                RecognitionResult.MatchResult expected = exact.classify(probe, 0.0).getBestMatch().orElseThrow();
+                RecognitionResult.MatchResult actual = quantised.classify(probe, 0.0).getBestMatch().orElseThrow();
+                assertThat(actual.getIdentity()).isSameAs(target).isSameAs(expected.getIdentity());
+            }
+
+            FeatureVector probe = createTestFeatureVector(128);
+            RecognitionResult.MatchResult best = quantised.getTopMatches(probe, 1).getBestMatch().orElseThrow();
+            double exactDistance = quantised.getDistance(probe, best.getIdentity().getId());
+            assertThat(best.getDistance()).isCloseTo(exactDistance, withinPercentage(2));
+        }
+
+        @Test
+        @DisplayName("Should resolve small differences on dimensions far from zero")
+        void shouldResolveDifferencesFarFromZero() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+            Identity john = createIdentityWithFeatures("John", new double[]{1000.0, 0.10});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{1000.0, 0.20});
+            quantised.enroll(john);
+            quantised.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{1000.0, 0.18}, "test", 1);
+
+            assertThat(quantised.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should clamp probe values outside the gallery range")
+        void shouldClampProbeValuesOutsideGalleryRange() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+            Identity john = createIdentityWithFeatures("John", new double[]{0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{1.0, 1.0});
+            quantised.enroll(john);
+            quantised.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{5.0, 5.0}, "test", 1);
+            RecognitionResult result = quantised.classify(probe, 0.0);
+
+            assertThat(result.getIdentity()).contains(jane);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should rebuild after unenroll and skip inactive identities")
+        void shouldRebuildAfterUnenroll() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            Identity jack = createIdentityWithFeatures("Jack", new double[]{0.0, 0.0, 1.0, 0.0});
+            quantised.enroll(john);
+            quantised.enroll(jane);
+            quantised.enroll(jack);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.1, 0.0, 0.0}, "test", 1);
+            assertThat(quantised.classify(probe, 0.0).getIdentity()).contains(john);
+
+            quantised.unenroll(john.getId());
+            assertThat(quantised.classify(probe, 0.0).getIdentity()).contains(jane);
+
+            jane.setActive(false);
+            assertThat(quantised.classify(probe, 0.0).getIdentity()).contains(jack);
+        }
+
+        @Test
+        @DisplayName("Should offload packed samples into the codes and reclaim them on unenroll")
+        void shouldOffloadPackedSamples() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+            Identity john = createIdentityWithFeatures("John", new double[]{0.0, 0.5, 1.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{1.0, 0.25, 0.0});
+            quantised.enroll(john);
+            quantised.enroll(jane);
+
+            quantised.classify(createTestFeatureVector(3), 0.0);
+
+            Identity.EnrolledSample sample = john.getSamples().get(0);
+            assertThat(sample.isOffloaded()).isTrue();
+            assertThat(sample.getFeatures().getFeatures()).containsExactly(new double[]{0.0, 0.5, 1.0}, within(0.5 / 255));
+
+            quantised.unenroll(john.getId());
+            assertThat(sample.isOffloaded()).isFalse();
+            assertThat(jane.getSamples().get(0).isOffloaded()).isTrue();
+        }
+
+        @Test
+        @DisplayName("Should keep the codes of packed samples when repacking on the same grid")
+        void shouldKeepCodesWhenRepacking() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+            Identity john = createIdentityWithFeatures("John", new double[]{0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{1.0, 1.0, 1.0});
+            Identity jack = createIdentityWithFeatures("Jack", new double[]{0.3, 0.6, 0.9});
+            quantised.enroll(john);
+            quantised.enroll(jane);
+            quantised.enroll(jack);
+            quantised.classify(createTestFeatureVector(3), 0.0);
+            double[] packed = jack.getSamples().get(0).getFeatures().getFeatures();
+
+            quantised.enroll(createIdentityWithFeatures("Jill", new double[]{0.1, 0.2, 0.4}));
+            quantised.classify(createTestFeatureVector(3), 0.0);
+            quantised.unenroll(jane.getId());
+            quantised.classify(createTestFeatureVector(3), 0.0);
+            quantised.clear();
+            quantised.enroll(john);
+            quantised.enroll(jack);
+            quantised.classify(createTestFeatureVector(3), 0.0);
+
+            assertThat(jack.getSamples().get(0).getFeatures().getFeatures()).containsExactly(packed);
+        }
+
+        @Test
+        @DisplayName("Should expose the gallery precision")
+        void shouldExposePrecision() {
+            KNNClassifier quantised = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.INT8);
+
+            assertThat(classifier.getPrecision()).isEqualTo(GalleryPrecision.FLOAT64);
+            assertThat(quantised.getPrecision()).isEqualTo(GalleryPrecision.INT8);
+            assertThat(quantised.toString()).contains("precision=INT8");
+            assertThatNullPointerException()
+                .isThrownBy(() -> new KNNClassifier(new ClassifierConfig(), null));
+        }
+    }
+
+    @Nested
+    @DisplayName("Float32 Gallery Tests")
+    class Float32GalleryTests {
+
+        @ParameterizedTest
+        @DisplayName("Should rank single-precision samples exactly like the double gallery")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldMatchDoubleGalleryOnSinglePrecisionSamples(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier exact = new KNNClassifier(config);
+            KNNClassifier narrow = new KNNClassifier(config, GalleryPrecision.FLOAT32);
+            Random random = new Random(metric.ordinal());
+            for (int i = 0; i < 30; i++) {
+                Identity identity = new Identity("Person " + i);
+                for (int s = 0; s < 2; s++) {
+                    identity.enrollSample(FeatureVector.of(createSparseHistogram(random, 96), "test", 1,
+                        FeaturePrecision.FLOAT32), 1.0, "test");
+                }
+                exact.enroll(identity);
+                narrow.enroll(identity);
+            }
+
+            for (int p = 0; p < 10; p++) {
+                FeatureVector probe = FeatureVector.of(createSparseHistogram(random, 96), "test", 1,
+                    FeaturePrecision.FLOAT32);
+                RecognitionResult expected = exact.getTopMatches(probe, 5);
+                RecognitionResult actual = narrow.getTopMatches(probe, 5);
+                assertThat(actual.getAlternatives()).hasSameSizeAs(expected.getAlternatives());
+                for (int r = 0; r < expected.getAlternatives().size(); r++) {
+                    RecognitionResult.MatchResult e = expected.getAlternatives().get(r);
+                    RecognitionResult.MatchResult a = actual.getAlternatives().get(r);
+                    assertThat(a.getIdentity()).isSameAs(e.getIdentity());
+                    assertThat(a.getDistance()).isCloseTo(e.getDistance(), within(1e-9));
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("Should rank double-precision probes like the double gallery")
+        void shouldRankDoubleProbes() {
+            KNNClassifier narrow = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.FLOAT32);
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 2);
+                identities.add(identity);
+                narrow.enroll(identity);
+            }
+
+            for (Identity target : identities) {
+                double[] values = target.getSamples().get(0).getFeatures().getFeatures();
+                values[0] += 0.01;
+                FeatureVector probe = new FeatureVector(values, "test", 1);
+
+                assertThat(narrow.classify(probe, 0.0).getIdentity()).contains(target);
+                assertThat(narrow.classifyBatch(List.of(probe), 0.0).get(0).getIdentity()).contains(target);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Sparse Gallery Tests")
+    class SparseGalleryTests {
+
+        @ParameterizedTest
+        @DisplayName("Should rank sparse samples like dense ones with the same distances")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldRankLikeDenseGallery(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier dense = new KNNClassifier(config);
+            KNNClassifier sparse = new KNNClassifier(config);
+            Random random = new Random(metric.ordinal());
+            for (int i = 0; i < 30; i++) {
+                Identity denseIdentity = new Identity("Person " + i);
+                Identity sparseIdentity = new Identity("Person " + i);
+                for (int s = 0; s < 2; s++) {
+                    double[] values = createSparseHistogram(random, 256);
+                    denseIdentity.enrollSample(new FeatureVector(values, "test", 1), 0.9, "s" + s);
+                    sparseIdentity.enrollSample(FeatureVector.sparse(values, "test", 1), 0.9, "s" + s);
+                }
+                dense.enroll(denseIdentity);
+                sparse.enroll(sparseIdentity);
+            }
+
+            for (int q = 0; q < 10; q++) {
+                FeatureVector probe = FeatureVector.sparse(createSparseHistogram(random, 256), "test", 1);
+                List<RecognitionResult.MatchResult> expected = dense.getTopMatches(probe, 5).getAlternatives();
+                List<RecognitionResult.MatchResult> actual = sparse.getTopMatches(probe, 5).getAlternatives();
+
+                assertThat(actual).hasSameSizeAs(expected);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertThat(actual.get(i).getIdentity().getName())
+                        .isEqualTo(expected.get(i).getIdentity().getName());
+                    assertThat(actual.get(i).getDistance())
+                        .isCloseTo(expected.get(i).getDistance(), within(1e-9));
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("Should accept dense probes and skip inactive identities")
+        void shouldAcceptDenseProbes() {
+            Identity john = new Identity("John");
+            john.enrollSample(FeatureVector.sparse(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1), 0.9, "s1");
+            Identity jane = new Identity("Jane");
+            jane.enrollSample(FeatureVector.sparse(new double[]{0.0, 1.0, 0.0, 0.0}, "test", 1), 0.9, "s1");
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{0.9, 0.2, 0.0, 0.0}, "test", 1);
+            RecognitionResult result = classifier.classify(probe, 0.0);
+
+            assertThat(result.getIdentity()).contains(john);
+            assertThat(result.getBestMatch().orElseThrow().getDistance())
+                .isCloseTo(classifier.getDistance(probe, john.getId()), within(1e-12));
+
+            john.setActive(false);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should store only the non-zero values")
+        void shouldStoreOnlyNonZeroValues() {
+            Identity john = new Identity("John");
+            john.enrollSample(FeatureVector.sparse(new double[]{1.0, 0.0, 0.0, 2.0}, "test", 1), 0.9, "s1");
+            john.enrollSample(FeatureVector.sparse(new double[]{0.0, 0.0, 3.0, 0.0}, "test", 1), 0.9, "s2");
+            Identity dense = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+
+            assertThat(SparseGalleryMatrix.accepts(List.of(john))).isTrue();
+            assertThat(SparseGalleryMatrix.accepts(List.of(john, dense))).isFalse();
+            assertThat(SparseGalleryMatrix.of(List.of(john)).storedValues()).isEqualTo(3);
+        }
+    }
+
+    @Nested
+    @DisplayName("Batch Classification Tests")
+    class BatchClassificationTests {
+
+        @ParameterizedTest
+        @DisplayName("Should match classifying each probe on its own")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldMatchSingleProbeClassification(DistanceMetric metric) {
+            KNNClassifier knn = new KNNClassifier(new ClassifierConfig().setMetric(metric).setK(3));
+            // Three samples per identity so some identities straddle gallery tiles.
+            for (int i = 0; i < 400; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 3);
+                if (i % 7 == 0) {
+                    identity.setActive(false);
+                }
+                knn.enroll(identity);
+            }
+            List<FeatureVector> probes = new ArrayList<>();
+            for (int q = 0; q < 2 * GalleryMatrix.PROBE_BLOCK + 5; q++) {
+                probes.add(createTestFeatureVector(128));
+            }
+
+            List<RecognitionResult> batch = knn.classifyBatch(probes, 0.0);
+
+            assertThat(batch).hasSize(probes.size());
+            for (int q = 0; q < probes.size(); q++) {
+                assertSameResult(batch.get(q), knn.classify(probes.get(q), 0.0));
+            }
+        }
+
+        @Test
+        @DisplayName("Should match classifying each probe on its own with average features")
+        void shouldMatchSingleProbeClassificationWithAverageFeatures() {
+            KNNClassifier knn = new KNNClassifier(new ClassifierConfig().setUseAverageFeatures(true));
+            for (int i = 0; i < 20; i++) {
+                knn.enroll(createIdentityWithSamples("Person " + i, 2));
+            }
+            List<FeatureVector> probes = List.of(createTestFeatureVector(128), createTestFeatureVector(128));
+
+            List<RecognitionResult> batch = knn.classifyBatch(probes, 0.0);
+
+            assertSameResult(batch.get(0), knn.classify(probes.get(0), 0.0));
+            assertSameResult(batch.get(1), knn.classify(probes.get(1), 0.0));
+        }
+
+        @Test
+        @DisplayName("Should keep probe order and apply the threshold")
+        void shouldKeepProbeOrderAndApplyThreshold() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            List<RecognitionResult> results = classifier.classifyBatch(List.of(
+                new FeatureVector(new double[]{0.0, 1.0, 0.0, 0.0}, "test", 1),
+                new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1),
+                new FeatureVector(new double[]{9000.0, 9000.0, 0.0, 0.0}, "test", 1)
+            ), 0.5);
+
+            assertThat(results.get(0).getIdentity()).contains(jane);
+            assertThat(results.get(1).getIdentity()).contains(john);
+            assertThat(results.get(2).getStatus()).isEqualTo(RecognitionResult.Status.UNKNOWN);
+        }
+
+        @Test
+        @DisplayName("Should return unknown for every probe when no identities enrolled")
+        void shouldReturnUnknownWhenEmpty() {
+            FeatureVector probe = createTestFeatureVector(128);
+
+            List<RecognitionResult> results = classifier.classifyBatch(List.of(probe, probe), 0.0);
+
+            assertThat(results).hasSize(2).allSatisfy(result -> {
+                assertThat(result.getStatus()).isEqualTo(RecognitionResult.Status.UNKNOWN);
+                assertThat(result.getExtractedFeatures()).containsSame(probe);
+            });
+        }
+
+        @Test
+        @DisplayName("Should reject a batch containing a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2));
+
+            List<FeatureVector> probes = List.of(createTestFeatureVector(128), createTestFeatureVector(64));
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classifyBatch(probes, 0.0))
+                .withMessageContaining("Dimension mismatch");
+        }
+
+        private void assertSameResult(RecognitionResult actual, RecognitionResult expected) {
+            assertThat(actual.getStatus()).isEqualTo(expected.getStatus());
+            assertThat(actual.getBestMatch().map(RecognitionResult.MatchResult::getIdentity))
+                .isEqualTo(expected.getBestMatch().map(RecognitionResult.MatchResult::getIdentity));
+            assertThat(actual.getBestMatch().map(RecognitionResult.MatchResult::getDistance))
+                .isEqualTo(expected.getBestMatch().map(RecognitionResult.MatchResult::getDistance));
+            assertThat(actual.getAlternatives()).extracting(RecognitionResult.MatchResult::getIdentity)
+                .containsExactlyElementsOf(expected.getAlternatives().stream()
+                    .map(RecognitionResult.MatchResult::getIdentity).toList());
+        }
+    }
+
+    @Nested
+    @DisplayName("Parallel Scan Tests")
+    class ParallelScanTests {
+
+        @ParameterizedTest
+        @DisplayName("Should rank like the sequential scan")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldRankLikeSequentialScan(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier sequential = new KNNClassifier(config, GalleryPrecision.FLOAT64, Integer.MAX_VALUE);
+            KNNClassifier parallel = new KNNClassifier(config, GalleryPrecision.FLOAT64, 1);
+            for (Identity identity : createShardedGallery()) {
+                sequential.enroll(identity);
+                parallel.enroll(identity);
+            }
+
+            for (int q = 0; q < 10; q++) {
+                FeatureVector probe = createTestFeatureVector(128);
+                assertSameRanking(parallel.getTopMatches(probe, 10), sequential.getTopMatches(probe, 10));
+            }
+        }
+
+        @ParameterizedTest
+        @DisplayName("Should merge owner-aligned shards into the sequential ranking")
+        @EnumSource(GalleryPrecision.class)
+        void shouldMergeShardsIntoSequentialRanking(GalleryPrecision precision) {
+            List<Identity> identities = createShardedGallery();
+            PackedGallery gallery = precision == GalleryPrecision.INT8
+                ? Int8GalleryMatrix.of(identities)
+                : GalleryMatrix.of(identities, DistanceMetric.EUCLIDEAN);
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                for (int q = 0; q < 10; q++) {
+                    FeatureVector probe = createTestFeatureVector(128);
+                    AbstractFaceClassifier.Ranking ranking = gallery.rank(probe, DistanceMetric.EUCLIDEAN, 10, pool);
+
+                    double[] distances = gallery.minDistances(probe, DistanceMetric.EUCLIDEAN);
+                    TopKSelector selector = new TopKSelector(10);
+                    for (int i = 0; i < gallery.identityCount(); i++) {
+                        if (gallery.identity(i).isActive()) {
+                            selector.offer(i, distances[i]);
+                        }
+                    }
+                    int[] order = selector.drainAscending();
+                    assertThat(ranking.size()).isEqualTo(order.length);
+                    for (int r = 0; r < order.length; r++) {
+                        assertThat(ranking.identity(r)).isSameAs(gallery.identity(order[r]));
+                        assertThat(ranking.distance(r)).isEqualTo(distances[order[r]]);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Test
+        @DisplayName("Should reject a parallel scan of a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            KNNClassifier parallel = new KNNClassifier(new ClassifierConfig(), GalleryPrecision.FLOAT64, 1);
+            parallel.enroll(createIdentityWithSamples("Test", 2));
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> parallel.classify(createTestFeatureVector(64), 0.0))
+                .withMessageContaining("Dimension mismatch");
+        }
+
+        @Test
+        @DisplayName("Should reject a threshold below one")
+        void shouldRejectInvalidThreshold() {
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> new KNNClassifier(new ClassifierConfig(), GalleryPrecision.FLOAT64, 0));
+        }
+
+        @Test
+        @DisplayName("Should default to the documented threshold")
+        void shouldDefaultThreshold() {
+            assertThat(classifier.getParallelThreshold()).isEqualTo(KNNClassifier.DEFAULT_PARALLEL_THRESHOLD);
+        }
+
+        // Enough rows for several shards, with some identities inactive.
+        private List<Identity> createShardedGallery() {
+            List<Identity> identities = new ArrayList<>();
+            int count = 4 * ParallelGalleryScan.MIN_SHARD_ROWS / 3 + 1;
+            for (int i = 0; i < count; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 3);
+                if (i % 7 == 0) {
+                    identity.setActive(false);
+                }
+                identities.add(identity);
+            }
+            return identities;
+        }
+
+        private void assertSameRanking(RecognitionResult actual, RecognitionResult expected) {
+            assertThat(actual.getBestMatch().map(RecognitionResult.MatchResult::getIdentity))
+                .isEqualTo(expected.getBestMatch().map(RecognitionResult.MatchResult::getIdentity));
+            assertThat(actual.getBestMatch().map(RecognitionResult.MatchResult::getDistance))
+                .isEqualTo(expected.getBestMatch().map(RecognitionResult.MatchResult::getDistance));
+            assertThat(actual.getAlternatives()).extracting(RecognitionResult.MatchResult::getIdentity)
+                .containsExactlyElementsOf(expected.getAlternatives().stream()
+                    .map(RecognitionResult.MatchResult::getIdentity).toList());
+        }
+    }
+
+    @Nested
+    @DisplayName("Serialization Tests")
+    class SerializationTests {
+
+        @Test
+        @DisplayName("Should classify the same after a serialization round trip")
+        void shouldClassifySameAfterRoundTrip() throws Exception {
+            KNNClassifier original = new KNNClassifier(
+                new ClassifierConfig().setMetric(DistanceMetric.COSINE), GalleryPrecision.INT8);
+            original.enroll(createIdentityWithFeatures("Alice", new double[]{1.0, 0.0, 0.0}));
+            original.enroll(createIdentityWithFeatures("Bob", new double[]{0.0, 1.0, 0.0}));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(original);
+            }
+            KNNClassifier restored;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                restored = (KNNClassifier) in.readObject();
+            }
+
+            assertThat(restored.getDistanceMetric()).isEqualTo(DistanceMetric.COSINE);
+            assertThat(restored.getPrecision()).isEqualTo(GalleryPrecision.INT8);
+            assertThat(restored.getEnrolledCount()).isEqualTo(2);
+            RecognitionResult result = restored.classify(new FeatureVector(new double[]{0.1, 0.9, 0.0}, "test", 1));
+            assertThat(result.getIdentity()).map(Identity::getName).contains("Bob");
+        }
+
+        @Test
+        @DisplayName("Should reject a stream written before the shared base class existed")
+        void shouldRejectBaselineStream() throws Exception {
+            // Written by the 2.0 KNNClassifier, which held config and the gallery itself.
+            try (InputStream resource = getClass().getResourceAsStream("/classification/knn-classifier-v2.ser");
+                 ObjectInputStream in = new ObjectInputStream(resource)) {
+                assertThatThrownBy(in::readObject).isInstanceOf(InvalidClassException.class);
+            }
+        }
+    }
+
     @Nested
     @DisplayName("ToString Tests")
     class ToStringTests {
@@ -557,6 +1331,24 @@ class KNNClassifierTest {
         return identity;
     }
 
+    private Map<String, Double> distancesById(RecognitionResult result) {
+        Map<String, Double> distances = new HashMap<>();
+        result.getBestMatch().ifPresent(m -> distances.put(m.getIdentity().getId(), m.getDistance()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            distances.put(alternative.getIdentity().getId(), alternative.getDistance());
+        }
+        return distances;
+    }
+
+    // LBPH-like values: non-negative, most bins empty.
+    private double[] createSparseHistogram(Random random, int dimension) {
+        double[] values = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            values[i] = random.nextInt(8) == 0 ? random.nextDouble() : 0.0;
+        }
+        return values;
+    }
+
     private FeatureVector createTestFeatureVector(int dimension) {
         double[] features = new double[dimension];
         for (int i = 0; i < dimension; i++) {
@@ -0,0 +1,353 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for LSHClassifier.
+ */
+@DisplayName("LSHClassifier Tests")
+class LSHClassifierTest {
+
+    private final Random random = new Random(11);
+    private LSHClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new LSHClassifier(new ClassifierConfig(), 64, 16);
+    }
+
+    @Nested
+    @DisplayName("Accuracy Tests")
+    class AccuracyTests {
+
+        @ParameterizedTest
+        @DisplayName("Should agree with KNN when every sample is a candidate")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldAgreeWithKnnWhenEverySampleIsACandidate(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier knn = new KNNClassifier(config);
+            LSHClassifier lsh = new LSHClassifier(config, 128, 120);
+            for (int i = 0; i < 60; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 2, 32);
+                knn.enroll(identity);
+                lsh.enroll(identity);
+            }
+            lsh.retrain();
+
+            for (int q = 0; q < 20; q++) {
+                FeatureVector probe = createTestFeatureVector(32);
+                RecognitionResult expected = knn.getTopMatches(probe, 5);
+                RecognitionResult actual = lsh.getTopMatches(probe, 5);
+
+                assertThat(ids(actual)).containsExactlyElementsOf(ids(expected));
+                // KNN scores cosine on unit-length rows, which rounds differently
+                assertThat(actual.getBestMatch().orElseThrow().getDistance())
+                    .isCloseTo(expected.getBestMatch().orElseThrow().getDistance(), within(1e-12));
+            }
+        }
+
+        @Test
+        @DisplayName("Should find the nearest identity in a clustered gallery")
+        void shouldFindNearestIdentityInClusteredGallery() {
+            LSHClassifier lsh = new LSHClassifier(new ClassifierConfig(), 256, 32);
+            List<double[]> centres = new ArrayList<>();
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                double[] centre = randomArray(64, 10.0);
+                Identity identity = new Identity("Person " + i);
+                for (int s = 0; s < 3; s++) {
+                    identity.enrollSample(new FeatureVector(jitter(centre, 0.5), "test", 1), 0.9, "sample-" + s);
+                }
+                centres.add(centre);
+                identities.add(identity);
+                lsh.enroll(identity);
+            }
+            lsh.retrain();
+
+            int hits = 0;
+            for (int q = 0; q < 200; q++) {
+                int target = random.nextInt(centres.size());
+                FeatureVector probe = new FeatureVector(jitter(centres.get(target), 0.5), "test", 1);
+                if (lsh.classify(probe, 0.0).getIdentity().orElseThrow() == identities.get(target)) {
+                    hits++;
+                }
+            }
+            assertThat(hits).isGreaterThanOrEqualTo(196);
+        }
+
+        @Test
+        @DisplayName("Should only rank identities that own a candidate sample")
+        void shouldOnlyRankCandidateOwners() {
+            LSHClassifier lsh = new LSHClassifier(new ClassifierConfig(), 64, 1);
+            Identity target = createIdentityWithSamples("Target", 1, 16);
+            lsh.enroll(target);
+            for (int i = 0; i < 20; i++) {
+                lsh.enroll(createIdentityWithSamples("Person " + i, 1, 16));
+            }
+
+            FeatureVector probe = target.getSamples().get(0).getFeatures();
+            RecognitionResult result = lsh.getTopMatches(probe, 5);
+
+            assertThat(result.getIdentity()).contains(target);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+            assertThat(result.getAlternatives()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Should report exact distances for returned identities")
+        void shouldReportExactDistances() {
+            for (int i = 0; i < 100; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 3, 48));
+            }
+
+            FeatureVector probe = createTestFeatureVector(48);
+            RecognitionResult result = classifier.getTopMatches(probe, 5);
+
+            RecognitionResult.MatchResult best = result.getBestMatch().orElseThrow();
+            assertThat(best.getDistance()).isEqualTo(classifier.getDistance(probe, best.getIdentity().getId()));
+            for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+                assertThat(alternative.getDistance())
+                    .isEqualTo(classifier.getDistance(probe, alternative.getIdentity().getId()))
+                    .isGreaterThanOrEqualTo(best.getDistance());
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Gallery Update Tests")
+    class GalleryUpdateTests {
+
+        @Test
+        @DisplayName("Should sketch identities enrolled after the index is built")
+        void shouldSketchIdentitiesEnrolledAfterBuild() {
+            for (int i = 0; i < 30; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 2, 4));
+            }
+            classifier.retrain();
+
+            Identity late = createIdentityWithFeatures("Late", new double[]{5.0, 5.0, 5.0, 5.0});
+            classifier.enroll(late);
+
+            FeatureVector probe = new FeatureVector(new double[]{5.0, 5.0, 5.0, 5.0}, "test", 1);
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(late);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should stop matching an identity after unenroll")
+        void shouldStopMatchingAfterUnenroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(john);
+
+            assertThat(classifier.unenroll(john.getId())).isTrue();
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should pick up new samples when an identity is re-enrolled")
+        void shouldPickUpNewSamplesOnReEnroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1);
+            classifier.classify(probe, 0.0);
+
+            jane.enrollSample(new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1), 0.9, "extra");
+            classifier.enroll(jane);
+
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(jane);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should skip inactive identities")
+        void shouldSkipInactiveIdentities() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            john.setActive(false);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should roll back an enrolment with the wrong dimension")
+        void shouldRollBackEnrolmentWithWrongDimension() {
+            Identity john = createIdentityWithSamples("John", 2, 16);
+            classifier.enroll(john);
+            classifier.retrain();
+
+            Identity mismatched = createIdentityWithSamples("Mismatched", 1, 8);
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.enroll(mismatched))
+                .withMessageContaining("Dimension mismatch");
+
+            assertThat(classifier.isEnrolled(mismatched.getId())).isFalse();
+            assertThat(classifier.classify(createTestFeatureVector(16), 0.0).getIdentity()).contains(john);
+        }
+
+        @Test
+        @DisplayName("Should reject a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 128));
+
+            FeatureVector probe = createTestFeatureVector(64);
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classify(probe))
+                .withMessageContaining("Dimension mismatch");
+        }
+
+        @Test
+        @DisplayName("Should return unknown after clear")
+        void shouldReturnUnknownAfterClear() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 16));
+            classifier.retrain();
+
+            classifier.clear();
+
+            assertThat(classifier.getEnrolledCount()).isZero();
+            assertThat(classifier.classify(createTestFeatureVector(16)).getStatus())
+                .isEqualTo(RecognitionResult.Status.UNKNOWN);
+
+            Identity jane = createIdentityWithSamples("Jane", 1, 8);
+            classifier.enroll(jane);
+            assertThat(classifier.classify(createTestFeatureVector(8), 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should rebuild when the distance metric changes")
+        void shouldRebuildWhenMetricChanges() {
+            Identity near = createIdentityWithFeatures("Near", new double[]{10.0, 0.0});
+            Identity aligned = createIdentityWithFeatures("Aligned", new double[]{100.0, 100.0});
+            classifier.enroll(near);
+            classifier.enroll(aligned);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 1.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(near);
+
+            classifier.setDistanceMetric(DistanceMetric.COSINE);
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(aligned);
+        }
+    }
+
+    @Nested
+    @DisplayName("Configuration Tests")
+    class ConfigurationTests {
+
+        @Test
+        @DisplayName("Should expose sketch parameters")
+        void shouldExposeSketchParameters() {
+            LSHClassifier defaults = new LSHClassifier();
+
+            assertThat(defaults.getBits()).isEqualTo(LSHClassifier.DEFAULT_BITS);
+            assertThat(defaults.getCandidates()).isEqualTo(LSHClassifier.DEFAULT_CANDIDATES);
+
+            defaults.setCandidates(512);
+            assertThat(defaults.getCandidates()).isEqualTo(512);
+        }
+
+        @Test
+        @DisplayName("Should reject invalid sketch parameters")
+        void shouldRejectInvalidSketchParameters() {
+            ClassifierConfig config = new ClassifierConfig();
+
+            assertThatIllegalArgumentException().isThrownBy(() -> new LSHClassifier(config, 0, 16));
+            assertThatIllegalArgumentException().isThrownBy(() -> new LSHClassifier(config, 100, 16));
+            assertThatIllegalArgumentException().isThrownBy(() -> new LSHClassifier(config, 64, 0));
+            assertThatIllegalArgumentException().isThrownBy(() -> classifier.setCandidates(0));
+        }
+
+        @Test
+        @DisplayName("Should return classifier name")
+        void shouldReturnClassifierName() {
+            assertThat(classifier.getName()).isEqualTo("LSH");
+        }
+
+        @Test
+        @DisplayName("Should format toString correctly")
+        void shouldFormatToStringCorrectly() {
+            classifier.enroll(createIdentityWithSamples("Test", 1, 16));
+
+            String str = classifier.toString();
+
+            assertThat(str).contains("LSHClassifier");
+            assertThat(str).contains("bits=64");
+            assertThat(str).contains("candidates=16");
+            assertThat(str).contains("enrolled=1");
+        }
+    }
+
+    // Helper methods
+
+    private List<String> ids(RecognitionResult result) {
+        List<String> ids = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> ids.add(match.getIdentity().getId()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            ids.add(alternative.getIdentity().getId());
+        }
+        return ids;
+    }
+
+    private Identity createIdentityWithSamples(String name, int sampleCount, int dimension) {
+        Identity identity = new Identity(name);
+        for (int i = 0; i < sampleCount; i++) {
+            identity.enrollSample(createTestFeatureVector(dimension), 0.9, "sample-" + i);
+        }
+        return identity;
+    }
+
+    private Identity createIdentityWithFeatures(String name, double[] features) {
+        Identity identity = new Identity(name);
+        identity.enrollSample(new FeatureVector(features, "test", 1), 0.9, "sample");
+        return identity;
+    }
+
+    private FeatureVector createTestFeatureVector(int dimension) {
+        return new FeatureVector(randomArray(dimension, 1.0), "test", 1);
+    }
+
+    private double[] randomArray(int dimension, double scale) {
+        double[] features = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features[i] = random.nextDouble() * scale;
+        }
+        return features;
+    }
+
+    private double[] jitter(double[] centre, double amount) {
+        double[] features = new double[centre.length];
+        for (int i = 0; i < centre.length; i++) {
+            features[i] = Math.max(0.0, centre[i] + (random.nextDouble() - 0.5) * amount);
+        }
+        return features;
+    }
+}
@@ -0,0 +1,363 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for MappedGalleryClassifier.
+ */
+@DisplayName("MappedGalleryClassifier Tests")
+class MappedGalleryClassifierTest {
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(14);
+    private MappedGalleryClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new MappedGalleryClassifier(new ClassifierConfig(), directory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        classifier.close();
+    }
+
+    @Nested
+    @DisplayName("Accuracy Tests")
+    class AccuracyTests {
+
+        @ParameterizedTest
+        @DisplayName("Should rank like KNN")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldRankLikeKnn(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier knn = new KNNClassifier(config);
+            classifier.setDistanceMetric(metric);
+            for (int i = 0; i < 200; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 1 + i % 3, 12);
+                if (i % 11 == 0) {
+                    identity.setActive(false);
+                }
+                knn.enroll(identity);
+                classifier.enroll(identity);
+            }
+
+            for (int q = 0; q < 20; q++) {
+                FeatureVector probe = createTestFeatureVector(12);
+                RecognitionResult expected = knn.getTopMatches(probe, 10);
+                RecognitionResult actual = classifier.getTopMatches(probe, 10);
+
+                assertThat(ids(actual)).containsExactlyElementsOf(ids(expected));
+                // KNN scores cosine on unit-length rows, which rounds differently
+                assertThat(actual.getBestMatch().orElseThrow().getDistance())
+                    .isCloseTo(expected.getBestMatch().orElseThrow().getDistance(), within(1e-12));
+            }
+        }
+
+        @Test
+        @DisplayName("Should report the ranked distance from getDistance")
+        void shouldReportRankedDistance() {
+            for (int i = 0; i < 50; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 3, 8));
+            }
+
+            FeatureVector probe = createTestFeatureVector(8);
+            RecognitionResult.MatchResult best = classifier.getTopMatches(probe, 1).getBestMatch().orElseThrow();
+
+            assertThat(classifier.getDistance(probe, best.getIdentity().getId())).isEqualTo(best.getDistance());
+            assertThat(classifier.getDistance(probe, "missing")).isEqualTo(Double.MAX_VALUE);
+        }
+
+        @Test
+        @DisplayName("Should verify against the claimed identity's rows")
+        void shouldVerifyClaimedIdentity() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0});
+            john.setExternalId("emp-1");
+            classifier.enroll(john);
+            classifier.enroll(createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0}));
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0}, "test", 1);
+            RecognitionResult accepted = classifier.verify(probe, john.getId(), 0.5);
+            RecognitionResult missing = classifier.verify(probe, "missing", 0.0);
+
+            assertThat(accepted.getStatus()).isEqualTo(RecognitionResult.Status.RECOGNIZED);
+            assertThat(accepted.getBestMatch().orElseThrow().getIdentity().getExternalId()).isEqualTo("emp-1");
+            assertThat(accepted.getBestMatch().orElseThrow().getDistance()).isZero();
+            assertThat(missing.getStatus()).isEqualTo(RecognitionResult.Status.UNKNOWN);
+            assertThat(missing.getAlternatives()).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("Persistence Tests")
+    class PersistenceTests {
+
+        @Test
+        @DisplayName("Should classify from the files after a reopen")
+        void shouldClassifyAfterReopen() throws IOException {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0});
+            john.setExternalId("emp-1");
+            classifier.enroll(john);
+            classifier.enroll(createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0}));
+            classifier.close();
+
+            MappedGalleryClassifier reopened = new MappedGalleryClassifier(new ClassifierConfig(), directory);
+            try {
+                FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0}, "test", 1);
+                Identity match = reopened.classify(probe, 0.0).getIdentity().orElseThrow();
+
+                assertThat(reopened.getEnrolledCount()).isEqualTo(2);
+                assertThat(match.getId()).isEqualTo(john.getId());
+                assertThat(match.getName()).isEqualTo("John");
+                assertThat(match.getExternalId()).isEqualTo("emp-1");
+            } finally {
+                reopened.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should write nothing when a reopened writer is given an unchanged identity")
+        void shouldKeepUnchangedIdentityAfterReopen() throws IOException {
+            Identity john = createIdentityWithSamples("John", 2, 4);
+            classifier.enroll(john);
+            classifier.close();
+            long written = Files.size(directory.resolve(GallerySegment.IDENTITIES_FILE));
+
+            MappedGalleryClassifier reopened = new MappedGalleryClassifier(new ClassifierConfig(), directory);
+            try {
+                Identity copy = new Identity(john.getId(), "John", null);
+                for (Identity.EnrolledSample sample : john.getSamples()) {
+                    copy.enrollSample(sample.getFeatures(), 0.9, "sample");
+                }
+                reopened.enroll(copy);
+
+                assertThat(Files.size(directory.resolve(GallerySegment.IDENTITIES_FILE))).isEqualTo(written);
+                assertThat(reopened.getEnrolledCount()).isEqualTo(1);
+                assertThat(copy.getSamples()).allMatch(Identity.EnrolledSample::isOffloaded);
+            } finally {
+                reopened.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should report a persistent gallery")
+        void shouldReportPersistentGallery() throws IOException {
+            MappedGalleryClassifier reader = new MappedGalleryClassifier(new ClassifierConfig(), directory, true);
+            try {
+                assertThat(classifier.isPersistent()).isTrue();
+                assertThat(classifier.isReadOnly()).isFalse();
+                assertThat(reader.isReadOnly()).isTrue();
+            } finally {
+                reader.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should let a read-only instance follow the writer on retrain")
+        void shouldLetReaderFollowWriter() throws IOException {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0});
+            classifier.enroll(john);
+
+            MappedGalleryClassifier reader = new MappedGalleryClassifier(new ClassifierConfig(), directory, true);
+            try {
+                Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0});
+                classifier.enroll(jane);
+                FeatureVector probe = new FeatureVector(new double[]{0.0, 1.0, 0.0}, "test", 1);
+                assertThat(reader.classify(probe, 0.0).getIdentity().orElseThrow().getId()).isEqualTo(john.getId());
+
+                reader.retrain();
+                assertThat(reader.classify(probe, 0.0).getIdentity().orElseThrow().getId()).isEqualTo(jane.getId());
+
+                classifier.unenroll(jane.getId());
+                reader.retrain();
+                assertThat(reader.isEnrolled(jane.getId())).isFalse();
+
+                classifier.clear();
+                classifier.enroll(createIdentityWithFeatures("Ann", new double[]{0.0, 0.0, 1.0}));
+                classifier.enroll(createIdentityWithFeatures("Bob", new double[]{0.0, 0.0, 2.0}));
+                reader.retrain();
+                assertThat(reader.getEnrolledIdentities()).extracting(Identity::getName)
+                    .containsExactly("Ann", "Bob");
+            } finally {
+                reader.close();
+            }
+        }
+
+        @Test
+        @DisplayName("Should reject changes through a read-only instance")
+        void shouldRejectChangesWhenReadOnly() throws IOException {
+            classifier.enroll(createIdentityWithSamples("Test", 1, 4));
+
+            MappedGalleryClassifier reader = new MappedGalleryClassifier(new ClassifierConfig(), directory, true);
+            try {
+                assertThatIllegalStateException()
+                    .isThrownBy(() -> reader.enroll(createIdentityWithSamples("Other", 1, 4)));
+                assertThatIllegalStateException().isThrownBy(reader::clear);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Gallery Update Tests")
+    class GalleryUpdateTests {
+
+        @Test
+        @DisplayName("Should replace an identity enrolled again under the same ID")
+        void shouldReplaceReenrolledIdentity() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(createIdentityWithFeatures("Jane", new double[]{0.0, 1.0}));
+
+            Identity moved = new Identity(john.getId(), "John", null);
+            moved.enrollSample(new FeatureVector(new double[]{5.0, 5.0}, "test", 1), 0.9, "sample");
+            classifier.enroll(moved);
+
+            FeatureVector probe = new FeatureVector(new double[]{5.0, 5.0}, "test", 1);
+            assertThat(classifier.getEnrolledCount()).isEqualTo(2);
+            assertThat(classifier.classify(probe, 0.0).getIdentity().orElseThrow().getId()).isEqualTo(john.getId());
+            assertThat(classifier.getDistance(probe, john.getId())).isZero();
+        }
+
+        @Test
+        @DisplayName("Should stop matching an identity after unenroll")
+        void shouldStopMatchingAfterUnenroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            assertThat(classifier.unenroll(john.getId())).isTrue();
+            assertThat(classifier.unenroll(john.getId())).isFalse();
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity().orElseThrow().getId()).isEqualTo(jane.getId());
+            assertThat(classifier.isEnrolled(john.getId())).isFalse();
+        }
+
+        @Test
+        @DisplayName("Should offload enrolled samples and read them back before a clear")
+        void shouldOffloadSamplesUntilClear() {
+            Identity john = createIdentityWithSamples("John", 3, 8);
+            List<FeatureVector> values = new ArrayList<>();
+            for (Identity.EnrolledSample sample : john.getSamples()) {
+                values.add(sample.getFeatures());
+            }
+
+            classifier.enroll(john);
+
+            assertThat(john.getSamples()).allMatch(Identity.EnrolledSample::isOffloaded);
+            assertThat(john.getSamples()).extracting(Identity.EnrolledSample::getFeatures).containsExactlyElementsOf(values);
+
+            classifier.clear();
+
+            assertThat(john.getSamples()).noneMatch(Identity.EnrolledSample::isOffloaded);
+            assertThat(john.getSamples()).extracting(Identity.EnrolledSample::getFeatures).containsExactlyElementsOf(values);
+        }
+
+        @Test
+        @DisplayName("Should accept a new dimension after clear")
+        void shouldAcceptNewDimensionAfterClear() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 16));
+
+            classifier.clear();
+
+            assertThat(classifier.getEnrolledCount()).isZero();
+            assertThat(classifier.classify(createTestFeatureVector(16)).getStatus())
+                .isEqualTo(RecognitionResult.Status.UNKNOWN);
+            classifier.enroll(createIdentityWithSamples("Other", 1, 8));
+            assertThat(classifier.getTopMatches(createTestFeatureVector(8), 1).getBestMatch()).isPresent();
+        }
+
+        @Test
+        @DisplayName("Should reject samples and probes with the wrong dimension")
+        void shouldRejectWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 32));
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.enroll(createIdentityWithSamples("Other", 1, 16)))
+                .withMessageContaining("Dimension mismatch");
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classify(createTestFeatureVector(16)))
+                .withMessageContaining("Dimension mismatch");
+            assertThat(classifier.getEnrolledCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("Configuration Tests")
+    class ConfigurationTests {
+
+        @Test
+        @DisplayName("Should return classifier name")
+        void shouldReturnClassifierName() {
+            assertThat(classifier.getName()).isEqualTo("Mapped");
+        }
+
+        @Test
+        @DisplayName("Should format toString correctly")
+        void shouldFormatToStringCorrectly() {
+            classifier.enroll(createIdentityWithSamples("Test", 1, 16));
+
+            String str = classifier.toString();
+
+            assertThat(str).contains("MappedGalleryClassifier");
+            assertThat(str).contains("readOnly=false");
+            assertThat(str).contains("enrolled=1");
+        }
+    }
+
+    // Helper methods
+
+    private List<String> ids(RecognitionResult result) {
+        List<String> ids = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> ids.add(match.getIdentity().getId()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            ids.add(alternative.getIdentity().getId());
+        }
+        return ids;
+    }
+
+    private Identity createIdentityWithSamples(String name, int sampleCount, int dimension) {
+        Identity identity = new Identity(name);
+        for (int i = 0; i < sampleCount; i++) {
+            identity.enrollSample(createTestFeatureVector(dimension), 0.9, "sample-" + i);
+        }
+        return identity;
+    }
+
+    private Identity createIdentityWithFeatures(String name, double[] features) {
+        Identity identity = new Identity(name);
+        identity.enrollSample(new FeatureVector(features, "test", 1), 0.9, "sample");
+        return identity;
+    }
+
+    private FeatureVector createTestFeatureVector(int dimension) {
+        double[] features = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features[i] = random.nextDouble();
+        }
+        return new FeatureVector(features, "test", 1);
+    }
+}
@@ -0,0 +1,487 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for PQClassifier.
+ */
+@DisplayName("PQClassifier Tests")
+class PQClassifierTest {
+
+    private final Random random = new Random(13);
+    private PQClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new PQClassifier(new ClassifierConfig(), 8, 16);
+    }
+
+    @Nested
+    @DisplayName("Accuracy Tests")
+    class AccuracyTests {
+
+        @ParameterizedTest
+        @DisplayName("Should agree with KNN when every identity is re-ranked")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "COSINE", "MANHATTAN", "CHI_SQUARE"})
+        void shouldAgreeWithKnnWhenRerankingEveryIdentity(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier knn = new KNNClassifier(config);
+            PQClassifier pq = new PQClassifier(config, 8, 60);
+            for (int i = 0; i < 60; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 2, 32);
+                knn.enroll(identity);
+                pq.enroll(identity);
+            }
+            pq.retrain();
+
+            for (int q = 0; q < 20; q++) {
+                FeatureVector probe = createTestFeatureVector(32);
+                RecognitionResult expected = knn.getTopMatches(probe, 5);
+                RecognitionResult actual = pq.getTopMatches(probe, 5);
+
+                assertThat(ids(actual)).containsExactlyElementsOf(ids(expected));
+                // KNN scores cosine on unit-length rows, which rounds differently
+                assertThat(actual.getBestMatch().orElseThrow().getDistance())
+                    .isCloseTo(expected.getBestMatch().orElseThrow().getDistance(), within(1e-12));
+            }
+        }
+
+        @Test
+        @DisplayName("Should re-rank from the on-disk store")
+        void shouldRerankFromDiskStore(@TempDir Path dir) throws IOException {
+            Path storeDirectory = dir.resolve("store");
+            ClassifierConfig config = new ClassifierConfig();
+            KNNClassifier knn = new KNNClassifier(config);
+            PQClassifier pq = new PQClassifier(config, 8, 40, PQClassifier.DEFAULT_ITERATIONS, storeDirectory);
+            for (int i = 0; i < 40; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 3, 32);
+                knn.enroll(identity);
+                pq.enroll(identity);
+            }
+            pq.retrain();
+            String removed = knn.getEnrolledIdentities().get(0).getId();
+            pq.unenroll(removed);
+            knn.unenroll(removed);
+
+            assertThat(storeDirectory).isDirectory();
+            for (int q = 0; q < 10; q++) {
+                FeatureVector probe = createTestFeatureVector(32);
+                assertThat(ids(pq.getTopMatches(probe, 3))).containsExactlyElementsOf(ids(knn.getTopMatches(probe, 3)));
+            }
+            pq.close();
+            try (Stream<Path> files = Files.list(storeDirectory)) {
+                assertThat(files).isEmpty();
+            }
+        }
+
+        @Test
+        @DisplayName("Should find the nearest identity in a clustered gallery")
+        void shouldFindNearestIdentityInClusteredGallery() {
+            PQClassifier pq = new PQClassifier(new ClassifierConfig(), 16, 16);
+            List<double[]> centres = new ArrayList<>();
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                double[] centre = randomArray(64, 10.0);
+                Identity identity = new Identity("Person " + i);
+                for (int s = 0; s < 3; s++) {
+                    identity.enrollSample(new FeatureVector(jitter(centre, 0.5), "test", 1), 0.9, "sample-" + s);
+                }
+                centres.add(centre);
+                identities.add(identity);
+                pq.enroll(identity);
+            }
+            pq.retrain();
+
+            int hits = 0;
+            for (int q = 0; q < 200; q++) {
+                int target = random.nextInt(centres.size());
+                FeatureVector probe = new FeatureVector(jitter(centres.get(target), 0.5), "test", 1);
+                if (pq.classify(probe, 0.0).getIdentity().orElseThrow() == identities.get(target)) {
+                    hits++;
+                }
+            }
+            assertThat(hits).isGreaterThanOrEqualTo(196);
+        }
+
+        @Test
+        @DisplayName("Should report exact distances for re-ranked identities")
+        void shouldReportExactDistances() {
+            for (int i = 0; i < 100; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 3, 48));
+            }
+
+            FeatureVector probe = createTestFeatureVector(48);
+            RecognitionResult result = classifier.getTopMatches(probe, 5);
+
+            RecognitionResult.MatchResult best = result.getBestMatch().orElseThrow();
+            assertThat(best.getDistance()).isEqualTo(classifier.getDistance(probe, best.getIdentity().getId()));
+            for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+                assertThat(alternative.getDistance())
+                    .isEqualTo(classifier.getDistance(probe, alternative.getIdentity().getId()))
+                    .isGreaterThanOrEqualTo(best.getDistance());
+            }
+        }
+
+        @Test
+        @DisplayName("Should rank by approximate distance when re-ranking is off")
+        void shouldRankByApproximateDistanceWithoutRerank() {
+            classifier.setRerank(0);
+            for (int i = 0; i < 100; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 2, 32));
+            }
+
+            RecognitionResult result = classifier.getTopMatches(createTestFeatureVector(32), 5);
+
+            assertThat(ids(result)).hasSize(5);
+            double previous = result.getBestMatch().orElseThrow().getDistance();
+            for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+                assertThat(alternative.getDistance()).isGreaterThanOrEqualTo(previous);
+                previous = alternative.getDistance();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Compression Tests")
+    class CompressionTests {
+
+        @Test
+        @DisplayName("Should report encoded size and compression ratio")
+        void shouldReportCompression() {
+            for (int i = 0; i < 50; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 2, 32));
+            }
+            classifier.retrain();
+
+            // 8 code bytes + 8-byte norm + 4-byte owner + 8-byte store row per sample, against 32 doubles
+            assertThat(classifier.getEncodedBytes()).isEqualTo(100L * 28);
+            assertThat(classifier.getCompressionRatio()).isCloseTo(256.0 / 28, within(1e-9));
+        }
+
+        @Test
+        @DisplayName("Should report no compression before training")
+        void shouldReportNoCompressionBeforeTraining() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 32));
+
+            assertThat(classifier.getEncodedBytes()).isZero();
+            assertThat(classifier.getCompressionRatio()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should clamp sub-spaces to the vector dimension")
+        void shouldClampSubspacesToDimension() {
+            for (int i = 0; i < 10; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 1, 4));
+            }
+            classifier.retrain();
+
+            assertThat(classifier.getEncodedBytes()).isEqualTo(10L * (4 + 20));
+        }
+    }
+
+    @Nested
+    @DisplayName("Sample Offload Tests")
+    class SampleOffloadTests {
+
+        @Test
+        @DisplayName("Should offload indexed samples and read them back unchanged")
+        void shouldOffloadIndexedSamples() {
+            Identity john = createIdentityWithSamples("John", 3, 16);
+            List<double[]> values = new ArrayList<>();
+            for (Identity.EnrolledSample sample : john.getSamples()) {
+                values.add(sample.getFeatures().getFeatures());
+            }
+            classifier.enroll(john);
+            classifier.retrain();
+
+            for (int i = 0; i < values.size(); i++) {
+                Identity.EnrolledSample sample = john.getSamples().get(i);
+                assertThat(sample.isOffloaded()).isTrue();
+                assertThat(sample.getFeatures().getFeatures()).containsExactly(values.get(i));
+            }
+        }
+
+        @Test
+        @DisplayName("Should load samples back onto the heap when they leave the classifier")
+        void shouldReclaimSamplesOnUnenrollClearAndClose() {
+            Identity john = createIdentityWithSamples("John", 2, 16);
+            Identity jane = createIdentityWithSamples("Jane", 2, 16);
+            Identity joe = createIdentityWithSamples("Joe", 2, 16);
+            classifier.enroll(john);
+            classifier.enroll(jane);
+            classifier.retrain();
+
+            classifier.unenroll(john.getId());
+            assertThat(john.getSamples()).noneMatch(Identity.EnrolledSample::isOffloaded);
+            assertThat(jane.getSamples()).allMatch(Identity.EnrolledSample::isOffloaded);
+
+            classifier.clear();
+            assertThat(jane.getSamples()).noneMatch(Identity.EnrolledSample::isOffloaded);
+
+            classifier.enroll(joe);
+            classifier.retrain();
+            classifier.close();
+            assertThat(joe.getSamples()).noneMatch(Identity.EnrolledSample::isOffloaded);
+            assertThat(joe.getSamples().get(0).getFeatures().getDimension()).isEqualTo(16);
+        }
+
+        @Test
+        @DisplayName("Should keep samples readable across a retrain")
+        void shouldKeepSamplesReadableAcrossRetrain() {
+            Identity john = createIdentityWithSamples("John", 2, 16);
+            double[] first = john.getSamples().get(0).getFeatures().getFeatures();
+            classifier.enroll(john);
+            classifier.retrain();
+
+            classifier.retrain();
+            classifier.setDistanceMetric(DistanceMetric.COSINE);
+            classifier.classify(createTestFeatureVector(16), 0.0);
+
+            assertThat(john.getSamples().get(0).isOffloaded()).isTrue();
+            assertThat(john.getSamples().get(0).getFeatures().getFeatures()).containsExactly(first);
+        }
+    }
+
+    @Nested
+    @DisplayName("Gallery Update Tests")
+    class GalleryUpdateTests {
+
+        @Test
+        @DisplayName("Should encode identities enrolled after training")
+        void shouldEncodeIdentitiesEnrolledAfterTraining() {
+            for (int i = 0; i < 30; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 2, 4));
+            }
+            classifier.retrain();
+
+            Identity late = createIdentityWithFeatures("Late", new double[]{5.0, 5.0, 5.0, 5.0});
+            classifier.enroll(late);
+
+            FeatureVector probe = new FeatureVector(new double[]{5.0, 5.0, 5.0, 5.0}, "test", 1);
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(late);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should stop matching an identity after unenroll")
+        void shouldStopMatchingAfterUnenroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(john);
+
+            assertThat(classifier.unenroll(john.getId())).isTrue();
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should pick up new samples when an identity is re-enrolled")
+        void shouldPickUpNewSamplesOnReEnroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1);
+            classifier.classify(probe, 0.0);
+
+            jane.enrollSample(new FeatureVector(new double[]{0.0, 0.0, 1.0, 0.0}, "test", 1), 0.9, "extra");
+            classifier.enroll(jane);
+
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(jane);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should skip inactive identities")
+        void shouldSkipInactiveIdentities() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            john.setActive(false);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should roll back an enrolment with the wrong dimension")
+        void shouldRollBackEnrolmentWithWrongDimension() {
+            Identity john = createIdentityWithSamples("John", 2, 16);
+            classifier.enroll(john);
+            classifier.retrain();
+
+            Identity mismatched = createIdentityWithSamples("Mismatched", 1, 8);
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.enroll(mismatched))
+                .withMessageContaining("Dimension mismatch");
+
+            assertThat(classifier.isEnrolled(mismatched.getId())).isFalse();
+            assertThat(classifier.classify(createTestFeatureVector(16), 0.0).getIdentity()).contains(john);
+        }
+
+        @Test
+        @DisplayName("Should reject a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 128));
+
+            FeatureVector probe = createTestFeatureVector(64);
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classify(probe))
+                .withMessageContaining("Dimension mismatch");
+        }
+
+        @Test
+        @DisplayName("Should return unknown after clear")
+        void shouldReturnUnknownAfterClear() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 16));
+            classifier.retrain();
+
+            classifier.clear();
+
+            assertThat(classifier.getEnrolledCount()).isZero();
+            assertThat(classifier.classify(createTestFeatureVector(16)).getStatus())
+                .isEqualTo(RecognitionResult.Status.UNKNOWN);
+
+            Identity jane = createIdentityWithSamples("Jane", 1, 8);
+            classifier.enroll(jane);
+            assertThat(classifier.classify(createTestFeatureVector(8), 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should retrain when the distance metric changes")
+        void shouldRetrainWhenMetricChanges() {
+            Identity near = createIdentityWithFeatures("Near", new double[]{10.0, 0.0});
+            Identity aligned = createIdentityWithFeatures("Aligned", new double[]{100.0, 100.0});
+            classifier.enroll(near);
+            classifier.enroll(aligned);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 1.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(near);
+
+            classifier.setDistanceMetric(DistanceMetric.COSINE);
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(aligned);
+        }
+    }
+
+    @Nested
+    @DisplayName("Configuration Tests")
+    class ConfigurationTests {
+
+        @Test
+        @DisplayName("Should expose quantisation parameters")
+        void shouldExposeQuantisationParameters() {
+            PQClassifier defaults = new PQClassifier();
+
+            assertThat(defaults.getSubspaces()).isEqualTo(PQClassifier.DEFAULT_SUBSPACES);
+            assertThat(defaults.getRerank()).isEqualTo(PQClassifier.DEFAULT_RERANK);
+
+            defaults.setRerank(0);
+            assertThat(defaults.getRerank()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should reject invalid quantisation parameters")
+        void shouldRejectInvalidQuantisationParameters() {
+            ClassifierConfig config = new ClassifierConfig();
+
+            assertThatIllegalArgumentException().isThrownBy(() -> new PQClassifier(config, 0, 8));
+            assertThatIllegalArgumentException().isThrownBy(() -> new PQClassifier(config, 8, -1));
+            assertThatIllegalArgumentException().isThrownBy(() -> new PQClassifier(config, 8, 8, 0, null));
+            assertThatIllegalArgumentException().isThrownBy(() -> classifier.setRerank(-1));
+        }
+
+        @Test
+        @DisplayName("Should return classifier name")
+        void shouldReturnClassifierName() {
+            assertThat(classifier.getName()).isEqualTo("PQ");
+        }
+
+        @Test
+        @DisplayName("Should format toString correctly")
+        void shouldFormatToStringCorrectly() {
+            classifier.enroll(createIdentityWithSamples("Test", 1, 16));
+
+            String str = classifier.toString();
+
+            assertThat(str).contains("PQClassifier");
+            assertThat(str).contains("subspaces=8");
+            assertThat(str).contains("rerank=16");
+            assertThat(str).contains("enrolled=1");
+        }
+    }
+
+    // Helper methods
+
+    private List<String> ids(RecognitionResult result) {
+        List<String> ids = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> ids.add(match.getIdentity().getId()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            ids.add(alternative.getIdentity().getId());
+        }
+        return ids;
+    }
+
+    private Identity createIdentityWithSamples(String name, int sampleCount, int dimension) {
+        Identity identity = new Identity(name);
+        for (int i = 0; i < sampleCount; i++) {
+            identity.enrollSample(createTestFeatureVector(dimension), 0.9, "sample-" + i);
+        }
+        return identity;
+    }
+
+    private Identity createIdentityWithFeatures(String name, double[] features) {
+        Identity identity = new Identity(name);
+        identity.enrollSample(new FeatureVector(features, "test", 1), 0.9, "sample");
+        return identity;
+    }
+
+    private FeatureVector createTestFeatureVector(int dimension) {
+        return new FeatureVector(randomArray(dimension, 1.0), "test", 1);
+    }
+
+    private double[] randomArray(int dimension, double scale) {
+        double[] features = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features[i] = random.nextDouble() * scale;
+        }
+        return features;
+    }
+
+    private double[] jitter(double[] centre, double amount) {
+        double[] features = new double[centre.length];
+        for (int i = 0; i < centre.length; i++) {
+            features[i] = Math.max(0.0, centre[i] + (random.nextDouble() - 0.5) * amount);
+        }
+        return features;
+    }
+}
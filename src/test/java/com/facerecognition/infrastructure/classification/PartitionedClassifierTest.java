@@ -0,0 +1,253 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for PartitionedClassifier.
+ */
+@DisplayName("PartitionedClassifier Tests")
+class PartitionedClassifierTest {
+
+    private final Random random = new Random(29);
+    private PartitionedClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new PartitionedClassifier(new ClassifierConfig().setK(3));
+    }
+
+    @Nested
+    @DisplayName("Routing Tests")
+    class RoutingTests {
+
+        @Test
+        @DisplayName("Should keep each partition in its own classifier")
+        void shouldKeepEachPartitionInItsOwnClassifier() {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+            classifier.enroll(createIdentityWithFeatures("Bob", "site-b", new double[]{1.0, 1.0}));
+            classifier.enroll(createIdentityWithFeatures("Cal", "site-b", new double[]{2.0, 2.0}));
+
+            assertThat(classifier.getPartitionNames()).containsExactly("site-a", "site-b");
+            assertThat(classifier.getPartition("site-a").getEnrolledCount()).isEqualTo(1);
+            assertThat(classifier.getPartition("site-b").getEnrolledCount()).isEqualTo(2);
+            assertThat(classifier.getEnrolledCount()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("Should search only the requested partition")
+        void shouldSearchOnlyRequestedPartition() {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+            classifier.enroll(createIdentityWithFeatures("Bob", "site-b", new double[]{50.0, 50.0}));
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 0.0});
+
+            RecognitionResult result = classifier.classify(probe, 0.0, "site-b");
+
+            assertThat(result.getBestMatch()).get()
+                .extracting(match -> match.getIdentity().getName()).isEqualTo("Bob");
+            assertThat(result.getAlternatives()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Should report unknown for a partition with no identities")
+        void shouldReportUnknownForEmptyPartition() {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+
+            RecognitionResult result = classifier.classify(new FeatureVector(new double[]{0.0, 0.0}), 0.0, "site-z");
+
+            assertThat(result.isRecognized()).isFalse();
+            assertThat(result.getBestMatch()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Should move an identity whose partition changed")
+        void shouldMoveIdentityWhosePartitionChanged() {
+            Identity ann = createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0});
+            classifier.enroll(ann);
+
+            ann.setPartition("site-b");
+            classifier.enroll(ann);
+
+            assertThat(classifier.getPartition("site-a").isEnrolled(ann.getId())).isFalse();
+            assertThat(classifier.getPartition("site-b").isEnrolled(ann.getId())).isTrue();
+            assertThat(classifier.getEnrolledCount()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Should remove an identity from its partition on unenroll")
+        void shouldRemoveIdentityFromItsPartition() {
+            Identity ann = createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0});
+            classifier.enroll(ann);
+
+            assertThat(classifier.unenroll(ann.getId())).isTrue();
+
+            assertThat(classifier.getPartition("site-a").getEnrolledCount()).isZero();
+            assertThat(classifier.getDistance(new FeatureVector(new double[]{0.0, 0.0}), ann.getId()))
+                .isEqualTo(Double.MAX_VALUE);
+        }
+
+        @Test
+        @DisplayName("Should verify against the identity's own partition")
+        void shouldVerifyAgainstOwnPartition() {
+            Identity ann = createIdentityWithFeatures("Ann", "site-a", new double[]{3.0, 4.0});
+            classifier.enroll(ann);
+            FeatureVector probe = new FeatureVector(new double[]{0.0, 0.0});
+
+            assertThat(classifier.getDistance(probe, ann.getId())).isCloseTo(5.0, within(1e-9));
+            assertThat(classifier.verify(probe, ann.getId(), 0.0).isRecognized()).isTrue();
+            assertThat(classifier.verify(probe, "missing", 0.0).isRecognized()).isFalse();
+        }
+    }
+
+    @Nested
+    @DisplayName("Whole Gallery Tests")
+    class WholeGalleryTests {
+
+        @Test
+        @DisplayName("Should rank across partitions exactly as one KNN classifier")
+        void shouldMatchSingleKnnAcrossPartitions() {
+            KNNClassifier knn = new KNNClassifier(new ClassifierConfig().setK(3));
+            for (int i = 0; i < 300; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, "site-" + (i % 7), 1 + i % 2, 8);
+                if (i % 13 == 0) {
+                    identity.setActive(false);
+                }
+                knn.enroll(identity);
+                classifier.enroll(identity);
+            }
+
+            for (int q = 0; q < 30; q++) {
+                FeatureVector probe = createTestFeatureVector(8);
+                int limit = 1 + q % 10;
+
+                assertThat(ids(classifier.getTopMatches(probe, limit)))
+                    .containsExactlyElementsOf(ids(knn.getTopMatches(probe, limit)));
+                assertThat(ids(classifier.classify(probe, 0.0)))
+                    .containsExactlyElementsOf(ids(knn.classify(probe, 0.0)));
+            }
+        }
+
+        @Test
+        @DisplayName("Should drop every partition on clear")
+        void shouldDropEveryPartitionOnClear() {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+
+            classifier.clear();
+
+            assertThat(classifier.getPartitionNames()).isEmpty();
+            assertThat(classifier.classify(new FeatureVector(new double[]{0.0, 0.0})).isRecognized()).isFalse();
+        }
+    }
+
+    @Nested
+    @DisplayName("Lifecycle Tests")
+    class LifecycleTests {
+
+        @Test
+        @DisplayName("Should create new partitions after a serialization round trip")
+        void shouldCreatePartitionsAfterRoundTrip() throws Exception {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+
+            PartitionedClassifier restored = roundTrip(classifier);
+            restored.enroll(createIdentityWithFeatures("Bob", "site-b", new double[]{5.0, 5.0}));
+
+            assertThat(restored.getPartitionNames()).containsExactly("site-a", "site-b");
+            assertThat(restored.getPartition("site-b")).isInstanceOf(KNNClassifier.class);
+            assertThat(restored.classify(new FeatureVector(new double[]{5.0, 5.0}), 0.0, "site-b").getIdentity())
+                .map(Identity::getName).contains("Bob");
+        }
+
+        @Test
+        @DisplayName("Should use the re-bound factory for new partitions")
+        void shouldUseReboundFactory() throws Exception {
+            classifier.enroll(createIdentityWithFeatures("Ann", "site-a", new double[]{0.0, 0.0}));
+
+            PartitionedClassifier restored = roundTrip(classifier);
+            restored.setPartitionFactory(() -> new VPTreeClassifier(new ClassifierConfig().setK(3)));
+            restored.enroll(createIdentityWithFeatures("Bob", "site-b", new double[]{5.0, 5.0}));
+
+            assertThat(restored.getPartition("site-a")).isInstanceOf(KNNClassifier.class);
+            assertThat(restored.getPartition("site-b")).isInstanceOf(VPTreeClassifier.class);
+        }
+
+        @Test
+        @DisplayName("Should close every partition on close")
+        void shouldCloseEveryPartition() throws Exception {
+            PartitionedClassifier pq = new PartitionedClassifier(new ClassifierConfig(),
+                () -> new PQClassifier(new ClassifierConfig(), 8, 16));
+            List<Identity> identities = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, "site-" + (i % 2), 2, 16);
+                identities.add(identity);
+                pq.enroll(identity);
+            }
+            pq.retrain();
+            assertThat(identities).allMatch(identity ->
+                identity.getSamples().stream().allMatch(Identity.EnrolledSample::isOffloaded));
+
+            pq.close();
+
+            assertThat(identities).allMatch(identity ->
+                identity.getSamples().stream().noneMatch(Identity.EnrolledSample::isOffloaded));
+        }
+    }
+
+    // Helper methods
+
+    private PartitionedClassifier roundTrip(PartitionedClassifier original) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (PartitionedClassifier) in.readObject();
+        }
+    }
+
+    private List<String> ids(RecognitionResult result) {
+        List<String> ids = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> ids.add(match.getIdentity().getId()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            ids.add(alternative.getIdentity().getId());
+        }
+        return ids;
+    }
+
+    private Identity createIdentityWithSamples(String name, String partition, int sampleCount, int dimension) {
+        Identity identity = new Identity(name);
+        identity.setPartition(partition);
+        for (int i = 0; i < sampleCount; i++) {
+            identity.enrollSample(createTestFeatureVector(dimension), 0.9, "sample-" + i);
+        }
+        return identity;
+    }
+
+    private Identity createIdentityWithFeatures(String name, String partition, double[] features) {
+        Identity identity = new Identity(name);
+        identity.setPartition(partition);
+        identity.enrollSample(new FeatureVector(features, "test", 1), 0.9, "sample");
+        return identity;
+    }
+
+    private FeatureVector createTestFeatureVector(int dimension) {
+        double[] features = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features[i] = random.nextDouble();
+        }
+        return new FeatureVector(features, "test", 1);
+    }
+}
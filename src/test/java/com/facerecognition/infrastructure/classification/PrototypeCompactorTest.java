@@ -0,0 +1,118 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for PrototypeCompactor.
+ */
+@DisplayName("PrototypeCompactor Tests")
+class PrototypeCompactorTest {
+
+    private final Random random = new Random(17);
+
+    @Nested
+    @DisplayName("Selection Tests")
+    class SelectionTests {
+
+        @Test
+        @DisplayName("Should keep at most maxPrototypes of the identity's own samples")
+        void shouldKeepBoundedSubsetOfSamples() {
+            Identity identity = new Identity("ann", "Ann", null);
+            Set<String> original = new HashSet<>();
+            for (int i = 0; i < 40; i++) {
+                original.add(identity.enrollSample(around(i % 4 * 10.0), 1.0, "test").getSampleId());
+            }
+
+            PrototypeCompactor compactor = new PrototypeCompactor(4, DistanceMetric.EUCLIDEAN);
+            int removed = compactor.compact(identity);
+
+            assertThat(removed).isEqualTo(36);
+            assertThat(identity.getSampleCount()).isEqualTo(4);
+            assertThat(identity.getSamples())
+                .extracting(Identity.EnrolledSample::getSampleId)
+                .allMatch(original::contains);
+        }
+
+        @Test
+        @DisplayName("Should keep one prototype per cluster")
+        void shouldKeepOnePrototypePerCluster() {
+            Identity identity = new Identity("ann", "Ann", null);
+            for (int i = 0; i < 30; i++) {
+                identity.enrollSample(around(i % 3 * 100.0), 1.0, "test");
+            }
+
+            new PrototypeCompactor(3, DistanceMetric.EUCLIDEAN).compact(identity);
+
+            assertThat(identity.getSamples())
+                .extracting(sample -> Math.round(sample.getFeatures().getFeature(0) / 100.0))
+                .containsExactlyInAnyOrder(0L, 1L, 2L);
+        }
+
+        @Test
+        @DisplayName("Should prefer high-quality samples as medoids")
+        void shouldPreferHighQualitySamples() {
+            Identity identity = new Identity("ann", "Ann", null);
+            identity.enrollSample(new FeatureVector(new double[]{0.0, 0.0}), 0.1, "blurred");
+            String sharp = identity.enrollSample(new FeatureVector(new double[]{1.0, 0.0}), 0.9, "sharp").getSampleId();
+            identity.enrollSample(new FeatureVector(new double[]{2.0, 0.0}), 0.1, "blurred");
+
+            new PrototypeCompactor(1, DistanceMetric.EUCLIDEAN).compact(identity);
+
+            assertThat(identity.getSamples()).singleElement()
+                .extracting(Identity.EnrolledSample::getSampleId).isEqualTo(sharp);
+        }
+
+        @Test
+        @DisplayName("Should leave small identities untouched")
+        void shouldLeaveSmallIdentitiesUntouched() {
+            Identity identity = new Identity("ann", "Ann", null);
+            for (int i = 0; i < 3; i++) {
+                identity.enrollSample(around(0.0), 1.0, "test");
+            }
+            PrototypeCompactor compactor = new PrototypeCompactor(3, DistanceMetric.COSINE);
+
+            assertThat(compactor.needsCompaction(identity)).isFalse();
+            assertThat(compactor.compact(identity)).isZero();
+            assertThat(identity.getSampleCount()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("Should reject fewer than one prototype")
+        void shouldRejectZeroPrototypes() {
+            assertThatThrownBy(() -> new PrototypeCompactor(0, DistanceMetric.EUCLIDEAN))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Nested
+    @DisplayName("Identity Tests")
+    class IdentityTests {
+
+        @Test
+        @DisplayName("Should recompute the average over the retained samples")
+        void shouldRecomputeAverageAfterRetain() {
+            Identity identity = new Identity("ann", "Ann", null);
+            String kept = identity.enrollSample(new FeatureVector(new double[]{2.0, 4.0}), 1.0, "test").getSampleId();
+            identity.enrollSample(new FeatureVector(new double[]{10.0, 10.0}), 1.0, "test");
+            identity.getAverageFeatureVector();
+
+            assertThat(identity.retainSamples(Set.of(kept))).isEqualTo(1);
+            assertThat(identity.getAverageFeatureVector().getFeatures()).containsExactly(2.0, 4.0);
+        }
+    }
+
+    private FeatureVector around(double centre) {
+        return new FeatureVector(new double[]{
+            centre + random.nextGaussian(), centre + random.nextGaussian(), centre + random.nextGaussian()});
+    }
+}
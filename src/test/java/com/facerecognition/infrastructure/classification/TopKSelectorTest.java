@@ -0,0 +1,85 @@
+package com.facerecognition.infrastructure.classification;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the bounded top-K selector used by the classifiers.
+ */
+@DisplayName("TopKSelector Tests")
+class TopKSelectorTest {
+
+    @ParameterizedTest
+    @DisplayName("Should agree with a stable full sort")
+    @ValueSource(ints = {0, 1, 2, 5, 17, 100, 250})
+    void shouldAgreeWithStableSort(int k) {
+        Random random = new Random(k);
+        double[] distances = new double[200];
+        for (int i = 0; i < distances.length; i++) {
+            // Few distinct values so that ties are common.
+            distances[i] = random.nextInt(20);
+        }
+
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < distances.length; i++) {
+            selector.offer(i, distances[i]);
+        }
+
+        int[] expected = IntStream.range(0, distances.length).boxed()
+            .sorted(Comparator.comparingDouble(i -> distances[i]))
+            .limit(k)
+            .mapToInt(Integer::intValue)
+            .toArray();
+        assertThat(selector.drainAscending()).containsExactly(expected);
+    }
+
+    @Test
+    @DisplayName("Should rank NaN after every finite distance")
+    void shouldRankNaNLast() {
+        TopKSelector selector = new TopKSelector(3);
+        selector.offer(0, Double.NaN);
+        selector.offer(1, 2.0);
+        selector.offer(2, Double.MAX_VALUE);
+        selector.offer(3, 1.0);
+
+        assertThat(selector.drainAscending()).containsExactly(3, 1, 2);
+    }
+
+    @Test
+    @DisplayName("Should report size and worst retained distance")
+    void shouldReportSizeAndWorstDistance() {
+        TopKSelector selector = new TopKSelector(2);
+        selector.offer(0, 5.0);
+        selector.offer(1, 3.0);
+        selector.offer(2, 4.0);
+
+        assertThat(selector.size()).isEqualTo(2);
+        assertThat(selector.worstDistance()).isEqualTo(4.0);
+        assertThat(selector.drainAscending()).containsExactly(1, 2);
+        assertThat(selector.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reject negative k")
+    void shouldRejectNegativeK() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new TopKSelector(-1));
+    }
+
+    @Test
+    @DisplayName("Should return fewer entries than k when fewer were offered")
+    void shouldReturnFewerEntriesThanK() {
+        TopKSelector selector = new TopKSelector(10);
+        selector.offer(4, 0.5);
+        selector.offer(7, 0.25);
+
+        assertThat(Arrays.stream(selector.drainAscending()).boxed()).containsExactly(7, 4);
+    }
+}
@@ -0,0 +1,294 @@
+package com.facerecognition.infrastructure.classification;
+
+import com.facerecognition.domain.model.FeatureVector;
+import com.facerecognition.domain.model.Identity;
+import com.facerecognition.domain.model.RecognitionResult;
+import com.facerecognition.domain.service.FaceClassifier.ClassifierConfig;
+import com.facerecognition.domain.service.FaceClassifier.DistanceMetric;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for VPTreeClassifier.
+ */
+@DisplayName("VPTreeClassifier Tests")
+class VPTreeClassifierTest {
+
+    private final Random random = new Random(13);
+    private VPTreeClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new VPTreeClassifier(new ClassifierConfig(), 4);
+    }
+
+    @Nested
+    @DisplayName("Accuracy Tests")
+    class AccuracyTests {
+
+        @ParameterizedTest
+        @DisplayName("Should return exactly the KNN ranking under metric distances")
+        @EnumSource(value = DistanceMetric.class, names = {"EUCLIDEAN", "MANHATTAN"})
+        void shouldMatchKnnExactly(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier knn = new KNNClassifier(config);
+            VPTreeClassifier tree = new VPTreeClassifier(config, 4);
+            for (int i = 0; i < 500; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 1 + i % 3, 12);
+                if (i % 11 == 0) {
+                    identity.setActive(false);
+                }
+                knn.enroll(identity);
+                tree.enroll(identity);
+            }
+
+            for (int q = 0; q < 40; q++) {
+                FeatureVector probe = createTestFeatureVector(12);
+                int limit = 1 + q % 20;
+                RecognitionResult expected = knn.getTopMatches(probe, limit);
+                RecognitionResult actual = tree.getTopMatches(probe, limit);
+
+                assertThat(ids(actual)).containsExactlyElementsOf(ids(expected));
+                assertThat(distances(actual)).containsExactlyElementsOf(distances(expected));
+            }
+        }
+
+        @Test
+        @DisplayName("Should break distance ties by enrolment order like KNN")
+        void shouldBreakTiesLikeKnn() {
+            KNNClassifier knn = new KNNClassifier();
+            VPTreeClassifier tree = new VPTreeClassifier(new ClassifierConfig(), 1);
+            for (int i = 0; i < 200; i++) {
+                // Many identities share each of a few points, so most distances tie.
+                double[] point = {i % 4, (i / 4) % 3, 0.0};
+                Identity identity = createIdentityWithFeatures("Person " + i, point);
+                knn.enroll(identity);
+                tree.enroll(identity);
+            }
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 1.0, 0.0}, "test", 1);
+            for (int limit : new int[]{1, 3, 17, 60}) {
+                assertThat(ids(tree.getTopMatches(probe, limit)))
+                    .containsExactlyElementsOf(ids(knn.getTopMatches(probe, limit)));
+            }
+        }
+
+        @ParameterizedTest
+        @DisplayName("Should rank like KNN under non-metric distances by scanning")
+        @EnumSource(value = DistanceMetric.class, names = {"COSINE", "CHI_SQUARE"})
+        void shouldRankLikeKnnUnderNonMetricDistances(DistanceMetric metric) {
+            ClassifierConfig config = new ClassifierConfig().setMetric(metric);
+            KNNClassifier knn = new KNNClassifier(config);
+            VPTreeClassifier tree = new VPTreeClassifier(config);
+            for (int i = 0; i < 60; i++) {
+                Identity identity = createIdentityWithSamples("Person " + i, 2, 16);
+                knn.enroll(identity);
+                tree.enroll(identity);
+            }
+
+            for (int q = 0; q < 20; q++) {
+                FeatureVector probe = createTestFeatureVector(16);
+                RecognitionResult expected = knn.getTopMatches(probe, 5);
+                RecognitionResult actual = tree.getTopMatches(probe, 5);
+
+                assertThat(ids(actual)).containsExactlyElementsOf(ids(expected));
+                // KNN scores cosine on unit-length rows, which rounds differently
+                assertThat(actual.getBestMatch().orElseThrow().getDistance())
+                    .isCloseTo(expected.getBestMatch().orElseThrow().getDistance(), within(1e-12));
+            }
+        }
+
+        @Test
+        @DisplayName("Should report exact distances for returned identities")
+        void shouldReportExactDistances() {
+            for (int i = 0; i < 100; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 3, 8));
+            }
+
+            FeatureVector probe = createTestFeatureVector(8);
+            RecognitionResult result = classifier.getTopMatches(probe, 5);
+
+            RecognitionResult.MatchResult best = result.getBestMatch().orElseThrow();
+            assertThat(best.getDistance()).isEqualTo(classifier.getDistance(probe, best.getIdentity().getId()));
+            for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+                assertThat(alternative.getDistance())
+                    .isEqualTo(classifier.getDistance(probe, alternative.getIdentity().getId()))
+                    .isGreaterThanOrEqualTo(best.getDistance());
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Gallery Update Tests")
+    class GalleryUpdateTests {
+
+        @Test
+        @DisplayName("Should match identities enrolled after the tree is built")
+        void shouldMatchIdentitiesEnrolledAfterBuild() {
+            for (int i = 0; i < 30; i++) {
+                classifier.enroll(createIdentityWithSamples("Person " + i, 2, 4));
+            }
+            classifier.retrain();
+
+            Identity late = createIdentityWithFeatures("Late", new double[]{5.0, 5.0, 5.0, 5.0});
+            classifier.enroll(late);
+
+            FeatureVector probe = new FeatureVector(new double[]{5.0, 5.0, 5.0, 5.0}, "test", 1);
+            RecognitionResult result = classifier.classify(probe, 0.0);
+            assertThat(result.getIdentity()).contains(late);
+            assertThat(result.getBestMatch().orElseThrow().getDistance()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should stop matching an identity after unenroll")
+        void shouldStopMatchingAfterUnenroll() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(john);
+
+            assertThat(classifier.unenroll(john.getId())).isTrue();
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should skip inactive identities")
+        void shouldSkipInactiveIdentities() {
+            Identity john = createIdentityWithFeatures("John", new double[]{1.0, 0.0, 0.0, 0.0});
+            Identity jane = createIdentityWithFeatures("Jane", new double[]{0.0, 1.0, 0.0, 0.0});
+            classifier.enroll(john);
+            classifier.enroll(jane);
+
+            john.setActive(false);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 0.0, 0.0, 0.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(jane);
+        }
+
+        @Test
+        @DisplayName("Should reject a probe with the wrong dimension")
+        void shouldRejectProbeWithWrongDimension() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 32));
+
+            FeatureVector probe = createTestFeatureVector(16);
+
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> classifier.classify(probe))
+                .withMessageContaining("Dimension mismatch");
+        }
+
+        @Test
+        @DisplayName("Should return unknown after clear")
+        void shouldReturnUnknownAfterClear() {
+            classifier.enroll(createIdentityWithSamples("Test", 2, 16));
+            classifier.retrain();
+
+            classifier.clear();
+
+            assertThat(classifier.getEnrolledCount()).isZero();
+            assertThat(classifier.classify(createTestFeatureVector(16)).getStatus())
+                .isEqualTo(RecognitionResult.Status.UNKNOWN);
+        }
+
+        @Test
+        @DisplayName("Should rebuild when the distance metric changes")
+        void shouldRebuildWhenMetricChanges() {
+            Identity near = createIdentityWithFeatures("Near", new double[]{10.0, 0.0});
+            Identity aligned = createIdentityWithFeatures("Aligned", new double[]{100.0, 100.0});
+            classifier.enroll(near);
+            classifier.enroll(aligned);
+
+            FeatureVector probe = new FeatureVector(new double[]{1.0, 1.0}, "test", 1);
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(near);
+
+            classifier.setDistanceMetric(DistanceMetric.COSINE);
+
+            assertThat(classifier.classify(probe, 0.0).getIdentity()).contains(aligned);
+        }
+    }
+
+    @Nested
+    @DisplayName("Configuration Tests")
+    class ConfigurationTests {
+
+        @Test
+        @DisplayName("Should expose and validate the leaf size")
+        void shouldExposeAndValidateLeafSize() {
+            assertThat(new VPTreeClassifier().getLeafSize()).isEqualTo(VPTreeClassifier.DEFAULT_LEAF_SIZE);
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> new VPTreeClassifier(new ClassifierConfig(), 0));
+        }
+
+        @Test
+        @DisplayName("Should return classifier name")
+        void shouldReturnClassifierName() {
+            assertThat(classifier.getName()).isEqualTo("VPTree");
+        }
+
+        @Test
+        @DisplayName("Should format toString correctly")
+        void shouldFormatToStringCorrectly() {
+            classifier.enroll(createIdentityWithSamples("Test", 1, 16));
+
+            String str = classifier.toString();
+
+            assertThat(str).contains("VPTreeClassifier");
+            assertThat(str).contains("leafSize=4");
+            assertThat(str).contains("enrolled=1");
+        }
+    }
+
+    // Helper methods
+
+    private List<String> ids(RecognitionResult result) {
+        List<String> ids = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> ids.add(match.getIdentity().getId()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            ids.add(alternative.getIdentity().getId());
+        }
+        return ids;
+    }
+
+    private List<Double> distances(RecognitionResult result) {
+        List<Double> distances = new ArrayList<>();
+        result.getBestMatch().ifPresent(match -> distances.add(match.getDistance()));
+        for (RecognitionResult.MatchResult alternative : result.getAlternatives()) {
+            distances.add(alternative.getDistance());
+        }
+        return distances;
+    }
+
+    private Identity createIdentityWithSamples(String name, int sampleCount, int dimension) {
+        Identity identity = new Identity(name);
+        for (int i = 0; i < sampleCount; i++) {
+            identity.enrollSample(createTestFeatureVector(dimension), 0.9, "sample-" + i);
+        }
+        return identity;
+    }
+
+    private Identity createIdentityWithFeatures(String name, double[] features) {
+        Identity identity = new Identity(name);
+        identity.enrollSample(new FeatureVector(features, "test", 1), 0.9, "sample");
+        return identity;
+    }
+
+    private FeatureVector createTestFeatureVector(int dimension) {
+        double[] features = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features[i] = random.nextDouble();
+        }
+        return new FeatureVector(features, "test", 1);
+    }
+}
@@ -14,6 +14,7 @@ import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -153,6 +154,19 @@ class LBPHExtractorTest {
 
             assertThat(java.util.Arrays.stream(features.getFeatures()).allMatch(v -> v >= 0)).isTrue();
         }
+
+        @Test
+        @DisplayName("Should store only the non-zero bins")
+        void shouldStoreOnlyNonZeroBins() {
+            FaceImage image = createGradientImage(48, 64);
+
+            FeatureVector features = extractor.extract(image);
+
+            long nonZero = java.util.Arrays.stream(features.getFeatures()).filter(v -> v != 0).count();
+            assertThat(features.isSparse()).isTrue();
+            assertThat(features.getNonZeroCount()).isEqualTo(nonZero);
+            assertThat(nonZero).isLessThan(features.getDimension() / 4);
+        }
     }
 
     @Nested
@@ -272,6 +286,53 @@ class LBPHExtractorTest {
             // 0b00000001 = 1 (transitions at bit 0-1 and bit 7-0 wrap)
             assertThat(LBPHExtractor.isUniform(0b00000001)).isTrue();
         }
+
+        @Test
+        @DisplayName("Should count 58 uniform patterns")
+        void shouldCount58UniformPatterns() {
+            long uniform = IntStream.range(0, 256).filter(LBPHExtractor::isUniform).count();
+
+            assertThat(uniform).isEqualTo(58);
+        }
+
+        @Test
+        @DisplayName("Should produce 59 bins per region in uniform mode")
+        void shouldProduce59BinsPerRegionInUniformMode() {
+            LBPHExtractor uniformExtractor = new LBPHExtractor(8, 8, 1, 8, true);
+
+            FeatureVector features = uniformExtractor.extract(createCheckeredImage(48, 64));
+
+            assertThat(uniformExtractor.isUniformPatterns()).isTrue();
+            assertThat(uniformExtractor.getBinsPerRegion()).isEqualTo(59);
+            assertThat(features.getDimension()).isEqualTo(3776);
+            assertThat(uniformExtractor.getConfig().getNumComponents()).isEqualTo(3776);
+        }
+
+        @Test
+        @DisplayName("Should merge the full histogram's bins by uniform label")
+        void shouldMergeFullHistogramBins() {
+            LBPHExtractor full = new LBPHExtractor(4, 4, 1, 8);
+            LBPHExtractor uniformExtractor = new LBPHExtractor(4, 4, 1, 8, true);
+            FaceImage image = createGradientImage(48, 64);
+
+            double[] fullHistogram = full.extract(image).getFeatures();
+            double[] uniformHistogram = uniformExtractor.extract(image).getFeatures();
+
+            // Each region of the uniform histogram is its full histogram with the non-uniform bins summed.
+            for (int region = 0; region < 16; region++) {
+                double nonUniform = 0;
+                int bin = 0;
+                for (int code = 0; code < 256; code++) {
+                    double value = fullHistogram[region * 256 + code];
+                    if (LBPHExtractor.isUniform(code)) {
+                        assertThat(uniformHistogram[region * 59 + bin++]).isCloseTo(value, within(1e-12));
+                    } else {
+                        nonUniform += value;
+                    }
+                }
+                assertThat(uniformHistogram[region * 59 + 58]).isCloseTo(nonUniform, within(1e-12));
+            }
+        }
     }
 
     @Nested
@@ -422,6 +483,7 @@ class LBPHExtractorTest {
             assertThat(str).contains("grid=8x8");
             assertThat(str).contains("radius=1");
             assertThat(str).contains("neighbors=8");
+            assertThat(str).contains("uniform=false");
         }
     }
 
@@ -0,0 +1,201 @@
+package com.facerecognition.infrastructure.extraction;
+
+import com.facerecognition.domain.model.FaceImage;
+import com.facerecognition.domain.model.FeatureVector;
+
+import org.junit.jupiter.api.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ProjectedFeatureExtractor and FeatureProjection.
+ */
+@DisplayName("ProjectedFeatureExtractor Tests")
+class ProjectedFeatureExtractorTest {
+
+    private ProjectedFeatureExtractor extractor;
+    private List<FaceImage> faces;
+
+    @BeforeEach
+    void setUp() {
+        extractor = new ProjectedFeatureExtractor(new LBPHExtractor(), 16);
+        faces = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            faces.add(createNoiseImage(48, 64, i));
+        }
+    }
+
+    @Nested
+    @DisplayName("Training Tests")
+    class TrainingTests {
+
+        @Test
+        @DisplayName("Should require training before extraction")
+        void shouldRequireTrainingBeforeExtraction() {
+            assertThat(extractor.isTrained()).isFalse();
+            assertThatIllegalStateException().isThrownBy(() -> extractor.extract(faces.get(0)));
+        }
+
+        @Test
+        @DisplayName("Should keep at most one component fewer than the training faces")
+        void shouldKeepAtMostSamplesMinusOneComponents() {
+            extractor.train(faces, null);
+
+            assertThat(extractor.isTrained()).isTrue();
+            assertThat(extractor.getFeatureDimension()).isEqualTo(11);
+            assertThat(extractor.extract(faces.get(0)).getDimension()).isEqualTo(11);
+        }
+
+        @Test
+        @DisplayName("Should cap the dimension at the configured components")
+        void shouldCapDimensionAtConfiguredComponents() {
+            ProjectedFeatureExtractor small = new ProjectedFeatureExtractor(new LBPHExtractor(), 4);
+
+            small.train(faces, null);
+
+            assertThat(small.getFeatureDimension()).isEqualTo(4);
+        }
+
+        @Test
+        @DisplayName("Should reject a single training face")
+        void shouldRejectSingleTrainingFace() {
+            assertThatIllegalArgumentException()
+                .isThrownBy(() -> extractor.train(Collections.singletonList(faces.get(0)), null));
+        }
+
+        @Test
+        @DisplayName("Should forget the projection on reset")
+        void shouldForgetProjectionOnReset() {
+            extractor.train(faces, null);
+
+            extractor.reset();
+
+            assertThat(extractor.isTrained()).isFalse();
+            assertThat(extractor.getProjection()).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("Projection Tests")
+    class ProjectionTests {
+
+        @Test
+        @DisplayName("Should produce orthonormal components")
+        void shouldProduceOrthonormalComponents() {
+            extractor.train(faces, null);
+            double[][] components = extractor.getProjection().getComponents();
+            int k = components[0].length;
+
+            for (int a = 0; a < k; a++) {
+                for (int b = a; b < k; b++) {
+                    double dot = 0;
+                    for (double[] row : components) {
+                        dot += row[a] * row[b];
+                    }
+                    assertThat(dot).isCloseTo(a == b ? 1.0 : 0.0, within(1e-9));
+                }
+            }
+        }
+
+        @Test
+        @DisplayName("Should preserve distances between mapped training faces when no component is dropped")
+        void shouldPreserveDistancesBetweenTrainingFaces() {
+            extractor.train(faces, null);
+            LBPHExtractor lbph = new LBPHExtractor();
+            FeatureVector first = ProjectedFeatureExtractor.rootMap(lbph.extract(faces.get(0)));
+
+            for (int i = 1; i < faces.size(); i++) {
+                double original = first.euclideanDistance(ProjectedFeatureExtractor.rootMap(lbph.extract(faces.get(i))));
+                double projected = extractor.extract(faces.get(0)).euclideanDistance(extractor.extract(faces.get(i)));
+                assertThat(projected).isCloseTo(original, within(1e-9));
+            }
+        }
+
+        @Test
+        @DisplayName("Should project sparse and dense inputs identically")
+        void shouldProjectSparseAndDenseIdentically() {
+            extractor.train(faces, null);
+            FeatureVector histogram = new LBPHExtractor().extract(faces.get(3));
+            FeatureProjection projection = extractor.getProjection();
+
+            FeatureVector fromSparse = projection.project(histogram, "test", 1);
+            FeatureVector fromDense = projection.project(histogram.toDense(), "test", 1);
+
+            assertThat(histogram.isSparse()).isTrue();
+            assertThat(fromSparse.getFeatures()).containsExactly(fromDense.getFeatures(), within(1e-12));
+        }
+
+        @Test
+        @DisplayName("Should name the algorithm after the wrapped extractor")
+        void shouldNameAlgorithmAfterWrappedExtractor() {
+            extractor.train(faces, null);
+
+            FeatureVector features = extractor.extract(faces.get(0));
+
+            assertThat(extractor.getAlgorithmName()).isEqualTo("LBPH+PCA");
+            assertThat(features.getAlgorithmName()).isEqualTo("LBPH+PCA");
+            assertThat(features.isSparse()).isFalse();
+        }
+
+        @Test
+        @DisplayName("Should map features to their signed square roots")
+        void shouldMapFeaturesToSignedSquareRoots() {
+            FeatureVector dense = ProjectedFeatureExtractor.rootMap(new FeatureVector(new double[]{4.0, 0.0, -9.0}));
+            FeatureVector sparse = ProjectedFeatureExtractor.rootMap(
+                FeatureVector.sparse(new double[]{0.0, 0.25, 0.0}, "LBPH", 1));
+
+            assertThat(dense.getFeatures()).containsExactly(2.0, 0.0, -3.0);
+            assertThat(sparse.isSparse()).isTrue();
+            assertThat(sparse.getFeatures()).containsExactly(0.0, 0.5, 0.0);
+        }
+    }
+
+    @Nested
+    @DisplayName("Persistence Tests")
+    class PersistenceTests {
+
+        @Test
+        @DisplayName("Should rebuild an identical projection from its mean and components")
+        void shouldRebuildIdenticalProjection() {
+            extractor.train(faces, null);
+            FeatureProjection projection = extractor.getProjection();
+
+            ProjectedFeatureExtractor restored = new ProjectedFeatureExtractor(new LBPHExtractor(), 16);
+            restored.setProjection(FeatureProjection.of(projection.getMean(), projection.getComponents()));
+
+            assertThat(restored.isTrained()).isTrue();
+            assertThat(restored.extract(faces.get(5)).getFeatures())
+                .containsExactly(extractor.extract(faces.get(5)).getFeatures());
+        }
+
+        @Test
+        @DisplayName("Should reject a projection for another input dimension")
+        void shouldRejectProjectionForAnotherDimension() {
+            extractor.train(faces, null);
+            FeatureProjection projection = extractor.getProjection();
+            ProjectedFeatureExtractor uniform = new ProjectedFeatureExtractor(new LBPHExtractor(8, 8, 1, 8, true), 16);
+
+            assertThatIllegalArgumentException().isThrownBy(() -> uniform.setProjection(projection));
+        }
+    }
+
+    // Helper methods
+
+    private FaceImage createNoiseImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gray = random.nextInt(256);
+                image.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+            }
+        }
+        return FaceImage.fromBufferedImage(image);
+    }
+}
@@ -1,7 +1,18 @@
 package com.facerecognition.unit.domain;
 
+import com.facerecognition.domain.model.FeaturePrecision;
 import com.facerecognition.domain.model.FeatureVector;
 import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -212,6 +223,24 @@ class FeatureVectorTest {
             // 1*4 + 2*5 + 3*6 = 4 + 10 + 18 = 32
             assertEquals(32.0, v1.dot(v2), DELTA);
         }
+
+        @Test
+        @DisplayName("Keeps norm across serialization")
+        void keepsNormAcrossSerialization() throws Exception {
+            FeatureVector v = new FeatureVector(new double[]{3.0, 4.0});
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(v);
+            }
+            FeatureVector copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (FeatureVector) in.readObject();
+            }
+
+            assertEquals(5.0, copy.norm(), DELTA);
+            assertEquals(v, copy);
+        }
     }
 
     @Nested
@@ -269,4 +298,300 @@ class FeatureVectorTest {
             assertNotEquals(v1, v2);
         }
     }
+
+    @Nested
+    @DisplayName("Sparse Vectors")
+    class SparseTests {
+
+        @Test
+        @DisplayName("Stores only the non-zero values")
+        void storesOnlyNonZeroValues() {
+            FeatureVector fv = FeatureVector.sparse(new double[]{0.0, 2.0, 0.0, 0.0, 5.0}, "LBPH", 2);
+
+            assertTrue(fv.isSparse());
+            assertEquals(5, fv.getDimension());
+            assertEquals(2, fv.getNonZeroCount());
+            assertArrayEquals(new int[]{1, 4}, fv.getNonZeroIndices());
+            assertArrayEquals(new double[]{2.0, 5.0}, fv.getNonZeroValues(), DELTA);
+            assertArrayEquals(new double[]{0.0, 2.0, 0.0, 0.0, 5.0}, fv.getFeatures(), DELTA);
+            assertEquals(0.0, fv.getFeature(2), DELTA);
+            assertEquals(5.0, fv.getFeature(4), DELTA);
+            assertThrows(IndexOutOfBoundsException.class, () -> fv.getFeature(5));
+        }
+
+        @Test
+        @DisplayName("Rejects positions out of order or out of range")
+        void rejectsBadPositions() {
+            assertThrows(IllegalArgumentException.class,
+                () -> FeatureVector.sparse(4, new int[]{2, 1}, new double[]{1.0, 1.0}, "test", 1));
+            assertThrows(IllegalArgumentException.class,
+                () -> FeatureVector.sparse(4, new int[]{4}, new double[]{1.0}, "test", 1));
+            assertThrows(IllegalArgumentException.class,
+                () -> FeatureVector.sparse(4, new int[]{1}, new double[]{1.0, 2.0}, "test", 1));
+        }
+
+        @Test
+        @DisplayName("Computes the same distances as the dense form")
+        void computesSameDistancesAsDense() {
+            Random random = new Random(17);
+            double[] a = histogram(random, 512);
+            double[] b = histogram(random, 512);
+            FeatureVector denseA = new FeatureVector(a);
+            FeatureVector denseB = new FeatureVector(b);
+            FeatureVector sparseA = FeatureVector.sparse(a, "test", 1);
+            FeatureVector sparseB = FeatureVector.sparse(b, "test", 1);
+
+            assertEquals(denseA.norm(), sparseA.norm(), DELTA);
+            assertEquals(denseA.euclideanDistance(denseB), sparseA.euclideanDistance(sparseB), DELTA);
+            assertEquals(denseA.manhattanDistance(denseB), sparseA.manhattanDistance(sparseB), DELTA);
+            assertEquals(denseA.chiSquareDistance(denseB), sparseA.chiSquareDistance(sparseB), DELTA);
+            assertEquals(denseA.cosineDistance(denseB), sparseA.cosineDistance(sparseB), DELTA);
+            assertEquals(denseA.dot(denseB), sparseA.dot(sparseB), DELTA);
+            assertEquals(denseA.chiSquareDistance(denseB), sparseA.chiSquareDistance(denseB), DELTA);
+        }
+
+        @Test
+        @DisplayName("Keeps the sparse form through vector operations")
+        void keepsSparseFormThroughOperations() {
+            FeatureVector a = FeatureVector.sparse(new double[]{0.0, 3.0, 0.0, 4.0}, "test", 1);
+            FeatureVector b = FeatureVector.sparse(new double[]{1.0, 3.0, 0.0, 0.0}, "test", 1);
+
+            FeatureVector normalized = a.normalize();
+            FeatureVector difference = a.subtract(b);
+
+            assertTrue(normalized.isSparse());
+            assertArrayEquals(new double[]{0.0, 0.6, 0.0, 0.8}, normalized.getFeatures(), DELTA);
+            assertTrue(a.scale(2.0).isSparse());
+            assertTrue(difference.isSparse());
+            assertArrayEquals(new int[]{0, 3}, difference.getNonZeroIndices());
+            assertFalse(a.add(new FeatureVector(new double[]{1.0, 1.0, 1.0, 1.0})).isSparse());
+        }
+
+        @Test
+        @DisplayName("Equals the dense vector with the same values")
+        void equalsDenseWithSameValues() {
+            double[] values = {0.0, 1.5, 0.0, -2.0};
+            FeatureVector sparse = FeatureVector.sparse(values, "test", 1);
+            FeatureVector dense = new FeatureVector(values);
+
+            assertEquals(dense, sparse);
+            assertEquals(sparse, dense);
+            assertEquals(dense.hashCode(), sparse.hashCode());
+            assertEquals(dense, sparse.toDense());
+            assertTrue(dense.toSparse().isSparse());
+        }
+
+        @Test
+        @DisplayName("Survives serialization")
+        void survivesSerialization() throws Exception {
+            FeatureVector v = FeatureVector.sparse(new double[]{0.0, 3.0, 0.0, 4.0}, "LBPH", 2);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(v);
+            }
+            FeatureVector copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (FeatureVector) in.readObject();
+            }
+
+            assertTrue(copy.isSparse());
+            assertEquals(4, copy.getDimension());
+            assertEquals(5.0, copy.norm(), DELTA);
+            assertEquals(v, copy);
+        }
+
+        // LBPH-like values: non-negative, most bins empty.
+        private double[] histogram(Random random, int length) {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = random.nextInt(4) == 0 ? random.nextDouble() : 0.0;
+            }
+            return values;
+        }
+    }
+
+    @Nested
+    @DisplayName("Single Precision")
+    class PrecisionTests {
+
+        @Test
+        @DisplayName("Rounds values to float once and widens them on access")
+        void roundsValuesToFloat() {
+            FeatureVector fv = FeatureVector.of(new double[]{0.1, 2.0, 0.0}, "test", 1, FeaturePrecision.FLOAT32);
+
+            assertEquals(FeaturePrecision.FLOAT32, fv.getPrecision());
+            assertFalse(fv.isSparse());
+            assertEquals((double) 0.1f, fv.getFeature(0));
+            assertArrayEquals(new double[]{0.1f, 2.0, 0.0}, fv.getFeatures());
+            assertArrayEquals(new float[]{0.1f, 2.0f, 0.0f}, fv.getFloatFeatures());
+            assertEquals(2, fv.getNonZeroCount());
+            assertNull(new FeatureVector(new double[]{1.0}).getFloatFeatures());
+        }
+
+        @Test
+        @DisplayName("Computes the distances of the widened values")
+        void computesDistancesOfWidenedValues() {
+            Random random = new Random(23);
+            FeatureVector a = FeatureVector.of(values(random, 300), "test", 1, FeaturePrecision.FLOAT32);
+            FeatureVector b = FeatureVector.of(values(random, 300), "test", 1, FeaturePrecision.FLOAT32);
+            FeatureVector wideA = a.withPrecision(FeaturePrecision.FLOAT64);
+            FeatureVector wideB = b.withPrecision(FeaturePrecision.FLOAT64);
+
+            assertEquals(wideA.norm(), a.norm(), DELTA);
+            assertEquals(wideA.euclideanDistance(wideB), a.euclideanDistance(b), DELTA);
+            assertEquals(wideA.manhattanDistance(wideB), a.manhattanDistance(b), DELTA);
+            assertEquals(wideA.chiSquareDistance(wideB), a.chiSquareDistance(b), DELTA);
+            assertEquals(wideA.cosineDistance(wideB), a.cosineDistance(b), DELTA);
+            assertEquals(wideA.dot(wideB), a.dot(b), DELTA);
+            assertEquals(wideA.euclideanDistance(wideB), a.euclideanDistance(wideB), DELTA);
+        }
+
+        @Test
+        @DisplayName("Keeps single precision through vector operations")
+        void keepsPrecisionThroughOperations() {
+            FeatureVector a = FeatureVector.of(new double[]{3.0, 4.0}, "test", 1, FeaturePrecision.FLOAT32);
+            FeatureVector b = new FeatureVector(new double[]{1.0, 1.0});
+
+            assertEquals(FeaturePrecision.FLOAT32, a.normalize().getPrecision());
+            assertArrayEquals(new double[]{0.6f, 0.8f}, a.normalize().getFeatures());
+            assertEquals(FeaturePrecision.FLOAT32, a.scale(2.0).getPrecision());
+            assertEquals(FeaturePrecision.FLOAT32, a.add(b).getPrecision());
+            assertEquals(FeaturePrecision.FLOAT64, b.subtract(a).getPrecision());
+            assertSame(a, a.withPrecision(FeaturePrecision.FLOAT32));
+            FeatureVector sparse = FeatureVector.sparse(new double[]{0.0, 1.0}, "test", 1);
+            assertSame(sparse, sparse.withPrecision(FeaturePrecision.FLOAT32));
+        }
+
+        @Test
+        @DisplayName("Equals the double vector with the widened values")
+        void equalsWidenedDoubleVector() {
+            FeatureVector narrow = FeatureVector.of(new double[]{0.1, -2.5}, "test", 1, FeaturePrecision.FLOAT32);
+            FeatureVector wide = new FeatureVector(new double[]{0.1f, -2.5});
+
+            assertEquals(wide, narrow);
+            assertEquals(narrow, wide);
+            assertEquals(wide.hashCode(), narrow.hashCode());
+            assertNotEquals(new FeatureVector(new double[]{0.1, -2.5}), narrow);
+        }
+
+        @Test
+        @DisplayName("Survives serialization")
+        void survivesSerialization() throws Exception {
+            FeatureVector v = FeatureVector.ofFloats(new float[]{3.0f, 4.0f}, "test", 1);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(v);
+            }
+            FeatureVector copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (FeatureVector) in.readObject();
+            }
+
+            assertEquals(FeaturePrecision.FLOAT32, copy.getPrecision());
+            assertEquals(5.0, copy.norm(), DELTA);
+            assertEquals(v, copy);
+        }
+
+        private double[] values(Random random, int length) {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = random.nextDouble();
+            }
+            return values;
+        }
+    }
+
+    @Nested
+    @DisplayName("Allocation-free Access")
+    class AccessTests {
+
+        @Test
+        @DisplayName("Shares the storage of a dense vector through a read-only view")
+        void sharesStorageThroughReadOnlyView() {
+            FeatureVector v = new FeatureVector(new double[]{1.0, 2.0, 3.0});
+
+            DoubleBuffer view = v.asReadOnlyBuffer();
+
+            assertTrue(view.isReadOnly());
+            assertEquals(3, view.remaining());
+            assertEquals(2.0, view.get(1));
+            assertThrows(ReadOnlyBufferException.class, () -> view.put(0, 9.0));
+            assertEquals(1.0, v.getFeature(0));
+        }
+
+        @Test
+        @DisplayName("Copies every form into a caller's array at an offset")
+        void copiesIntoArrayAtOffset() {
+            double[] values = {0.0, 1.5, 0.0, 0.25};
+            double[] target = {7.0, 7.0, 7.0, 7.0, 7.0, 7.0};
+
+            for (FeatureVector v : new FeatureVector[]{
+                    new FeatureVector(values),
+                    FeatureVector.sparse(values, "test", 1),
+                    FeatureVector.of(values, "test", 1, FeaturePrecision.FLOAT32)}) {
+                v.copyInto(target, 1);
+                assertArrayEquals(new double[]{7.0, 0.0, 1.5, 0.0, 0.25, 7.0}, target);
+                Arrays.fill(target, 7.0);
+
+                float[] singles = new float[5];
+                v.copyInto(singles, 1);
+                assertArrayEquals(new float[]{0.0f, 0.0f, 1.5f, 0.0f, 0.25f}, singles);
+            }
+            assertThrows(IndexOutOfBoundsException.class,
+                () -> new FeatureVector(values).copyInto(target, 3));
+        }
+
+        @Test
+        @DisplayName("Accumulates scaled values into a caller's array")
+        void accumulatesIntoArray() {
+            double[] sum = {1.0, 1.0, 1.0};
+
+            new FeatureVector(new double[]{1.0, 2.0, 3.0}).accumulateInto(sum);
+            FeatureVector.sparse(new double[]{0.0, 4.0, 0.0}, "test", 1).accumulateInto(sum, -0.5);
+
+            assertArrayEquals(new double[]{2.0, 1.0, 4.0}, sum, DELTA);
+        }
+    }
+
+    @Nested
+    @DisplayName("Slicing and Joining")
+    class SliceTests {
+
+        @Test
+        @DisplayName("Slices every form, keeping it")
+        void slicesEveryForm() {
+            double[] values = {1.0, 0.0, 2.0, 0.0, 3.0};
+
+            FeatureVector dense = new FeatureVector(values).slice(1, 4);
+            FeatureVector sparse = FeatureVector.sparse(values, "test", 1).slice(1, 4);
+            FeatureVector single = FeatureVector.of(values, "test", 1, FeaturePrecision.FLOAT32).slice(1, 4);
+
+            assertArrayEquals(new double[]{0.0, 2.0, 0.0}, dense.getFeatures());
+            assertTrue(sparse.isSparse());
+            assertArrayEquals(new int[]{1}, sparse.getNonZeroIndices());
+            assertArrayEquals(new double[]{0.0, 2.0, 0.0}, sparse.getFeatures());
+            assertEquals(FeaturePrecision.FLOAT32, single.getPrecision());
+            assertThrows(IndexOutOfBoundsException.class, () -> dense.slice(2, 2));
+            assertThrows(IndexOutOfBoundsException.class, () -> dense.slice(0, 4));
+        }
+
+        @Test
+        @DisplayName("Joins vectors that slice back into the originals")
+        void joinsVectorsThatSliceBack() {
+            FeatureVector head = new FeatureVector(new double[]{0.5, -1.0});
+            FeatureVector tail = FeatureVector.sparse(new double[]{0.0, 3.0, 0.0}, "test", 1);
+
+            FeatureVector joined = FeatureVector.concat(head, tail, "joined", 2);
+
+            assertEquals(5, joined.getDimension());
+            assertTrue(joined.isSparse());
+            assertEquals("joined", joined.getAlgorithmName());
+            assertArrayEquals(new double[]{0.5, -1.0, 0.0, 3.0, 0.0}, joined.getFeatures());
+            assertArrayEquals(head.getFeatures(), joined.slice(0, 2).getFeatures());
+            assertEquals(tail.euclideanDistance(tail), joined.slice(2, 5).euclideanDistance(tail));
+            assertArrayEquals(tail.getNonZeroIndices(), joined.slice(2, 5).getNonZeroIndices());
+        }
+    }
 }